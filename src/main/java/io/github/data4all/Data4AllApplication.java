@@ -15,6 +15,11 @@
  */
 package io.github.data4all;
 
+import io.github.data4all.handler.DataBaseHandler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.acra.ACRA;
 import org.acra.ReportField;
 import org.acra.annotation.ReportsCrashes;
@@ -25,7 +30,7 @@ import android.content.Context;
 
 /**
  * This class represents the application itself. It initializes the acra report
- * system.
+ * system and owns the database connection which is shared by all components.
  * 
  * @author tbrose
  *
@@ -55,6 +60,23 @@ public class Data4AllApplication extends Application {
      * Application Context.
      */
     public static Context context;
+
+    /**
+     * The shared database handler, see {@link #getDataBaseHandler(Context)}.
+     */
+    private DataBaseHandler dataBaseHandler;
+
+    /**
+     * The database handler used if the application is replaced, e.g. while
+     * testing.
+     */
+    private static DataBaseHandler fallbackHandler;
+
+    /**
+     * Executes database writes in the order they were submitted.
+     */
+    private final ExecutorService dataBaseWriter = Executors
+            .newSingleThreadExecutor();
     
     /**
      * Default constructor.
@@ -68,4 +90,60 @@ public class Data4AllApplication extends Application {
         super.onCreate();
         ACRA.init(this);       
     }
+
+    /**
+     * Returns the database handler of this application, creating it on the
+     * first call. The handler is never closed, so callers must not close it
+     * either.
+     * 
+     * @return the shared database handler
+     */
+    public synchronized DataBaseHandler getDataBaseHandler() {
+        if (dataBaseHandler == null) {
+            dataBaseHandler = new DataBaseHandler(this);
+        }
+        return dataBaseHandler;
+    }
+
+    /**
+     * Returns the shared database handler of the application of the given
+     * context. Readers may use it concurrently from any thread; all writes go
+     * through the same connection.
+     * 
+     * @param ctx
+     *            Any context of this application
+     * @return the shared database handler
+     */
+    public static DataBaseHandler getDataBaseHandler(Context ctx) {
+        final Context app = ctx.getApplicationContext();
+        if (app instanceof Data4AllApplication) {
+            return ((Data4AllApplication) app).getDataBaseHandler();
+        }
+        // Only happens if the application is replaced, e.g. while testing
+        synchronized (Data4AllApplication.class) {
+            if (fallbackHandler == null) {
+                fallbackHandler = new DataBaseHandler(app);
+            }
+            return fallbackHandler;
+        }
+    }
+
+    /**
+     * Executes the given database write in the background. All writes
+     * submitted with this method are executed one after another on the same
+     * thread.
+     * 
+     * @param ctx
+     *            Any context of this application
+     * @param write
+     *            The write operation to execute
+     */
+    public static void executeDataBaseWrite(Context ctx, Runnable write) {
+        final Context app = ctx.getApplicationContext();
+        if (app instanceof Data4AllApplication) {
+            ((Data4AllApplication) app).dataBaseWriter.execute(write);
+        } else {
+            write.run();
+        }
+    }
 }
@@ -115,6 +115,13 @@ public class CameraActivity extends AbstractActivity {
 
     private Camera mCamera;
 
+    /**
+     * The view angles of the opened camera in radians, read once since the
+     * assist view is updated on every sensor event.
+     */
+    private float horizontalViewAngle;
+    private float verticalViewAngle;
+
     private CameraPreview cameraPreview;
     private ImageButton btnCapture;
     private AutoFocusCrossHair mAutoFocusCrossHair;
@@ -256,6 +263,11 @@ public class CameraActivity extends AbstractActivity {
                 cameraPreview = (CameraPreview) findViewById(R.id.cameraPreview);
 
                 mCamera = Camera.open(Camera.CameraInfo.CAMERA_FACING_BACK);
+                final Camera.Parameters params = mCamera.getParameters();
+                horizontalViewAngle =
+                        (float) Math.toRadians(params.getVerticalViewAngle());
+                verticalViewAngle =
+                        (float) Math.toRadians(params.getHorizontalViewAngle());
                 cameraPreview.setCamera(mCamera);
                 mCamera.startPreview();
                 this.setListener(btnCapture);
@@ -427,14 +439,24 @@ public class CameraActivity extends AbstractActivity {
                 return 1;
             }
         });
+        pictureHandler.setReadyListener(new Runnable() {
+            @Override
+            public void run() {
+                btnCapture.setEnabled(true);
+            }
+        });
         button.setOnClickListener(new OnClickListener() {
             @Override
             public void onClick(View v) {
+                if (!pictureHandler.canCapture()) {
+                    // wait until the former pictures are persisted
+                    return;
+                }
                 if (OrientationListener.CALIBRATION_STATUS == OrientationListener.CALIBRATION_OK
                         || !getWarning() || ignore) {
                     // After photo is taken, disable button for clicking twice
                     btnCapture.setEnabled(false);
-                    mCamera.takePicture(shutterCallback, null, pictureHandler);
+                    pictureHandler.takePicture(mCamera, shutterCallback);
                 } else {
                     showCalibrationDialog();
                 }
@@ -444,6 +466,9 @@ public class CameraActivity extends AbstractActivity {
         button.setOnLongClickListener(new OnLongClickListener() {
             @Override
             public boolean onLongClick(View v) {
+                if (!pictureHandler.canCapture()) {
+                    return true;
+                }
                 if (OrientationListener.CALIBRATION_STATUS == OrientationListener.CALIBRATION_OK
                         || !getWarning() || ignore) {
                     // After photo is taken, disable button for clicking twice
@@ -458,8 +483,8 @@ public class CameraActivity extends AbstractActivity {
                                 mAutoFocusCrossHair.success();
                                 if (cameraAssistView != null
                                         && !cameraAssistView.isSkylook()) {
-                                    mCamera.takePicture(shutterCallback, null,
-                                            pictureHandler);
+                                    pictureHandler.takePicture(mCamera,
+                                            shutterCallback);
 
                                 } else {
                                     mAutoFocusCrossHair.fail();
@@ -496,7 +521,6 @@ public class CameraActivity extends AbstractActivity {
                 } else {
                     Toast.makeText(CameraActivity.this,
                             e.getLocalizedMessage(), Toast.LENGTH_SHORT).show();
-                    btnCapture.setEnabled(true);
                 }
             }
         });
@@ -523,14 +547,12 @@ public class CameraActivity extends AbstractActivity {
                     public void run() {
                         mCallbackView.setVisibility(View.VISIBLE);
                         Log.i(TAG, "starting success animation");
-                        mCamera.startPreview();
                     }
                 }).withEndAction(new Runnable() {
                     @Override
                     public void run() {
                         mCallbackView.setVisibility(View.INVISIBLE);
                         mCallbackView.setAlpha(0);
-                        btnCapture.setEnabled(true);
                         Log.i(TAG, "ending success animation");
                     }
                 }).start();
@@ -654,12 +676,8 @@ public class CameraActivity extends AbstractActivity {
      */
     public void updateCameraAssistView() {
 
-        if (orientationListener != null) {
-            final Camera.Parameters params = mCamera.getParameters();
-            final float horizontalViewAngle = (float) Math.toRadians(params
-                    .getVerticalViewAngle());
-            final float verticalViewAngle = (float) Math.toRadians(params
-                    .getHorizontalViewAngle());
+        if (orientationListener != null && mCamera != null
+                && orientationListener.getDeviceOrientation() != null) {
             cameraAssistView.setInformations(horizontalViewAngle,
                     verticalViewAngle,
                     orientationListener.getDeviceOrientation());
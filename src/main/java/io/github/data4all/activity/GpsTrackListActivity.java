@@ -15,6 +15,7 @@
  */
 package io.github.data4all.activity;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.model.data.Track;
 import io.github.data4all.util.ListAdapter;
@@ -79,16 +80,28 @@ public class GpsTrackListActivity extends AbstractActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        // Get saved tracks
-        this.getTracks();
-
-        // Get the ListAdapter
-        trackItemArrayAdapter =
-                new ListAdapter(getApplicationContext(), R.layout.gps_row_item,
-                        trackList);
-
-        // Set the new adapter to this view
-        trackListView.setAdapter(trackItemArrayAdapter);
+        // Get saved tracks, queued behind the pending writes so a deleted or
+        // renamed track is shown as it is now
+        Data4AllApplication.executeDataBaseWrite(this, new Runnable() {
+            @Override
+            public void run() {
+                final List<Track> tracks = trackUtil.getTracks();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        trackList = tracks;
+
+                        // Get the ListAdapter
+                        trackItemArrayAdapter =
+                                new ListAdapter(getApplicationContext(),
+                                        R.layout.gps_row_item, trackList);
+
+                        // Set the new adapter to this view
+                        trackListView.setAdapter(trackItemArrayAdapter);
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -116,14 +129,6 @@ public class GpsTrackListActivity extends AbstractActivity {
         return intent;
     }
 
-    /**
-     * Get all Tracks from Database.
-     */
-    private void getTracks() {
-        trackList = trackUtil.getTracks();
-        
-    }
-
     /*
      * (non-Javadoc)
      * 
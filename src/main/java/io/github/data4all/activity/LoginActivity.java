@@ -15,6 +15,7 @@
  */
 package io.github.data4all.activity;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.logger.Log;
@@ -133,10 +134,10 @@ public class LoginActivity extends AbstractActivity {
      * @return If the user is currently logged in.
      */
     private boolean isLoggedIn() {
-        final DataBaseHandler database = new DataBaseHandler(this);
+        final DataBaseHandler database =
+                Data4AllApplication.getDataBaseHandler(this);
         final List<User> users = database.getAllUser();
         Log.i(TAG, "isLoggedIn() number of user in database: " + users.size());
-        database.close();
         return !users.isEmpty();
     }
 
@@ -147,9 +148,9 @@ public class LoginActivity extends AbstractActivity {
      *            The user to save
      */
     private void saveUser(User user) {
-        final DataBaseHandler database = new DataBaseHandler(this);
+        final DataBaseHandler database =
+                Data4AllApplication.getDataBaseHandler(this);
         database.createUser(user);
-        database.close();
     }
 
     /**
@@ -15,6 +15,7 @@
  */
 package io.github.data4all.activity;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.handler.TagSuggestionHandler;
@@ -210,11 +211,10 @@ public class MapPreviewActivity extends MapActivity implements OnClickListener {
             m.setInfoWindow(null);
             mapView.getOverlays().add(m);
         }
-        final DataBaseHandler db = new DataBaseHandler(this);
+        final DataBaseHandler db = Data4AllApplication.getDataBaseHandler(this);
         final List<DataElement> list = db.getAllDataElements();
         list.remove(element);
         mapView.addOsmElementsToMap(this, list);
-        db.close();
         mapView.addOsmElementToMap(this, element, true);
     }
 
@@ -15,6 +15,7 @@
  */
 package io.github.data4all.activity;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.handler.LastChoiceHandler;
@@ -337,14 +338,13 @@ public class MapViewActivity extends MapActivity implements OnClickListener {
         myLocationOverlay.enableFollowLocation();
 
         // add osmElements from the database to the map
-        final DataBaseHandler db = new DataBaseHandler(this);
+        final DataBaseHandler db = Data4AllApplication.getDataBaseHandler(this);
         List<DataElement> list = db.getAllDataElements();
         List<Track> trackList = db.getAllGPSTracks();
         mapView.addGPSTracksToMap(this, trackList);
         mapView.addOsmElementsToMap(this, list);
         // load lastChoice from database
         LastChoiceHandler.load(db);
-        db.close();
 
         // Start the GPS tracking
         Log.i(TAG, "Start GPSService");
@@ -430,11 +430,22 @@ public class MapViewActivity extends MapActivity implements OnClickListener {
      */
     @Override
     protected void onWorkflowFinished(Intent data) {
-        final DataBaseHandler db = new DataBaseHandler(this);
-        final List<DataElement> list = db.getAllDataElements();
-        mapView.addOsmElementsToMap(this, list);
-        db.close();
-        mapView.postInvalidate();
+        final DataBaseHandler db = Data4AllApplication.getDataBaseHandler(this);
+        // Queued behind the pending writes, so the new element is read
+        Data4AllApplication.executeDataBaseWrite(this, new Runnable() {
+            @Override
+            public void run() {
+                final List<DataElement> list = db.getAllDataElements();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mapView.addOsmElementsToMap(MapViewActivity.this,
+                                list);
+                        mapView.postInvalidate();
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -464,7 +475,7 @@ public class MapViewActivity extends MapActivity implements OnClickListener {
         stopService(new Intent(this, GPSservice.class));
         stopService(new Intent(this, MapTileService.class));
         unregisterReceiver(TrackChangeReceiver);
-
+        drawerAdapter.close();
     }
 
     /**
@@ -616,15 +616,19 @@ public class ResultViewActivity extends AbstractActivity implements
      * @param the
      *            Data Element to add
      **/
-    private void addOsmElementToDB(DataElement dataElement) {
-        final DataBaseHandler db = new DataBaseHandler(this);
-        if (dataElement.getOsmId() == -1) {
-            db.createDataElement(dataElement);
-        } else {
-            // if the Element allready exists
-            db.updateDataElement(dataElement);
-        }
-        db.close();
+    private void addOsmElementToDB(final DataElement dataElement) {
+        final DataBaseHandler db = Data4AllApplication.getDataBaseHandler(this);
+        Data4AllApplication.executeDataBaseWrite(this, new Runnable() {
+            @Override
+            public void run() {
+                if (dataElement.getOsmId() == -1) {
+                    db.createDataElement(dataElement);
+                } else {
+                    // if the Element allready exists
+                    db.updateDataElement(dataElement);
+                }
+            }
+        });
     }
 
     /*
@@ -654,7 +658,6 @@ public class ResultViewActivity extends AbstractActivity implements
             askForGalleryDelete();
             break;
         case R.id.buttonResultToCamera:
-            this.addOsmElementToDB(element);
             final Intent i = new Intent(this, CameraActivity.class);
             i.putExtra(CameraActivity.FINISH_TO_CAMERA, true);
             addOsmElementToDB(element);
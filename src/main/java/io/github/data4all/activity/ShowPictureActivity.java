@@ -26,24 +26,23 @@ import io.github.data4all.model.data.DataElement;
 import io.github.data4all.model.data.TransformationParamBean;
 import io.github.data4all.model.drawing.RedoUndo.UndoRedoListener;
 import io.github.data4all.util.Gallery;
+import io.github.data4all.util.PictureDecoder;
 import io.github.data4all.util.PointToCoordsTransformUtil;
 import io.github.data4all.view.CaptureAssistView;
 import io.github.data4all.view.TouchView;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import android.content.Intent;
-import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.BitmapFactory.Options;
 import android.graphics.Matrix;
 import android.graphics.Point;
-import android.net.Uri;
+import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
@@ -81,6 +80,8 @@ public class ShowPictureActivity extends AbstractActivity {
 
     private TouchView touchView;
     private ImageView imageView;
+    private View progress;
+    private DecodePictureTask decodeTask;
     private Intent intent;
     private static final String TYPE = "TYPE_DEF";
     private static final String LOCATION = "LOCATION";
@@ -128,6 +129,16 @@ public class ShowPictureActivity extends AbstractActivity {
         setContentView(R.layout.activity_picture);
 
         imageView = (ImageView) findViewById(R.id.imageView1);
+        imageView.setScaleType(ImageView.ScaleType.MATRIX);
+        imageView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right,
+                    int bottom, int oldLeft, int oldTop, int oldRight,
+                    int oldBottom) {
+                updateImageMatrix();
+            }
+        });
+        progress = findViewById(R.id.pictureProgress);
         cameraAssistView =
                 (CaptureAssistView) findViewById(R.id.cameraAssistView);
         touchView = (TouchView) findViewById(R.id.touchView1);
@@ -257,6 +268,14 @@ public class ShowPictureActivity extends AbstractActivity {
         listener.disable();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (decodeTask != null) {
+            decodeTask.cancel(false);
+        }
+    }
+
     /**
      * OnClick method to finish the current drawing.
      * 
@@ -378,98 +397,95 @@ public class ShowPictureActivity extends AbstractActivity {
     }
 
     /**
-     * Get the file of an image and set this to local ImageView.
-     *
+     * Get the file of an image and set this to local ImageView. The image is
+     * decoded in the background, meanwhile a progress indicator is shown.
+     * 
      * @param file
      *            The file of the image to display
      */
     private void setBackground(File file) {
-        try {
-            final Uri uri = Uri.fromFile(file);
-            imageView.setImageBitmap(this.loadFromCamera(uri));
-        } catch (IOException e) {
-            Log.e(TAG, "Error while setBackground(File)", e);
-        }
+        imageView.setImageDrawable(null);
+        progress.setVisibility(View.VISIBLE);
+        decodeTask = new DecodePictureTask(this.getViewSize());
+        decodeTask.execute(file);
     }
 
-    private Bitmap loadFromCamera(Uri photoUri) throws IOException {
-        final AssetFileDescriptor fileDescriptor =
-                getContentResolver().openAssetFileDescriptor(photoUri, "r");
-
-        final Options options = new Options();
-        options.inSampleSize = 2;
-
-        final Bitmap photo =
-                BitmapFactory.decodeFileDescriptor(
-                        fileDescriptor.getFileDescriptor(), null, options);
-        if (photo != null) {
-            return this.scaleAndRotate(photo);
-        } else {
-            return null;
+    /**
+     * Reads the size of the view from the intent. Falls back to the display
+     * size if the intent has none.
+     * 
+     * @return The size with the longer side as x
+     */
+    private Point getViewSize() {
+        final Point size = getIntent().getParcelableExtra(SIZE_EXTRA);
+        if (size != null) {
+            return size;
         }
+        final DisplayMetrics metrics = getResources().getDisplayMetrics();
+        return new Point(Math.max(metrics.widthPixels, metrics.heightPixels),
+                Math.min(metrics.widthPixels, metrics.heightPixels));
     }
 
-    private Bitmap scaleAndRotate(Bitmap bitmap) {
+    /**
+     * Fits the image into the ImageView. A landscape image is rotated by the
+     * matrix of the view instead of copying its pixels.
+     */
+    private void updateImageMatrix() {
+        final Drawable drawable = imageView.getDrawable();
+        final int viewWidth = imageView.getWidth();
+        final int viewHeight = imageView.getHeight();
+        if (drawable == null || viewWidth == 0 || viewHeight == 0) {
+            return;
+        }
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
         final Matrix matrix = new Matrix();
-        final double scrAR = this.getScreenRation();
-
-        // Setup the default 'createBitmap' parameters
-        int height = bitmap.getHeight();
-        int width = bitmap.getWidth();
-        int x = 0;
-        int y = 0;
-
-        Log.v("INIT_PARAMETER", "x: " + x + " y: " + y + " h: " + height
-                + " w: " + width);
-
         if (height < width) {
             matrix.postRotate(90);
-            final double picAR = width / height;
-
-            if (scrAR - picAR > 0.1) {
-                // Reduce the height of the image
-                final int newHeight = (int) (width / scrAR);
-                y = (height - newHeight) / 2;
-                height = newHeight;
-            } else if (picAR - scrAR > 0.1) {
-                // Reduce the width of the image
-                final int newWidth = (int) (height / scrAR);
-                x = (width - newWidth) / 2;
-                width = newWidth;
-            }
-        } else {
-            final double picAR = height / width;
-
-            if (scrAR - picAR > 0.1) {
-                // Reduce the width of the image
-                final int newWidth = (int) (height / scrAR);
-                x = (width - newWidth) / 2;
-                width = newWidth;
-            } else if (picAR - scrAR > 0.1) {
-                // Reduce the height of the image
-                final int newHeight = (int) (width / scrAR);
-                y = (height - newHeight) / 2;
-                height = newHeight;
-            }
+            matrix.postTranslate(height, 0);
+            final int rotatedWidth = height;
+            height = width;
+            width = rotatedWidth;
         }
+        final float scale =
+                Math.min((float) viewWidth / width, (float) viewHeight
+                        / height);
+        matrix.postScale(scale, scale);
+        matrix.postTranslate((viewWidth - width * scale) / 2,
+                (viewHeight - height * scale) / 2);
+        imageView.setImageMatrix(matrix);
+    }
 
-        Log.v("NEW_PARAMETER", "x: " + x + " y: " + y + " h: " + height
-                + " w: " + width);
-
-        if (x < 0) {
-            x = 0;
-        }
-        if (y < 0) {
-            y = 0;
+    /**
+     * Decodes the picture for the size of the view in the background and
+     * shows it afterwards.
+     */
+    private class DecodePictureTask extends AsyncTask<File, Void, Bitmap> {
+        private final Point viewSize;
+
+        /**
+         * @param viewSize
+         *            The size of the view to decode the picture for
+         */
+        public DecodePictureTask(Point viewSize) {
+            this.viewSize = viewSize;
         }
 
-        return Bitmap.createBitmap(bitmap, x, y, width, height, matrix, true);
-    }
+        @Override
+        protected Bitmap doInBackground(File... files) {
+            return PictureDecoder.decode(files[0].getPath(), viewSize);
+        }
 
-    private double getScreenRation() {
-        final Point size = getIntent().getParcelableExtra(SIZE_EXTRA);
-        Log.v("SCREEN_DIMENSION", "h:" + size.x + " w: " + size.y);
-        return (1.0 * size.x) / size.y;
+        @Override
+        protected void onPostExecute(Bitmap picture) {
+            progress.setVisibility(View.GONE);
+            if (picture == null) {
+                Log.e(TAG, "Error while decoding the picture");
+            } else {
+                imageView.setImageBitmap(picture);
+                updateImageMatrix();
+            }
+        }
     }
 
     public static final void startActivity(AbstractActivity context,
@@ -15,6 +15,7 @@
  */
 package io.github.data4all.activity;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.logger.Log;
@@ -117,10 +118,9 @@ public class UploadActivity extends AbstractActivity {
      * Reads the number of Objects to Upload.
      */
     private void readObjectCount() {
-        final DataBaseHandler db = new DataBaseHandler(this);
+        final DataBaseHandler db = Data4AllApplication.getDataBaseHandler(this);
         final int countDataElements = db.getDataElementCount();
         final int countGPSTracks = db.getGPSTrackCount();
-        db.close();
 
         countDataElementsText.setText(Integer.toString(countDataElements));
         countGPSTracksText.setText(Integer.toString(countGPSTracks));
@@ -246,18 +246,27 @@ public class UploadActivity extends AbstractActivity {
      * Deletes all DataElements.
      */
     private void deleteAllElements() {
-        final DataBaseHandler db = new DataBaseHandler(this);
-        db.deleteAllDataElements();
-        db.deleteAllGPSTracks();
-        db.close();
-        this.readObjectCount();
+        final DataBaseHandler db = Data4AllApplication.getDataBaseHandler(this);
+        Data4AllApplication.executeDataBaseWrite(this, new Runnable() {
+            @Override
+            public void run() {
+                db.deleteAllDataElements();
+                db.deleteAllGPSTracks();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        UploadActivity.this.readObjectCount();
+                    }
+                });
+            }
+        });
     }
 
     /**
      * Shows all DataElements on the Map.
      */
     private void showAllElementsOnMap() {
-        final DataBaseHandler db = new DataBaseHandler(this);
+        final DataBaseHandler db = Data4AllApplication.getDataBaseHandler(this);
         final List<DataElement> list = db.getAllDataElements();
 
         if (list != null && !list.isEmpty()) {
@@ -22,13 +22,13 @@ import io.github.data4all.activity.ShowPictureActivity;
 import io.github.data4all.logger.Log;
 import io.github.data4all.model.DeviceOrientation;
 import io.github.data4all.model.data.TransformationParamBean;
+import io.github.data4all.util.FileUtil;
 import io.github.data4all.util.Gallery;
 import io.github.data4all.util.Optimizer;
 import io.github.data4all.util.upload.Callback;
 import io.github.data4all.view.CameraPreview;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
 import android.content.SharedPreferences;
@@ -36,9 +36,9 @@ import android.content.res.Resources;
 import android.graphics.Point;
 import android.hardware.Camera;
 import android.hardware.Camera.PictureCallback;
+import android.hardware.Camera.ShutterCallback;
 import android.hardware.Camera.Size;
 import android.location.Location;
-import android.os.AsyncTask;
 import android.os.Environment;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
@@ -70,12 +70,12 @@ public class CapturePictureHandler implements PictureCallback {
     private static final String TAG = CapturePictureHandler.class
             .getSimpleName();
 
+    // The pipeline persisting the pictures, shared by all handlers
+    private static final CapturePipeline PIPELINE = new CapturePipeline();
+
     // Actual Activity for the context
     private final AbstractActivity context;
 
-    // The file into which the picture is saved
-    private File photoFile;
-
     // The directory where the pictures are saved into
     private static final String DIRECTORY = "Data4all";
 
@@ -84,8 +84,6 @@ public class CapturePictureHandler implements PictureCallback {
 
     public static final String CURRENT_ORIENTATION = "current_orientation";
 
-    private TransformationParamBean transformBean;
-
     private CameraPreview preview;
 
     private boolean gallery;
@@ -94,6 +92,14 @@ public class CapturePictureHandler implements PictureCallback {
 
     private Callback<Exception> mGalleryCallback;
 
+    private Runnable mReadyListener;
+
+    // Whether a picture is taken but not delivered yet
+    private boolean capturing;
+
+    // The time when the shutter closed or 0 if it was not reported
+    private long shutterTime;
+
     /**
      * Default constructor.
      * 
@@ -108,6 +114,38 @@ public class CapturePictureHandler implements PictureCallback {
         mGallery = new Gallery(context);
     }
 
+    /**
+     * Takes a picture with the given camera. The orientation and the location
+     * of the picture are interpolated to the time when the shutter closes.
+     * 
+     * @param camera
+     *            The camera to take the picture with
+     * @param shutter
+     *            The callback for the shutter or {@code null}
+     */
+    public void takePicture(Camera camera, final ShutterCallback shutter) {
+        capturing = true;
+        camera.takePicture(new ShutterCallback() {
+            @Override
+            public void onShutter() {
+                shutterTime = System.currentTimeMillis();
+                if (shutter != null) {
+                    shutter.onShutter();
+                }
+            }
+        }, null, this);
+    }
+
+    /**
+     * A new picture can be taken if no picture is currently taken and the
+     * pipeline which persists the former pictures is not full.
+     * 
+     * @return whether a new picture can be taken
+     */
+    public boolean canCapture() {
+        return !capturing && !PIPELINE.isFull();
+    }
+
     /**
      * 
      * (non-Javadoc).
@@ -118,6 +156,7 @@ public class CapturePictureHandler implements PictureCallback {
     @Override
     public void onPictureTaken(final byte[] raw, Camera camera) {
         Log.d(TAG, "onPictureTaken is called");
+        capturing = false;
 
         final Camera.Parameters params = camera.getParameters();
 
@@ -126,30 +165,69 @@ public class CapturePictureHandler implements PictureCallback {
         final double verticalViewAngle =
                 Math.toRadians(params.getVerticalViewAngle());
         final Size pictureSize = params.getPictureSize();
-        final Location currentLocation = Optimizer.currentBestLoc();
-        transformBean =
+
+        // The picture shows the scene at the shutter, this callback comes
+        // later. Without a reported shutter the current values are used
+        final DeviceOrientation orientation;
+        final Location location;
+        if (shutterTime > 0) {
+            orientation = Optimizer.deviceOrientationAt(shutterTime);
+            location = Optimizer.bestLocAt(shutterTime);
+        } else {
+            orientation = Optimizer.currentDeviceOrientation();
+            location = Optimizer.currentBestLoc();
+        }
+        shutterTime = 0;
+
+        final TransformationParamBean transformBean =
                 new TransformationParamBean(this.getDeviceHeight(),
                         verticalViewAngle, horizontalViewAngle,
-                        pictureSize.width, pictureSize.height, currentLocation);
+                        pictureSize.width, pictureSize.height, location);
 
-        // Start a thread to save the Raw Image in JPEG into SDCard
+        // Persist the picture on the I/O thread of the pipeline
         if (gallery) {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        mGallery.addImage(raw, transformBean,
-                                Optimizer.currentDeviceOrientation(),
-                                preview.getViewSize());
-                    } catch (IOException e) {
-                        mGalleryCallback.callback(e);
-                    }
-                    mGalleryCallback.callback(null);
-                }
-            }).start();
-        } else {
-            new SavePhotoTask(Optimizer.currentDeviceOrientation(),
-                    preview.getViewSize()).execute(raw);
+            final boolean queued =
+                    PIPELINE.submit(new SaveGalleryTask(raw, transformBean,
+                            orientation, preview.getViewSize()));
+            if (!queued && mGalleryCallback != null) {
+                mGalleryCallback.callback(new IOException(
+                        "Too many pictures pending, the picture was dropped"));
+            }
+            // The preview stops with every picture, the next one can be taken
+            // while this one is persisted
+            camera.startPreview();
+            this.notifyReady();
+        } else if (!PIPELINE.submit(new SavePhotoTask(camera, raw,
+                transformBean, orientation, preview.getViewSize()))) {
+            this.onPhotoFailed(camera);
+        }
+    }
+
+    /**
+     * Reports that the picture could not be saved and restarts the preview,
+     * so that the next picture can be taken.
+     * 
+     * @param camera
+     *            The camera which took the picture
+     */
+    private void onPhotoFailed(Camera camera) {
+        Toast.makeText(context, "Failed on taking picture", Toast.LENGTH_SHORT)
+                .show();
+        try {
+            camera.startPreview();
+        } catch (RuntimeException e) {
+            // The camera was released while the picture was saved
+            Log.w(TAG, "Cannot restart the preview", e);
+        }
+        this.notifyReady();
+    }
+
+    /**
+     * Notifies the ready listener if a new picture can be taken.
+     */
+    private void notifyReady() {
+        if (mReadyListener != null && this.canCapture()) {
+            mReadyListener.run();
         }
     }
 
@@ -203,62 +281,120 @@ public class CapturePictureHandler implements PictureCallback {
     }
 
     /**
-     * An inner Class for saving a picture in storage in a thread.
+     * A task for saving a picture in storage and showing it afterwards.
      */
-    private class SavePhotoTask extends AsyncTask<byte[], String, String> {
+    private class SavePhotoTask implements CapturePipeline.Task {
 
-        private DeviceOrientation deviceOrientation;
-        private Point viewSize;
+        private final Camera camera;
+        private final byte[] raw;
+        private final TransformationParamBean transformBean;
+        private final DeviceOrientation deviceOrientation;
+        private final Point viewSize;
+        private File photoFile;
 
         /**
          * Default Constructor for saving photo task.
          * 
+         * @param camera
+         *            The camera which took the picture
+         * @param raw
+         *            The JPEG data of the picture
+         * @param transformBean
+         *            The parameters of the picture
          * @param deviceOrientation
-         *            the curretn device orientation
+         *            the device orientation when the picture was taken
          * @param viewSize
          *            The current preview size
          */
-        public SavePhotoTask(DeviceOrientation deviceOrientation, Point viewSize) {
+        public SavePhotoTask(Camera camera, byte[] raw,
+                TransformationParamBean transformBean,
+                DeviceOrientation deviceOrientation, Point viewSize) {
+            this.camera = camera;
+            this.raw = raw;
+            this.transformBean = transformBean;
             this.deviceOrientation = deviceOrientation;
             this.viewSize = viewSize;
         }
 
         @Override
-        protected String doInBackground(byte[]... photoData) {
-            try {
-                photoFile = CapturePictureHandler.createFile();
-
-                Log.d(TAG, "Picturepath:" + photoFile.getPath());
-
-                final FileOutputStream fos = new FileOutputStream(photoFile);
-                fos.write(photoData[0]);
-                fos.flush();
-                fos.close();
-
-            } catch (IOException ex) {
-                Log.e(TAG, "Fail to save picture", ex);
-            }
-
-            return "successful";
+        public void persist() throws IOException {
+            photoFile = CapturePictureHandler.createFile();
+            Log.d(TAG, "Picturepath:" + photoFile.getPath());
+            FileUtil.writeFile(photoFile, raw);
         }
 
         @Override
-        protected void onPostExecute(String result) {
-            if ("successful".equals(result)) {
+        public void done(IOException error) {
+            if (error == null) {
                 Log.d(TAG, "Picture successfully saved");
 
                 ShowPictureActivity.startActivity(context, photoFile,
                         transformBean, deviceOrientation, viewSize, null);
 
             } else {
-                Toast.makeText(context, "Failed on taking picture",
-                        Toast.LENGTH_SHORT).show();
+                onPhotoFailed(camera);
             }
         }
 
     }
 
+    /**
+     * A task for adding a picture to the gallery.
+     */
+    private class SaveGalleryTask implements CapturePipeline.Task {
+
+        private final byte[] raw;
+        private final TransformationParamBean transformBean;
+        private final DeviceOrientation deviceOrientation;
+        private final Point viewSize;
+
+        /**
+         * Default Constructor for the gallery task.
+         * 
+         * @param raw
+         *            The JPEG data of the picture
+         * @param transformBean
+         *            The parameters of the picture
+         * @param deviceOrientation
+         *            the device orientation when the picture was taken
+         * @param viewSize
+         *            The current preview size
+         */
+        public SaveGalleryTask(byte[] raw,
+                TransformationParamBean transformBean,
+                DeviceOrientation deviceOrientation, Point viewSize) {
+            this.raw = raw;
+            this.transformBean = transformBean;
+            this.deviceOrientation = deviceOrientation;
+            this.viewSize = viewSize;
+        }
+
+        @Override
+        public void persist() throws IOException {
+            mGallery.addImage(raw, transformBean, deviceOrientation, viewSize);
+        }
+
+        @Override
+        public void done(IOException error) {
+            if (mGalleryCallback != null) {
+                mGalleryCallback.callback(error);
+            }
+            notifyReady();
+        }
+    }
+
     public void setGalleryCallback(Callback<Exception> callback) {
         this.mGalleryCallback = callback;
     }
+
+    /**
+     * Sets the listener which is called on the main thread whenever a new
+     * picture can be taken, see {@link #canCapture()}.
+     * 
+     * @param listener
+     *            The listener or {@code null}
+     */
+    public void setReadyListener(Runnable listener) {
+        this.mReadyListener = listener;
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.handler;
+
+import io.github.data4all.logger.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * Persists the taken pictures on a single I/O thread, so the camera can take
+ * the next picture while the former ones are still written.
+ * 
+ * At most {@link #CAPACITY} pictures are pending at once. If the storage is
+ * slower than the camera the pipeline is full and no further picture should be
+ * taken until a pending one is persisted, see {@link #isFull()}. The pipeline
+ * is only used from the main thread.
+ */
+public class CapturePipeline {
+    private static final String TAG = CapturePipeline.class.getSimpleName();
+
+    /**
+     * The maximum number of pending pictures.
+     */
+    public static final int CAPACITY = 3;
+
+    /**
+     * The time in seconds after which the idle I/O thread is stopped.
+     */
+    private static final long KEEP_ALIVE = 30;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor worker;
+
+    // the number of submitted tasks which are not done yet
+    private int pending;
+
+    /**
+     * A task to persist a picture.
+     */
+    public interface Task {
+        /**
+         * Persists the picture, called on the I/O thread.
+         * 
+         * @throws IOException
+         *             if the picture cannot be persisted
+         */
+        void persist() throws IOException;
+
+        /**
+         * Called on the main thread after the picture is persisted.
+         * 
+         * @param error
+         *            The error of {@link #persist()} or {@code null} if the
+         *            picture was persisted
+         */
+        void done(IOException error);
+    }
+
+    /**
+     * Constructs an empty pipeline.
+     */
+    public CapturePipeline() {
+        worker =
+                new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>(CAPACITY));
+        worker.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return whether the maximum number of pictures is pending
+     */
+    public boolean isFull() {
+        return pending >= CAPACITY;
+    }
+
+    /**
+     * @return whether no picture is pending
+     */
+    public boolean isEmpty() {
+        return pending == 0;
+    }
+
+    /**
+     * Queues the given task for the I/O thread.
+     * 
+     * @param task
+     *            The task to persist a picture
+     * @return {@code false} if the pipeline is full and the task was not
+     *         queued
+     */
+    public boolean submit(final Task task) {
+        if (isFull()) {
+            Log.w(TAG, "pipeline is full, dropping picture");
+            return false;
+        }
+        pending++;
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                IOException error = null;
+                try {
+                    task.persist();
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new IOException("Cannot persist picture", e);
+                } finally {
+                    // Always completed, otherwise no picture can be taken
+                    if (error != null) {
+                        Log.e(TAG, "Cannot persist picture", error);
+                    }
+                    final IOException result = error;
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            pending--;
+                            task.done(result);
+                        }
+                    });
+                }
+            }
+        });
+        return true;
+    }
+}
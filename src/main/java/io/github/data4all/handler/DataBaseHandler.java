@@ -16,6 +16,7 @@
 package io.github.data4all.handler;
 
 import io.github.data4all.logger.Log;
+import io.github.data4all.model.DeviceOrientation;
 import io.github.data4all.model.data.DataElement;
 import io.github.data4all.model.data.Node;
 import io.github.data4all.model.data.PolyElement;
@@ -24,18 +25,28 @@ import io.github.data4all.model.data.Tag;
 import io.github.data4all.model.data.Tags;
 import io.github.data4all.model.data.Track;
 import io.github.data4all.model.data.TrackPoint;
+import io.github.data4all.model.data.TransformationParamBean;
 import io.github.data4all.model.data.User;
+import io.github.data4all.util.Gallery.Informations;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.graphics.Point;
+import android.location.Location;
 
 /**
  * This class handles all database requests for the OSM objects that have to be
@@ -85,13 +96,46 @@ public class DataBaseHandler extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * A Migration upgrades the schema of the database by exactly one version
+     * while keeping the stored data.
+     */
+    private abstract static class Migration {
+        private final int version;
+
+        /**
+         * Constructs a Migration which results in the given version.
+         * 
+         * @param version
+         *            The version of the schema after this migration
+         */
+        protected Migration(int version) {
+            this.version = version;
+        }
+
+        /**
+         * Upgrades the schema from {@code version - 1} to {@code version}.
+         * 
+         * @param db
+         *            The database to migrate
+         */
+        protected abstract void migrate(SQLiteDatabase db);
+    }
+
     private static final String WHERE = " WHERE ";
     private static final String FROM = " FROM ";
     private static final String SELECT = "SELECT ";
     private static final String SELECT_ALL = "SELECT * FROM ";
+    private static final String ORDER_BY = " ORDER BY ";
 
     private static final String TAG = "DataBaseHandler";
-    private static final int DATABASE_VERSION = 6;
+    private static final int DATABASE_VERSION = 11;
+
+    /**
+     * The oldest schema version which can be migrated, older databases are
+     * dropped and recreated.
+     */
+    private static final int BASE_VERSION = 6;
     private static final String DATABASE_NAME = "Data4AllDB";
 
     // Table Names
@@ -103,6 +147,8 @@ public class DataBaseHandler extends SQLiteOpenHelper {
     private static final String TABLE_LASTCHOICE = "lastChoice";
     private static final String TABLE_GPSTRACK = "gpstracks";
     private static final String TABLE_TRACKPOINT = "trackpoints";
+    private static final String TABLE_UPLOAD = "uploadcheckpoint";
+    private static final String TABLE_GALLERY = "gallery";
 
     // User Column Names
     private static final String KEY_USERNAME = "username";
@@ -132,6 +178,137 @@ public class DataBaseHandler extends SQLiteOpenHelper {
     private static final String KEY_ALT = "altitude";
     private static final String KEY_TIME = "timestamp";
 
+    // Upload Checkpoint Column Names
+    private static final String KEY_CHANGESET = "changeset";
+    private static final String KEY_OSMID = "osmid";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_STATE = "state";
+
+    // Upload Checkpoint States, whether the element changed after its upload
+    private static final int UPLOAD_DONE = 0;
+    private static final int UPLOAD_MODIFIED = 1;
+    private static final int UPLOAD_DELETED = 2;
+
+    // Gallery Column Names
+    private static final String KEY_HEIGHT = "height";
+    private static final String KEY_VERTICAL_ANGLE = "verticalangle";
+    private static final String KEY_HORIZONTAL_ANGLE = "horizontalangle";
+    private static final String KEY_PHOTO_WIDTH = "photowidth";
+    private static final String KEY_PHOTO_HEIGHT = "photoheight";
+    private static final String KEY_PROVIDER = "provider";
+    private static final String KEY_AZIMUTH = "azimuth";
+    private static final String KEY_PITCH = "pitch";
+    private static final String KEY_ROLL = "roll";
+    private static final String KEY_SCREEN_WIDTH = "screenwidth";
+    private static final String KEY_SCREEN_HEIGHT = "screenheight";
+
+    /**
+     * The columns of the gallery table in the order they are read by
+     * {@link #getGalleryImage(long)}.
+     */
+    private static final String GALLERY_COLUMNS = KEY_HEIGHT + ","
+            + KEY_VERTICAL_ANGLE + "," + KEY_HORIZONTAL_ANGLE + ","
+            + KEY_PHOTO_WIDTH + "," + KEY_PHOTO_HEIGHT + "," + KEY_PROVIDER
+            + "," + KEY_LAT + "," + KEY_LON + "," + KEY_AZIMUTH + ","
+            + KEY_PITCH + "," + KEY_ROLL + "," + KEY_TIME + ","
+            + KEY_SCREEN_WIDTH + "," + KEY_SCREEN_HEIGHT;
+
+    /**
+     * All migrations ordered by their version, the first one upgrades the
+     * schema from {@link #BASE_VERSION}.
+     */
+    private static final Migration[] MIGRATIONS = { new Migration(7) {
+        @Override
+        protected void migrate(SQLiteDatabase db) {
+            addForeignKeysAndIndexes(db);
+        }
+    }, new Migration(8) {
+        @Override
+        protected void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_UPLOAD + " (" + KEY_ID
+                    + " INTEGER PRIMARY KEY," + KEY_CHANGESET + " INTEGER,"
+                    + KEY_OSMID + " INTEGER)");
+        }
+    }, new Migration(9) {
+        @Override
+        protected void migrate(SQLiteDatabase db) {
+            // The id is the timestamp of the image
+            db.execSQL("CREATE TABLE " + TABLE_GALLERY + " (" + KEY_ID
+                    + " INTEGER PRIMARY KEY," + KEY_HEIGHT + " REAL,"
+                    + KEY_VERTICAL_ANGLE + " REAL," + KEY_HORIZONTAL_ANGLE
+                    + " REAL," + KEY_PHOTO_WIDTH + " INTEGER,"
+                    + KEY_PHOTO_HEIGHT + " INTEGER," + KEY_PROVIDER + " TEXT,"
+                    + KEY_LAT + " REAL," + KEY_LON + " REAL," + KEY_AZIMUTH
+                    + " REAL," + KEY_PITCH + " REAL," + KEY_ROLL + " REAL,"
+                    + KEY_TIME + " INTEGER," + KEY_SCREEN_WIDTH + " INTEGER,"
+                    + KEY_SCREEN_HEIGHT + " INTEGER)");
+            db.execSQL("CREATE INDEX idx_" + TABLE_GALLERY + "_" + KEY_LAT
+                    + " ON " + TABLE_GALLERY + "(" + KEY_LAT + "," + KEY_LON
+                    + ")");
+        }
+    }, new Migration(10) {
+        @Override
+        protected void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + IdAllocator.TABLE_SEQUENCE + " ("
+                    + IdAllocator.KEY_NAME + " TEXT PRIMARY KEY,"
+                    + IdAllocator.KEY_NEXT + " INTEGER)");
+            // Continue after all used ids, the checkpoints included
+            seedSequence(db, TABLE_DATAELEMENT, "SELECT MAX(" + KEY_ID
+                    + ") FROM (SELECT " + KEY_ID + FROM + TABLE_DATAELEMENT
+                    + " UNION ALL SELECT " + KEY_ID + FROM + TABLE_UPLOAD
+                    + ")");
+            seedSequence(db, TABLE_GPSTRACK, "SELECT MAX(" + KEY_ID + ")"
+                    + FROM + TABLE_GPSTRACK);
+            seedSequence(db, TABLE_TRACKPOINT, "SELECT MAX(" + KEY_ID + ")"
+                    + FROM + TABLE_TRACKPOINT);
+        }
+    }, new Migration(11) {
+        @Override
+        protected void migrate(SQLiteDatabase db) {
+            // The version on the OSM API and the changes after the upload
+            final String alter = "ALTER TABLE " + TABLE_UPLOAD + " ADD COLUMN ";
+            db.execSQL(alter + KEY_VERSION + " INTEGER DEFAULT 1");
+            db.execSQL(alter + KEY_STATE + " INTEGER DEFAULT " + UPLOAD_DONE);
+            db.execSQL(alter + KEY_LAT + " REAL");
+            db.execSQL(alter + KEY_LON + " REAL");
+        }
+    }, };
+
+    /**
+     * The id allocators, they keep no state so they can be shared by all
+     * instances.
+     */
+    private static final IdAllocator DATAELEMENT_IDS = new IdAllocator(
+            TABLE_DATAELEMENT, KEY_ID);
+    private static final IdAllocator GPSTRACK_IDS = new IdAllocator(
+            TABLE_GPSTRACK, KEY_ID);
+    private static final IdAllocator TRACKPOINT_IDS = new IdAllocator(
+            TABLE_TRACKPOINT, KEY_ID);
+
+    /**
+     * The value returned by {@link #getActiveGPSTrackId()} if there is no
+     * unfinished track.
+     */
+    public static final long NO_ACTIVE_TRACK = -1;
+
+    /**
+     * The value returned by {@link #getUploadChangesetId()} if there is no
+     * interrupted upload.
+     */
+    public static final long NO_UPLOAD = -1;
+
+    /**
+     * Compiled insert statement for appending a single TrackPoint, lazily
+     * created by {@link #appendTrackPoint(long, TrackPoint)}.
+     */
+    private SQLiteStatement appendPointStatement;
+
+    /**
+     * Compiled update statement for replacing a single TrackPoint, lazily
+     * created by {@link #replaceTrackPoint(long, TrackPoint)}.
+     */
+    private SQLiteStatement replacePointStatement;
+
     /**
      * Default constructor for the database handler.
      * 
@@ -142,6 +319,22 @@ public class DataBaseHandler extends SQLiteOpenHelper {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * android.database.sqlite.SQLiteOpenHelper#onConfigure(android.database
+     * .sqlite.SQLiteDatabase)
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Needed for the cascading deletes
+        db.setForeignKeyConstraintsEnabled(true);
+        // The GPSservice writes while the UI reads
+        db.enableWriteAheadLogging();
+    }
+
     // Table creation
     @Override
     public void onCreate(SQLiteDatabase db) {
@@ -171,11 +364,18 @@ public class DataBaseHandler extends SQLiteOpenHelper {
                 + " REAL" + ")");
 
         Log.i(TAG, "Tables have been created.");
+
+        // Bring the base schema up to date
+        migrate(db, BASE_VERSION, DATABASE_VERSION);
     }
 
     // Database handling on upgrade
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion >= BASE_VERSION) {
+            migrate(db, oldVersion, newVersion);
+            return;
+        }
         final String drop = "DROP TABLE IF EXISTS ";
 
         // Drop tables that already exist
@@ -189,6 +389,9 @@ public class DataBaseHandler extends SQLiteOpenHelper {
 
         db.execSQL(drop + TABLE_GPSTRACK);
         db.execSQL(drop + TABLE_TRACKPOINT);
+        db.execSQL(drop + TABLE_UPLOAD);
+        db.execSQL(drop + TABLE_GALLERY);
+        db.execSQL(drop + IdAllocator.TABLE_SEQUENCE);
 
         Log.i(TAG, "Tables have been dropped and will be recreated.");
 
@@ -196,6 +399,123 @@ public class DataBaseHandler extends SQLiteOpenHelper {
         this.onCreate(db);
     }
 
+    /**
+     * Runs all migrations which are needed to upgrade the schema from
+     * {@code oldVersion} to {@code newVersion}.
+     * 
+     * @param db
+     *            The database to migrate
+     * @param oldVersion
+     *            The current version of the schema
+     * @param newVersion
+     *            The desired version of the schema
+     */
+    private static void migrate(SQLiteDatabase db, int oldVersion,
+            int newVersion) {
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version > oldVersion
+                    && migration.version <= newVersion) {
+                migration.migrate(db);
+                Log.i(TAG, "Schema has been migrated to version "
+                        + migration.version);
+            }
+        }
+    }
+
+    /**
+     * Migration to version 7: Recreates the referencing tables with foreign
+     * keys and cascading deletes and adds indexes for the lookups by element.
+     * 
+     * @param db
+     *            The database to migrate
+     */
+    private static void addForeignKeysAndIndexes(SQLiteDatabase db) {
+        final String cascade = " ON DELETE CASCADE";
+        final String refElement =
+                " REFERENCES " + TABLE_DATAELEMENT + "(" + KEY_ID + ")"
+                        + cascade;
+        final String ofElement =
+                KEY_ELEMENT + " IN (SELECT " + KEY_ID + FROM
+                        + TABLE_DATAELEMENT + ")";
+
+        recreateTable(db, TABLE_POLYELEMENT, KEY_ID
+                + " INTEGER PRIMARY KEY" + refElement + "," + KEY_TYPE
+                + " INTEGER", KEY_ID + "," + KEY_TYPE,
+                ofElement.replaceFirst(KEY_ELEMENT, KEY_ID));
+        recreateTable(db, TABLE_NODE, KEY_ID + " INTEGER PRIMARY KEY,"
+                + KEY_ELEMENT + " INTEGER" + refElement + "," + KEY_LAT
+                + " REAL," + KEY_LON + " REAL", KEY_ID + "," + KEY_ELEMENT
+                + "," + KEY_LAT + "," + KEY_LON, ofElement);
+        recreateTable(db, TABLE_TAGMAP, KEY_ELEMENT + " INTEGER"
+                + refElement + "," + KEY_TAGID + " INTEGER," + KEY_VALUE
+                + " TEXT", KEY_ELEMENT + "," + KEY_TAGID + "," + KEY_VALUE,
+                ofElement);
+        recreateTable(db, TABLE_TRACKPOINT, KEY_ID
+                + " INTEGER PRIMARY KEY," + KEY_ELEMENT
+                + " INTEGER REFERENCES " + TABLE_GPSTRACK + "(" + KEY_ID
+                + ")" + cascade + "," + KEY_LAT + " REAL," + KEY_LON
+                + " REAL," + KEY_ALT + " REAL," + KEY_TIME + " REAL",
+                KEY_ID + "," + KEY_ELEMENT + "," + KEY_LAT + "," + KEY_LON
+                        + "," + KEY_ALT + "," + KEY_TIME, KEY_ELEMENT
+                        + " IN (SELECT " + KEY_ID + FROM + TABLE_GPSTRACK
+                        + ")");
+
+        db.execSQL("CREATE INDEX idx_" + TABLE_NODE + "_" + KEY_ELEMENT
+                + " ON " + TABLE_NODE + "(" + KEY_ELEMENT + ")");
+        db.execSQL("CREATE INDEX idx_" + TABLE_TAGMAP + "_" + KEY_ELEMENT
+                + " ON " + TABLE_TAGMAP + "(" + KEY_ELEMENT + ")");
+        db.execSQL("CREATE INDEX idx_" + TABLE_TRACKPOINT + "_"
+                + KEY_ELEMENT + " ON " + TABLE_TRACKPOINT + "("
+                + KEY_ELEMENT + "," + KEY_TIME + ")");
+        db.execSQL("CREATE INDEX idx_" + TABLE_LASTCHOICE + "_" + KEY_TYPE
+                + " ON " + TABLE_LASTCHOICE + "(" + KEY_TYPE + ")");
+    }
+
+    /**
+     * Recreates the given table with a new definition and copies the rows
+     * matching the condition into the new table. This is needed since SQLite
+     * cannot add constraints to an existing table.
+     * 
+     * @param db
+     *            The database to work on
+     * @param table
+     *            The name of the table
+     * @param definition
+     *            The column definitions of the new table
+     * @param columns
+     *            The comma separated columns to copy
+     * @param condition
+     *            The condition for the rows to copy
+     */
+    private static void recreateTable(SQLiteDatabase db, String table,
+            String definition, String columns, String condition) {
+        final String oldTable = table + "_old";
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + oldTable);
+        db.execSQL("CREATE TABLE " + table + " (" + definition + ")");
+        db.execSQL("INSERT INTO " + table + " (" + columns + ") " + SELECT
+                + columns + FROM + oldTable + WHERE + condition);
+        db.execSQL("DROP TABLE " + oldTable);
+    }
+
+    /**
+     * Starts the persisted id sequence of the given table after the largest
+     * used id.
+     * 
+     * @param db
+     *            The database to work on
+     * @param table
+     *            The name of the table the sequence belongs to
+     * @param maxQuery
+     *            The query selecting the largest used id
+     */
+    private static void seedSequence(SQLiteDatabase db, String table,
+            String maxQuery) {
+        db.execSQL("INSERT INTO " + IdAllocator.TABLE_SEQUENCE + " ("
+                + IdAllocator.KEY_NAME + "," + IdAllocator.KEY_NEXT + ") "
+                + SELECT + "?,IFNULL((" + maxQuery + "),0)+1",
+                new Object[] { table });
+    }
+
     // USER CRUD
 
     /**
@@ -269,87 +589,153 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      *            will be taken.
      */
     public void createDataElement(DataElement dataElement) {
-        final SQLiteDatabase db = getWritableDatabase();
-        long nextId = this.getNextId(TABLE_DATAELEMENT, KEY_ID);
-
-        if (dataElement instanceof Node) {
-            final Node node = (Node) dataElement;
+        this.createDataElements(Collections.singletonList(dataElement));
+    }
 
-            // Add the Node
-            final ContentValues nodeValues = new ContentValues();
-            nodeValues.put(KEY_ID, nextId);
-            nodeValues.put(KEY_ELEMENT, nextId);
-            nodeValues.put(KEY_LAT, node.getLat());
-            nodeValues.put(KEY_LON, node.getLon());
-
-            db.insert(TABLE_NODE, null, nodeValues);
-        } else if (dataElement instanceof PolyElement) {
-            final PolyElement poly = (PolyElement) dataElement;
+    /**
+     * This method creates and stores all given data elements in the database
+     * within a single transaction. The rows are inserted with compiled
+     * statements which are reused for every row.
+     * 
+     * @param dataElements
+     *            the {@link DataElement} objects from which the data will be
+     *            taken.
+     */
+    public void createDataElements(
+            Collection<? extends DataElement> dataElements) {
+        final SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int idCount = 0;
+            for (DataElement dataElement : dataElements) {
+                idCount++;
+                if (dataElement instanceof PolyElement) {
+                    idCount += ((PolyElement) dataElement).getNodes().size();
+                }
+            }
+            long nextId = DATAELEMENT_IDS.allocate(db, idCount);
+            for (DataElement dataElement : dataElements) {
+                if (dataElement instanceof PolyElement) {
+                    // The nodes of the PolyElement get the ids before
+                    for (Node node : ((PolyElement) dataElement).getNodes()) {
+                        node.setOsmId(nextId++);
+                    }
+                }
+                dataElement.setOsmId(nextId++);
+            }
+            insertDataElements(db, dataElements);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.i(TAG, dataElements.size() + " data elements have been added.");
+    }
 
-            // Add the Nodes of the PolyElement
-            final List<Node> polyNodes = poly.getNodes();
-            final long finalId = nextId + polyNodes.size();
-            insertPolyNodes(db, polyNodes, nextId, finalId);
-            nextId = finalId;
-            // Add the PolyElement
-            final ContentValues polyValues = new ContentValues();
-            polyValues.put(KEY_ID, nextId);
-            polyValues.put(KEY_TYPE, poly.getType().getId());
+    /**
+     * Inserts the given DataElements with their tags using the ids they
+     * already have. The Nodes of a PolyElement are inserted with their own
+     * ids.
+     * 
+     * @param db
+     *            The database to insert into
+     * @param dataElements
+     *            The DataElements to insert
+     */
+    private static void insertDataElements(SQLiteDatabase db,
+            Collection<? extends DataElement> dataElements) {
+        final SQLiteStatement elementInsert =
+                db.compileStatement(insertInto(TABLE_DATAELEMENT, KEY_ID,
+                        KEY_TYPE));
+        final SQLiteStatement nodeInsert =
+                db.compileStatement(insertInto(TABLE_NODE, KEY_ID,
+                        KEY_ELEMENT, KEY_LAT, KEY_LON));
+        final SQLiteStatement polyInsert =
+                db.compileStatement(insertInto(TABLE_POLYELEMENT, KEY_ID,
+                        KEY_TYPE));
+        final SQLiteStatement tagInsert =
+                db.compileStatement(insertInto(TABLE_TAGMAP, KEY_ELEMENT,
+                        KEY_TAGID, KEY_VALUE));
+        try {
+            for (DataElement dataElement : dataElements) {
+                insertDataElement(dataElement, elementInsert, nodeInsert,
+                        polyInsert);
+                putTags(tagInsert, dataElement.getOsmId(),
+                        dataElement.getTags());
+            }
+        } finally {
+            elementInsert.close();
+            nodeInsert.close();
+            polyInsert.close();
+            tagInsert.close();
+        }
+    }
 
-            db.insert(TABLE_POLYELEMENT, null, polyValues);
-        } else {
+    /**
+     * Inserts the given DataElement without its tags.
+     * 
+     * @param dataElement
+     *            The DataElement to insert
+     * @param elementInsert
+     *            The compiled insert statement for the DataElement table
+     * @param nodeInsert
+     *            The compiled insert statement for the Node table
+     * @param polyInsert
+     *            The compiled insert statement for the PolyElement table
+     */
+    private static void insertDataElement(DataElement dataElement,
+            SQLiteStatement elementInsert, SQLiteStatement nodeInsert,
+            SQLiteStatement polyInsert) {
+        final DataElementType elementType =
+                DataElementType.fromElement(dataElement);
+        if (elementType == null) {
             throw new IllegalArgumentException("Unknown subtype of "
                     + DataElement.class.getSimpleName() + ": "
                     + dataElement.getClass().getName());
         }
+        final long elementId = dataElement.getOsmId();
 
-        // Add the DataElement
-        dataElement.setOsmId(nextId);
+        // Add the DataElement, it has to exist before the referencing rows
+        elementInsert.bindLong(1, elementId);
+        elementInsert.bindLong(2, elementType.id);
+        elementInsert.executeInsert();
 
-        final ContentValues elementValues = new ContentValues();
-        elementValues.put(KEY_ID, nextId);
-        elementValues
-                .put(KEY_TYPE, DataElementType.fromElement(dataElement).id);
-        db.insert(TABLE_DATAELEMENT, null, elementValues);
+        if (elementType == DataElementType.NODE) {
+            // Add the Node
+            insertNode(nodeInsert, elementId, elementId, (Node) dataElement);
+        } else {
+            final PolyElement poly = (PolyElement) dataElement;
+
+            // Add the Nodes of the PolyElement
+            for (Node node : poly.getNodes()) {
+                insertNode(nodeInsert, node.getOsmId(), elementId, node);
+            }
 
-        // Add the Tags
-        final ContentValues tagInitial = new ContentValues();
-        tagInitial.put(KEY_ELEMENT, nextId);
-        this.putTags(TABLE_TAGMAP, tagInitial, dataElement.getTags());
+            // Add the PolyElement
+            polyInsert.bindLong(1, elementId);
+            polyInsert.bindLong(2, poly.getType().getId());
+            polyInsert.executeInsert();
+        }
     }
 
     /**
-     * Inserts all the given Nodes of the PolyElement with the id
-     * {@code finalId} in the given database. The first Node was inserted with
-     * the id {@code startId} and then the id is incrementing till
-     * {@code finalId - 1}.
+     * Inserts a single row into the Node table.
      * 
-     * @author tbrose
-     * 
-     * @param db
-     *            The database to insert to
-     * @param polyNodes
-     *            A list of all Nodes to insert
-     * @param nextId
-     *            The first id for the nodes
-     * @param finalId
-     *            The id of the PolyElement
+     * @param nodeInsert
+     *            The compiled insert statement for the Node table
+     * @param id
+     *            The id of the row
+     * @param elementId
+     *            The id of the DataElement the Node belongs to
+     * @param node
+     *            The Node to read the coordinates from
      */
-    private static void insertPolyNodes(final SQLiteDatabase db,
-            final List<Node> polyNodes, long startId, final long finalId) {
-        long nextId = startId;
-        for (Node node : polyNodes) {
-            node.setOsmId(nextId);
-
-            final ContentValues nodeValues = new ContentValues();
-            nodeValues.put(KEY_ID, nextId);
-            nodeValues.put(KEY_ELEMENT, finalId);
-            nodeValues.put(KEY_LAT, node.getLat());
-            nodeValues.put(KEY_LON, node.getLon());
-
-            db.insert(TABLE_NODE, null, nodeValues);
-            nextId++;
-        }
+    private static void insertNode(SQLiteStatement nodeInsert, long id,
+            long elementId, Node node) {
+        nodeInsert.bindLong(1, id);
+        nodeInsert.bindLong(2, elementId);
+        nodeInsert.bindDouble(3, node.getLat());
+        nodeInsert.bindDouble(4, node.getLon());
+        nodeInsert.executeInsert();
     }
 
     /**
@@ -364,11 +750,9 @@ public class DataBaseHandler extends SQLiteOpenHelper {
     public void deleteDataElement(DataElement dataElement) {
         final SQLiteDatabase db = getWritableDatabase();
 
-        final String isId = "=" + dataElement.getOsmId();
-        db.delete(TABLE_TAGMAP, KEY_ELEMENT + isId, null);
-        db.delete(TABLE_NODE, KEY_ELEMENT + isId, null);
-        db.delete(TABLE_POLYELEMENT, KEY_ID + isId, null);
-        db.delete(TABLE_DATAELEMENT, KEY_ID + isId, null);
+        // Nodes, tags and the PolyElement are deleted by the foreign keys
+        db.delete(TABLE_DATAELEMENT, KEY_ID + "=" + dataElement.getOsmId(),
+                null);
     }
 
     /**
@@ -393,117 +777,250 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      * This method updates the data for a specific data element stored in the
      * database.
      * 
+     * The element keeps its id and the Nodes of a PolyElement keep theirs, so
+     * the checkpoints of an interrupted upload still refer to them. Only the
+     * Nodes which were added to a PolyElement get new ids. Already uploaded
+     * elements and moved Nodes are marked as modified, already uploaded Nodes
+     * which were removed from a PolyElement are marked as deleted.
+     * 
      * @author tbrose
      * 
      * @param dataElement
      *            the {@link DataElement} object for which the data
      *            should be updated.
-     * @return the number of rows that have been updated.
      */
     public void updateDataElement(DataElement dataElement) {
-        // Maybe there is an intelligent way to do this ...
-        this.deleteDataElement(dataElement);
-        this.createDataElement(dataElement);
+        final SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final long id = dataElement.getOsmId();
+            final Map<Long, Node> oldNodes = new HashMap<Long, Node>();
+            final Cursor cursor =
+                    db.rawQuery(SELECT + KEY_ID + "," + KEY_LAT + ","
+                            + KEY_LON + FROM + TABLE_NODE + WHERE
+                            + KEY_ELEMENT + "=" + id, null);
+            try {
+                while (cursor.moveToNext()) {
+                    oldNodes.put(cursor.getLong(0), new Node(cursor.getLong(0),
+                            cursor.getDouble(1), cursor.getDouble(2)));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // Nodes, tags and the PolyElement are deleted by the foreign keys
+            if (db.delete(TABLE_DATAELEMENT, KEY_ID + "=" + id, null) == 0) {
+                this.createDataElement(dataElement);
+            } else {
+                if (dataElement instanceof PolyElement) {
+                    keepNodeIds(db, (PolyElement) dataElement,
+                            oldNodes.keySet());
+                }
+                insertDataElements(db, Collections.singletonList(dataElement));
+                markUploadChanges(db, dataElement, oldNodes);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Assigns new ids to the Nodes of the PolyElement which were not stored
+     * with it before, the other Nodes keep their ids.
+     * 
+     * @param db
+     *            The database to allocate the new ids in
+     * @param poly
+     *            The PolyElement to check
+     * @param oldNodeIds
+     *            The ids of the Nodes stored with the PolyElement
+     */
+    private static void keepNodeIds(SQLiteDatabase db, PolyElement poly,
+            Set<Long> oldNodeIds) {
+        final Set<Long> available = new HashSet<Long>(oldNodeIds);
+        final List<Node> newNodes = new ArrayList<Node>();
+        for (Node node : poly.getNodes()) {
+            // Every stored id is kept by a single Node only
+            if (!available.remove(node.getOsmId())) {
+                newNodes.add(node);
+            }
+        }
+        if (!newNodes.isEmpty()) {
+            long nextId = DATAELEMENT_IDS.allocate(db, newNodes.size());
+            for (Node node : newNodes) {
+                node.setOsmId(nextId++);
+            }
+        }
+    }
+
+    /**
+     * Marks the changes of an updated element in the checkpoints of an
+     * interrupted upload, elements which were not uploaded yet have no
+     * checkpoint and are left alone.
+     * 
+     * @param db
+     *            The database to update the checkpoints in
+     * @param element
+     *            The updated element
+     * @param oldNodes
+     *            The Nodes stored with the element before the update mapped
+     *            by their ids
+     */
+    private static void markUploadChanges(SQLiteDatabase db,
+            DataElement element, Map<Long, Node> oldNodes) {
+        final String modify =
+                "UPDATE " + TABLE_UPLOAD + " SET " + KEY_STATE + "="
+                        + UPLOAD_MODIFIED + WHERE + KEY_ID + "=? AND "
+                        + KEY_STATE + "=" + UPLOAD_DONE;
+        db.execSQL(modify, new Object[] { element.getOsmId() });
+        if (!(element instanceof PolyElement)) {
+            return;
+        }
+        for (Node node : ((PolyElement) element).getNodes()) {
+            final Node old = oldNodes.remove(node.getOsmId());
+            if (old != null
+                    && (old.getLat() != node.getLat() || old.getLon() != node
+                            .getLon())) {
+                db.execSQL(modify, new Object[] { node.getOsmId() });
+            }
+        }
+        // The removed Nodes are deleted at their last uploaded position
+        for (Node old : oldNodes.values()) {
+            db.execSQL("UPDATE " + TABLE_UPLOAD + " SET " + KEY_STATE + "="
+                    + UPLOAD_DELETED + "," + KEY_LAT + "=?," + KEY_LON + "=?"
+                    + WHERE + KEY_ID + "=?", new Object[] { old.getLat(),
+                    old.getLon(), old.getOsmId(), });
+        }
     }
 
     /**
      * This method returns a list of all data elements stored in the database
      * and creates corresponding {@link DataElement} objects.
      * 
+     * The elements, their nodes and their tags are each read with a single
+     * query ordered by the element id. The three cursors are then merged in
+     * one pass, so the number of queries does not depend on the number of
+     * stored elements.
+     * 
      * @author tbrose
      * 
      * @return a list of data elements.
      */
     public List<DataElement> getAllDataElements() {
-        final List<DataElement> elements =
-                new ArrayList<DataElement>();
-
         final SQLiteDatabase db = getReadableDatabase();
         final Cursor elementCursor =
-                db.rawQuery(SELECT_ALL + TABLE_DATAELEMENT, null);
-
-        // Read all DataElements
-        while (elementCursor.moveToNext()) {
-            DataElement element = null;
-            final int elementId = elementCursor.getInt(0);
-            final DataElementType elementClass =
-                    DataElementType.fromId(elementCursor.getInt(1));
-
-            if (elementClass == DataElementType.NODE) {
-                final Cursor nodeCursor =
-                        db.rawQuery(SELECT + KEY_LAT + "," + KEY_LON + FROM
-                                + TABLE_NODE + WHERE + KEY_ELEMENT + "="
-                                + elementId, null);
-                if (nodeCursor.moveToNext()) {
-                    element =
-                            new Node(elementId, nodeCursor.getDouble(0),
-                                    nodeCursor.getDouble(1));
+                db.rawQuery(SELECT + "e." + KEY_ID + ",e." + KEY_TYPE + ",p."
+                        + KEY_TYPE + FROM + TABLE_DATAELEMENT + " e LEFT JOIN "
+                        + TABLE_POLYELEMENT + " p ON p." + KEY_ID + "=e."
+                        + KEY_ID + ORDER_BY + "e." + KEY_ID, null);
+        final Cursor nodeCursor =
+                db.rawQuery(SELECT + KEY_ELEMENT + "," + KEY_ID + "," + KEY_LAT
+                        + "," + KEY_LON + FROM + TABLE_NODE + ORDER_BY
+                        + KEY_ELEMENT + "," + KEY_ID, null);
+        final Cursor tagCursor =
+                db.rawQuery(SELECT + KEY_ELEMENT + "," + KEY_TAGID + ","
+                        + KEY_VALUE + FROM + TABLE_TAGMAP + ORDER_BY
+                        + KEY_ELEMENT + ",rowid", null);
+
+        try {
+            final List<DataElement> elements =
+                    new ArrayList<DataElement>(elementCursor.getCount());
+            boolean hasNode = nodeCursor.moveToNext();
+            boolean hasTag = tagCursor.moveToNext();
+
+            // Read all DataElements
+            while (elementCursor.moveToNext()) {
+                final long elementId = elementCursor.getLong(0);
+
+                // Skip rows which do not belong to any element
+                while (hasNode && nodeCursor.getLong(0) < elementId) {
+                    hasNode = nodeCursor.moveToNext();
                 }
-                nodeCursor.close();
-            } else if (elementClass == DataElementType.POLYELEMENT) {
-                final Cursor polyCursor =
-                        db.rawQuery(SELECT + KEY_TYPE + FROM
-                                + TABLE_POLYELEMENT + WHERE + KEY_ID + "="
-                                + elementId, null);
-                if (polyCursor.moveToNext()) {
-                    final PolyElementType type =
-                            PolyElementType.fromId(polyCursor.getInt(0));
-                    final PolyElement polyElement =
-                            new PolyElement(elementId, type);
-
-                    addPolyElementNodes(db, elementId, polyElement);
-                    element = polyElement;
+                while (hasTag && tagCursor.getLong(0) < elementId) {
+                    hasTag = tagCursor.moveToNext();
                 }
-                polyCursor.close();
 
-            } else {
-                throw new IllegalStateException("Unknown subtype of "
-                        + DataElement.class.getSimpleName() + ": id="
-                        + elementCursor.getInt(1));
-            }
+                final DataElement element =
+                        readDataElement(elementCursor, nodeCursor, hasNode);
+
+                // Consume the nodes of this element
+                while (hasNode && nodeCursor.getLong(0) == elementId) {
+                    if (element instanceof PolyElement) {
+                        ((PolyElement) element).addNode(new Node(nodeCursor
+                                .getLong(1), nodeCursor.getDouble(2),
+                                nodeCursor.getDouble(3)));
+                    }
+                    hasNode = nodeCursor.moveToNext();
+                }
 
-            if (element == null) {
-                throw new IllegalStateException(
-                        DataElement.class.getSimpleName()
-                                + " with the id " + elementId
-                                + " cannot be read");
-            } else {
-                final Map<Tag, String> tags =
-                        this.buildTags(SELECT + KEY_TAGID + "," + KEY_VALUE
-                                + FROM + TABLE_TAGMAP + WHERE + KEY_ELEMENT
-                                + "=" + elementId);
+                // Consume the tags of this element
+                final Map<Tag, String> tags = new LinkedHashMap<Tag, String>();
+                while (hasTag && tagCursor.getLong(0) == elementId) {
+                    tags.put(Tags.getTagWithId(tagCursor.getInt(1)),
+                            tagCursor.getString(2));
+                    hasTag = tagCursor.moveToNext();
+                }
                 element.setTags(tags);
                 elements.add(element);
             }
+            Log.i(TAG, elements.size()
+                    + " data elements were retrieved from the database.");
+            return elements;
+        } finally {
+            elementCursor.close();
+            nodeCursor.close();
+            tagCursor.close();
         }
-
-        elementCursor.close();
-        return elements;
     }
 
     /**
-     * Adds all saved nodes for the given id to given PolyElement.
+     * Creates the DataElement for the current row of the element cursor. The
+     * nodes of a PolyElement are not added by this method.
      * 
      * @author tbrose
      * 
-     * @param db
-     *            The database to read from
-     * @param elementId
-     *            The osmId of the element
-     * @param polyElement
-     *            The element where the nodes will be added to
+     * @param elementCursor
+     *            The cursor with the columns id, element type and poly type
+     * @param nodeCursor
+     *            The cursor with the columns element, id, lat and lon
+     *            positioned at the first node of this element (if any)
+     * @param hasNode
+     *            Whether the node cursor points to a valid row
+     * @return The new DataElement
+     * @throws IllegalStateException
+     *             If the element cannot be read
      */
-    private static void addPolyElementNodes(final SQLiteDatabase db,
-            final int elementId, final PolyElement polyElement) {
-        final Cursor nodeCursor =
-                db.rawQuery(SELECT + KEY_ID + "," + KEY_LAT + "," + KEY_LON
-                        + FROM + TABLE_NODE + WHERE + KEY_ELEMENT + "="
-                        + elementId, null);
-        while (nodeCursor.moveToNext()) {
-            polyElement.addNode(new Node(nodeCursor.getLong(0), nodeCursor
-                    .getDouble(1), nodeCursor.getDouble(1 + 1)));
+    private static DataElement readDataElement(Cursor elementCursor,
+            Cursor nodeCursor, boolean hasNode) {
+        final long elementId = elementCursor.getLong(0);
+        final DataElementType elementClass =
+                DataElementType.fromId(elementCursor.getInt(1));
+        DataElement element = null;
+
+        if (elementClass == DataElementType.NODE) {
+            if (hasNode && nodeCursor.getLong(0) == elementId) {
+                element =
+                        new Node(elementId, nodeCursor.getDouble(2),
+                                nodeCursor.getDouble(3));
+            }
+        } else if (elementClass == DataElementType.POLYELEMENT) {
+            if (!elementCursor.isNull(2)) {
+                element =
+                        new PolyElement(elementId,
+                                PolyElementType.fromId(elementCursor.getInt(2)));
+            }
+        } else {
+            throw new IllegalStateException("Unknown subtype of "
+                    + DataElement.class.getSimpleName() + ": id="
+                    + elementCursor.getInt(1));
         }
-        nodeCursor.close();
+
+        if (element == null) {
+            throw new IllegalStateException(DataElement.class.getSimpleName()
+                    + " with the id " + elementId + " cannot be read");
+        }
+        return element;
     }
 
     /**
@@ -512,12 +1029,163 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      * @author tbrose
      */
     public void deleteAllDataElements() {
+        // Nodes, tags and PolyElements are deleted by the foreign keys
+        final SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_DATAELEMENT, null, null);
+            db.delete(TABLE_UPLOAD, null, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // UPLOAD CHECKPOINT
+
+    /**
+     * Saves the ids which the OSM API assigned to the uploaded data elements.
+     * All ids of one uploaded chunk are saved within a single transaction.
+     * 
+     * A modified element which is saved again gets the next version, a
+     * deleted Node which is saved again is removed from the checkpoints.
+     * 
+     * @param changesetId
+     *            The id of the changeset the elements were uploaded to
+     * @param osmIds
+     *            The ids assigned by the OSM API mapped by the local ids
+     */
+    public void addUploadCheckpoint(long changesetId, Map<Long, Long> osmIds) {
         final SQLiteDatabase db = getWritableDatabase();
+        final SQLiteStatement delete =
+                db.compileStatement("DELETE FROM " + TABLE_UPLOAD + WHERE
+                        + KEY_ID + "=? AND " + KEY_STATE + "="
+                        + UPLOAD_DELETED);
+        // Replacing moves the row to the end, see getUploadChangesetId()
+        final SQLiteStatement insert =
+                db.compileStatement("INSERT OR REPLACE INTO " + TABLE_UPLOAD
+                        + " (" + KEY_ID + "," + KEY_CHANGESET + ","
+                        + KEY_OSMID + "," + KEY_VERSION + "," + KEY_STATE
+                        + ") VALUES (?1,?2,?3,COALESCE((SELECT " + KEY_VERSION
+                        + "+(" + KEY_STATE + "=" + UPLOAD_MODIFIED + ")" + FROM
+                        + TABLE_UPLOAD + WHERE + KEY_ID + "=?1),1),"
+                        + UPLOAD_DONE + ")");
+        db.beginTransaction();
+        try {
+            for (Map.Entry<Long, Long> entry : osmIds.entrySet()) {
+                delete.bindLong(1, entry.getKey());
+                if (delete.executeUpdateDelete() > 0) {
+                    continue;
+                }
+                insert.bindLong(1, entry.getKey());
+                insert.bindLong(2, changesetId);
+                insert.bindLong(3, entry.getValue());
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            delete.close();
+            insert.close();
+        }
+        Log.i(TAG, osmIds.size() + " uploaded ids have been saved.");
+    }
 
-        db.delete(TABLE_TAGMAP, null, null);
-        db.delete(TABLE_NODE, null, null);
-        db.delete(TABLE_POLYELEMENT, null, null);
-        db.delete(TABLE_DATAELEMENT, null, null);
+    /**
+     * Returns the ids which the OSM API assigned to the already uploaded data
+     * elements of an interrupted upload.
+     * 
+     * @return The ids assigned by the OSM API mapped by the local ids
+     */
+    public Map<Long, Long> getUploadCheckpoint() {
+        final Map<Long, Long> osmIds = new HashMap<Long, Long>();
+        final Cursor cursor =
+                getReadableDatabase().rawQuery(
+                        SELECT + KEY_ID + "," + KEY_OSMID + FROM
+                                + TABLE_UPLOAD, null);
+        try {
+            while (cursor.moveToNext()) {
+                osmIds.put(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return osmIds;
+    }
+
+    /**
+     * Returns the versions on the OSM API of the uploaded data elements which
+     * were modified or deleted after their upload.
+     * 
+     * @return The versions mapped by the local ids
+     */
+    public Map<Long, Integer> getUploadVersions() {
+        final Map<Long, Integer> versions = new HashMap<Long, Integer>();
+        final Cursor cursor =
+                getReadableDatabase().rawQuery(
+                        SELECT + KEY_ID + "," + KEY_VERSION + FROM
+                                + TABLE_UPLOAD + WHERE + KEY_STATE + "<>"
+                                + UPLOAD_DONE, null);
+        try {
+            while (cursor.moveToNext()) {
+                versions.put(cursor.getLong(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return versions;
+    }
+
+    /**
+     * Returns the uploaded Nodes which were removed from their PolyElement
+     * after their upload.
+     * 
+     * @return The Nodes with their local ids at their uploaded position
+     */
+    public List<Node> getDeletedUploads() {
+        final List<Node> nodes = new ArrayList<Node>();
+        final Cursor cursor =
+                getReadableDatabase().rawQuery(
+                        SELECT + KEY_ID + "," + KEY_LAT + "," + KEY_LON + FROM
+                                + TABLE_UPLOAD + WHERE + KEY_STATE + "="
+                                + UPLOAD_DELETED, null);
+        try {
+            while (cursor.moveToNext()) {
+                nodes.add(new Node(cursor.getLong(0), cursor.getDouble(1),
+                        cursor.getDouble(2)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the changeset of the last checkpoint of an interrupted upload.
+     * 
+     * @return The changeset id or {@link #NO_UPLOAD}
+     */
+    public long getUploadChangesetId() {
+        final Cursor cursor =
+                getReadableDatabase().rawQuery(
+                        SELECT + KEY_CHANGESET + FROM + TABLE_UPLOAD
+                                + ORDER_BY + "rowid DESC LIMIT 1", null);
+        try {
+            if (cursor.moveToNext()) {
+                return cursor.getLong(0);
+            }
+            return NO_UPLOAD;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Deletes all checkpoints, called after the upload is completed.
+     */
+    public void deleteUploadCheckpoint() {
+        getWritableDatabase().delete(TABLE_UPLOAD, null, null);
     }
 
     // -------------------------------------------------------------------------
@@ -548,9 +1216,18 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      *            The last tags for this category
      */
     public void setLastChoice(int category, Map<Tag, String> tags) {
-        final ContentValues categoryValue = new ContentValues();
-        categoryValue.put(KEY_TYPE, category);
-        this.putTags(TABLE_LASTCHOICE, categoryValue, tags);
+        final SQLiteDatabase db = getWritableDatabase();
+        final SQLiteStatement tagInsert =
+                db.compileStatement(insertInto(TABLE_LASTCHOICE, KEY_TYPE,
+                        KEY_TAGID, KEY_VALUE));
+        db.beginTransaction();
+        try {
+            putTags(tagInsert, category, tags);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            tagInsert.close();
+        }
     }
 
     /**
@@ -579,31 +1256,26 @@ public class DataBaseHandler extends SQLiteOpenHelper {
     }
 
     /**
-     * Executes an insert for each tag-pair of the given map.
+     * Executes the compiled insert statement for each tag-pair of the given
+     * map. The statement has to take the owner, the tagId and the value.
      * 
      * @author tbrose
      * 
-     * @param table
-     *            The table to insert to
-     * @param initialValues
-     *            The initial content values for each insertion
+     * @param tagInsert
+     *            The compiled insert statement
+     * @param owner
+     *            The id of the owner of the tags
      * @param tagMap
      *            The tags to be saved
      */
-    private void putTags(String table, ContentValues initialValues,
+    private static void putTags(SQLiteStatement tagInsert, long owner,
             Map<Tag, String> tagMap) {
-        final SQLiteDatabase db = getWritableDatabase();
-
-        final ContentValues values = new ContentValues();
-        values.putAll(initialValues);
-
         for (Map.Entry<Tag, String> tag : tagMap.entrySet()) {
-            values.put(KEY_TAGID, tag.getKey().getId());
-            values.put(KEY_VALUE, tag.getValue());
-
-            db.insert(table, null, values);
+            tagInsert.bindLong(1, owner);
+            tagInsert.bindLong(2, tag.getKey().getId());
+            bindStringOrNull(tagInsert, 3, tag.getValue());
+            tagInsert.executeInsert();
         }
-        Log.i(TAG, "Tags have been added.");
     }
 
     // -------------------------------------------------------------------------
@@ -619,18 +1291,47 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      *            the {@link Track} object from which the data will be taken.
      */
     public void createGPSTrack(Track track) {
-        final SQLiteDatabase db = getWritableDatabase();
+        this.createGPSTracks(Collections.singletonList(track));
+    }
 
-        final long nextTrackId = this.getNextId(TABLE_GPSTRACK, KEY_ID);
-        track.setID(nextTrackId);
-        final ContentValues trackValues = valuesForTrack(track);
-        db.insert(TABLE_GPSTRACK, null, trackValues);
+    /**
+     * This method creates and stores all given GPS tracks with their
+     * trackpoints in the database within a single transaction.
+     * 
+     * @param tracks
+     *            the {@link Track} objects from which the data will be taken.
+     */
+    public void createGPSTracks(Collection<Track> tracks) {
+        final SQLiteDatabase db = getWritableDatabase();
+        final SQLiteStatement pointInsert =
+                db.compileStatement(insertInto(TABLE_TRACKPOINT, KEY_ELEMENT,
+                        KEY_LAT, KEY_LON, KEY_ALT, KEY_TIME, KEY_ID));
+
+        db.beginTransaction();
+        try {
+            int pointCount = 0;
+            for (Track track : tracks) {
+                pointCount += track.getTrackPoints().size();
+            }
+            long nextTrackId = GPSTRACK_IDS.allocate(db, tracks.size());
+            long nextPointId = TRACKPOINT_IDS.allocate(db, pointCount);
+            for (Track track : tracks) {
+                track.setID(nextTrackId);
+                db.insert(TABLE_GPSTRACK, null, valuesForTrack(track));
 
-        long nextPointId = this.getNextId(TABLE_TRACKPOINT, KEY_ID);
-        for (TrackPoint tp : track.getTrackPoints()) {
-            tp.setID(nextPointId);
-            db.insert(TABLE_TRACKPOINT, null, valuesForPoint(nextTrackId, tp));
-            nextPointId++;
+                for (TrackPoint tp : track.getTrackPoints()) {
+                    tp.setID(nextPointId);
+                    bindPoint(pointInsert, nextTrackId, tp);
+                    pointInsert.bindLong(6, nextPointId);
+                    pointInsert.executeInsert();
+                    nextPointId++;
+                }
+                nextTrackId++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            pointInsert.close();
         }
     }
 
@@ -691,11 +1392,9 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      *            the {@link Track} object whose data should be deleted.
      */
     public void deleteGPSTrack(Track track) {
-        final SQLiteDatabase db = getWritableDatabase();
-        final String isId = "=" + track.getID();
-
-        db.delete(TABLE_GPSTRACK, KEY_ID + isId, null);
-        db.delete(TABLE_TRACKPOINT, KEY_ELEMENT + isId, null);
+        // The trackpoints are deleted by the foreign key
+        getWritableDatabase().delete(TABLE_GPSTRACK,
+                KEY_ID + "=" + track.getID(), null);
     }
 
     /**
@@ -727,28 +1426,140 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      */
     public void updateGPSTrack(Track track) {
         final SQLiteDatabase db = getWritableDatabase();
-        final Cursor exists =
-                db.rawQuery("SELECT 1 FROM " + TABLE_GPSTRACK + WHERE + KEY_ID
-                        + "=" + track.getID(), null);
+        db.beginTransaction();
+        try {
+            final int updated =
+                    db.update(TABLE_GPSTRACK, valuesForTrack(track), KEY_ID
+                            + "=" + track.getID(), null);
+
+            if (updated > 0) {
+                final SQLiteStatement pointInsert =
+                        db.compileStatement(insertInto(TABLE_TRACKPOINT,
+                                KEY_ELEMENT, KEY_LAT, KEY_LON, KEY_ALT,
+                                KEY_TIME, KEY_ID));
+                final List<TrackPoint> points = track.getTrackPoints();
+                int newPoints = 0;
+                for (TrackPoint tp : points) {
+                    if (tp.getID() == TrackPoint.NO_ID) {
+                        newPoints++;
+                    }
+                }
+                long nextPointId = TRACKPOINT_IDS.allocate(db, newPoints);
+                for (TrackPoint tp : points) {
+                    if (tp.getID() == TrackPoint.NO_ID) {
+                        tp.setID(nextPointId);
+                        bindPoint(pointInsert, track.getID(), tp);
+                        pointInsert.bindLong(6, nextPointId);
+                        pointInsert.executeInsert();
+                        nextPointId++;
+                    }
+                }
+                pointInsert.close();
+            } else {
+                Log.i(TAG, "Attemped to update a track that does not exists");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
 
-        if (exists.moveToNext()) {
+    /**
+     * Returns the id of the first GPS track which is not finished yet. This
+     * only reads the track table, the trackpoints are not loaded.
+     * 
+     * @return the id of the active track or {@link #NO_ACTIVE_TRACK} if every
+     *         track is finished
+     */
+    public long getActiveGPSTrackId() {
+        final Cursor cursor =
+                getReadableDatabase().rawQuery(
+                        SELECT + KEY_ID + FROM + TABLE_GPSTRACK + WHERE
+                                + KEY_FINISHED + "=0 order by " + KEY_ID
+                                + " ASC limit 1", null);
+        long id = NO_ACTIVE_TRACK;
+        if (cursor.moveToNext()) {
+            id = cursor.getLong(0);
+        }
+        cursor.close();
+        return id;
+    }
 
-            db.update(TABLE_GPSTRACK, valuesForTrack(track), KEY_ID + "="
-                    + track.getID(), null);
+    /**
+     * Appends a single TrackPoint to the GPS track with the given id. Unlike
+     * {@link #updateGPSTrack(Track)} neither the track itself nor its other
+     * trackpoints are touched, so the cost does not depend on the size of the
+     * track. The id of the point is set to the id of the inserted row.
+     * 
+     * @param trackId
+     *            The id of the track to append to
+     * @param tp
+     *            The TrackPoint to append
+     */
+    public synchronized void appendTrackPoint(long trackId, TrackPoint tp) {
+        if (appendPointStatement == null) {
+            appendPointStatement =
+                    getWritableDatabase().compileStatement(
+                            insertInto(TABLE_TRACKPOINT, KEY_ELEMENT, KEY_LAT,
+                                    KEY_LON, KEY_ALT, KEY_TIME, KEY_ID));
+        }
+        final SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final long id = TRACKPOINT_IDS.allocate(db, 1);
+            bindPoint(appendPointStatement, trackId, tp);
+            appendPointStatement.bindLong(6, id);
+            appendPointStatement.executeInsert();
+            db.setTransactionSuccessful();
+            tp.setID(id);
+        } finally {
+            db.endTransaction();
+            appendPointStatement.clearBindings();
+        }
+    }
 
-            long nextPointId = this.getNextId(TABLE_TRACKPOINT, KEY_ID);
-            for (TrackPoint tp : track.getTrackPoints()) {
-                if (tp.getID() == TrackPoint.NO_ID) {
-                    tp.setID(nextPointId);
-                    db.insert(TABLE_TRACKPOINT, null,
-                            valuesForPoint(track.getID(), tp));
-                    nextPointId++;
-                }
-            }
-        } else {
-            Log.i(TAG, "Attemped to update a track that does not exists");
+    /**
+     * Replaces the values of the TrackPoint row with the id of the given
+     * TrackPoint. Like {@link #appendTrackPoint(long, TrackPoint)} no other
+     * row is touched.
+     * 
+     * @param trackId
+     *            The id of the track of the TrackPoint
+     * @param tp
+     *            The TrackPoint with the new values
+     */
+    public synchronized void replaceTrackPoint(long trackId, TrackPoint tp) {
+        if (replacePointStatement == null) {
+            replacePointStatement =
+                    getWritableDatabase().compileStatement(
+                            "UPDATE " + TABLE_TRACKPOINT + " SET "
+                                    + KEY_ELEMENT + "=?," + KEY_LAT + "=?,"
+                                    + KEY_LON + "=?," + KEY_ALT + "=?,"
+                                    + KEY_TIME + "=? WHERE " + KEY_ID
+                                    + "=?");
+        }
+        bindPoint(replacePointStatement, trackId, tp);
+        replacePointStatement.bindLong(6, tp.getID());
+        replacePointStatement.executeUpdateDelete();
+        replacePointStatement.clearBindings();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.database.sqlite.SQLiteOpenHelper#close()
+     */
+    @Override
+    public synchronized void close() {
+        if (appendPointStatement != null) {
+            appendPointStatement.close();
+            appendPointStatement = null;
         }
-        exists.close();
+        if (replacePointStatement != null) {
+            replacePointStatement.close();
+            replacePointStatement = null;
+        }
+        super.close();
     }
 
     /**
@@ -777,9 +1588,170 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      * @author tbrose
      */
     public void deleteAllGPSTracks() {
-        final SQLiteDatabase db = getWritableDatabase();
-        db.delete(TABLE_GPSTRACK, null, null);
-        db.delete(TABLE_TRACKPOINT, null, null);
+        // The trackpoints are deleted by the foreign key
+        getWritableDatabase().delete(TABLE_GPSTRACK, null, null);
+    }
+
+    // -------------------------------------------------------------------------
+    // GALLERY CRUD
+
+    /**
+     * Stores the informations of a captured image in the gallery catalog.
+     * 
+     * @param timestamp
+     *            The timestamp of the image, used as its id
+     * @param parameters
+     *            The camera-parameters of the image
+     * @param orientation
+     *            The orientation of the device
+     * @param dimension
+     *            The screen dimension
+     */
+    public void createGalleryImage(long timestamp,
+            TransformationParamBean parameters, DeviceOrientation orientation,
+            Point dimension) {
+        final ContentValues values = new ContentValues();
+        values.put(KEY_ID, timestamp);
+        values.put(KEY_HEIGHT, parameters.getHeight());
+        values.put(KEY_VERTICAL_ANGLE,
+                parameters.getCameraMaxVerticalViewAngle());
+        values.put(KEY_HORIZONTAL_ANGLE,
+                parameters.getCameraMaxHorizontalViewAngle());
+        values.put(KEY_PHOTO_WIDTH, parameters.getPhotoWidth());
+        values.put(KEY_PHOTO_HEIGHT, parameters.getPhotoHeight());
+        final Location location = parameters.getLocation();
+        if (location != null) {
+            // without a location the columns stay null
+            values.put(KEY_PROVIDER, location.getProvider());
+            values.put(KEY_LAT, location.getLatitude());
+            values.put(KEY_LON, location.getLongitude());
+        }
+        values.put(KEY_AZIMUTH, orientation.getAzimuth());
+        values.put(KEY_PITCH, orientation.getPitch());
+        values.put(KEY_ROLL, orientation.getRoll());
+        values.put(KEY_TIME, orientation.getTimestamp());
+        values.put(KEY_SCREEN_WIDTH, dimension.x);
+        values.put(KEY_SCREEN_HEIGHT, dimension.y);
+        getWritableDatabase().insertOrThrow(TABLE_GALLERY, null, values);
+    }
+
+    /**
+     * Reads the informations of the image with the given timestamp from the
+     * gallery catalog.
+     * 
+     * @param timestamp
+     *            The timestamp of the image
+     * @return The informations of the image or {@code null} if there is no
+     *         such image
+     */
+    public Informations getGalleryImage(long timestamp) {
+        final Cursor cursor =
+                getReadableDatabase().rawQuery(
+                        SELECT + GALLERY_COLUMNS + FROM + TABLE_GALLERY + WHERE
+                                + KEY_ID + "=" + timestamp, null);
+        Informations result = null;
+        if (cursor.moveToNext()) {
+            Location location = null;
+            if (!cursor.isNull(5)) {
+                location = new Location(cursor.getString(5));
+                location.setLatitude(cursor.getDouble(6));
+                location.setLongitude(cursor.getDouble(7));
+            }
+            final TransformationParamBean parameters =
+                    new TransformationParamBean(cursor.getDouble(0),
+                            cursor.getDouble(1), cursor.getDouble(2),
+                            cursor.getInt(3), cursor.getInt(4), location);
+            final DeviceOrientation orientation =
+                    new DeviceOrientation(cursor.getFloat(8),
+                            cursor.getFloat(9), cursor.getFloat(10),
+                            cursor.getLong(11));
+            result =
+                    new Informations(parameters, orientation, new Point(
+                            cursor.getInt(12), cursor.getInt(13)));
+        }
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Lists the timestamps of the images in the gallery catalog, the newest
+     * first.
+     * 
+     * @param offset
+     *            The number of images to skip
+     * @param limit
+     *            The maximum number of images to list or {@code -1} for all
+     * @return An array with the timestamps
+     */
+    public long[] getGalleryImages(int offset, int limit) {
+        return queryIds(SELECT + KEY_ID + FROM + TABLE_GALLERY + ORDER_BY
+                + KEY_ID + " DESC LIMIT " + limit + " OFFSET " + offset, null);
+    }
+
+    /**
+     * Lists the timestamps of the images in the gallery catalog which were
+     * taken inside the given bounding box, the newest first.
+     * 
+     * @param minLat
+     *            The southern border
+     * @param minLon
+     *            The western border
+     * @param maxLat
+     *            The northern border
+     * @param maxLon
+     *            The eastern border
+     * @return An array with the timestamps
+     */
+    public long[] getGalleryImagesInBox(double minLat, double minLon,
+            double maxLat, double maxLon) {
+        return queryIds(SELECT + KEY_ID + FROM + TABLE_GALLERY + WHERE
+                + KEY_LAT + " BETWEEN ? AND ? AND " + KEY_LON
+                + " BETWEEN ? AND ?" + ORDER_BY + KEY_ID + " DESC",
+                new String[] {String.valueOf(minLat), String.valueOf(maxLat),
+                        String.valueOf(minLon), String.valueOf(maxLon), });
+    }
+
+    /**
+     * @return The number of images in the gallery catalog
+     */
+    public int getGalleryImageCount() {
+        final Cursor cursor =
+                getReadableDatabase().rawQuery(
+                        "SELECT COUNT(1) FROM " + TABLE_GALLERY, null);
+        cursor.moveToNext();
+        final int count = cursor.getInt(0);
+        cursor.close();
+        return count;
+    }
+
+    /**
+     * Removes the image with the given timestamp from the gallery catalog.
+     * 
+     * @param timestamp
+     *            The timestamp of the image
+     */
+    public void deleteGalleryImage(long timestamp) {
+        getWritableDatabase().delete(TABLE_GALLERY, KEY_ID + "=" + timestamp,
+                null);
+    }
+
+    /**
+     * Runs the given query and reads the first column of every row as a long.
+     * 
+     * @param query
+     *            The query
+     * @param args
+     *            The arguments of the query
+     * @return An array with the values
+     */
+    private long[] queryIds(String query, String[] args) {
+        final Cursor cursor = getReadableDatabase().rawQuery(query, args);
+        final long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
     }
 
     /**
@@ -803,52 +1775,69 @@ public class DataBaseHandler extends SQLiteOpenHelper {
     }
 
     /**
-     * Creates the ContentValues for the given TrackPoint with the elementId set
-     * to {@code trackId}.
-     * 
-     * @author tbrose
+     * Binds the values of the given TrackPoint with the elementId set to
+     * {@code trackId} to the first five parameters of the given statement. The
+     * statement has to take the columns element, lat, lon, altitude and
+     * timestamp in this order.
      * 
+     * @param statement
+     *            The compiled insert statement
      * @param trackId
      *            The id of the track of the given TrackPoint
      * @param tp
      *            The TrackPoint to read the values from
-     * @return A ContentValues object for inserting into the database holding
-     *         the given data
      */
-    private static ContentValues valuesForPoint(long trackId, TrackPoint tp) {
-        final ContentValues pointValues = new ContentValues();
-        pointValues.put(KEY_ID, tp.getID());
-        pointValues.put(KEY_ELEMENT, trackId);
-        pointValues.put(KEY_LAT, tp.getLat());
-        pointValues.put(KEY_LON, tp.getLon());
-        pointValues.put(KEY_ALT, tp.getAlt());
-        pointValues.put(KEY_TIME, tp.getTime());
-        return pointValues;
+    private static void bindPoint(SQLiteStatement statement, long trackId,
+            TrackPoint tp) {
+        statement.bindLong(1, trackId);
+        statement.bindDouble(2, tp.getLat());
+        statement.bindDouble(3, tp.getLon());
+        statement.bindDouble(4, tp.getAlt());
+        statement.bindLong(5, tp.getTime());
     }
 
     /**
-     * Returns the last ID used for DataElements plus one.
+     * Binds the given value to the statement, binding null if the value is
+     * null.
      * 
-     * @author tbrose
+     * @param statement
+     *            The compiled statement
+     * @param index
+     *            The 1-based index of the parameter
+     * @param value
+     *            The value to bind
+     */
+    private static void bindStringOrNull(SQLiteStatement statement,
+            int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Builds an insert statement for the given columns of the table with one
+     * parameter per column.
      * 
      * @param table
-     *            The table to receive the next id from
-     * @param key
-     *            The name of the id column
-     * 
-     * @return the last used ID plus one
+     *            The table to insert to
+     * @param columns
+     *            The columns to set
+     * @return The SQL statement
      */
-    private long getNextId(String table, String key) {
-        final SQLiteDatabase db = getReadableDatabase();
-        final Cursor cursor =
-                db.rawQuery(SELECT + key + FROM + table + " order by " + key
-                        + " DESC limit 1", null);
-        long lastId = 0;
-        if (cursor.moveToNext()) {
-            lastId = cursor.getLong(0);
-            Log.d(TAG, "LAST ID: " + lastId);
+    private static String insertInto(String table, String... columns) {
+        final StringBuilder sql =
+                new StringBuilder("INSERT INTO ").append(table).append(" (");
+        final StringBuilder params = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(',');
+                params.append(',');
+            }
+            sql.append(columns[i]);
+            params.append('?');
         }
-        cursor.close();
-        return lastId + 1;
+        return sql.append(") VALUES (").append(params).append(')').toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.handler;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Allocator for the ids of a single table. The next free id is persisted in a
+ * sequence table, so an id is never handed out twice, even if its row was
+ * deleted and the app was restarted in between.
+ * 
+ * The sequence is advanced within the transaction of the caller, so ids of a
+ * rolled back insert are allocated again while committed ones never are.
+ */
+final class IdAllocator {
+    // Sequence Table and Column Names
+    static final String TABLE_SEQUENCE = "sequences";
+    static final String KEY_NAME = "name";
+    static final String KEY_NEXT = "next";
+
+    private final String table;
+    private final String key;
+
+    /**
+     * Constructs an allocator for the given id column of the table.
+     * 
+     * @param table
+     *            The table to allocate ids for
+     * @param key
+     *            The name of the id column
+     */
+    IdAllocator(String table, String key) {
+        this.table = table;
+        this.key = key;
+    }
+
+    /**
+     * Reserves {@code count} consecutive ids and returns the first of them.
+     * 
+     * @param db
+     *            The database to persist the sequence in
+     * @param count
+     *            The number of ids to reserve
+     * @return the first reserved id
+     */
+    long allocate(SQLiteDatabase db, int count) {
+        db.beginTransaction();
+        try {
+            long first =
+                    queryLong(db, "SELECT " + KEY_NEXT + " FROM "
+                            + TABLE_SEQUENCE + " WHERE " + KEY_NAME + "=?",
+                            table);
+            if (first == 0) {
+                // No sequence yet, continue after the largest used id
+                first =
+                        queryLong(db, "SELECT MAX(" + key + ") FROM " + table)
+                                + 1;
+            }
+            final ContentValues values = new ContentValues();
+            values.put(KEY_NAME, table);
+            values.put(KEY_NEXT, first + count);
+            db.insertWithOnConflict(TABLE_SEQUENCE, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+            return first;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Reads a single number from the database.
+     * 
+     * @param db
+     *            The database to query
+     * @param sql
+     *            The query selecting a single number
+     * @param args
+     *            The arguments of the query
+     * @return the number or {@code 0} if the query has no result
+     */
+    private static long queryLong(SQLiteDatabase db, String sql,
+            String... args) {
+        final Cursor cursor = db.rawQuery(sql, args);
+        try {
+            return cursor.moveToNext() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.data4all.handler;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.model.data.ClassifiedTag;
 import io.github.data4all.model.data.Tag;
@@ -77,21 +78,32 @@ public final class LastChoiceHandler {
     }
 
     /**
-     * store the last choice(tag) in database
+     * store the last choice(tag) in database, the write is executed in the
+     * background
      * 
      * @param context
      */
     public void save(Context context) {
-        final DataBaseHandler db = new DataBaseHandler(context);
+        final DataBaseHandler db =
+                Data4AllApplication.getDataBaseHandler(context);
+        final Map<Integer, Map<Tag, String>> toSave =
+                new LinkedHashMap<Integer, Map<Tag, String>>();
         for (Map.Entry<Integer, Map<Tag, String>> entry : typWithLastchoice
                 .entrySet()) {
-            final int category = entry.getKey();
             final Map<Tag, String> tags = entry.getValue();
             if (tags != null && !tags.isEmpty()) {
-                db.setLastChoice(category, tags);
+                toSave.put(entry.getKey(), new LinkedHashMap<Tag, String>(tags));
             }
         }
-        db.close();
+        Data4AllApplication.executeDataBaseWrite(context, new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<Integer, Map<Tag, String>> entry : toSave
+                        .entrySet()) {
+                    db.setLastChoice(entry.getKey(), entry.getValue());
+                }
+            }
+        });
     }
 
     /**
@@ -23,6 +23,7 @@ import io.github.data4all.model.data.Node;
 import io.github.data4all.util.Gallery;
 import io.github.data4all.util.Gallery.Informations;
 import io.github.data4all.util.MapUtil;
+import io.github.data4all.util.ThumbnailLoader;
 import io.github.data4all.view.D4AMapView;
 
 import java.io.File;
@@ -34,8 +35,6 @@ import java.util.List;
 
 import android.database.DataSetObserver;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.BitmapFactory.Options;
 import android.location.Location;
 import android.os.Bundle;
 import android.text.format.DateFormat;
@@ -52,14 +51,19 @@ import android.widget.TextView;
  * all images.
  * 
  * @author tbrose
- *
+ * 
  */
 public class GalleryListAdapter implements ListAdapter {
 
     /**
-     * The sample size for the thumbnails.
+     * The size of the thumbnails in dp.
+     */
+    private static final int THUMBNAIL_SIZE = 100;
+
+    /**
+     * The number of images to prefetch in the scroll direction.
      */
-    private static final int SAMPLE_SIZE = 8;
+    private static final int PREFETCH_COUNT = 3;
 
     /**
      * The id for the "delete all"-item.
@@ -72,12 +76,45 @@ public class GalleryListAdapter implements ListAdapter {
 
     private AbstractActivity context;
 
+    private final ThumbnailLoader loader;
+
+    /**
+     * The timestamps of the shown images, the newest first. Read from the
+     * gallery catalog once and on every {@link #invalidate()}.
+     */
+    private long[] images;
+
+    /**
+     * The position of the last shown item to detect the scroll direction.
+     */
+    private int lastPosition;
+
     /**
      * @param context
      */
     public GalleryListAdapter(AbstractActivity context) {
         this.context = context;
-        gallery = new Gallery(context);
+        gallery = new Gallery(context, new Runnable() {
+            @Override
+            public void run() {
+                // Show the images of the legacy import
+                GalleryListAdapter.this.invalidate();
+            }
+        });
+        final float density =
+                context.getResources().getDisplayMetrics().density;
+        loader =
+                new ThumbnailLoader(gallery, Math.round(THUMBNAIL_SIZE
+                        * density));
+        images = gallery.getImages();
+    }
+
+    /**
+     * Stops loading the thumbnails, the adapter cannot show any images
+     * afterwards.
+     */
+    public void close() {
+        loader.shutdown();
     }
 
     /**
@@ -92,6 +129,7 @@ public class GalleryListAdapter implements ListAdapter {
             this.removeAllImages();
         } else {
             gallery.deleteImage(id);
+            loader.evict(id);
             this.invalidate();
         }
     }
@@ -100,8 +138,9 @@ public class GalleryListAdapter implements ListAdapter {
      * Delete all images from the gallery.
      */
     public void removeAllImages() {
-        for (long id : gallery.getImages()) {
+        for (long id : images) {
             gallery.deleteImage(id);
+            loader.evict(id);
         }
         this.invalidate();
     }
@@ -141,7 +180,7 @@ public class GalleryListAdapter implements ListAdapter {
      */
     @Override
     public int getCount() {
-        final int length = gallery.getImageFiles().length;
+        final int length = images.length;
         if (length == 0) {
             return 0;
         } else {
@@ -159,9 +198,12 @@ public class GalleryListAdapter implements ListAdapter {
         if (position < 0) {
             return null;
         } else {
-            final File[] files = gallery.getImageFiles();
-            if (files.length > position) {
-                return files[position];
+            if (images.length > position) {
+                try {
+                    return gallery.getImageFile(images[position]);
+                } catch (FileNotFoundException e) {
+                    return null;
+                }
             } else {
                 return null;
             }
@@ -176,11 +218,10 @@ public class GalleryListAdapter implements ListAdapter {
     @Override
     public long getItemId(int position) {
         if (position >= 0) {
-            final long[] files = gallery.getImages();
-            if (files.length > 0 && files.length == position) {
+            if (images.length > 0 && images.length == position) {
                 return DELETE_ALL_ID;
-            } else if (files.length > position) {
-                return files[position];
+            } else if (images.length > position) {
+                return images[position];
             }
         }
         return -1;
@@ -237,52 +278,35 @@ public class GalleryListAdapter implements ListAdapter {
             layout = (Layout) convertView.getTag();
         }
 
-        layout.text.setText(this.getDateText(this.getItemId(position)));
-
-        // load and show the image
-        try {
-            final Options options = new Options();
-            options.inSampleSize = SAMPLE_SIZE;
-            final Bitmap bitmap =
-                    BitmapFactory.decodeFile(
-                            gallery.getImageFile(this.getItemId(position))
-                                    .getAbsolutePath(), options);
-            layout.image.setImageBitmap(bitmap);
-            if (bitmap.getWidth() > bitmap.getHeight()) {
-                layout.image.setRotation(90);
-            } else {
-                layout.image.setRotation(0);
-            }
-        } catch (FileNotFoundException e) {
-            Log.e(this.getClass().getSimpleName(), "Error on getView("
-                    + position + ")", e);
-        }
+        final long id = this.getItemId(position);
+        layout.text.setText(this.getDateText(id));
 
-        // load and show the location
-        try {
-            final Informations info =
-                    gallery.getImageInformations(this.getItemId(position));
-            final Location location = info.getParameters().getLocation();
-            final Node node =
-                    new Node(-1, location.getLatitude(),
-                            location.getLongitude());
-
-            layout.map.getController().setCenter(
-                    MapUtil.getCenterFromOsmElement(node));
-            layout.map
-                    .setBoundingBox(MapUtil.getBoundingBoxForOsmElement(node));
-            layout.map.setScrollable(false);
-            layout.map.getOverlays().clear();
-            layout.map.addOsmElementToMap(context, node, false);
-            layout.map.postInvalidate();
-        } catch (IOException e) {
-            Log.e(this.getClass().getSimpleName(), "Error on getView("
-                    + position + ")", e);
-        }
+        // show the image and the location once they are loaded
+        layout.image.setImageDrawable(null);
+        layout.map.getOverlays().clear();
+        loader.load(layout, id, layout);
+        this.prefetch(position);
 
         return result;
     }
 
+    /**
+     * Prefetches the thumbnails of the next images in the scroll direction.
+     * 
+     * @param position
+     *            The position of the shown item
+     */
+    private void prefetch(int position) {
+        final int direction = position >= lastPosition ? 1 : -1;
+        lastPosition = position;
+        for (int i = 1; i <= PREFETCH_COUNT; i++) {
+            final int next = position + direction * i;
+            if (next >= 0 && next < images.length) {
+                loader.prefetch(images[next]);
+            }
+        }
+    }
+
     /**
      * Beautifies the given timestamp, so it is readable by humans.
      * 
@@ -366,7 +390,7 @@ public class GalleryListAdapter implements ListAdapter {
      */
     @Override
     public boolean isEmpty() {
-        return gallery.getImageFiles().length == 0;
+        return images.length == 0;
     }
 
     /*
@@ -414,20 +438,23 @@ public class GalleryListAdapter implements ListAdapter {
     }
 
     /**
-     * Notify all obervers, that the content has changed.
+     * Reloads the images from the gallery and notify all obervers, that the
+     * content has changed.
      */
     public void invalidate() {
+        images = gallery.getImages();
         for (DataSetObserver o : this.observer) {
             o.onChanged();
         }
     }
 
     /**
-     * This class holds all Views of a ListItem for faster accessibility.
+     * This class holds all Views of a ListItem for faster accessibility. It
+     * shows the thumbnail and the location of the image once they are loaded.
      * 
      * @author tbrose
      */
-    private static final class Layout {
+    private final class Layout implements ThumbnailLoader.Callback {
         private final TextView text;
         private final ImageView image;
         private final D4AMapView map;
@@ -438,5 +465,38 @@ public class GalleryListAdapter implements ListAdapter {
             this.image = (ImageView) image;
             this.map = (D4AMapView) map;
         }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see
+         * io.github.data4all.util.ThumbnailLoader.Callback#onThumbnailLoaded
+         * (long, android.graphics.Bitmap, android.location.Location)
+         */
+        @Override
+        public void onThumbnailLoaded(long timestamp, Bitmap thumbnail,
+                Location location) {
+            if (thumbnail != null) {
+                image.setImageBitmap(thumbnail);
+                if (thumbnail.getWidth() > thumbnail.getHeight()) {
+                    image.setRotation(90);
+                } else {
+                    image.setRotation(0);
+                }
+            }
+            if (location != null) {
+                final Node node =
+                        new Node(-1, location.getLatitude(),
+                                location.getLongitude());
+
+                map.getController().setCenter(
+                        MapUtil.getCenterFromOsmElement(node));
+                map.setBoundingBox(MapUtil.getBoundingBoxForOsmElement(node));
+                map.setScrollable(false);
+                map.getOverlays().clear();
+                map.addOsmElementToMap(context, node, false);
+                map.postInvalidate();
+            }
+        }
     }
 }
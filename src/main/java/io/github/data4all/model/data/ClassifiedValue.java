@@ -65,6 +65,12 @@ public class ClassifiedValue implements Localizeable{
      */
     private int descriptionResource;
 
+    /**
+     * Whether the resources were looked up already, the lookup is deferred
+     * until a resource is requested.
+     */
+    private boolean resourcesResolved;
+
     /**
      * Attributes from the propertie file /res/raw/tag_values.txt.
      */
@@ -96,12 +102,23 @@ public class ClassifiedValue implements Localizeable{
         this.id = id;
         this.key = key;
         this.value = value;
+    }
+
+    /**
+     * Looks up the name and the description resource of this value once.
+     */
+    private void resolveResources() {
+        if (resourcesResolved) {
+            return;
+        }
+        resourcesResolved = true;
         try {
-            this.setNameRessource((Integer) R.string.class.getDeclaredField(
-                    "name_" + key + "_" + value).get(null));
-            this.setDescriptionResource((Integer) R.string.class
-                    .getDeclaredField("description_" + key + "_" + value).get(
-                            null));
+            this.nameResource =
+                    (Integer) R.string.class.getDeclaredField(
+                            "name_" + key + "_" + value).get(null);
+            this.descriptionResource =
+                    (Integer) R.string.class.getDeclaredField(
+                            "description_" + key + "_" + value).get(null);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "IllegalArgumentException", e);
         } catch (IllegalAccessException e) {
@@ -152,10 +169,12 @@ public class ClassifiedValue implements Localizeable{
     }
 
     public int getNameRessource() {
+        resolveResources();
         return nameResource;
     }
 
     public void setNameRessource(int nameRessource) {
+        resolveResources();
         this.nameResource = nameRessource;
     }
 
@@ -273,10 +292,12 @@ public class ClassifiedValue implements Localizeable{
     }
 
     public int getDescriptionResource() {
+        resolveResources();
         return descriptionResource;
     }
 
     public void setDescriptionResource(int descriptionResource) {
+        resolveResources();
         this.descriptionResource = descriptionResource;
     }
 
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.model.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The catalog of all classified tags from the properties
+ * /res/raw/tag_keys.txt and /res/raw/tag_values.txt. Both files are read
+ * exactly once, the tags and their values are indexed by their ids.
+ * 
+ * The catalog is immutable, the views of the tags for each geometry are
+ * computed once when the catalog is created.
+ */
+final class TagCatalog {
+
+    /**
+     * The number of columns of a line in the values file.
+     */
+    private static final int VALUE_COLUMNS = 16;
+
+    // The geometries of the views
+    private static final int NODE = 0;
+    private static final int WAY = 1;
+    private static final int AREA = 2;
+    private static final int BUILDING = 3;
+
+    private final List<Tag> tags;
+    private final Map<Integer, Tag> tagsById;
+    private final Map<Integer, ClassifiedValue> valuesById;
+    private final List<ClassifiedTag> classifiedTags;
+    private final List<Tag> nodeTags;
+    private final List<Tag> wayTags;
+    private final List<Tag> areaTags;
+    private final List<Tag> buildingTags;
+
+    /**
+     * Constructs a catalog of the given tags.
+     * 
+     * @param tags
+     *            All tags of the catalog
+     */
+    private TagCatalog(List<Tag> tags) {
+        this.tags = Collections.unmodifiableList(tags);
+        this.tagsById = new HashMap<Integer, Tag>();
+        this.valuesById = new HashMap<Integer, ClassifiedValue>();
+        for (Tag tag : tags) {
+            tagsById.put(tag.getId(), tag);
+        }
+        // The ids of the values refer to their tag as well
+        for (Tag tag : tags) {
+            if (tag instanceof ClassifiedTag) {
+                for (ClassifiedValue value : ((ClassifiedTag) tag)
+                        .getClassifiedValues()) {
+                    valuesById.put(value.getId(), value);
+                    if (!tagsById.containsKey(value.getId())) {
+                        tagsById.put(value.getId(), tag);
+                    }
+                }
+            }
+        }
+
+        final List<ClassifiedTag> classified = new ArrayList<ClassifiedTag>();
+        for (Tag tag : tags) {
+            if (tag instanceof ClassifiedTag) {
+                classified.add((ClassifiedTag) tag);
+            }
+        }
+        this.classifiedTags = Collections.unmodifiableList(classified);
+        this.nodeTags = viewOf(classified, NODE);
+        this.wayTags = viewOf(classified, WAY);
+        this.areaTags = viewOf(classified, AREA);
+        this.buildingTags = viewOf(classified, BUILDING);
+    }
+
+    /**
+     * Creates the view of the given tags for a geometry. The view contains a
+     * copy of every tag with the values which are allowed for the geometry,
+     * tags without such values are left out.
+     * 
+     * @param tags
+     *            The classified tags
+     * @param geometry
+     *            The geometry of the view
+     * @return The unmodifiable view
+     */
+    private static List<Tag> viewOf(List<ClassifiedTag> tags, int geometry) {
+        final List<Tag> result = new ArrayList<Tag>();
+        for (ClassifiedTag t : tags) {
+            final List<ClassifiedValue> classifiedValues =
+                    new ArrayList<ClassifiedValue>();
+            for (ClassifiedValue v : t.getClassifiedValues()) {
+                if (isAllowed(v, geometry)) {
+                    classifiedValues.add(v);
+                }
+            }
+            if (!classifiedValues.isEmpty()) {
+                result.add(new ClassifiedTag(t.getId(), t.getKey(),
+                        t.getType(), Collections
+                                .unmodifiableList(classifiedValues)));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return whether the value is allowed for the given geometry
+     */
+    private static boolean isAllowed(ClassifiedValue value, int geometry) {
+        switch (geometry) {
+        case NODE:
+            return value.canBeNode();
+        case WAY:
+            return value.canBeWay();
+        case AREA:
+            return value.canBeArea();
+        case BUILDING:
+            return value.canBeBuilding();
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Creates a catalog of the given tags.
+     * 
+     * @param tags
+     *            All tags of the catalog
+     * @return The catalog of the tags
+     */
+    static TagCatalog of(List<Tag> tags) {
+        return new TagCatalog(new ArrayList<Tag>(tags));
+    }
+
+    /**
+     * Reads the catalog from the keys and the values properties. Every line of
+     * the keys has the form {@code id,key}, every line of the values has the
+     * form {@code id,value,tagId} followed by the 13 boolean attributes of the
+     * value.
+     * 
+     * @param fixedTags
+     *            The tags which are not read from the properties
+     * @param keys
+     *            The reader of the keys
+     * @param values
+     *            The reader of the values
+     * @return The catalog of the fixed and the read tags
+     * @throws IOException
+     *             If a reader fails
+     */
+    static TagCatalog read(List<Tag> fixedTags, BufferedReader keys,
+            BufferedReader values) throws IOException {
+        final Map<Integer, String> keyById =
+                new LinkedHashMap<Integer, String>();
+        String line;
+        while ((line = keys.readLine()) != null) {
+            final String[] key = line.split(",");
+            keyById.put(Integer.parseInt(key[0]), key[1]);
+        }
+
+        final Map<Integer, List<ClassifiedValue>> valuesByTag =
+                new HashMap<Integer, List<ClassifiedValue>>();
+        for (Integer id : keyById.keySet()) {
+            valuesByTag.put(id, new ArrayList<ClassifiedValue>());
+        }
+        while ((line = values.readLine()) != null) {
+            final String[] s = line.split(",");
+            if (s.length != VALUE_COLUMNS) {
+                continue;
+            }
+            final Integer tagId = Integer.valueOf(s[2]);
+            final List<ClassifiedValue> tagValues = valuesByTag.get(tagId);
+            if (tagValues != null) {
+                tagValues.add(createValue(s, keyById.get(tagId)));
+            }
+        }
+
+        final List<Tag> tags = new ArrayList<Tag>(fixedTags);
+        for (Map.Entry<Integer, String> key : keyById.entrySet()) {
+            tags.add(new ClassifiedTag(key.getKey(), key.getValue(), -1,
+                    valuesByTag.get(key.getKey())));
+        }
+        return new TagCatalog(tags);
+    }
+
+    /**
+     * Creates a {@link ClassifiedValue} from a split line of the values.
+     * 
+     * @param s
+     *            The columns of the line
+     * @param key
+     *            The key of the tag of the value
+     * @return The value
+     */
+    private static ClassifiedValue createValue(String[] s, String key) {
+        final ClassifiedValue cv =
+                new ClassifiedValue(Integer.parseInt(s[0]), key, s[1]);
+        cv.setCanBeNode(Boolean.parseBoolean(s[3]));
+        cv.setCanBeWay(Boolean.parseBoolean(s[4]));
+        cv.setCanBeArea(Boolean.parseBoolean(s[5]));
+        cv.setCanBeBuilding(Boolean.parseBoolean(s[6]));
+        cv.setHasAddrStreet(Boolean.parseBoolean(s[7]));
+        cv.setHasAddrHousnumber(Boolean.parseBoolean(s[8]));
+        cv.setHasAddrPostcode(Boolean.parseBoolean(s[9]));
+        cv.setHasAddrCity(Boolean.parseBoolean(s[10]));
+        cv.setHasAddrCountry(Boolean.parseBoolean(s[11]));
+        cv.setHasContactPhone(Boolean.parseBoolean(s[12]));
+        cv.setHasContactFax(Boolean.parseBoolean(s[13]));
+        cv.setHasContactWebsite(Boolean.parseBoolean(s[14]));
+        cv.setHasContactEmail(Boolean.parseBoolean(s[15]));
+        return cv;
+    }
+
+    /**
+     * @return all tags of the catalog in the order they were read
+     */
+    List<Tag> getTags() {
+        return tags;
+    }
+
+    /**
+     * @return all classified tags of the catalog
+     */
+    List<ClassifiedTag> getClassifiedTags() {
+        return classifiedTags;
+    }
+
+    /**
+     * @return the classified tags with the values allowed for nodes
+     */
+    List<Tag> getNodeTags() {
+        return nodeTags;
+    }
+
+    /**
+     * @return the classified tags with the values allowed for ways
+     */
+    List<Tag> getWayTags() {
+        return wayTags;
+    }
+
+    /**
+     * @return the classified tags with the values allowed for areas
+     */
+    List<Tag> getAreaTags() {
+        return areaTags;
+    }
+
+    /**
+     * @return the classified tags with the values allowed for buildings
+     */
+    List<Tag> getBuildingTags() {
+        return buildingTags;
+    }
+
+    /**
+     * Returns the tag with the given id or the tag of the value with the given
+     * id.
+     * 
+     * @param id
+     *            The id of the tag or the value
+     * @return The tag or {@code null} if there is no such tag
+     */
+    Tag getTag(int id) {
+        return tagsById.get(id);
+    }
+
+    /**
+     * Returns the value with the given id.
+     * 
+     * @param id
+     *            The id of the value
+     * @return The value or {@code null} if there is no such value
+     */
+    ClassifiedValue getValue(int id) {
+        return valuesById.get(id);
+    }
+}
@@ -23,11 +23,9 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
+import android.content.res.Resources;
 import android.text.InputType;
 
 /**
@@ -55,9 +53,9 @@ public final class Tags {
     public static final int RESOURCE_TAG_VALUES = R.raw.tag_values;
 
     /**
-     * list of all classified and unclassified tags.
+     * unmodifiable list of all classified and unclassified tags.
      */
-    public static final List<Tag> TAG_LIST = new ArrayList<Tag>();
+    public static final List<Tag> TAG_LIST;
 
     /**
      * list of all address tags.
@@ -70,242 +68,118 @@ public final class Tags {
     public static final List<Tag> CONTACT_TAG_LIST = new ArrayList<Tag>();
 
     /**
-     * Private constructor.
+     * The indexed catalog of all tags.
      */
-    private Tags() {
-
-    }
+    private static final TagCatalog CATALOG;
 
     /**
-     * Reads all Tags from the properties.
-     * 
-     * @throws IOException
+     * Private constructor.
      */
-    private static void readTags() throws IOException {
-        for (int id : readKeys().keySet()) {
-            final String key = readKeys().get(id);
-            TAG_LIST.add(createClassifiedTag(id, key));
-        }
-    }
+    private Tags() {
 
-    /**
-     * Creates a new {@link ClassifiedTag} object loades all
-     * {@link ClassifiedValue} refering to the {@link ClassifiedTag} from the
-     * properties.
-     * 
-     * @param id
-     *            id of the {@link ClassifiedTag}.
-     * @param key
-     *            key of the {@link ClassifiedTag}.
-     * @return {@link Tag} object
-     * @throws IOException
-     */
-    private static Tag createClassifiedTag(int id, String key)
-            throws IOException {
-        final List<ClassifiedValue> classifiedValues =
-                new LinkedList<ClassifiedValue>();
-        for (String[] s : readValues()) {
-            if (s.length == 16 && s[2].equals(Integer.toString(id))) {
-                final ClassifiedValue cv =
-                        new ClassifiedValue(Integer.parseInt(s[0]), key, s[1]);
-                cv.setCanBeNode(Boolean.parseBoolean(s[3]));
-                cv.setCanBeWay(Boolean.parseBoolean(s[4]));
-                cv.setCanBeArea(Boolean.parseBoolean(s[5]));
-                cv.setCanBeBuilding(Boolean.parseBoolean(s[6]));
-                cv.setHasAddrStreet(Boolean.parseBoolean(s[7]));
-                cv.setHasAddrHousnumber(Boolean.parseBoolean(s[8]));
-                cv.setHasAddrPostcode(Boolean.parseBoolean(s[9]));
-                cv.setHasAddrCity(Boolean.parseBoolean(s[10]));
-                cv.setHasAddrCountry(Boolean.parseBoolean(s[11]));
-                cv.setHasContactPhone(Boolean.parseBoolean(s[12]));
-                cv.setHasContactFax(Boolean.parseBoolean(s[13]));
-                cv.setHasContactWebsite(Boolean.parseBoolean(s[14]));
-                cv.setHasContactEmail(Boolean.parseBoolean(s[15]));
-                classifiedValues.add(cv);
-            }
-        }
-        return new ClassifiedTag(id, key, -1, classifiedValues);
     }
 
     /**
-     * Reads all key from the file /res/raw/tag_keys.txt.
+     * Reads the catalog of all tags from the properties, each file is read
+     * once.
      * 
-     * @return {@link Map} with the id of the key and the value.
+     * @return the catalog of all tags
      * @throws IOException
+     *             if a property file cannot be read
      */
-    private static Map<Integer, String> readKeys() throws IOException {
-        final BufferedReader reader =
+    private static TagCatalog readCatalog() throws IOException {
+        final Resources resources =
+                Data4AllApplication.context.getResources();
+        final BufferedReader keys =
                 new BufferedReader(new InputStreamReader(
-                        Data4AllApplication.context.getResources()
-                                .openRawResource(RESOURCE_TAG_KEYS)));
-        final Map<Integer, String> keys = new HashMap<Integer, String>();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] key;
-            key = line.split(",");
-            keys.put(Integer.parseInt(key[0]), key[1]);
+                        resources.openRawResource(RESOURCE_TAG_KEYS)));
+        try {
+            final BufferedReader values =
+                    new BufferedReader(new InputStreamReader(
+                            resources.openRawResource(RESOURCE_TAG_VALUES)));
+            try {
+                final List<Tag> fixedTags = new ArrayList<Tag>();
+                fixedTags.addAll(ADDRESS_TAG_LIST);
+                fixedTags.addAll(CONTACT_TAG_LIST);
+                return TagCatalog.read(fixedTags, keys, values);
+            } finally {
+                values.close();
+            }
+        } finally {
+            keys.close();
         }
-        reader.close();
-        return keys;
     }
 
     /**
-     * Reads all values from the file /res/raw/tag_values.txt.
+     * Returns a Tag with the passed id. The id may also be the id of one of
+     * the values of the Tag.
      * 
-     * @return {@link List} of values.
-     * @throws IOException
+     * @param id
+     *            The ID of the Tag.
+     * @return tag object
      */
-    private static List<String[]> readValues() throws IOException {
-        final List<String[]> values = new ArrayList<String[]>();
-        final BufferedReader reader =
-                new BufferedReader(new InputStreamReader(
-                        Data4AllApplication.context.getResources()
-                                .openRawResource(RESOURCE_TAG_VALUES)));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] value;
-            value = line.split(",");
-            values.add(value);
+    public static Tag getTagWithId(int id) {
+        final Tag tag = CATALOG.getTag(id);
+        if (tag == null) {
+            Log.d(LOG_TAG, "getTagWithId() could not find tag with id: " + id);
         }
-        reader.close();
-        return values;
+        return tag;
     }
 
     /**
-     * Returns a Tag with the passed id.
+     * Returns the ClassifiedValue with the passed id.
      * 
      * @param id
-     *            The ID of the Tag.
-     * @return tag object
+     *            The ID of the ClassifiedValue.
+     * @return value object or {@code null} if there is no such value
      */
-    public static Tag getTagWithId(int id) {
-        for (Tag t : TAG_LIST) {
-            if (t.getId() == id) {
-                return t;
-            }
-            if (t instanceof ClassifiedTag) {
-                for (ClassifiedValue v : ((ClassifiedTag) t)
-                        .getClassifiedValues()) {
-                    if (v.getId() == id) {
-                        return t;
-                    }
-                }
-            }
-        }
-        Log.d(LOG_TAG, "getTagWithId() could not find tag with id: " + id);
-        return null;
+    public static ClassifiedValue getClassifiedValueWithId(int id) {
+        return CATALOG.getValue(id);
     }
 
     /**
-     * returns an ArrayList containing all classified and unclassified tags
-     * which are relevant for node objects.
+     * returns an unmodifiable list containing all classified tags which are
+     * relevant for node objects. The list is computed once.
      * 
      * @return tagList
      */
     public static List<Tag> getAllNodeTags() {
-        final List<Tag> result = new ArrayList<Tag>();
-        for (Tag t : TAG_LIST) {
-            final List<ClassifiedValue> classifiedValues =
-                    new ArrayList<ClassifiedValue>();
-            if (t instanceof ClassifiedTag) {
-                for (ClassifiedValue v : ((ClassifiedTag) t)
-                        .getClassifiedValues()) {
-                    if (v.canBeNode()) {
-                        classifiedValues.add(v);
-                    }
-                }
-            }
-            if (!classifiedValues.isEmpty()) {
-                result.add(new ClassifiedTag(t.getId(), t.getKey(),
-                        t.getType(), classifiedValues));
-            }
-        }
-        return result;
+        return CATALOG.getNodeTags();
     }
 
     /**
-     * returns an ArrayList containing all classified and unclassified tags
-     * which are relevant for way objects.
+     * returns an unmodifiable list containing all classified tags which are
+     * relevant for way objects. The list is computed once.
      * 
      * @return tagList
      */
     public static List<Tag> getAllWayTags() {
-        final List<Tag> result = new ArrayList<Tag>();
-        for (Tag t : TAG_LIST) {
-            final List<ClassifiedValue> classifiedValues =
-                    new ArrayList<ClassifiedValue>();
-            if (t instanceof ClassifiedTag) {
-                for (ClassifiedValue v : ((ClassifiedTag) t)
-                        .getClassifiedValues()) {
-                    if (v.canBeWay()) {
-                        classifiedValues.add(v);
-                    }
-                }
-            }
-            if (!classifiedValues.isEmpty()) {
-                result.add(new ClassifiedTag(t.getId(), t.getKey(),
-                        t.getType(), classifiedValues));
-            }
-        }
-        return result;
+        return CATALOG.getWayTags();
     }
 
     /**
-     * returns an ArrayList containing all classified and unclassified tags
-     * which are relevant for relation objects.
+     * returns an unmodifiable list containing all classified tags which are
+     * relevant for area objects. The list is computed once.
      * 
      * @return tagList
      */
     public static List<Tag> getAllAreaTags() {
-        final List<Tag> result = new ArrayList<Tag>();
-        for (Tag t : TAG_LIST) {
-            final List<ClassifiedValue> classifiedValues =
-                    new ArrayList<ClassifiedValue>();
-            if (t instanceof ClassifiedTag) {
-                for (ClassifiedValue v : ((ClassifiedTag) t)
-                        .getClassifiedValues()) {
-                    if (v.canBeArea()) {
-                        classifiedValues.add(v);
-                    }
-                }
-            }
-            if (!classifiedValues.isEmpty()) {
-                result.add(new ClassifiedTag(t.getId(), t.getKey(),
-                        t.getType(), classifiedValues));
-            }
-        }
-        return result;
+        return CATALOG.getAreaTags();
     }
 
     /**
-     * returns an ArrayList containing all classified and unclassified tags
-     * which are relevant for relation objects.
+     * returns an unmodifiable list containing all classified tags which are
+     * relevant for building objects. The list is computed once.
      * 
      * @return tagList
      */
     public static List<Tag> getAllBuildingTags() {
-        final List<Tag> result = new ArrayList<Tag>();
-        for (Tag t : TAG_LIST) {
-            final List<ClassifiedValue> classifiedValues =
-                    new ArrayList<ClassifiedValue>();
-            if (t instanceof ClassifiedTag) {
-                for (ClassifiedValue v : ((ClassifiedTag) t)
-                        .getClassifiedValues()) {
-                    if (v.canBeBuilding()) {
-                        classifiedValues.add(v);
-                    }
-                }
-            }
-            if (!classifiedValues.isEmpty()) {
-                result.add(new ClassifiedTag(t.getId(), t.getKey(),
-                        t.getType(), classifiedValues));
-            }
-        }
-        return result;
+        return CATALOG.getBuildingTags();
     }
 
     /**
-     * returns an ArrayList containing all classified and unclassified tags.
+     * returns an unmodifiable list containing all classified and unclassified
+     * tags.
      * 
      * @return tagList
      */
@@ -316,16 +190,10 @@ public final class Tags {
     /**
      * Returns all classified tags.
      * 
-     * @return list of all classified tags
+     * @return unmodifiable list of all classified tags
      */
     public static List<ClassifiedTag> getAllClassifiedTags() {
-        final List<ClassifiedTag> ct = new ArrayList<ClassifiedTag>();
-        for (Tag t : TAG_LIST) {
-            if (t instanceof ClassifiedTag) {
-                ct.add((ClassifiedTag) t);
-            }
-        }
-        return ct;
+        return CATALOG.getClassifiedTags();
     }
 
     /**
@@ -396,13 +264,18 @@ public final class Tags {
      * Reads the tags from the properties.
      */
     static {
+        TagCatalog read;
         try {
-            TAG_LIST.addAll(ADDRESS_TAG_LIST);
-            TAG_LIST.addAll(CONTACT_TAG_LIST);
-            readTags();
+            read = readCatalog();
         } catch (IOException e) {
             Log.e("Tags", "IOException:", e);
+            final List<Tag> fixedTags = new ArrayList<Tag>();
+            fixedTags.addAll(ADDRESS_TAG_LIST);
+            fixedTags.addAll(CONTACT_TAG_LIST);
+            read = TagCatalog.of(fixedTags);
         }
+        CATALOG = read;
+        TAG_LIST = CATALOG.getTags();
     }
 
 }
@@ -183,6 +183,18 @@ public class Track implements Parcelable {
         }
     }
 
+    /**
+     * Replaces the latest TrackPoint of this track.
+     * 
+     * @param point
+     *            The TrackPoint to replace the latest one with
+     */
+    public void replaceLastTrackPoint(TrackPoint point) {
+        if (!this.isFinished() && !tracklist.isEmpty()) {
+            tracklist.set(tracklist.size() - 1, point);
+        }
+    }
+
     public List<TrackPoint> getTrackPoints() {
         return new ArrayList<TrackPoint>(tracklist);
     }
@@ -15,6 +15,7 @@
  */
 package io.github.data4all.model.map;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.activity.AbstractActivity;
 import io.github.data4all.activity.MapPreviewActivity;
@@ -283,9 +284,15 @@ public class CustomInfoWindow extends BasicInfoWindow implements
         case DialogInterface.BUTTON_POSITIVE:
             // Yes button clicked
             mMapView.getOverlays().remove(overlay);
-            final DataBaseHandler db = new DataBaseHandler(activity);
-            db.deleteDataElement(element);
-            db.close();
+            final DataBaseHandler db =
+                    Data4AllApplication.getDataBaseHandler(activity);
+            final DataElement toDelete = element;
+            Data4AllApplication.executeDataBaseWrite(activity, new Runnable() {
+                @Override
+                public void run() {
+                    db.deleteDataElement(toDelete);
+                }
+            });
             mMapView.postInvalidate();
             close();
             break;
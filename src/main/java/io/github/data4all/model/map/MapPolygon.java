@@ -21,8 +21,8 @@ import io.github.data4all.activity.MapPreviewActivity;
 import io.github.data4all.activity.MapViewActivity;
 import io.github.data4all.logger.Log;
 import io.github.data4all.model.data.DataElement;
-import io.github.data4all.model.data.Node;
 import io.github.data4all.model.data.PolyElement;
+import io.github.data4all.util.LocalProjector;
 import io.github.data4all.util.MapUtil;
 import io.github.data4all.util.MathUtil;
 import io.github.data4all.view.D4AMapView;
@@ -39,7 +39,6 @@ import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Color;
 import android.graphics.Point;
-import android.location.Location;
 import android.preference.PreferenceManager;
 import android.view.MotionEvent;
 import android.view.View;
@@ -101,10 +100,10 @@ public class MapPolygon extends Polygon {
     private List<Point> startPos;
 
     /**
-     * List of the geopoints in a coordinate system with the center as the
-     * average of all Points.
+     * The geopoints as interleaved x and y values in a coordinate system with
+     * the center as the average of all Points.
      */
-    private List<double[]> pointCoords;
+    private double[] pointCoords;
 
     /**
      * the Parameter of the 3 start points to scale
@@ -112,9 +111,9 @@ public class MapPolygon extends Polygon {
     private float startPosParameter;
 
     /**
-     * Average of all Points saved as a Location.
+     * Projector into the coordinate system around the average of all Points.
      */
-    private Location midLocation;
+    private LocalProjector midProjector;
 
     /**
      * List of GeoPoints for editing the MapPolygon.
@@ -173,9 +172,7 @@ public class MapPolygon extends Polygon {
                     this.saveGeoPoints();
                     final GeoPoint mapCenter = (GeoPoint) mapView
                             .getMapCenter();
-                    this.oldMapcenter = MathUtil.calculateCoordFromGPS(
-                            midLocation, new Node(0, mapCenter.getLatitude(),
-                                    mapCenter.getLongitude()));
+                    this.oldMapcenter = this.toLocal(mapCenter);
                     startPos = new ArrayList<Point>();
                     startPos.add(new Point((int) event.getX(0), (int) event
                             .getY(0)));
@@ -285,31 +282,26 @@ public class MapPolygon extends Polygon {
         final Point endPoint = new Point((int) event.getX(0),
                 (int) event.getY(0));
         pj = mapView.getProjection();
-        final GeoPoint startGeo = (GeoPoint) pj.fromPixels(startPos.get(0).x,
-                startPos.get(0).y);
-        final double[] startCoord = MathUtil.calculateCoordFromGPS(midLocation,
-                new Node(0, startGeo.getLatitude(), startGeo.getLongitude()));
-        final GeoPoint endGeo = (GeoPoint) pj
-                .fromPixels(endPoint.x, endPoint.y);
-        final double[] endCoord = MathUtil.calculateCoordFromGPS(midLocation,
-                new Node(0, endGeo.getLatitude(), endGeo.getLongitude()));
+        final double[] startCoord = this.toLocal((GeoPoint) pj.fromPixels(
+                startPos.get(0).x, startPos.get(0).y));
+        final double[] endCoord = this.toLocal((GeoPoint) pj.fromPixels(
+                endPoint.x, endPoint.y));
         double x = endCoord[0] - startCoord[0];
         double y = endCoord[1] - startCoord[1];
         if (!moveMap) {
             x = -x;
             y = -y;
         }
-        final List<GeoPoint> returnList = new ArrayList<GeoPoint>();
-        for (double[] preCoord : pointCoords) {
-            final double[] returnCoord = { preCoord[0] + x, preCoord[1] + y, };
-            final Node node = MathUtil.calculateGPSPoint(midLocation,
-                    returnCoord);
-            returnList.add(new GeoPoint(node.getLat(), node.getLon()));
+        final double[] coords = new double[pointCoords.length];
+        for (int i = 0; i < coords.length; i += 2) {
+            coords[i] = pointCoords[i] + x;
+            coords[i + 1] = pointCoords[i + 1] + y;
         }
+        final List<GeoPoint> returnList = this.toGeoPoints(coords);
         final double[] returnCoord = { oldMapcenter[0] + x,
                 oldMapcenter[1] + y, };
-        final Node node = MathUtil.calculateGPSPoint(midLocation, returnCoord);
-        newMapcenter = new GeoPoint(node.getLat(), node.getLon());
+        midProjector.toGPS(returnCoord, returnCoord, 1);
+        newMapcenter = new GeoPoint(returnCoord[0], returnCoord[1]);
 
         this.setPoints(returnList);
         mapView.invalidate();
@@ -329,16 +321,12 @@ public class MapPolygon extends Polygon {
         endPos.add(new Point((int) event.getX(2), (int) event.getY(2)));
         final float scaleFactor = MathUtil.perimeter(endPos)
                 / startPosParameter;
-        geoPointList = new ArrayList<GeoPoint>();
-        // rotate all coordinates
-        for (double[] preCoord : pointCoords) {
-            final double[] coord = new double[2];
-            coord[0] = preCoord[0] * scaleFactor;
-            coord[1] = preCoord[1] * scaleFactor;
-            // transfer coordinates to gpsPoints
-            final Node node = MathUtil.calculateGPSPoint(midLocation, coord);
-            geoPointList.add(new GeoPoint(node.getLat(), node.getLon()));
+        // scale all coordinates
+        final double[] coords = new double[pointCoords.length];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = pointCoords[i] * scaleFactor;
         }
+        geoPointList = this.toGeoPoints(coords);
         // set the list with the changed points
         if ((MapUtil.getBoundingBoxForPointList(geoPointList)
                 .getDiagonalLengthInMeters() > 1 && scaleFactor < 1)
@@ -373,18 +361,15 @@ public class MapPolygon extends Polygon {
         final double radians2 = Math.atan2(deltaYStart, deltaXStart);
         final double radians = radians1 - radians2;
 
-        geoPointList = new ArrayList<GeoPoint>();
         // rotate all coordinates
-        for (double[] preCoord : pointCoords) {
-            final double[] coord = new double[2];
-            coord[1] = preCoord[1] * Math.cos(radians) - preCoord[0]
-                    * Math.sin(radians);
-            coord[0] = preCoord[1] * Math.sin(radians) + preCoord[0]
-                    * Math.cos(radians);
-            // transfer coordinates to gpsPoints
-            final Node node = MathUtil.calculateGPSPoint(midLocation, coord);
-            geoPointList.add(new GeoPoint(node.getLat(), node.getLon()));
+        final double cos = Math.cos(radians);
+        final double sin = Math.sin(radians);
+        final double[] coords = new double[pointCoords.length];
+        for (int i = 0; i < coords.length; i += 2) {
+            coords[i + 1] = pointCoords[i + 1] * cos - pointCoords[i] * sin;
+            coords[i] = pointCoords[i + 1] * sin + pointCoords[i] * cos;
         }
+        geoPointList = this.toGeoPoints(coords);
         // set the list with the changed points
         super.setPoints(geoPointList);
         mapView.invalidate();
@@ -411,18 +396,14 @@ public class MapPolygon extends Polygon {
             lon += geoPoint.getLongitude();
             i++;
         }
-        this.midLocation = new Location("provide");
-        this.midLocation.setLatitude(lat / i);
-        this.midLocation.setLongitude(lon / i);
-        this.pointCoords = new ArrayList<double[]>();
-        for (GeoPoint geoPoint : this.getPoints()) {
-            final double[] preCoord = MathUtil
-                    .calculateCoordFromGPS(
-                            midLocation,
-                            new Node(0, geoPoint.getLatitude(), geoPoint
-                                    .getLongitude()));
-            pointCoords.add(preCoord);
+        this.midProjector = new LocalProjector(lat / i, lon / i);
+        final List<GeoPoint> points = this.getPoints();
+        this.pointCoords = new double[points.size() * 2];
+        for (int j = 0; j < points.size(); j++) {
+            pointCoords[j * 2] = points.get(j).getLatitude();
+            pointCoords[j * 2 + 1] = points.get(j).getLongitude();
         }
+        midProjector.toLocal(pointCoords, pointCoords, points.size());
         final SharedPreferences prefs = PreferenceManager
                 .getDefaultSharedPreferences(activity);
         final Resources res = activity.getResources();
@@ -430,6 +411,39 @@ public class MapPolygon extends Polygon {
         this.moveMap = "Animate".equals(prefs.getString(key, null));
     }
 
+    /**
+     * Converts a GeoPoint into the coordinate system around the average of
+     * all Points.
+     * 
+     * @param geoPoint
+     *            the GeoPoint to convert
+     * @return the x and y value of the GeoPoint
+     */
+    private double[] toLocal(GeoPoint geoPoint) {
+        final double[] coord = { geoPoint.getLatitude(),
+                geoPoint.getLongitude(), };
+        midProjector.toLocal(coord, coord, 1);
+        return coord;
+    }
+
+    /**
+     * Converts interleaved x and y values of the coordinate system around the
+     * average of all Points into GeoPoints, the values are overwritten.
+     * 
+     * @param coords
+     *            the interleaved x and y values
+     * @return the GeoPoints
+     */
+    private List<GeoPoint> toGeoPoints(double[] coords) {
+        final int count = coords.length / 2;
+        midProjector.toGPS(coords, coords, count);
+        final List<GeoPoint> geoPoints = new ArrayList<GeoPoint>(count);
+        for (int i = 0; i < coords.length; i += 2) {
+            geoPoints.add(new GeoPoint(coords[i], coords[i + 1]));
+        }
+        return geoPoints;
+    }
+
     /**
      * Set whether the polygon is editable.
      * 
@@ -15,6 +15,7 @@
  */
 package io.github.data4all.preference;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.model.data.User;
@@ -90,9 +91,9 @@ public class CurrentUserPreference extends Preference {
      * Initializes the preference and loads the user.
      */
     private void init() {
-        final DataBaseHandler db = new DataBaseHandler(getContext());
+        final DataBaseHandler db =
+                Data4AllApplication.getDataBaseHandler(getContext());
         final List<User> allUser = db.getAllUser();
-        db.close();
         if (!allUser.isEmpty()) {
             this.user = allUser.get(0);
         }
@@ -102,9 +103,15 @@ public class CurrentUserPreference extends Preference {
      * Performs a logout for the current user.
      */
     private void logoutUser() {
-        final DataBaseHandler db = new DataBaseHandler(getContext());
-        db.deleteUser(this.user);
-        db.close();
+        final DataBaseHandler db =
+                Data4AllApplication.getDataBaseHandler(getContext());
+        final User toDelete = this.user;
+        Data4AllApplication.executeDataBaseWrite(getContext(), new Runnable() {
+            @Override
+            public void run() {
+                db.deleteUser(toDelete);
+            }
+        });
         this.user = null;
         this.notifyChanged();
     }
@@ -15,6 +15,7 @@
  */
 package io.github.data4all.service;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.logger.Log;
 import io.github.data4all.model.data.Track;
@@ -28,6 +29,7 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
@@ -36,6 +38,11 @@ import android.widget.Toast;
 /**
  * A service for listening for location changes.
  * 
+ * The location updates are requested with a {@link RecordingProfile} which is
+ * adapted to the measured speed, so the updates are backed off while the user
+ * stands still. The network provider is only used while GPS has no accurate
+ * fix and the wake lock is only held while the user moves.
+ * 
  * @author konermann, dahnken
  * 
  */
@@ -49,17 +56,46 @@ public class GPSservice extends Service implements LocationListener {
     private WakeLock wakeLock;
 
     /*
-     * the minimum of time after we get a new locationupdate in ms.
+     * the time in ms the speed has to stay low before the updates are backed
+     * off.
+     */
+    private static final long STATIONARY_DELAY = 60000;
+    /*
+     * the accuracy in meters a GPS fix needs to count as a lock.
      */
-    private static final long MIN_TIME = 1000;
+    private static final float LOCK_ACCURACY = 25;
     /*
-     * the minimum of Distance after we get a new locationupdate.
+     * the time in ms without an accurate GPS fix after the lock is lost in
+     * addition to the update interval.
      */
-    private static final float MIN_DISTANCE = 0;
+    private static final long LOCK_TIMEOUT = 10000;
 
     private TrackUtil trackUtil;
     private Track track;
 
+    private final Handler handler = new Handler();
+    private boolean hasGps;
+    private boolean hasNetwork;
+    private RecordingProfile profile = RecordingProfile.WALK;
+    // the time since the speed is low or 0 if the user moves
+    private long slowSince;
+    private boolean gpsLocked;
+    // the velocity of the estimate, reused for every location update
+    private final double[] velocity = new double[2];
+
+    // falls back to the network provider if no accurate GPS fix comes in
+    private final Runnable lockLost = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "GPS lock lost");
+            gpsLocked = false;
+            requestUpdates();
+        }
+    };
+
+    // the position of the last trackpoint, reused for every location update
+    private final Location lastKnownLoc = new Location("lastTrackPoint");
+
     @Override
     public void onCreate() {
         Log.d(TAG, "onCreate()");
@@ -68,22 +104,100 @@ public class GPSservice extends Service implements LocationListener {
         final PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
         wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK,
                 "MyWakelockTag");
+        // acquired and released with the profile, once is enough
+        wakeLock.setReferenceCounted(false);
         wakeLock.acquire();
 
         lmgr = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+        hasGps =
+                lmgr.getAllProviders().contains(LocationManager.GPS_PROVIDER);
+        hasNetwork =
+                lmgr.getAllProviders().contains(
+                        LocationManager.NETWORK_PROVIDER);
+        requestUpdates();
+
+        trackUtil = new TrackUtil(getApplicationContext());
+    }
 
-        if (lmgr.getAllProviders().contains(LocationManager.GPS_PROVIDER)) {
-            lmgr = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+    /**
+     * Requests the location updates of the current profile. The network
+     * provider is only requested while GPS is not locked.
+     */
+    private void requestUpdates() {
+        lmgr.removeUpdates(this);
+        final long minTime = profile.getMinTime();
+        final float minDistance = profile.getMinDistance();
+        if (hasGps) {
             // second value is minimum of time, third value is minimum of meters
-            lmgr.requestLocationUpdates(LocationManager.GPS_PROVIDER, MIN_TIME,
-                    MIN_DISTANCE, this);
+            lmgr.requestLocationUpdates(LocationManager.GPS_PROVIDER, minTime,
+                    minDistance, this);
         }
-
-        if (lmgr.getAllProviders().contains(LocationManager.NETWORK_PROVIDER)) {
+        if (hasNetwork && !gpsLocked) {
             lmgr.requestLocationUpdates(LocationManager.NETWORK_PROVIDER,
-                    MIN_TIME, MIN_DISTANCE, this);
+                    minTime, minDistance, this);
+        }
+    }
+
+    /**
+     * Adapts the profile to the speed of the user. A faster profile is used
+     * at once, the stationary profile only after the speed stayed low for
+     * {@link #STATIONARY_DELAY}.
+     * 
+     * @param loc
+     *            the new location
+     */
+    private void updateProfile(Location loc) {
+        final float speed;
+        if (loc.hasSpeed()) {
+            speed = loc.getSpeed();
+        } else {
+            Optimizer.currentVelocity(velocity);
+            speed = (float) Math.hypot(velocity[0], velocity[1]);
+        }
+        RecordingProfile next = RecordingProfile.select(speed, profile);
+        if (next == RecordingProfile.STATIONARY) {
+            if (slowSince == 0) {
+                slowSince = loc.getTime();
+            }
+            if (loc.getTime() - slowSince < STATIONARY_DELAY) {
+                // keep the slowest moving profile until the delay passed
+                next = RecordingProfile.WALK.compareTo(profile) < 0
+                        ? RecordingProfile.WALK : profile;
+            }
+        } else {
+            slowSince = 0;
+        }
+        if (next != profile) {
+            Log.d(TAG, "switching to profile " + next);
+            profile = next;
+            if (profile == RecordingProfile.STATIONARY) {
+                wakeLock.release();
+            } else {
+                wakeLock.acquire();
+            }
+            requestUpdates();
+        }
+    }
+
+    /**
+     * Tracks whether GPS delivers accurate fixes. While it does, the network
+     * provider is not needed.
+     * 
+     * @param loc
+     *            the new location
+     */
+    private void updateLock(Location loc) {
+        if (!LocationManager.GPS_PROVIDER.equals(loc.getProvider())
+                || !loc.hasAccuracy() || loc.getAccuracy() > LOCK_ACCURACY) {
+            return;
+        }
+        handler.removeCallbacks(lockLost);
+        handler.postDelayed(lockLost, profile.getMinTime() + LOCK_TIMEOUT);
+        if (!gpsLocked) {
+            Log.d(TAG, "GPS locked");
+            gpsLocked = true;
+            requestUpdates();
         }
-        trackUtil = new TrackUtil(getApplicationContext());
     }
 
     /*
@@ -107,11 +221,11 @@ public class GPSservice extends Service implements LocationListener {
         super.onDestroy();
 
         // Remove registration for location updates
+        handler.removeCallbacks(lockLost);
         lmgr.removeUpdates(this);
 
-        if (track != null && !track.isFinished()) {
-            trackUtil.updateTrack(track);
-        }
+        // Every trackpoint is already persisted while recording
+        trackUtil.closeRecording();
 
         wakeLock.release();
 
@@ -126,38 +240,48 @@ public class GPSservice extends Service implements LocationListener {
      */
     @Override
     public void onLocationChanged(Location loc) {
-        track = trackUtil.getLastTrack();
         if (loc != null) {
             Optimizer.putLoc(loc);
+            updateLock(loc);
+            updateProfile(loc);
         }
+        track = trackUtil.getActiveTrack();
 
         if (track != null) {
 
+            // the estimate fused from all fixes so far
             final Location tp = Optimizer.currentBestLoc();
+            if (tp == null) {
+                return;
+            }
 
             final TrackPoint last = track.getLastTrackPoint();
 
-            final Location lastKnownLoc = new Location("lastTrackPoint");
-
             if (last != null) {
                 lastKnownLoc.setAltitude(last.getAlt());
                 lastKnownLoc.setLatitude(last.getLat());
                 lastKnownLoc.setLongitude(last.getLon());
+            } else {
+                lastKnownLoc.setAltitude(0);
+                lastKnownLoc.setLatitude(0);
+                lastKnownLoc.setLongitude(0);
             }
 
             final float distanceCovered = lastKnownLoc.distanceTo(tp);
 
             // check if new Location is already stored
-            if (distanceCovered >= 5.0) {
-                // track.addTrackPoint(tp);
-                trackUtil.addPointToTrack(track, tp);
-
-                trackUtil.updateTrack(track);
-                
-                // send a broadcast to update mapview with current track
-                Intent i = new Intent("trackpoint_updated");
+            if (distanceCovered >= 5.0
+                    && trackUtil.appendPointToTrack(track, tp)) {
+                // send a broadcast to update mapview with current track, queued
+                // behind the write of the point
+                final Intent i = new Intent("trackpoint_updated");
                 i.putExtra("id", track.getID());
-                sendBroadcast(i);
+                Data4AllApplication.executeDataBaseWrite(this, new Runnable() {
+                    @Override
+                    public void run() {
+                        sendBroadcast(i);
+                    }
+                });
 
             }
         }
@@ -195,8 +319,9 @@ public class GPSservice extends Service implements LocationListener {
     @Override
     public void onProviderDisabled(String provider) {
         // Remove registration for location updates
+        handler.removeCallbacks(lockLost);
         lmgr.removeUpdates(this);
-        trackUtil.updateTrack(track);
+        trackUtil.closeRecording();
         trackUtil.deleteEmptyTracks();
 
         Toast.makeText(getBaseContext(), R.string.noLocationFound,
@@ -32,7 +32,12 @@ import android.support.v4.content.LocalBroadcastManager;
 
 /**
  * A service for listening for orientation changes. Whenever the sensor changes
- * the accelerometer and magnetic field values are checked out.
+ * the accelerometer and magnetic field values are checked out. If the device
+ * has a rotation vector sensor, its already fused values are used instead.
+ * 
+ * The sensor values are processed in preallocated buffers, so a sensor event
+ * allocates nothing. The orientation is published to the {@link Optimizer}
+ * for other threads.
  * 
  * @author Steeve
  * @author sbollen
@@ -51,6 +56,8 @@ public class OrientationListener extends Service implements SensorEventListener
     private Sensor accelerometer;
     /** sensor magnetic_field. */
     private Sensor magnetometer;
+    /** sensor rotation_vector, null if the device does not have one. */
+    private Sensor rotationSensor;
     /** sensorManager. */
     private SensorManager sManager;
 
@@ -65,6 +72,9 @@ public class OrientationListener extends Service implements SensorEventListener
     // Array length for mR and mI
     private static final int LENGTH = 16;
 
+    // Maximum array length for getRotationMatrixFromVector
+    private static final int ROTATION_VECTOR_LENGTH = 4;
+
     // last index for orientation
     private static final int LAST_INDEX = 2;
 
@@ -78,6 +88,11 @@ public class OrientationListener extends Service implements SensorEventListener
     private float[] mGeomagnetic = new float[ARRAYLENGTH];
     // orientation values
     private float[] orientation = new float[ARRAYLENGTH];
+    // rotation vector sensor data of devices which deliver too many values
+    private float[] rotationVector = new float[ROTATION_VECTOR_LENGTH];
+    // whether mGravity and mGeomagnetic hold sensor data
+    private boolean hasGravity;
+    private boolean hasGeomagnetic;
 
     public static final String BROADCAST_CAMERA = "broadcastToCamera";
     public static final String INTENT_CAMERA_UPDATE = "update";
@@ -97,15 +112,21 @@ public class OrientationListener extends Service implements SensorEventListener
     @Override
     public void onCreate() {
         sManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        accelerometer = sManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        magnetometer = sManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-
-        sManager.registerListener(this,
-                sManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-                SensorManager.SENSOR_DELAY_NORMAL);
-        sManager.registerListener(this,
-                sManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD),
-                SensorManager.SENSOR_DELAY_NORMAL);
+        rotationSensor = sManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        if (rotationSensor != null) {
+            Log.i(TAG, "Using the rotation vector sensor");
+            sManager.registerListener(this, rotationSensor,
+                    SensorManager.SENSOR_DELAY_NORMAL);
+        } else {
+            accelerometer =
+                    sManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            magnetometer =
+                    sManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+            sManager.registerListener(this, accelerometer,
+                    SensorManager.SENSOR_DELAY_NORMAL);
+            sManager.registerListener(this, magnetometer,
+                    SensorManager.SENSOR_DELAY_NORMAL);
+        }
     }
 
     /*
@@ -132,48 +153,75 @@ public class OrientationListener extends Service implements SensorEventListener
      */
     @Override
     public void onSensorChanged(SensorEvent event) {
+        final int type = event.sensor.getType();
+        if (type == Sensor.TYPE_ROTATION_VECTOR) {
+            float[] values = event.values;
+            if (values.length > ROTATION_VECTOR_LENGTH) {
+                // some devices deliver more values than the method accepts
+                System.arraycopy(values, 0, rotationVector, 0,
+                        ROTATION_VECTOR_LENGTH);
+                values = rotationVector;
+            }
+            SensorManager.getRotationMatrixFromVector(mR, values);
+            // the rotation vector is already fused and filtered
+            this.publishOrientation();
+            return;
+        }
 
-        // check sensor type
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            // smoothing sensor data
-            mGravity = smoothing.filter(event.values.clone(), mGravity);
-            System.arraycopy(event.values, 0, mGravity, 0, ARRAYLENGTH);
-        } else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            // smooting sensor data
-            mGeomagnetic = smoothing.filter(event.values.clone(), mGeomagnetic);
-            System.arraycopy(event.values, 0, mGeomagnetic, 0, ARRAYLENGTH);
+        // check sensor type and smooth the sensor data in place
+        if (type == Sensor.TYPE_ACCELEROMETER) {
+            if (hasGravity) {
+                smoothing.filter(event.values, mGravity);
+            } else {
+                System.arraycopy(event.values, 0, mGravity, 0, ARRAYLENGTH);
+                hasGravity = true;
+            }
+        } else if (type == Sensor.TYPE_MAGNETIC_FIELD) {
+            if (hasGeomagnetic) {
+                smoothing.filter(event.values, mGeomagnetic);
+            } else {
+                System.arraycopy(event.values, 0, mGeomagnetic, 0,
+                        ARRAYLENGTH);
+                hasGeomagnetic = true;
+            }
         }
 
         // when the 2 sensors data are available
-        if (mGravity != null && mGeomagnetic != null) {
-
-            final boolean success =
-                    SensorManager.getRotationMatrix(mR, mI, mGravity,
-                            mGeomagnetic);
-
-            if (success) {
-                SensorManager.getOrientation(mR, orientation);
-
-                if (event.accuracy >= 1) {
-
-                    // saving the new model with the orientation in the
-                    // RingBuffer
-                    deviceOrientation =
-                            new DeviceOrientation(orientation[0],
-                                    orientation[1], orientation[LAST_INDEX],
-                                    System.currentTimeMillis());
-                    Optimizer.putDevOrient(deviceOrientation);
-
-                    if (horizonListener != null) {
-                        horizonListener.makeHorizon(true);
-                    }
-
-                }
-
-            }
+        if (hasGravity && hasGeomagnetic && event.accuracy >= 1
+                && SensorManager.getRotationMatrix(mR, mI, mGravity,
+                        mGeomagnetic)) {
+            this.publishOrientation();
+        }
+    }
 
+    /**
+     * Calculates the orientation from the rotation matrix, publishes it to
+     * the {@link Optimizer} and notifies the HorizonListener.
+     */
+    private void publishOrientation() {
+        SensorManager.getOrientation(mR, orientation);
+        final long time = System.currentTimeMillis();
+
+        // saving the new orientation in the buffer of the Optimizer
+        Optimizer.putDevOrient(orientation[0], orientation[1],
+                orientation[LAST_INDEX], time);
+
+        // the own orientation is only used on this thread, so it is updated
+        // in place
+        if (deviceOrientation == null) {
+            deviceOrientation =
+                    new DeviceOrientation(orientation[0], orientation[1],
+                            orientation[LAST_INDEX], time);
+        } else {
+            deviceOrientation.setAzimuth(orientation[0]);
+            deviceOrientation.setPitch(orientation[1]);
+            deviceOrientation.setRoll(orientation[LAST_INDEX]);
+            deviceOrientation.setTimestamp(time);
         }
 
+        if (horizonListener != null) {
+            horizonListener.makeHorizon(true);
+        }
     }
 
     /*
@@ -182,8 +230,7 @@ public class OrientationListener extends Service implements SensorEventListener
      */
     @Override
     public void onDestroy() {
-        sManager.unregisterListener(this, accelerometer);
-        sManager.unregisterListener(this, magnetometer);
+        sManager.unregisterListener(this);
         Log.i(TAG, "Service Destroyed");
     }
 
@@ -196,6 +243,14 @@ public class OrientationListener extends Service implements SensorEventListener
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
 
+        if (sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
+            // the rotation vector depends on both sensors
+            Log.d(TAG, "The sensor: " + sensor.getName()
+                    + " has now the accuracy of " + accuracy);
+            accOk = accuracy;
+            magOk = accuracy;
+        }
+
         if (sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
             if (accuracy < SensorManager.SENSOR_STATUS_ACCURACY_HIGH) {
                 Log.d(TAG, "The sensor: " + sensor.getName()
@@ -316,6 +371,13 @@ public class OrientationListener extends Service implements SensorEventListener
         this.horizonListener = horizonListener;
     }
 
+    /**
+     * Returns the current orientation. The object is updated in place on the
+     * main thread, other threads should use
+     * {@link Optimizer#currentDeviceOrientation()}.
+     * 
+     * @return the current orientation or {@code null} if there is none yet
+     */
     public DeviceOrientation getDeviceOrientation() {
         return deviceOrientation;
     }
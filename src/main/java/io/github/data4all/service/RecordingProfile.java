@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.service;
+
+/**
+ * The profiles the location updates are requested with while a track is
+ * recorded. Each profile covers a range of speeds, the faster the user moves
+ * the more often the location is requested.
+ * 
+ * The profiles are ordered by their speed, so a change of the speed moves the
+ * profile up or down step by step.
+ */
+public enum RecordingProfile {
+    /**
+     * The user does not move, the updates are backed off sharply. There is no
+     * minimum distance, so the first fix after the user starts moving again
+     * arrives within one interval and raises the profile.
+     */
+    STATIONARY(30000, 0, 0.5f),
+    /**
+     * The user walks.
+     */
+    WALK(2000, 2, 2.5f),
+    /**
+     * The user rides a bicycle.
+     */
+    CYCLE(1000, 3, 7f),
+    /**
+     * The user drives a car.
+     */
+    DRIVE(1000, 5, Float.MAX_VALUE);
+
+    /**
+     * The factor of the upper speed of the next slower profile below which
+     * the profile is lowered, this prevents flapping between two profiles.
+     */
+    private static final float HYSTERESIS = 0.8f;
+
+    private static final RecordingProfile[] PROFILES = values();
+
+    private final long minTime;
+    private final float minDistance;
+    private final float maxSpeed;
+
+    /**
+     * @param minTime
+     *            the minimum time between two updates in milliseconds
+     * @param minDistance
+     *            the minimum distance between two updates in meters
+     * @param maxSpeed
+     *            the highest speed in m/s this profile is used for
+     */
+    private RecordingProfile(long minTime, float minDistance, float maxSpeed) {
+        this.minTime = minTime;
+        this.minDistance = minDistance;
+        this.maxSpeed = maxSpeed;
+    }
+
+    /**
+     * @return the minimum time between two updates in milliseconds
+     */
+    public long getMinTime() {
+        return minTime;
+    }
+
+    /**
+     * @return the minimum distance between two updates in meters
+     */
+    public float getMinDistance() {
+        return minDistance;
+    }
+
+    /**
+     * @return the highest speed in m/s this profile is used for
+     */
+    public float getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    /**
+     * Selects the profile for the given speed starting from the current
+     * profile. A slower profile is only selected if the speed is clearly
+     * below its upper speed.
+     * 
+     * @param speed
+     *            the measured speed in m/s
+     * @param current
+     *            the current profile
+     * @return the profile for the speed
+     */
+    public static RecordingProfile select(float speed,
+            RecordingProfile current) {
+        int index = current.ordinal();
+        while (index < PROFILES.length - 1
+                && speed > PROFILES[index].maxSpeed) {
+            index++;
+        }
+        while (index > 0 && speed < PROFILES[index - 1].maxSpeed * HYSTERESIS) {
+            index--;
+        }
+        return PROFILES[index];
+    }
+}
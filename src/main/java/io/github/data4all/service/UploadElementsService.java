@@ -15,17 +15,19 @@
  */
 package io.github.data4all.service;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.handler.CapturePictureHandler;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.logger.Log;
 import io.github.data4all.model.data.User;
+import io.github.data4all.util.oauth.exception.OsmChangesetClosedException;
 import io.github.data4all.util.oauth.exception.OsmException;
 import io.github.data4all.util.upload.Callback;
 import io.github.data4all.util.upload.ChangesetUtil;
+import io.github.data4all.util.upload.ChunkedChangesetUpload;
 import io.github.data4all.util.upload.CloseableCloseRequest;
 import io.github.data4all.util.upload.CloseableRequest;
-import io.github.data4all.util.upload.CloseableUpload;
 import io.github.data4all.util.upload.HttpCloseable;
 
 import java.io.File;
@@ -128,9 +130,9 @@ public class UploadElementsService extends IntentService {
         if (intent != null && intent.getIntExtra(ACTION, 0) == UPLOAD) {
             final ResultReceiver receiver = intent.getParcelableExtra(HANDLER);
             final String comment = intent.getStringExtra(CHANGESET_COMMENT);
-            final DataBaseHandler db = new DataBaseHandler(this);
+            final DataBaseHandler db =
+                    Data4AllApplication.getDataBaseHandler(this);
             final List<User> users = db.getAllUser();
-            db.close();
             if (users != null && !users.isEmpty()) {
                 final User user = users.get(0);
                 this.uploadElems(receiver, user, comment);
@@ -152,30 +154,30 @@ public class UploadElementsService extends IntentService {
             final String comment) {
         try {
             this.startForeground(user);
-            int requestId = 0;
-            if (!stopNext) {
-                // Request the changesetId
-                final CloseableRequest request =
-                        ChangesetUtil.requestId(user, comment);
-                this.currentConnection = request;
-                requestId = request.request();
+            final DataBaseHandler db =
+                    Data4AllApplication.getDataBaseHandler(this);
+
+            // Continue an interrupted upload in its changeset
+            int requestId = (int) db.getUploadChangesetId();
+            final boolean resumed = requestId != DataBaseHandler.NO_UPLOAD;
+            if (!resumed && !stopNext) {
+                requestId = this.requestChangeset(user, comment);
             }
 
-            String changesetXml = null;
+            ChunkedChangesetUpload upload = null;
             if (!stopNext) {
-                changesetXml = ChangesetUtil.getChangesetXml(this, requestId);
-                Log.d(TAG, changesetXml.replaceAll("\n", ""));
+                upload =
+                        new ChunkedChangesetUpload(user, db, new MyCallback(
+                                receiver));
+                currentMaxProgress = upload.getTotalSize();
+                Log.d(TAG, "elements to upload: " + currentMaxProgress);
             }
             if (!stopNext) {
                 // Upload the changeset
-                currentMaxProgress = changesetXml.length();
                 send(receiver, MAX_PROGRESS, currentMaxProgress);
-                final CloseableUpload upload =
-                        ChangesetUtil.upload(user, requestId, changesetXml,
-                                new MyCallback(receiver));
-                this.currentConnection = upload;
-                upload.upload();
-
+                requestId =
+                        this.uploadChunks(upload, requestId, !resumed, user,
+                                comment);
             }
             if (!stopNext) {
                 // Close the changeset
@@ -185,6 +187,7 @@ public class UploadElementsService extends IntentService {
                 closeId.request();
             }
             if (!stopNext) {
+                db.deleteUploadCheckpoint();
                 this.stopForeground(SUCCESS);
                 send(receiver, SUCCESS, (Bundle) null);
                 deleteImages();
@@ -199,6 +202,81 @@ public class UploadElementsService extends IntentService {
         }
     }
 
+    /**
+     * Uploads the chunks of the given upload. Whenever the changeset is full,
+     * it is closed and the remaining chunks are uploaded into a new one. A
+     * changeset which was closed in the meantime is replaced as well, unless
+     * it was just requested and nothing could be uploaded into it.
+     * 
+     * @param upload
+     *            The upload to continue
+     * @param changesetId
+     *            The id of the changeset to upload to first
+     * @param requested
+     *            Whether the changeset was just requested for this upload
+     * @param user
+     *            The User to upload for
+     * @param comment
+     *            The comment of further Changesets
+     * @return The id of the changeset the last chunk was uploaded to
+     * @throws OsmException
+     *             In case of problems with the upload
+     */
+    private int uploadChunks(ChunkedChangesetUpload upload, int changesetId,
+            boolean requested, User user, String comment) throws OsmException {
+        int requestId = changesetId;
+        boolean fresh = requested;
+        while (!stopNext) {
+            final int before = upload.getUploadedSize();
+            this.currentConnection = upload;
+            try {
+                upload.upload(requestId);
+            } catch (OsmChangesetClosedException e) {
+                if (stopNext || (fresh && upload.getUploadedSize() == before)) {
+                    throw e;
+                }
+                // The changeset was closed in the meantime, the remaining
+                // chunks need a new one
+                Log.i(TAG, "changeset " + requestId + " is closed");
+                requestId = this.requestChangeset(user, comment);
+                fresh = true;
+                continue;
+            }
+            if (stopNext || upload.isFinished()) {
+                break;
+            }
+            // The changeset is full
+            Log.i(TAG, "changeset " + requestId + " is full");
+            final CloseableCloseRequest closeId =
+                    ChangesetUtil.closeId(user, requestId);
+            this.currentConnection = closeId;
+            closeId.request();
+            if (!stopNext) {
+                requestId = this.requestChangeset(user, comment);
+                fresh = true;
+            }
+        }
+        return requestId;
+    }
+
+    /**
+     * Requests a new Changeset ID from the OSM API.
+     * 
+     * @param user
+     *            The User to request the Changeset for
+     * @param comment
+     *            The comment of the Changeset
+     * @return The Changeset ID
+     * @throws OsmException
+     *             If the Changeset ID cannot be requested
+     */
+    private int requestChangeset(User user, String comment)
+            throws OsmException {
+        final CloseableRequest request = ChangesetUtil.requestId(user, comment);
+        this.currentConnection = request;
+        return request.request();
+    }
+
     /**
      * Deletes all images in the "Data4All" folder, where the 'single-mode'
      * images where saved.
@@ -345,9 +423,10 @@ public class UploadElementsService extends IntentService {
      */
     private class MyCallback implements Callback<Integer> {
         /**
-         * The interval for the callback method.
+         * The number of progress steps, the progress is reported at most once
+         * per step. The stream of the upload limits the callbacks in time.
          */
-        private static final int CALLBACK_INTERVAL = 100;
+        private static final int PROGRESS_STEPS = 100;
 
         /**
          * The receiver for the activity callback.
@@ -382,7 +461,7 @@ public class UploadElementsService extends IntentService {
          */
         @Override
         public int interval() {
-            return CALLBACK_INTERVAL;
+            return Math.max(1, currentMaxProgress / PROGRESS_STEPS);
         }
     }
 }
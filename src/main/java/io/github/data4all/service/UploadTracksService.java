@@ -15,6 +15,7 @@
  */
 package io.github.data4all.service;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.R;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.logger.Log;
@@ -119,9 +120,9 @@ public class UploadTracksService extends IntentService {
         if (intent != null && intent.getIntExtra(ACTION, 0) == UPLOAD) {
             Log.d(TAG, "upload track service started");
             final ResultReceiver receiver = intent.getParcelableExtra(HANDLER);
-            final DataBaseHandler db = new DataBaseHandler(this);
+            final DataBaseHandler db =
+                    Data4AllApplication.getDataBaseHandler(this);
             final User user = db.getAllUser().get(0);
-            db.close();
             this.uploadGpsTracks(receiver, user);
             stopNext = false;
         }
@@ -137,9 +138,9 @@ public class UploadTracksService extends IntentService {
             this.startForeground(user);
             List<Track> gpsTracks = null;
             if (!stopNext) {
-                final DataBaseHandler db = new DataBaseHandler(this);
+                final DataBaseHandler db =
+                        Data4AllApplication.getDataBaseHandler(this);
                 gpsTracks = db.getAllGPSTracks();
-                db.close();
             }
 
             if (!stopNext) {
@@ -310,10 +311,16 @@ public class UploadTracksService extends IntentService {
      */
     private class MyCallback implements Callback<Integer> {
         /**
-         * The interval for the callback method.
+         * The minimum interval for the callback method.
          */
         private static final int CALLBACK_INTERVAL = 100;
 
+        /**
+         * The number of progress steps, the progress is reported at most once
+         * per step.
+         */
+        private static final int PROGRESS_STEPS = 100;
+
         /**
          * The receiver for the activity callback.
          */
@@ -347,7 +354,8 @@ public class UploadTracksService extends IntentService {
          */
         @Override
         public int interval() {
-            return CALLBACK_INTERVAL;
+            return Math.max(CALLBACK_INTERVAL, currentMaxProgress
+                    / PROGRESS_STEPS);
         }
     }
 }
@@ -40,17 +40,15 @@ public class BasicSensorSmoother implements SensorSmoother {
      */
     @Override
     public float[] filter(float[] input, float[] output) {
-        final float[] filteredValues = new float[3];
         if (output == null) {
             return input;
         }
         if (input != null) {
-            for (int i = 0; i < input.length; i++) {
-                filteredValues[i] = output[i] + ALPHA * (input[i] - output[i]);
+            final int length = Math.min(input.length, output.length);
+            for (int i = 0; i < length; i++) {
+                output[i] = output[i] + ALPHA * (input[i] - output[i]);
             }
-        } else {
-            return output;
         }
-        return filteredValues;
+        return output;
     }
 }
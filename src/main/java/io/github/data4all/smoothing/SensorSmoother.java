@@ -24,13 +24,14 @@ public interface SensorSmoother {
 
     /**
      * This method filters the input values, applies low pass filter and outputs
-     * the filtered signals.
+     * the filtered signals. The output array is updated in place, so
+     * filtering allocates nothing.
      * 
      * @param input
      *            The input values
      * @param output
-     *            The output values
-     * @return The filtered data
+     *            The previously filtered values, replaced by the new ones
+     * @return The filtered data, the output array if it is not {@code null}
      */
     float[] filter(float[] input, float[] output);
 }
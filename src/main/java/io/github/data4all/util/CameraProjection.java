@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import io.github.data4all.model.DeviceOrientation;
+import io.github.data4all.model.data.TransformationParamBean;
+
+/**
+ * The projection between the pixels of the camera picture and the local
+ * coordinates on the ground for one pose of the camera. The rotations for the
+ * azimuth, pitch and roll of the {@link DeviceOrientation} are combined once,
+ * afterwards every point costs a few multiplications and no allocation.
+ * 
+ * Points are passed as arrays of interleaved x and y values and are
+ * transformed in place.
+ * 
+ * @see PointToCoordsTransformUtil
+ */
+public final class CameraProjection {
+    private static final double[] X_AXIS = { 1, 0, 0, };
+    private static final double[] Y_AXIS = { 0, 1, 0, };
+
+    private final double height;
+    private final int photoWidth;
+    private final int photoHeight;
+    private final double verticalViewAngle;
+    private final double horizontalViewAngle;
+    private final float azimuth;
+    private final float pitch;
+    private final float roll;
+
+    /**
+     * The distance of the picture plane in pixels for the x- and the y-axis.
+     */
+    private final double adjacentX;
+    private final double adjacentY;
+
+    /**
+     * The rotation of a view ray of the camera into the local system without
+     * the azimuth, which does not change the intersection with the ground.
+     */
+    private final double[] toGround = new double[9];
+    private final double azimuthCos;
+    private final double azimuthSin;
+
+    /**
+     * The rotation of a local coordinate into the system of the camera.
+     */
+    private final double[] toCamera = new double[9];
+
+    /**
+     * Constructs the projection for the given camera parameters and pose.
+     * 
+     * @param tps
+     *            the parameters of the camera
+     * @param deviceOrientation
+     *            the orientation of the device
+     */
+    public CameraProjection(TransformationParamBean tps,
+            DeviceOrientation deviceOrientation) {
+        this.height = tps.getHeight();
+        this.photoWidth = tps.getPhotoWidth();
+        this.photoHeight = tps.getPhotoHeight();
+        this.verticalViewAngle = tps.getCameraMaxVerticalViewAngle();
+        this.horizontalViewAngle = tps.getCameraMaxHorizontalViewAngle();
+        this.azimuth = deviceOrientation.getAzimuth();
+        this.pitch = deviceOrientation.getPitch();
+        this.roll = deviceOrientation.getRoll();
+
+        adjacentX = (photoWidth / 2.0) / Math.tan(verticalViewAngle / 2);
+        adjacentY = (photoHeight / 2.0) / Math.tan(horizontalViewAngle / 2);
+
+        // pitch around the x-axis, then roll around the pitched y-axis
+        final double groundPitch = -pitch;
+        final double[] rollAxis =
+                { 0, Math.cos(groundPitch), Math.sin(groundPitch), };
+        final double[] pitchMatrix = new double[9];
+        MathUtil.rotationMatrix(X_AXIS, groundPitch, pitchMatrix);
+        MathUtil.rotationMatrix(rollAxis, roll, toGround);
+        MathUtil.multiply(toGround, pitchMatrix, toGround);
+        azimuthCos = Math.cos(-azimuth);
+        azimuthSin = Math.sin(-azimuth);
+
+        // azimuth around the z-axis, then pitch and roll
+        final double[] azimuthMatrix = {
+                Math.cos(azimuth), -Math.sin(azimuth), 0,
+                Math.sin(azimuth), Math.cos(azimuth), 0,
+                0, 0, 1, };
+        final double[] rollMatrix = new double[9];
+        MathUtil.rotationMatrix(X_AXIS, pitch, pitchMatrix);
+        MathUtil.rotationMatrix(Y_AXIS, -roll, rollMatrix);
+        MathUtil.multiply(pitchMatrix, azimuthMatrix, toCamera);
+        MathUtil.multiply(rollMatrix, toCamera, toCamera);
+    }
+
+    /**
+     * Checks whether this projection was built from the same values as the
+     * given camera parameters and pose, so it can be reused.
+     * 
+     * @param tps
+     *            the parameters of the camera
+     * @param deviceOrientation
+     *            the orientation of the device
+     * @return {@code true} if the projection matches
+     */
+    public boolean matches(TransformationParamBean tps,
+            DeviceOrientation deviceOrientation) {
+        return height == tps.getHeight()
+                && photoWidth == tps.getPhotoWidth()
+                && photoHeight == tps.getPhotoHeight()
+                && verticalViewAngle == tps.getCameraMaxVerticalViewAngle()
+                && horizontalViewAngle == tps
+                        .getCameraMaxHorizontalViewAngle()
+                && azimuth == deviceOrientation.getAzimuth()
+                && pitch == deviceOrientation.getPitch()
+                && roll == deviceOrientation.getRoll();
+    }
+
+    /**
+     * Transforms pixels of the picture into local coordinates in meters on
+     * the ground. A pixel above the horizon becomes the origin.
+     * 
+     * @param points
+     *            the interleaved x and y values of the pixels, replaced by the
+     *            local coordinates
+     * @param count
+     *            the number of points
+     */
+    public void pixelsToCoords(double[] points, int count) {
+        final double[] m = toGround;
+        final double halfWidth = photoWidth / 2.0;
+        final double halfHeight = photoHeight / 2.0;
+        for (int i = 0; i < count * 2; i += 2) {
+            // the view ray without any rotation (faced to the ground and the
+            // north)
+            final double x = (points[i] - halfWidth) / adjacentX;
+            final double y = -((points[i + 1] - halfHeight) / adjacentY);
+            final double rayX = m[0] * x + m[1] * y - m[2];
+            final double rayY = m[3] * x + m[4] * y - m[5];
+            final double rayZ = m[6] * x + m[7] * y - m[8];
+            if (rayZ >= 0) {
+                // the ray is directed to the sky
+                points[i] = 0;
+                points[i + 1] = 0;
+            } else {
+                // collides the ray with the ground, then rotates it with
+                // the azimuth
+                final double groundX = rayX * (height / -rayZ);
+                final double groundY = rayY * (height / -rayZ);
+                points[i] = groundX * azimuthCos - groundY * azimuthSin;
+                points[i + 1] = groundX * azimuthSin + groundY * azimuthCos;
+            }
+        }
+    }
+
+    /**
+     * Transforms local coordinates in meters into pixels of the picture.
+     * Coordinates behind the camera are moved far outside of the picture.
+     * 
+     * @param points
+     *            the interleaved x and y values of the local coordinates,
+     *            replaced by the pixels
+     * @param count
+     *            the number of points
+     */
+    public void coordsToPixels(double[] points, int count) {
+        final double[] m = toCamera;
+        final int halfWidth = photoWidth / 2;
+        final int halfHeight = photoHeight / 2;
+        for (int i = 0; i < count * 2; i += 2) {
+            final double x = points[i];
+            final double y = points[i + 1];
+            final double camX = m[0] * x + m[1] * y - m[2] * height;
+            final double camY = m[3] * x + m[4] * y - m[5] * height;
+            final double camZ = m[6] * x + m[7] * y - m[8] * height;
+            if (camZ >= 0) {
+                final double length =
+                        Math.sqrt(camX * camX + camY * camY + camZ * camZ);
+                double multi = 1 - camZ / length;
+                multi = multi * multi * (photoHeight + photoWidth);
+                multi = multi * multi;
+                points[i] = camX * multi;
+                points[i + 1] = -camY * multi;
+            } else {
+                points[i] = halfWidth - camX / camZ * adjacentX;
+                points[i + 1] = halfHeight + camY / camZ * adjacentY;
+            }
+        }
+    }
+}
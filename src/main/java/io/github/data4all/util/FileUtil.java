@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * This class provides methods to work with files.
+ */
+public final class FileUtil {
+
+    /**
+     * Private Constructor, prevents instantiation.
+     */
+    private FileUtil() {
+    }
+
+    /**
+     * Writes the given data to the given file through a file channel.
+     * 
+     * @param file
+     *            The file to write, an existing file is overwritten
+     * @param data
+     *            The data to write
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(file);
+            final FileChannel channel = stream.getChannel();
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            stream.close();
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+}
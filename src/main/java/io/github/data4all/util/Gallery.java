@@ -15,7 +15,9 @@
  */
 package io.github.data4all.util;
 
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.Exceptions;
+import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.logger.Log;
 import io.github.data4all.model.DeviceOrientation;
 import io.github.data4all.model.data.TransformationParamBean;
@@ -23,13 +25,9 @@ import io.github.data4all.model.data.TransformationParamBean;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.json.JSONArray;
@@ -37,11 +35,19 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.content.Context;
+import android.database.SQLException;
+import android.graphics.BitmapFactory;
 import android.graphics.Point;
+import android.os.Handler;
+import android.os.Looper;
 
 /**
  * A gallery holds images for being tagged later.
  * 
+ * The images are stored as files in the gallery folder, their informations
+ * are kept in the gallery catalog of the database. So the gallery can be
+ * listed, paged and searched without touching the files.
+ * 
  * @author tbrose
  */
 public class Gallery {
@@ -65,13 +71,20 @@ public class Gallery {
      */
     private static final String DIRECTORY_NAME = "gallery";
 
+    /**
+     * The name of the folder for the cached thumbnails inside the gallery
+     * folder.
+     */
+    private static final String THUMBNAIL_DIRECTORY_NAME = "thumbnails";
+
     /**
      * The ending of the image file itself.
      */
     private static final String ENDING_JPEG = ".jpeg";
 
     /**
-     * The ending if the information file of an image.
+     * The ending of the information files which were used before the gallery
+     * catalog, see {@link #importLegacyInformations()}.
      */
     private static final String ENDING_INFO = ".info";
 
@@ -80,11 +93,27 @@ public class Gallery {
     public static final String GALLERY_ID_EXTRA = Gallery.class.getName()
             + ":GALLERY_ID";
 
+    /**
+     * Whether the legacy information files were already imported in this
+     * process.
+     */
+    private static volatile boolean legacyImported;
+
     /**
      * The working directory of this gallery.
      */
     private final File workingDirectory;
 
+    /**
+     * The directory of the cached thumbnails.
+     */
+    private final File thumbnailDirectory;
+
+    /**
+     * The database handler holding the gallery catalog.
+     */
+    private final DataBaseHandler db;
+
     /**
      * Constructs a gallery to read from and write to.
      * 
@@ -92,7 +121,38 @@ public class Gallery {
      *            The context of this gallery
      */
     public Gallery(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * Constructs a gallery to read from and write to. The images stored before
+     * the gallery catalog existed are imported in the background, see
+     * {@link #importLegacyInformations(long)}.
+     * 
+     * @param context
+     *            The context of this gallery
+     * @param onImported
+     *            Called on the main thread if images were imported, may be
+     *            {@code null}
+     */
+    public Gallery(Context context, final Runnable onImported) {
         workingDirectory = new File(context.getFilesDir(), DIRECTORY_NAME);
+        thumbnailDirectory =
+                new File(workingDirectory, THUMBNAIL_DIRECTORY_NAME);
+        db = Data4AllApplication.getDataBaseHandler(context);
+        if (!legacyImported) {
+            // Images taken from now on are added to the catalog directly
+            final long importStart = System.currentTimeMillis();
+            Data4AllApplication.executeDataBaseWrite(context, new Runnable() {
+                @Override
+                public void run() {
+                    if (importLegacyInformations(importStart)
+                            && onImported != null) {
+                        new Handler(Looper.getMainLooper()).post(onImported);
+                    }
+                }
+            });
+        }
     }
 
     /**
@@ -124,16 +184,14 @@ public class Gallery {
             throw Exceptions.nullArgument(JSON_DIMENSION);
         } else {
             final long time = System.currentTimeMillis();
-            final JSONObject json =
-                    encodeInformations(parameters, orientation, dimension);
-
-            this.save(imageData, time, json);
+            this.save(imageData, time, parameters, orientation, dimension);
             Log.d(LOG_TAG, "image added");
         }
     }
 
     private void save(final byte[] imageData, final long time,
-            final JSONObject json) throws IOException {
+            TransformationParamBean parameters, DeviceOrientation orientation,
+            Point dimension) throws IOException {
         try {
             this.saveData(time, ENDING_JPEG, imageData);
         } catch (IOException e) {
@@ -142,10 +200,10 @@ public class Gallery {
         }
 
         try {
-            this.saveData(time, ENDING_INFO, json.toString().getBytes("UTF-8"));
-        } catch (IOException e) {
-            this.deleteData(time, ENDING_JPEG, ENDING_INFO);
-            throw e;
+            db.createGalleryImage(time, parameters, orientation, dimension);
+        } catch (SQLException e) {
+            this.deleteData(time, ENDING_JPEG);
+            throw new IOException("Image cannot be added to the catalog", e);
         }
     }
 
@@ -180,18 +238,9 @@ public class Gallery {
      *             If the image is not stored in this gallery
      */
     public Informations getImageInformations(long timestamp) throws IOException {
-        final File result = this.buildPath(timestamp, ENDING_INFO);
-        if (result.exists()) {
-            final FileInputStream stream = new FileInputStream(result);
-            final byte[] content = IOUtils.toByteArray(stream);
-            IOUtils.closeQuietly(stream);
-            try {
-                final JSONObject jsonObject =
-                        new JSONObject(new String(content, "UTF-8"));
-                return decodeInformations(jsonObject);
-            } catch (JSONException e) {
-                throw new IOException("Content cannot be parsed", e);
-            }
+        final Informations result = db.getGalleryImage(timestamp);
+        if (result != null) {
+            return result;
         } else {
             throw new FileNotFoundException("No image found for timestamp "
                     + timestamp);
@@ -199,47 +248,83 @@ public class Gallery {
     }
 
     /**
-     * Lists the timestamp of all images in this gallery.
+     * Receives the file of the cached thumbnail of the image at the given
+     * timestamp. The file may not exist yet, its directory is created if
+     * necessary.
+     * 
+     * @param timestamp
+     *            The timestamp of the image
+     * @return The file object of the thumbnail
+     */
+    public File getThumbnailFile(long timestamp) {
+        if (!thumbnailDirectory.exists()) {
+            thumbnailDirectory.mkdirs();
+        }
+        return new File(thumbnailDirectory, timestamp + ENDING_JPEG);
+    }
+
+    /**
+     * Lists the timestamp of all images in this gallery, the newest first.
      * 
      * @return An array with timestamps
      */
     public long[] getImages() {
-        final File[] files = this.getImageFiles();
-        final Long[] timestamps = new Long[files.length];
-        for (int i = 0; i < files.length; i++) {
-            final File f = files[i];
-            timestamps[i] = Long.parseLong(f.getName().replace(ENDING_JPEG, ""));
-        }
-        final List<Long> asList = Arrays.asList(timestamps);
-        Collections.sort(asList, new Comparator<Long>() {
-            @Override
-            public int compare(Long lhs, Long rhs) {
-                return rhs.compareTo(lhs);
-            }
-        });
-        final long[] result = new long[asList.size()];
-        for (int i = 0; i < asList.size(); i++) {
-            result[i] = asList.get(i);
-        }
-        return result;
+        return db.getGalleryImages(0, -1);
+    }
+
+    /**
+     * Lists the timestamp of a page of the images in this gallery, the newest
+     * first.
+     * 
+     * @param offset
+     *            The number of images to skip
+     * @param limit
+     *            The maximum number of images to list
+     * @return An array with timestamps
+     */
+    public long[] getImages(int offset, int limit) {
+        return db.getGalleryImages(offset, limit);
     }
 
     /**
-     * Lists the file-objects of all images in this gallery.
+     * Lists the timestamp of the images in this gallery which were taken
+     * inside the given bounding box, the newest first. Images without a
+     * location are never listed.
+     * 
+     * @param minLat
+     *            The southern border
+     * @param minLon
+     *            The western border
+     * @param maxLat
+     *            The northern border
+     * @param maxLon
+     *            The eastern border
+     * @return An array with timestamps
+     */
+    public long[] getImagesInBox(double minLat, double minLon, double maxLat,
+            double maxLon) {
+        return db.getGalleryImagesInBox(minLat, minLon, maxLat, maxLon);
+    }
+
+    /**
+     * @return The number of images in this gallery
+     */
+    public int getImageCount() {
+        return db.getGalleryImageCount();
+    }
+
+    /**
+     * Lists the file-objects of all images in this gallery, the newest first.
      * 
      * @return An array with files, never {@code null}
      */
     public File[] getImageFiles() {
-        final List<File> images = new ArrayList<File>();
-        final File[] files = workingDirectory.listFiles();
-        if (files != null) {
-            for (final File f : files) {
-                if (f.getName().endsWith(ENDING_JPEG)) {
-                    images.add(f);
-                }
-            }
+        final long[] images = this.getImages();
+        final File[] files = new File[images.length];
+        for (int i = 0; i < images.length; i++) {
+            files[i] = this.buildPath(images[i], ENDING_JPEG);
         }
-        return images.toArray(new File[images.size()]);
+        return files;
     }
 
     /**
@@ -251,7 +336,13 @@ public class Gallery {
      *            The timestamp of the image
      */
     public void deleteImage(long timestamp) {
+        db.deleteGalleryImage(timestamp);
         this.deleteData(timestamp, ENDING_JPEG, ENDING_INFO);
+        final File thumbnail =
+                new File(thumbnailDirectory, timestamp + ENDING_JPEG);
+        if (thumbnail.exists()) {
+            thumbnail.delete();
+        }
     }
 
     /**
@@ -270,14 +361,7 @@ public class Gallery {
             throws IOException {
         Log.d(LOG_TAG, "saving data " + timestamp + ending);
         if (this.checkOrCreateWorkingDirectory()) {
-            FileOutputStream stream = null;
-            try {
-                final File file = this.buildPath(timestamp, ending);
-                stream = new FileOutputStream(file);
-                stream.write(content);
-            } finally {
-                IOUtils.closeQuietly(stream);
-            }
+            FileUtil.writeFile(this.buildPath(timestamp, ending), content);
         } else {
             throw new IOException("Gallery folder cannot be created.");
         }
@@ -314,40 +398,136 @@ public class Gallery {
     }
 
     /**
-     * Encodes the given informations of an image into a JSON.
+     * Moves the informations of the information files written before the
+     * gallery catalog existed into the catalog and deletes the files. Images
+     * without an information file are added with an unknown location. Runs
+     * once per process, the folder is only listed if no import happened yet.
      * 
-     * @param parameters
-     *            The parameters of the image
-     * @param orientation
-     *            The orientation of the device
-     * @param dimension
-     *            The screen dimension of the device
-     * @return A JSONObject holding the informations
-     * @throws IOException
-     *             If an JSON error occurs
+     * @param importStart
+     *            The time the import was started at, younger images are
+     *            skipped since they may still be added to the catalog
+     * @return Whether images were imported
      */
-    private static JSONObject encodeInformations(
-            TransformationParamBean parameters, DeviceOrientation orientation,
-            Point dimension) throws IOException {
-        final JSONObject json = new JSONObject();
+    private boolean importLegacyInformations(long importStart) {
+        synchronized (Gallery.class) {
+            if (legacyImported) {
+                return false;
+            }
+            legacyImported = true;
+            final File[] files = workingDirectory.listFiles();
+            if (files == null) {
+                return false;
+            }
+            boolean imported = false;
+            for (final File f : files) {
+                if (f.getName().endsWith(ENDING_INFO)) {
+                    imported |= importLegacyInformation(f);
+                }
+            }
+            final Set<Long> known = new HashSet<Long>();
+            for (long timestamp : db.getGalleryImages(0, -1)) {
+                known.add(timestamp);
+            }
+            for (final File f : files) {
+                final String name = f.getName();
+                if (name.endsWith(ENDING_JPEG)) {
+                    try {
+                        final long timestamp =
+                                Long.parseLong(name.replace(ENDING_JPEG, ""));
+                        // The information file could not be imported
+                        final boolean hasInfo =
+                                buildPath(timestamp, ENDING_INFO).exists();
+                        if (timestamp < importStart && !hasInfo
+                                && !known.contains(timestamp)) {
+                            imported |= importLegacyImage(timestamp, f);
+                        }
+                    } catch (NumberFormatException e) {
+                        Log.e(LOG_TAG, "Invalid image file " + name, e);
+                    }
+                }
+            }
+            return imported;
+        }
+    }
+
+    /**
+     * Adds an image without an information file to the catalog. Its location
+     * and orientation are unknown, only the size of the photo is read from
+     * the image.
+     * 
+     * @param timestamp
+     *            The timestamp of the image
+     * @param file
+     *            The image file
+     * @return Whether the image was added
+     */
+    private boolean importLegacyImage(long timestamp, File file) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        final TransformationParamBean parameters =
+                new TransformationParamBean(0, 0, 0, Math.max(0,
+                        options.outWidth), Math.max(0, options.outHeight),
+                        null);
         try {
-            return json
-                    .put(JSON_PARAMETER, parameters.toJSON())
-                    .put(JSON_ORIENTATION, orientation.toJSON())
-                    .put(JSON_DIMENSION,
-                            new JSONArray(Arrays.asList(dimension.x,
-                                    dimension.y)));
+            db.createGalleryImage(timestamp, parameters,
+                    new DeviceOrientation(0, 0, 0, timestamp), new Point(0, 0));
+            return true;
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Cannot import " + file.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Adds the informations of the given information file to the catalog and
+     * deletes the file. Files which cannot be read are kept.
+     * 
+     * @param file
+     *            The information file
+     * @return Whether the image was added
+     */
+    private boolean importLegacyInformation(File file) {
+        FileInputStream stream = null;
+        try {
+            final long timestamp =
+                    Long.parseLong(file.getName().replace(ENDING_INFO, ""));
+            stream = new FileInputStream(file);
+            final JSONObject json =
+                    new JSONObject(new String(IOUtils.toByteArray(stream),
+                            "UTF-8"));
+            final Informations infos = decodeInformations(json);
+            final boolean added = db.getGalleryImage(timestamp) == null;
+            if (added) {
+                db.createGalleryImage(timestamp, infos.getParameters(),
+                        infos.getOrientation(), infos.getDimension());
+            }
+            IOUtils.closeQuietly(stream);
+            stream = null;
+            file.delete();
+            return added;
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Invalid information file " + file.getName(), e);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Cannot read " + file.getName(), e);
         } catch (JSONException e) {
-            throw new IOException(e);
+            Log.e(LOG_TAG, "Cannot parse " + file.getName(), e);
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Cannot import " + file.getName(), e);
+        } finally {
+            IOUtils.closeQuietly(stream);
         }
+        return false;
     }
 
     /**
      * Decodes the informations of an image from the given JSON.
      * 
      * @param json
-     * @return
+     *            The JSON of an information file
+     * @return The informations of the image
      * @throws JSONException
+     *             If the JSON is invalid
      */
     private static Informations decodeInformations(JSONObject json)
             throws JSONException {
@@ -383,7 +563,7 @@ public class Gallery {
         private final DeviceOrientation orientation;
         private final Point dimension;
 
-        private Informations(TransformationParamBean parameters,
+        public Informations(TransformationParamBean parameters,
                 DeviceOrientation orientation, Point dimension) {
             this.parameters = parameters;
             this.orientation = orientation;
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import android.location.Location;
+
+/**
+ * Converts between GPS coordinates and a local system in meters around a
+ * reference location, the x-axis points to the east and the y-axis to the
+ * north. The values which only depend on the reference location are computed
+ * once, so converting many points costs a few arithmetic operations each.
+ * 
+ * Points are passed as arrays of interleaved values (latitude and longitude
+ * or x and y), the source and the target array may be the same.
+ * 
+ * @see MathUtil#calculateGPSPoint(Location, double[])
+ */
+public final class LocalProjector {
+    /**
+     * The radius of the earth in meters.
+     */
+    private static final double RADIUS = 6371004.0;
+
+    /**
+     * The length of a longitude line in meters.
+     */
+    private static final double LAT_LENGTH = RADIUS * 2 * Math.PI;
+
+    private final double lat;
+    private final double lon;
+
+    /**
+     * The length of the latitude line of the reference location in meters.
+     */
+    private final double lonLength;
+
+    /**
+     * Constructs a projector around the given location.
+     * 
+     * @param latitude
+     *            the latitude of the reference location in degrees
+     * @param longitude
+     *            the longitude of the reference location in degrees
+     */
+    public LocalProjector(double latitude, double longitude) {
+        this.lat = Math.toRadians(latitude);
+        this.lon = Math.toRadians(longitude);
+        final double length = RADIUS * Math.cos(lat);
+        this.lonLength = length * 2 * Math.PI;
+    }
+
+    /**
+     * Constructs a projector around the given location.
+     * 
+     * @param location
+     *            the reference location
+     */
+    public LocalProjector(Location location) {
+        this(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Converts GPS coordinates into local coordinates.
+     * 
+     * @param latLon
+     *            the interleaved latitudes and longitudes in degrees
+     * @param coords
+     *            the array for the interleaved x and y values in meters
+     * @param count
+     *            the number of points
+     */
+    public void toLocal(double[] latLon, double[] coords, int count) {
+        for (int i = 0; i < count * 2; i += 2) {
+            final double pointLat = Math.toRadians(latLon[i]) - lat;
+            final double pointLon = Math.toRadians(latLon[i + 1]) - lon;
+            coords[i] = lonLength * pointLon / (Math.PI * 2);
+            coords[i + 1] = LAT_LENGTH * pointLat / (Math.PI * 2);
+        }
+    }
+
+    /**
+     * Converts local coordinates into GPS coordinates.
+     * 
+     * @param coords
+     *            the interleaved x and y values in meters
+     * @param latLon
+     *            the array for the interleaved latitudes and longitudes in
+     *            degrees
+     * @param count
+     *            the number of points
+     */
+    public void toGPS(double[] coords, double[] latLon, int count) {
+        for (int i = 0; i < count * 2; i += 2) {
+            double pointLon =
+                    lon + Math.toRadians((coords[i] * 360) / lonLength);
+            // fix the skip from -PI to +PI for the longitude
+            pointLon = (pointLon + 3 * Math.PI) % (2 * Math.PI) - Math.PI;
+            final double pointLat =
+                    lat + Math.toRadians((coords[i + 1] * 360) / LAT_LENGTH);
+            latLon[i] = Math.toDegrees(pointLat);
+            latLon[i + 1] = Math.toDegrees(pointLon);
+        }
+    }
+}
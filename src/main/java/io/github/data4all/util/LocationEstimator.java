@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import android.location.Location;
+
+/**
+ * Fuses the location fixes of all providers into one position estimate with
+ * a Kalman filter. The filter tracks the position and velocity in a local
+ * tangent plane with a constant velocity model, so every fix is weighted by
+ * its reported accuracy and by how far the estimate could have moved since
+ * the last fix.
+ * 
+ * The east and north axes are filtered independently with the same noise, so
+ * they share one covariance matrix. Fixes are fed in as they arrive, the
+ * estimate and its covariance can be read in constant time.
+ */
+public final class LocationEstimator {
+
+    /**
+     * The standard deviation of the acceleration in m/s^2 which is modeled
+     * as process noise.
+     */
+    private static final double ACCELERATION_NOISE = 1.5;
+
+    /**
+     * The accuracy in meters which is assumed for fixes without accuracy.
+     */
+    private static final float DEFAULT_ACCURACY = 50;
+
+    /**
+     * The smallest accuracy in meters a fix is trusted with.
+     */
+    private static final float MIN_ACCURACY = 1;
+
+    /**
+     * The time in milliseconds after which the estimate is discarded and the
+     * filter starts over with the next fix.
+     */
+    private static final long MAX_GAP = 5 * 60 * 1000;
+
+    /**
+     * The distance in meters from the reference point at which the local
+     * plane is moved to the current estimate.
+     */
+    private static final double MAX_DISTANCE = 1000;
+
+    /**
+     * The maximum time in milliseconds the estimate is moved in time by
+     * {@link #getEstimateAt(long)}.
+     */
+    static final long MAX_PREDICTION = 5000;
+
+    private LocalProjector projector;
+
+    // the state, position and velocity in meters relative to the projector
+    private double east;
+    private double north;
+    private double eastVelocity;
+    private double northVelocity;
+
+    // the covariance of position and velocity, shared by both axes
+    private double posVariance;
+    private double covariance;
+    private double velVariance;
+
+    // the time of the newest fix and when the device received it
+    private long time;
+    private long receivedAt;
+    private Location estimate;
+
+    // reused buffers for the projection of a single point
+    private final double[] latLon = new double[2];
+    private final double[] coords = new double[2];
+
+    /**
+     * Fuses a new fix into the estimate. Fixes which are older than the
+     * current estimate are ignored.
+     * 
+     * @param fix
+     *            the new location fix
+     */
+    public void put(Location fix) {
+        put(fix, System.currentTimeMillis());
+    }
+
+    /**
+     * Fuses a new fix into the estimate, see {@link #put(Location)}.
+     * 
+     * @param fix
+     *            the new location fix
+     * @param now
+     *            the time of the device clock in milliseconds when the fix
+     *            was received
+     */
+    synchronized void put(Location fix, long now) {
+        final long fixTime = fix.getTime();
+        float accuracy = fix.hasAccuracy() ? fix.getAccuracy() : 0;
+        if (accuracy <= 0) {
+            accuracy = DEFAULT_ACCURACY;
+        }
+        accuracy = Math.max(accuracy, MIN_ACCURACY);
+        final double noise = (double) accuracy * accuracy;
+
+        if (estimate == null || fixTime - time > MAX_GAP) {
+            reset(fix, noise);
+        } else if (fixTime >= time) {
+            predict((fixTime - time) / 1000.0);
+            latLon[0] = fix.getLatitude();
+            latLon[1] = fix.getLongitude();
+            projector.toLocal(latLon, coords, 1);
+            correct(coords[0], coords[1], noise);
+            if (Math.hypot(east, north) > MAX_DISTANCE) {
+                moveReference();
+            }
+        } else {
+            // the fix is outdated by the current estimate
+            return;
+        }
+        time = fixTime;
+        receivedAt = now;
+        publish(fix);
+    }
+
+    /**
+     * Starts the filter over at the position of the given fix.
+     */
+    private void reset(Location fix, double noise) {
+        projector = new LocalProjector(fix);
+        east = 0;
+        north = 0;
+        eastVelocity = 0;
+        northVelocity = 0;
+        posVariance = noise;
+        covariance = 0;
+        // the velocity is unknown, allow for fast movement
+        velVariance = noise;
+    }
+
+    /**
+     * Moves the estimate forward in time with the constant velocity model.
+     */
+    private void predict(double dt) {
+        east += eastVelocity * dt;
+        north += northVelocity * dt;
+
+        final double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+        final double dt2 = dt * dt;
+        posVariance +=
+                2 * dt * covariance + dt2 * velVariance + q * dt2 * dt2 / 4;
+        covariance += dt * velVariance + q * dt2 * dt / 2;
+        velVariance += q * dt2;
+    }
+
+    /**
+     * Corrects the estimate with a measured position.
+     */
+    private void correct(double measuredEast, double measuredNorth,
+            double noise) {
+        final double innovation = posVariance + noise;
+        final double posGain = posVariance / innovation;
+        final double velGain = covariance / innovation;
+
+        final double eastResidual = measuredEast - east;
+        final double northResidual = measuredNorth - north;
+        east += posGain * eastResidual;
+        north += posGain * northResidual;
+        eastVelocity += velGain * eastResidual;
+        northVelocity += velGain * northResidual;
+
+        velVariance -= velGain * covariance;
+        covariance -= posGain * covariance;
+        posVariance -= posGain * posVariance;
+    }
+
+    /**
+     * Moves the reference point of the local plane to the current estimate to
+     * keep the projection accurate.
+     */
+    private void moveReference() {
+        coords[0] = east;
+        coords[1] = north;
+        projector.toGPS(coords, latLon, 1);
+        projector = new LocalProjector(latLon[0], latLon[1]);
+        east = 0;
+        north = 0;
+    }
+
+    /**
+     * Creates the location which is handed out for the current estimate. It
+     * carries the altitude, provider and bearing of the newest fix.
+     */
+    private void publish(Location fix) {
+        coords[0] = east;
+        coords[1] = north;
+        projector.toGPS(coords, latLon, 1);
+        final Location result = new Location(fix);
+        result.setLatitude(latLon[0]);
+        result.setLongitude(latLon[1]);
+        result.setAccuracy((float) Math.sqrt(posVariance));
+        estimate = result;
+    }
+
+    /**
+     * Returns the current estimate. Its accuracy is the standard deviation of
+     * the position along each axis. The returned location is shared and must
+     * not be modified.
+     * 
+     * @return the current estimate or {@code null} if there was no fix yet
+     */
+    public synchronized Location getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * Returns the estimate moved to the given time with the estimated
+     * velocity. The time of a fix is taken from the clock of the provider,
+     * so the span is measured from when the newest fix was received on the
+     * device. The estimate is only moved forward and for at most
+     * {@link #MAX_PREDICTION}. The accuracy grows with the uncertainty of the
+     * velocity and the time span.
+     * 
+     * @param when
+     *            the time of the device clock in milliseconds, as of
+     *            {@link System#currentTimeMillis()}
+     * @return a new location for the given time or {@code null} if there was
+     *         no fix yet
+     */
+    public synchronized Location getEstimateAt(long when) {
+        if (estimate == null) {
+            return null;
+        }
+        final long span =
+                Math.max(0, Math.min(MAX_PREDICTION, when - receivedAt));
+        final double dt = span / 1000.0;
+        coords[0] = east + eastVelocity * dt;
+        coords[1] = north + northVelocity * dt;
+        projector.toGPS(coords, latLon, 1);
+
+        final double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+        final double dt2 = dt * dt;
+        final double variance =
+                posVariance + 2 * dt * covariance + dt2 * velVariance + q
+                        * dt2 * dt2 / 4;
+
+        final Location location = new Location(estimate);
+        location.setLatitude(latLon[0]);
+        location.setLongitude(latLon[1]);
+        location.setAccuracy((float) Math.sqrt(variance));
+        location.setTime(time + span);
+        return location;
+    }
+
+    /**
+     * Writes the covariance matrix of position and velocity along each axis
+     * in row-major order to the given array. The covariance is the same for
+     * the east and the north axis, the unit of the position is meters.
+     * 
+     * @param result
+     *            an array with at least four elements
+     * @return the given array
+     */
+    public synchronized double[] getCovariance(double[] result) {
+        result[0] = posVariance;
+        result[1] = covariance;
+        result[2] = covariance;
+        result[3] = velVariance;
+        return result;
+    }
+
+    /**
+     * Writes the estimated velocity in m/s to the given array, the east
+     * component first.
+     * 
+     * @param result
+     *            an array with at least two elements
+     * @return the given array
+     */
+    public synchronized double[] getVelocity(double[] result) {
+        result[0] = eastVelocity;
+        result[1] = northVelocity;
+        return result;
+    }
+
+    /**
+     * Discards the estimate, the next fix starts the filter over.
+     */
+    public synchronized void clear() {
+        estimate = null;
+        time = 0;
+        receivedAt = 0;
+    }
+}
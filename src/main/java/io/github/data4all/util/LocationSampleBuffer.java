@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import android.location.Location;
+
+/**
+ * A fixed-size buffer for the latest location fixes with a single writer (the
+ * thread of the location callbacks) and lock-free readers.
+ * 
+ * Latitude, longitude, accuracy and time are kept in primitive arrays for the
+ * statistics. The fixes themselves are kept as well, so callers can get the
+ * complete fix without copying it.
+ * 
+ * @see SampleBuffer
+ */
+public class LocationSampleBuffer extends SampleBuffer {
+    /**
+     * The length of one degree of latitude in meters.
+     */
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private final AtomicLongArray latitudes;
+    private final AtomicLongArray longitudes;
+    private final AtomicIntegerArray accuracies;
+    private final AtomicLongArray times;
+    private final AtomicReferenceArray<Location> fixes;
+
+    /**
+     * Constructs an empty buffer.
+     * 
+     * @param capacity
+     *            the maximum number of fixes
+     */
+    public LocationSampleBuffer(int capacity) {
+        super(capacity);
+        this.latitudes = new AtomicLongArray(capacity);
+        this.longitudes = new AtomicLongArray(capacity);
+        this.accuracies = new AtomicIntegerArray(capacity);
+        this.times = new AtomicLongArray(capacity);
+        this.fixes = new AtomicReferenceArray<Location>(capacity);
+    }
+
+    /**
+     * Stores a new fix, overwriting the oldest one if the buffer is full. Must
+     * only be called by the single writer. The fix must not be changed
+     * afterwards.
+     * 
+     * @param location
+     *            the new fix
+     */
+    public void put(Location location) {
+        final int slot = beginWrite();
+        latitudes.set(slot, Double.doubleToRawLongBits(location.getLatitude()));
+        longitudes.set(slot,
+                Double.doubleToRawLongBits(location.getLongitude()));
+        accuracies.set(slot, Float.floatToRawIntBits(location.getAccuracy()));
+        times.set(slot, location.getTime());
+        fixes.set(slot, location);
+        endWrite(slot);
+    }
+
+    /**
+     * @return the newest fix or {@code null} if the buffer is empty
+     */
+    public Location getLatest() {
+        while (size() > 0) {
+            final int slot = head();
+            final int version = beginRead(slot);
+            final Location fix = fixes.get(slot);
+            if (endRead(slot, version)) {
+                return fix;
+            }
+            // the writer overwrote the slot meanwhile, read the new head
+        }
+        return null;
+    }
+
+    /**
+     * Copies the stored fixes from the oldest to the newest into the given
+     * array, without allocating.
+     * 
+     * @param result
+     *            the array for the fixes, should have the length of the
+     *            capacity
+     * @return the number of copied fixes
+     */
+    public int getAll(Location[] result) {
+        final int newest = head();
+        final int count = Math.min(size(), result.length);
+        int copied = 0;
+        for (int age = count - 1; age >= 0; age--) {
+            final int slot = slot(newest, age);
+            final int version = beginRead(slot);
+            final Location fix = fixes.get(slot);
+            if (endRead(slot, version)) {
+                result[copied++] = fix;
+            }
+            // otherwise the slot was overwritten by a newer fix
+        }
+        return copied;
+    }
+
+    /**
+     * Calculates the statistics of all fixes which are not older than the
+     * given time.
+     * 
+     * @param since
+     *            the time of the oldest fix to include in milliseconds
+     * @param result
+     *            the object to store the statistics in, may be reused
+     * @return the given result
+     */
+    public Statistics getStatistics(long since, Statistics result) {
+        int count = 0;
+        double meanLat = 0;
+        double squaresLat = 0;
+        double meanLon = 0;
+        double squaresLon = 0;
+        float bestAccuracy = Float.MAX_VALUE;
+        long newestTime = 0;
+        final int newest = head();
+        final int stored = size();
+        for (int age = 0; age < stored; age++) {
+            final int slot = slot(newest, age);
+            final int version = beginRead(slot);
+            final double lat = Double.longBitsToDouble(latitudes.get(slot));
+            final double lon = Double.longBitsToDouble(longitudes.get(slot));
+            final float accuracy =
+                    Float.intBitsToFloat(accuracies.get(slot));
+            final long time = times.get(slot);
+            if (!endRead(slot, version)) {
+                // the slot was overwritten by a newer fix
+                continue;
+            }
+            if (time < since) {
+                break;
+            }
+            count++;
+            // Welford's online algorithm
+            final double deltaLat = lat - meanLat;
+            meanLat += deltaLat / count;
+            squaresLat += deltaLat * (lat - meanLat);
+            final double deltaLon = lon - meanLon;
+            meanLon += deltaLon / count;
+            squaresLon += deltaLon * (lon - meanLon);
+            bestAccuracy = Math.min(bestAccuracy, accuracy);
+            newestTime = Math.max(newestTime, time);
+        }
+        result.count = count;
+        if (count > 0) {
+            final double lonScale =
+                    METERS_PER_DEGREE * Math.cos(Math.toRadians(meanLat));
+            result.meanLatitude = meanLat;
+            result.meanLongitude = meanLon;
+            result.variance =
+                    squaresLat / count * METERS_PER_DEGREE * METERS_PER_DEGREE
+                            + squaresLon / count * lonScale * lonScale;
+            result.bestAccuracy = bestAccuracy;
+            result.newestTime = newestTime;
+        } else {
+            result.meanLatitude = 0;
+            result.meanLongitude = 0;
+            result.variance = 0;
+            result.bestAccuracy = 0;
+            result.newestTime = 0;
+        }
+        return result;
+    }
+
+    /**
+     * The statistics of a window of location fixes.
+     */
+    public static final class Statistics {
+        private int count;
+        private double meanLatitude;
+        private double meanLongitude;
+        private double variance;
+        private float bestAccuracy;
+        private long newestTime;
+
+        /**
+         * @return the number of fixes in the window
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the mean latitude in degrees
+         */
+        public double getMeanLatitude() {
+            return meanLatitude;
+        }
+
+        /**
+         * @return the mean longitude in degrees
+         */
+        public double getMeanLongitude() {
+            return meanLongitude;
+        }
+
+        /**
+         * @return the horizontal variance of the positions in square meters
+         */
+        public double getVariance() {
+            return variance;
+        }
+
+        /**
+         * @return the smallest reported accuracy in meters
+         */
+        public float getBestAccuracy() {
+            return bestAccuracy;
+        }
+
+        /**
+         * @return the time of the newest fix in milliseconds
+         */
+        public long getNewestTime() {
+            return newestTime;
+        }
+    }
+}
@@ -30,7 +30,7 @@ import android.location.Location;
  */
 public final class MathUtil {
     
-    /** 
+    /**
      * @param vector
      *            which is going to be rotated
      * @param axis
@@ -40,37 +40,102 @@ public final class MathUtil {
      * @return the rotated vector
      */
     public static double[] rotate(double[] vector, double[] axis, double angle) {
-        final double[][] matrix = new double[3][3];
-        matrix[0][0] = axis[0] * axis[0] * (1 - Math.cos(angle))
-                + Math.cos(angle);
-        matrix[0][1] = axis[0] * axis[1] * (1 - Math.cos(angle)) - axis[2]
-                * Math.sin(angle);
-        matrix[0][2] = axis[0] * axis[2] * (1 - Math.cos(angle)) + axis[1]
-                * Math.sin(angle);
-        matrix[1][0] = axis[1] * axis[0] * (1 - Math.cos(angle)) + axis[2]
-                * Math.sin(angle);
-        matrix[1][1] = axis[1] * axis[1] * (1 - Math.cos(angle))
-                + Math.cos(angle);
-        matrix[1][2] = axis[1] * axis[2] * (1 - Math.cos(angle)) - axis[0]
-                * Math.sin(angle);
-        matrix[2][0] = axis[2] * axis[0] * (1 - Math.cos(angle)) - axis[1]
-                * Math.sin(angle);
-        matrix[2][1] = axis[2] * axis[1] * (1 - Math.cos(angle)) + axis[0]
-                * Math.sin(angle);
-        matrix[2][2] = axis[2] * axis[2] * (1 - Math.cos(angle))
-                + Math.cos(angle);
-
         final double[] returnVec = new double[3];
-        for (int i = 0; i < 3; i++) {
-            double value = 0;
-            for (int b = 0; b < 3; b++) {
-                value += vector[b] * matrix[i][b];
-            }
-            returnVec[i] = value;
-        }
+        rotate(vector, axis, angle, returnVec);
         return returnVec;
     }
 
+    /**
+     * Rotates the vector without allocating, the result may be the vector
+     * itself.
+     * 
+     * @param vector
+     *            which is going to be rotated
+     * @param axis
+     *            around which the vector is rotated
+     * @param angle
+     *            rotation angle
+     * @param result
+     *            the array for the rotated vector
+     */
+    public static void rotate(double[] vector, double[] axis, double angle,
+            double[] result) {
+        final double cos = Math.cos(angle);
+        final double sin = Math.sin(angle);
+        final double x = vector[0];
+        final double y = vector[1];
+        final double z = vector[2];
+        // the sums start at 0 so that they are never -0, callers divide by
+        // the components
+        result[0] = 0 + x * (axis[0] * axis[0] * (1 - cos) + cos)
+                + y * (axis[0] * axis[1] * (1 - cos) - axis[2] * sin)
+                + z * (axis[0] * axis[2] * (1 - cos) + axis[1] * sin);
+        result[1] = 0 + x * (axis[1] * axis[0] * (1 - cos) + axis[2] * sin)
+                + y * (axis[1] * axis[1] * (1 - cos) + cos)
+                + z * (axis[1] * axis[2] * (1 - cos) - axis[0] * sin);
+        result[2] = 0 + x * (axis[2] * axis[0] * (1 - cos) - axis[1] * sin)
+                + y * (axis[2] * axis[1] * (1 - cos) + axis[0] * sin)
+                + z * (axis[2] * axis[2] * (1 - cos) + cos);
+    }
+
+    /**
+     * Calculates the matrix of the rotation around the given axis.
+     * 
+     * @param axis
+     *            the normalized axis of the rotation
+     * @param angle
+     *            rotation angle
+     * @param matrix
+     *            the array for the 3x3 matrix in row-major order
+     */
+    public static void rotationMatrix(double[] axis, double angle,
+            double[] matrix) {
+        final double cos = Math.cos(angle);
+        final double sin = Math.sin(angle);
+        final double t = 1 - cos;
+        matrix[0] = axis[0] * axis[0] * t + cos;
+        matrix[1] = axis[0] * axis[1] * t - axis[2] * sin;
+        matrix[2] = axis[0] * axis[2] * t + axis[1] * sin;
+        matrix[3] = axis[1] * axis[0] * t + axis[2] * sin;
+        matrix[4] = axis[1] * axis[1] * t + cos;
+        matrix[5] = axis[1] * axis[2] * t - axis[0] * sin;
+        matrix[6] = axis[2] * axis[0] * t - axis[1] * sin;
+        matrix[7] = axis[2] * axis[1] * t + axis[0] * sin;
+        matrix[8] = axis[2] * axis[2] * t + cos;
+    }
+
+    /**
+     * Multiplies two 3x3 matrices in row-major order, the result may be one of
+     * the factors.
+     * 
+     * @param left
+     *            the left factor
+     * @param right
+     *            the right factor
+     * @param result
+     *            the array for the product
+     */
+    public static void multiply(double[] left, double[] right,
+            double[] result) {
+        final double r0 = right[0];
+        final double r1 = right[1];
+        final double r2 = right[2];
+        final double r3 = right[3];
+        final double r4 = right[4];
+        final double r5 = right[5];
+        final double r6 = right[6];
+        final double r7 = right[7];
+        final double r8 = right[8];
+        for (int i = 0; i < 9; i += 3) {
+            final double a = left[i];
+            final double b = left[i + 1];
+            final double c = left[i + 2];
+            result[i] = a * r0 + b * r3 + c * r6;
+            result[i + 1] = a * r1 + b * r4 + c * r7;
+            result[i + 2] = a * r2 + b * r5 + c * r8;
+        }
+    }
+
     /**
      * @param angle
      *            difference to the deviceorientation
@@ -135,26 +200,10 @@ public final class MathUtil {
      * @return A Node with latitude and longitude
      */
     public static Node calculateGPSPoint(Location location, double[] coord) {
-        final double lat = Math.toRadians(location.getLatitude());
-        final double lon = Math.toRadians(location.getLongitude());
-        // calculate the length of the current latitude line with the earth
-        // radius
-        final double radius = 6371004.0;
-        double lonLength = radius * Math.cos(lat);
-        lonLength = lonLength * 2 * Math.PI;
-        // add to the current latitude the distance of the coordinate
-        double lon2 = lon + Math.toRadians((coord[0] * 360) / lonLength);
-        // fix the skip from -PI to +PI for the longitude
-        lon2 = (lon2 + 3 * Math.PI) % (2 * Math.PI) - Math.PI;
-        // calculate the length of the current longitude line with the earth
-        // radius
-        final double latLength = radius * 2 * Math.PI;
-        // add to the current Longitude the distance of the coordinate
-        double lat2 = lat + Math.toRadians((coord[1] * 360) / latLength);
-        lat2 = Math.toDegrees(lat2);
-        lon2 = Math.toDegrees(lon2);
+        final double[] latLon = new double[2];
+        new LocalProjector(location).toGPS(coord, latLon, 1);
         // create a new Node with the latitude and longitude values
-        return new Node(-1, lat2, lon2);
+        return new Node(-1, latLon[0], latLon[1]);
     }
 
     /**
@@ -165,19 +214,8 @@ public final class MathUtil {
      * @return coord
      */
     public static double[] calculateCoordFromGPS(Location location, Node node) {
-        final double lat = Math.toRadians(location.getLatitude());
-        final double lon = Math.toRadians(location.getLongitude());
-        // calculate the length of the current latitude line with the earth
-        // radius
-        final double radius = 6371004.0;
-        double lonLength = radius * Math.cos(lat);
-        lonLength = lonLength * 2 * Math.PI;
-        final double latLength = radius * 2 * Math.PI;
-        final double[] coord = new double[2];
-        double test = Math.toRadians(node.getLat()) - lat;
-        coord[1] = latLength * test / (Math.PI * 2);
-        test = (Math.toRadians(node.getLon()) - lon);
-        coord[0] = lonLength * test / (Math.PI * 2);
+        final double[] coord = { node.getLat(), node.getLon(), };
+        new LocalProjector(location).toLocal(coord, coord, 1);
         return coord;
     }
 
@@ -222,14 +260,14 @@ public final class MathUtil {
     public static List<Node> transformIntoRectangle(List<Node> nodes) {
         if (nodes.size() == 5) {
             nodes.remove(4);
-            final Location location = new Location("provider");
-            location.setLatitude(nodes.get(0).getLat());
-            location.setLongitude(nodes.get(0).getLon());
+            final LocalProjector projector = new LocalProjector(nodes.get(0)
+                    .getLat(), nodes.get(0).getLon());
             final List<double[]> coords = new ArrayList<double[]>();
             double x = 0;
             double y = 0;
             for (Node iter : nodes) {
-                final double[] coord = MathUtil.calculateCoordFromGPS(location, iter);
+                final double[] coord = {iter.getLat(), iter.getLon(), };
+                projector.toLocal(coord, coord, 1);
                 coords.add(coord);
                 x += coord[0];
                 y += coord[1];
@@ -270,7 +308,8 @@ public final class MathUtil {
             final List<Node> nodes2 = new ArrayList<Node>();
             for (double[] iter : coords3) {
                 final double[] coord = {iter[0] + x ,iter[1] + y,};
-                nodes2.add(MathUtil.calculateGPSPoint(location, coord));
+                projector.toGPS(coord, coord, 1);
+                nodes2.add(new Node(-1, coord[0], coord[1]));
             }
             nodes2.add(nodes2.get(0));
             return nodes2;
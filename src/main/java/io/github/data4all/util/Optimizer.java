@@ -20,32 +20,29 @@ import android.location.Location;
 
 /**
  * Optimize the location and device orientation data. Save the latest data in a
- * RingBuffer and optimize these to have one perfect location and orientation
+ * SampleBuffer and optimize these to have one perfect location and orientation
  * object
  * 
  * @author sbollen
- *
+ * 
  */
 
 public final class Optimizer {
 
-    // The timeDifference at which one location should be significant older
-    // or newer than another one, 1000 is one second
-    public static final double TIME_DIFFERENCE = 1000;
-
-    // The accuracy difference at which one location should be significant more
-    // accurate than another one
-    public static final int ACC_DIFF = 50;
-
     // Size of the two ringbuffer
     public static final int RB_SIZE = 20;
 
-    // a new Ringbuffer for saving the location objects
-    private static RingBuffer<Location> locRB = new RingBuffer<Location>(
-            RB_SIZE);
-    // a new Ringbuffer for saving the DevicePosition objects
-    private static RingBuffer<DeviceOrientation> orientRB = new RingBuffer<DeviceOrientation>(
-            RB_SIZE);
+    // Size of the orientation history, a few seconds of sensor samples
+    public static final int ORIENTATION_HISTORY = 64;
+
+    // a buffer for the location fixes, written by the location callbacks
+    private static final LocationSampleBuffer locBuffer =
+            new LocationSampleBuffer(RB_SIZE);
+    // fuses the location fixes into the best known position
+    private static final LocationEstimator estimator = new LocationEstimator();
+    // a buffer for the orientation samples, written by the sensor thread
+    private static final OrientationSampleBuffer orientBuffer =
+            new OrientationSampleBuffer(ORIENTATION_HISTORY);
 
     /**
      * Private Constructor, prevents instantiation.
@@ -55,23 +52,43 @@ public final class Optimizer {
     }
 
     /**
-     * Put a Location object to the Location RingBuffer.
+     * Put a Location object to the Location buffer.
      * 
      * @param loc
      *            the new location
      */
     public static void putLoc(Location loc) {
-        locRB.put(loc);
+        locBuffer.put(loc);
+        estimator.put(loc);
     }
 
     /**
-     * Put a DeviceOrientation object to the DeviceOrientation RingBuffer.
+     * Put a DeviceOrientation object to the DeviceOrientation buffer.
      * 
      * @param orient
      *            the new device orientation
      */
     public static void putDevOrient(DeviceOrientation orient) {
-        orientRB.put(orient);
+        putDevOrient(orient.getAzimuth(), orient.getPitch(), orient.getRoll(),
+                orient.getTimestamp());
+    }
+
+    /**
+     * Put a device orientation to the DeviceOrientation buffer without
+     * allocating. Must only be called from the sensor thread.
+     * 
+     * @param azimuth
+     *            the azimuth in radians
+     * @param pitch
+     *            the pitch in radians
+     * @param roll
+     *            the roll in radians
+     * @param timestamp
+     *            the time of the orientation in milliseconds
+     */
+    public static void putDevOrient(float azimuth, float pitch, float roll,
+            long timestamp) {
+        orientBuffer.put(azimuth, pitch, roll, timestamp);
     }
 
     /**
@@ -80,119 +97,111 @@ public final class Optimizer {
      * @return the last location
      */
     public static Location currentLocation() {
-        return locRB.getLast();
+        return locBuffer.getLatest();
     }
 
     /**
-     * Give the current best location.
+     * Give the current best location. This is the estimate fused from all
+     * location fixes so far, its accuracy is the standard deviation of the
+     * position. The returned location is shared and must not be modified.
      * 
-     * @return the current best location
+     * @return the current best location or {@code null} if there is none
      */
     public static Location currentBestLoc() {
-        return calculateBestLoc();
+        return estimator.getEstimate();
+    }
+
+    /**
+     * Give the best location at the given time. This is the fused estimate
+     * moved along the estimated velocity, see
+     * {@link LocationEstimator#getEstimateAt(long)}.
+     * 
+     * @param time
+     *            the time of the device clock in milliseconds, e.g. of the
+     *            shutter of the camera
+     * @return the best location at the given time or {@code null} if there
+     *         is none
+     */
+    public static Location bestLocAt(long time) {
+        return estimator.getEstimateAt(time);
+    }
+
+    /**
+     * Writes the covariance of the current best location to the given array,
+     * see {@link LocationEstimator#getCovariance(double[])}.
+     * 
+     * @param result
+     *            an array with at least four elements
+     * @return the given array
+     */
+    public static double[] currentLocCovariance(double[] result) {
+        return estimator.getCovariance(result);
+    }
+
+    /**
+     * Writes the velocity of the current best location in m/s to the given
+     * array, the east component first.
+     * 
+     * @param result
+     *            an array with at least two elements
+     * @return the given array
+     */
+    public static double[] currentVelocity(double[] result) {
+        return estimator.getVelocity(result);
     }
 
     /**
      * Give the current DeviceOrientation object which has the pitch, roll and
-     * azimuth values.
+     * azimuth values. The returned object is a snapshot owned by the caller.
      * 
      * @return the current DeviceOrientation
      */
     public static DeviceOrientation currentDeviceOrientation() {
-        return orientRB.getLast();
+        return orientBuffer.getLatest();
     }
 
     /**
-     * Calculate from all saved locations in the ringbuffer the best one.
+     * Give the DeviceOrientation at the given time, interpolated from the
+     * stored orientations, see {@link OrientationSampleBuffer#getAt(long)}.
+     * The returned object is a snapshot owned by the caller.
      * 
-     * @return the best location of all saved locations
+     * @param time
+     *            the time in milliseconds, e.g. of the shutter of the camera
+     * @return the DeviceOrientation at the given time or {@code null} if
+     *         there is none
      */
-    public static Location calculateBestLoc() {
-        final Location lastLoc = locRB.getLast();
-        Location bestLoc = lastLoc;
-        for (Object location : locRB.getAll()) {
-            final Location loc = (Location) location;
-            // this location must be better than the actual best and last one
-            if (loc != null && isBetterLocation(loc, lastLoc)
-                    && isBetterLocation(loc, bestLoc)) {
-                bestLoc = loc;
-            }
-        }
-        return bestLoc;
+    public static DeviceOrientation deviceOrientationAt(long time) {
+        return orientBuffer.getAt(time);
     }
 
     /**
-     * Determines whether one Location reading is better than the current
-     * Location fix.
+     * Calculates the statistics of the locations which are not older than the
+     * given time.
      * 
-     * @param location
-     *            The new Location that you want to evaluate
-     * 
-     * @param currentBestLocation
-     *            The current Location fix, to which you want to compare the new
-     *            one
-     * 
-     * @return true if the first location is better than the second
+     * @param since
+     *            the time of the oldest location to include in milliseconds
+     * @param result
+     *            the object to store the statistics in, may be reused
+     * @return the given result
      */
-    protected static boolean isBetterLocation(Location loc,
-            Location currentBestLoc) {
-
-        if (currentBestLoc == null) {
-            // A new location is always better than no location
-            return true;
-        }
-
-        // Check whether the new location fix is newer or older
-        final long timeDelta = loc.getTime() - currentBestLoc.getTime();
-        final boolean isSignificantlyNewer = timeDelta > (TIME_DIFFERENCE);
-        final boolean isSignificantlyOlder = timeDelta < -(TIME_DIFFERENCE);
-        final boolean isNewer = timeDelta > 0;
-
-        // If it's been more than two minutes since the current location, use
-        // the new location
-        // because the user has likely moved
-        if (isSignificantlyNewer) {
-            return true;
-            // If the new location is more than two minutes older, it must be
-            // worse
-        } else if (isSignificantlyOlder) {
-            return false;
-        }
-
-        // Check whether the new location fix is more or less accurate
-        final int accuracyDelta = (int) (loc.getAccuracy() - currentBestLoc
-                .getAccuracy());
-        final boolean isLessAccurate = accuracyDelta > 0;
-        final boolean isMoreAccurate = accuracyDelta < 0;
-        final boolean isSignifLessAccurate = accuracyDelta > ACC_DIFF;
-
-        // Check if the old and new location are from the same provider
-        final boolean isFromSameProvider = isSameProvider(loc.getProvider(),
-                currentBestLoc.getProvider());
-
-        // Determine location quality using a combination of timeliness and
-        // accuracy
-        if ((isMoreAccurate) || (isNewer && !isLessAccurate)
-                || (isNewer && !isSignifLessAccurate && isFromSameProvider)) {
-            return true;
-        }
-        return false;
+    public static LocationSampleBuffer.Statistics locationStatistics(
+            long since, LocationSampleBuffer.Statistics result) {
+        return locBuffer.getStatistics(since, result);
     }
 
     /**
-     * checks whether two providers are the same.
+     * Calculates the statistics of the device orientations which are not
+     * older than the given time.
      * 
-     * @param provider1
-     *            one provider
-     * @param provider2
-     *            the other provider
-     * @return true if the two providers are the same
+     * @param since
+     *            the time of the oldest orientation to include in milliseconds
+     * @param result
+     *            the object to store the statistics in, may be reused
+     * @return the given result
      */
-    private static boolean isSameProvider(String provider1, String provider2) {
-        if (provider1 == null) {
-            return provider2 == null;
-        }
-        return provider1.equals(provider2);
+    public static OrientationSampleBuffer.Statistics orientationStatistics(
+            long since, OrientationSampleBuffer.Statistics result) {
+        return orientBuffer.getStatistics(since, result);
     }
 
     /**
@@ -201,11 +210,8 @@ public final class Optimizer {
      * @author tbrose
      */
     public static void clear() {
-        locRB.clear();
-        orientRB.clear();
-    }
-    
-    public static RingBuffer<Location> getLocRB(){
-    	return locRB;
+        locBuffer.clear();
+        estimator.clear();
+        orientBuffer.clear();
     }
 }
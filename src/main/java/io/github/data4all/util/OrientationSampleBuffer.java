@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import io.github.data4all.model.DeviceOrientation;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size buffer for the latest orientation samples with a single writer
+ * (the sensor thread) and lock-free readers.
+ * 
+ * @see SampleBuffer
+ */
+public class OrientationSampleBuffer extends SampleBuffer {
+    /**
+     * The maximum time in milliseconds the orientation is extrapolated beyond
+     * the newest sample.
+     */
+    static final long MAX_EXTRAPOLATION = 100;
+
+    private final AtomicIntegerArray azimuths;
+    private final AtomicIntegerArray pitches;
+    private final AtomicIntegerArray rolls;
+    private final AtomicLongArray times;
+
+    /**
+     * Constructs an empty buffer.
+     * 
+     * @param capacity
+     *            the maximum number of samples
+     */
+    public OrientationSampleBuffer(int capacity) {
+        super(capacity);
+        this.azimuths = new AtomicIntegerArray(capacity);
+        this.pitches = new AtomicIntegerArray(capacity);
+        this.rolls = new AtomicIntegerArray(capacity);
+        this.times = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Stores a new sample, overwriting the oldest one if the buffer is full.
+     * Must only be called by the single writer.
+     * 
+     * @param azimuth
+     *            the azimuth in radians
+     * @param pitch
+     *            the pitch in radians
+     * @param roll
+     *            the roll in radians
+     * @param time
+     *            the time of the sample in milliseconds
+     */
+    public void put(float azimuth, float pitch, float roll, long time) {
+        final int slot = beginWrite();
+        azimuths.set(slot, Float.floatToRawIntBits(azimuth));
+        pitches.set(slot, Float.floatToRawIntBits(pitch));
+        rolls.set(slot, Float.floatToRawIntBits(roll));
+        times.set(slot, time);
+        endWrite(slot);
+    }
+
+    /**
+     * Returns a snapshot of the newest sample.
+     * 
+     * @return the newest sample or {@code null} if the buffer is empty
+     */
+    public DeviceOrientation getLatest() {
+        while (size() > 0) {
+            final int slot = head();
+            final int version = beginRead(slot);
+            final float azimuth = Float.intBitsToFloat(azimuths.get(slot));
+            final float pitch = Float.intBitsToFloat(pitches.get(slot));
+            final float roll = Float.intBitsToFloat(rolls.get(slot));
+            final long time = times.get(slot);
+            if (endRead(slot, version)) {
+                return new DeviceOrientation(azimuth, pitch, roll, time);
+            }
+            // the writer overwrote the slot meanwhile, read the new head
+        }
+        return null;
+    }
+
+    /**
+     * Returns the orientation at the given time, interpolated between the two
+     * samples around it. After the newest sample the orientation is
+     * extrapolated from the two newest samples for at most
+     * {@link #MAX_EXTRAPOLATION}, before the oldest sample the oldest one is
+     * used. The angles are interpolated along the shorter arc.
+     * 
+     * @param time
+     *            the time in milliseconds
+     * @return the orientation at the given time or {@code null} if the buffer
+     *         is empty
+     */
+    public DeviceOrientation getAt(long time) {
+        int found = 0;
+        float newerAzimuth = 0;
+        float newerPitch = 0;
+        float newerRoll = 0;
+        long newerTime = 0;
+        float olderAzimuth = 0;
+        float olderPitch = 0;
+        float olderRoll = 0;
+        long olderTime = 0;
+        final int newest = head();
+        final int stored = size();
+        for (int age = 0; age < stored; age++) {
+            final int slot = slot(newest, age);
+            final int version = beginRead(slot);
+            final float azimuth = Float.intBitsToFloat(azimuths.get(slot));
+            final float pitch = Float.intBitsToFloat(pitches.get(slot));
+            final float roll = Float.intBitsToFloat(rolls.get(slot));
+            final long sampleTime = times.get(slot);
+            if (!endRead(slot, version)) {
+                // the slot was overwritten by a newer sample
+                continue;
+            }
+            newerAzimuth = olderAzimuth;
+            newerPitch = olderPitch;
+            newerRoll = olderRoll;
+            newerTime = olderTime;
+            olderAzimuth = azimuth;
+            olderPitch = pitch;
+            olderRoll = roll;
+            olderTime = sampleTime;
+            found++;
+            if (found >= 2 && sampleTime <= time) {
+                // the samples around the time or the two newest samples
+                break;
+            }
+        }
+        if (found == 0) {
+            return null;
+        } else if (found == 1 || newerTime <= olderTime) {
+            return new DeviceOrientation(olderAzimuth, olderPitch, olderRoll,
+                    time);
+        }
+        final long clamped = Math.min(time, newerTime + MAX_EXTRAPOLATION);
+        final float fraction =
+                Math.max(0, (float) (clamped - olderTime)
+                        / (newerTime - olderTime));
+        return new DeviceOrientation(
+                interpolate(olderAzimuth, newerAzimuth, fraction),
+                interpolate(olderPitch, newerPitch, fraction),
+                interpolate(olderRoll, newerRoll, fraction), time);
+    }
+
+    /**
+     * Interpolates between two angles along the shorter arc.
+     * 
+     * @param from
+     *            the angle at fraction 0 in radians
+     * @param to
+     *            the angle at fraction 1 in radians
+     * @param fraction
+     *            the fraction, may be greater than 1 to extrapolate
+     * @return the angle between -pi and pi
+     */
+    static float interpolate(float from, float to, float fraction) {
+        return (float) wrap(from + wrap(to - from) * fraction);
+    }
+
+    /**
+     * Wraps the given angle into the range from -pi to pi.
+     */
+    private static double wrap(double angle) {
+        return Math.atan2(Math.sin(angle), Math.cos(angle));
+    }
+
+    /**
+     * Calculates the statistics of all samples which are not older than the
+     * given time. The azimuth is averaged as an angle, so the samples on both
+     * sides of the wrap at +-pi (south) do not cancel out.
+     * 
+     * @param since
+     *            the time of the oldest sample to include in milliseconds
+     * @param result
+     *            the object to store the statistics in, may be reused
+     * @return the given result
+     */
+    public Statistics getStatistics(long since, Statistics result) {
+        int count = 0;
+        double sumSin = 0;
+        double sumCos = 0;
+        double meanPitch = 0;
+        double squaresPitch = 0;
+        double meanRoll = 0;
+        double squaresRoll = 0;
+        final int newest = head();
+        final int stored = size();
+        for (int age = 0; age < stored; age++) {
+            final int slot = slot(newest, age);
+            final int version = beginRead(slot);
+            final float azimuth = Float.intBitsToFloat(azimuths.get(slot));
+            final float pitch = Float.intBitsToFloat(pitches.get(slot));
+            final float roll = Float.intBitsToFloat(rolls.get(slot));
+            final long time = times.get(slot);
+            if (!endRead(slot, version)) {
+                // the slot was overwritten by a newer sample
+                continue;
+            }
+            if (time < since) {
+                break;
+            }
+            count++;
+            sumSin += Math.sin(azimuth);
+            sumCos += Math.cos(azimuth);
+            // Welford's online algorithm
+            final double deltaPitch = pitch - meanPitch;
+            meanPitch += deltaPitch / count;
+            squaresPitch += deltaPitch * (pitch - meanPitch);
+            final double deltaRoll = roll - meanRoll;
+            meanRoll += deltaRoll / count;
+            squaresRoll += deltaRoll * (roll - meanRoll);
+        }
+        result.count = count;
+        if (count > 0) {
+            result.meanAzimuth = (float) Math.atan2(sumSin, sumCos);
+            result.azimuthVariance =
+                    (float) (1 - Math.hypot(sumSin, sumCos) / count);
+            result.meanPitch = (float) meanPitch;
+            result.pitchVariance = (float) (squaresPitch / count);
+            result.meanRoll = (float) meanRoll;
+            result.rollVariance = (float) (squaresRoll / count);
+        } else {
+            result.meanAzimuth = 0;
+            result.azimuthVariance = 0;
+            result.meanPitch = 0;
+            result.pitchVariance = 0;
+            result.meanRoll = 0;
+            result.rollVariance = 0;
+        }
+        return result;
+    }
+
+    /**
+     * The statistics of a window of orientation samples.
+     */
+    public static final class Statistics {
+        private int count;
+        private float meanAzimuth;
+        private float azimuthVariance;
+        private float meanPitch;
+        private float pitchVariance;
+        private float meanRoll;
+        private float rollVariance;
+
+        /**
+         * @return the number of samples in the window
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the circular mean of the azimuth in radians
+         */
+        public float getMeanAzimuth() {
+            return meanAzimuth;
+        }
+
+        /**
+         * @return the circular variance of the azimuth between 0 (all equal)
+         *         and 1 (uniformly spread)
+         */
+        public float getAzimuthVariance() {
+            return azimuthVariance;
+        }
+
+        /**
+         * @return the mean of the pitch in radians
+         */
+        public float getMeanPitch() {
+            return meanPitch;
+        }
+
+        /**
+         * @return the variance of the pitch in square radians
+         */
+        public float getPitchVariance() {
+            return pitchVariance;
+        }
+
+        /**
+         * @return the mean of the roll in radians
+         */
+        public float getMeanRoll() {
+            return meanRoll;
+        }
+
+        /**
+         * @return the variance of the roll in square radians
+         */
+        public float getRollVariance() {
+            return rollVariance;
+        }
+    }
+}
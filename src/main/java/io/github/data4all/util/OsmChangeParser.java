@@ -24,15 +24,20 @@ import io.github.data4all.model.data.Tag;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
@@ -41,6 +46,9 @@ import android.content.Context;
  * The OsmChangeParser is a util for Parsing a List of DataElements into a File
  * which can then be uploaded to the OSM API.
  * 
+ * The document is streamed to the given writer or stream, only the ids of the
+ * already written nodes are kept in memory.
+ * 
  * @author Richard
  * @author tbrose (rearranging)
  */
@@ -51,8 +59,12 @@ public final class OsmChangeParser {
     private static final String TIMEFORMAT = "yyyy-MM-dd'T'HH:mm:ss.SZZZZZ";
     private static final String TIMESTAMP = "\" timestamp=\"";
     private static final String CHANGESET = "\" changeset=\"";
+    private static final String VERSION = "\" version=\"";
     private static final String TAGKEY = "<tag k=\"";
     private static final String TAGVALUE = "\" v=\"";
+    private static final String NDREF = "<nd ref=\"";
+    private static final String CLOSE = "\"/>\n";
+    private static final String ENCODING = "UTF-8";
 
     /**
      * Private Constructor, prevents instantiation.
@@ -74,12 +86,14 @@ public final class OsmChangeParser {
     public static void parseElements(Context context,
             List<DataElement> elems, long changesetID) {
         try {
-            final PrintWriter writer = new PrintWriter(new BufferedWriter(
-                    new FileWriter(new File(context.getFilesDir()
-                            .getAbsolutePath() + "/OsmChangeUpload.osc"))));
-            parseElements(elems, changesetID, writer);
-            writer.close();
-            Log.i(TAG, "Writer is closed");
+            final OutputStream out = new FileOutputStream(new File(context
+                    .getFilesDir().getAbsolutePath() + "/OsmChangeUpload.osc"));
+            try {
+                parseElements(elems, changesetID, out);
+            } finally {
+                out.close();
+                Log.i(TAG, "Writer is closed");
+            }
         } catch (IOException e) {
             Log.e(TAG, "Problem in writing the OsmChangeFile", e);
         }
@@ -98,88 +112,271 @@ public final class OsmChangeParser {
      */
     public static void parseElements(List<DataElement> elems,
             long changesetID, PrintWriter writer) {
-        final List<Node> nodes = new ArrayList<Node>();
-        final List<PolyElement> ways = new ArrayList<PolyElement>();
-        final List<PolyElement> relations = new ArrayList<PolyElement>();
+        try {
+            parseData(elems, changesetID, new Date(),
+                    Collections.<Long, Long> emptyMap(),
+                    Collections.<Long, Integer> emptyMap(),
+                    Collections.<Node> emptyList(), writer);
+        } catch (IOException e) {
+            // A PrintWriter never throws
+            Log.e(TAG, "Problem in writing the OsmChange", e);
+        }
+    }
 
+    /**
+     * Parses a List of OsmElements into the OSM Change Format and streams the
+     * UTF-8 encoded document into the given stream. The stream is flushed but
+     * not closed.
+     * 
+     * @param elems
+     *            the List of Element which should be uploaded.
+     * @param changesetID
+     *            the changesetID required for the upload.
+     * @param out
+     *            the stream to write to.
+     * @throws IOException
+     *             if writing to the stream fails.
+     */
+    public static void parseElements(List<DataElement> elems,
+            long changesetID, OutputStream out) throws IOException {
+        parseElements(elems, changesetID, new Date(), out);
+    }
+
+    /**
+     * Parses a List of OsmElements into the OSM Change Format and streams the
+     * UTF-8 encoded document into the given stream. The stream is flushed but
+     * not closed.
+     * 
+     * Parsing the same elements twice with the same timestamp produces the
+     * same document, byte by byte.
+     * 
+     * @param elems
+     *            the List of Element which should be uploaded.
+     * @param changesetID
+     *            the changesetID required for the upload.
+     * @param timestamp
+     *            the timestamp of all elements.
+     * @param out
+     *            the stream to write to.
+     * @throws IOException
+     *             if writing to the stream fails.
+     */
+    public static void parseElements(List<DataElement> elems,
+            long changesetID, Date timestamp, OutputStream out)
+            throws IOException {
+        parseElements(elems, changesetID, timestamp,
+                Collections.<Long, Long> emptyMap(), out);
+    }
+
+    /**
+     * Parses a List of OsmElements into the OSM Change Format and streams the
+     * UTF-8 encoded document into the given stream. The stream is flushed but
+     * not closed.
+     * 
+     * Elements which were already uploaded are skipped, references to already
+     * uploaded nodes use the ids assigned by the OSM API.
+     * 
+     * @param elems
+     *            the List of Element which should be uploaded.
+     * @param changesetID
+     *            the changesetID required for the upload.
+     * @param timestamp
+     *            the timestamp of all elements.
+     * @param uploaded
+     *            the ids assigned by the OSM API mapped by the local ids.
+     * @param out
+     *            the stream to write to.
+     * @throws IOException
+     *             if writing to the stream fails.
+     */
+    public static void parseElements(List<DataElement> elems,
+            long changesetID, Date timestamp, Map<Long, Long> uploaded,
+            OutputStream out) throws IOException {
+        parseElements(elems, changesetID, timestamp, uploaded,
+                Collections.<Long, Integer> emptyMap(),
+                Collections.<Node> emptyList(), out);
+    }
+
+    /**
+     * Parses a List of OsmElements into the OSM Change Format and streams the
+     * UTF-8 encoded document into the given stream. The stream is flushed but
+     * not closed.
+     * 
+     * Elements which were already uploaded are skipped, references to already
+     * uploaded nodes use the ids assigned by the OSM API. Uploaded elements
+     * which were changed afterwards are written as modification, uploaded
+     * nodes which were removed afterwards as deletion.
+     * 
+     * @param elems
+     *            the List of Element which should be uploaded.
+     * @param changesetID
+     *            the changesetID required for the upload.
+     * @param timestamp
+     *            the timestamp of all elements.
+     * @param uploaded
+     *            the ids assigned by the OSM API mapped by the local ids.
+     * @param versions
+     *            the versions on the OSM API of the uploaded elements which
+     *            were changed or removed afterwards mapped by the local ids.
+     * @param deleted
+     *            the uploaded nodes which were removed afterwards.
+     * @param out
+     *            the stream to write to.
+     * @throws IOException
+     *             if writing to the stream fails.
+     */
+    public static void parseElements(List<DataElement> elems,
+            long changesetID, Date timestamp, Map<Long, Long> uploaded,
+            Map<Long, Integer> versions, List<Node> deleted, OutputStream out)
+            throws IOException {
+        parseData(elems, changesetID, timestamp, uploaded, versions, deleted,
+                new BufferedWriter(new OutputStreamWriter(out, ENCODING)));
+    }
+
+    /**
+     * Method to parse the general Data. All nodes are written first, then the
+     * PolyElements. Nodes shared by several elements are written once.
+     * Modifications follow the created elements, deletions come last.
+     */
+    private static void parseData(List<DataElement> elems, long changesetID,
+            Date date, Map<Long, Long> uploaded, Map<Long, Integer> versions,
+            List<Node> deleted, Writer writer) throws IOException {
+        // The same timestamp is used for the whole changeset
+        final String timestamp = new SimpleDateFormat(TIMEFORMAT).format(date);
+        final String prefix =
+                TIMESTAMP + timestamp + CHANGESET + changesetID + VERSION;
+        final String attributes = prefix + "1\"";
+
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<osmChange version=\"1\" generator=\"Data4All\">\n");
+        writer.write("<create>\n");
+
+        // Already uploaded nodes count as written
+        final Set<Long> writtenNodes = new HashSet<Long>(uploaded.keySet());
         for (DataElement osm : elems) { // NOSONAR
             if (osm instanceof Node) {
-                nodes.add((Node) osm);
+                parseNodeOnce(writer, (Node) osm, attributes, writtenNodes);
+            } else if (osm instanceof PolyElement) {
+                for (Node n : ((PolyElement) osm).getNodes()) {
+                    parseNodeOnce(writer, n, attributes, writtenNodes);
+                }
             }
-            if (osm instanceof PolyElement) {
-                handlePolyElement(osm, nodes, ways, relations);
+        }
+        // Ways are written before areas and buildings
+        for (DataElement osm : elems) { // NOSONAR
+            if (osm instanceof PolyElement
+                    && ((PolyElement) osm).getType() == PolyElementType.WAY
+                    && !uploaded.containsKey(osm.getOsmId())) {
+                parseWay(writer, getId(osm.getOsmId()), (PolyElement) osm,
+                        attributes, uploaded);
             }
         }
+        for (DataElement osm : elems) { // NOSONAR
+            if (osm instanceof PolyElement
+                    && ((PolyElement) osm).getType() != PolyElementType.WAY
+                    && !uploaded.containsKey(osm.getOsmId())) {
+                parseWay(writer, getId(osm.getOsmId()), (PolyElement) osm,
+                        attributes, uploaded);
+            }
+        }
+
+        writer.write("</create>\n");
+
+        // Uploaded elements which were changed afterwards, nodes first
+        final List<Node> modifiedNodes = new ArrayList<Node>();
+        final List<PolyElement> modifiedPolys = new ArrayList<PolyElement>();
+        final Set<Long> seenNodes = new HashSet<Long>();
+        for (DataElement osm : elems) { // NOSONAR
+            if (osm instanceof Node) {
+                addIfModified(modifiedNodes, (Node) osm, uploaded, versions,
+                        seenNodes);
+            } else if (osm instanceof PolyElement) {
+                for (Node n : ((PolyElement) osm).getNodes()) {
+                    addIfModified(modifiedNodes, n, uploaded, versions,
+                            seenNodes);
+                }
+                if (isModified(osm, uploaded, versions)) {
+                    modifiedPolys.add((PolyElement) osm);
+                }
+            }
+        }
+        if (!modifiedNodes.isEmpty() || !modifiedPolys.isEmpty()) {
+            writer.write("<modify>\n");
+            for (Node n : modifiedNodes) {
+                parseNode(writer, uploaded.get(n.getOsmId()), n, prefix
+                        + versions.get(n.getOsmId()) + "\"");
+            }
+            for (PolyElement poly : modifiedPolys) {
+                parseWay(writer, uploaded.get(poly.getOsmId()), poly, prefix
+                        + versions.get(poly.getOsmId()) + "\"", uploaded);
+            }
+            writer.write("</modify>\n");
+        }
 
-        // From here Parsing
-        parseData(nodes, ways, relations, changesetID, writer);
+        // Uploaded nodes which were removed afterwards
+        if (!deleted.isEmpty()) {
+            writer.write("<delete>\n");
+            for (Node n : deleted) {
+                parseNode(writer, uploaded.get(n.getOsmId()), n, prefix
+                        + versions.get(n.getOsmId()) + "\"");
+            }
+            writer.write("</delete>\n");
+        }
+        writer.write("</osmChange>\n");
+
+        writer.flush();
+        Log.i(TAG, writtenNodes.size() + " nodes and " + elems.size()
+                + " elements are flushed");
     }
 
     /**
-     * Method of how to handle a PolyElement.
+     * Checks whether the given element was uploaded and changed afterwards.
      * 
      * @param osm
-     *            the AbstractDataElement
-     * @param nodes
-     *            the list of nodes which should be uploaded
-     * @param ways
-     *            the list of ways which should be uploaded
-     * @param relations
-     *            the list of relations which should be uploaded
+     *            the element to check
+     * @param uploaded
+     *            the ids assigned by the OSM API mapped by the local ids
+     * @param versions
+     *            the versions of the changed uploaded elements
+     * @return whether the element has to be written as modification
      */
-    private static void handlePolyElement(
-            DataElement osm, // NOSONAR
-            List<Node> nodes, List<PolyElement> ways,
-            List<PolyElement> relations) {
-        final PolyElement poly = (PolyElement) osm;
-        for (Node n : poly.getNodes()) {
-            if (!nodes.contains(n)) {
-                nodes.add(n);
-            }
-        }
-        switch (poly.getType()) {
-        case WAY:
-            ways.add(poly);
-            break;
-        case AREA:
-            relations.add(poly);
-            break;
-        case BUILDING:
-            relations.add(poly);
-            break;
-        default:
-            break;
-        }
+    private static boolean isModified(DataElement osm,
+            Map<Long, Long> uploaded, Map<Long, Integer> versions) {
+        return versions.containsKey(osm.getOsmId())
+                && uploaded.containsKey(osm.getOsmId());
     }
 
     /**
-     * Method to parse the general Data.
+     * Adds the node to the given list if it was uploaded and changed
+     * afterwards, every node is added once.
      */
-    private static void parseData(List<Node> nodes, List<PolyElement> ways,
-            List<PolyElement> relations, long changesetID, PrintWriter writer) {
-        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        writer.println("<osmChange version=\"1\" generator=\"Data4All\">");
-        writer.println("<create>");
-
-        for (Node n : nodes) {
-            Log.i(TAG, "Node parsed ID:" + n.getOsmId() + " LAT: " + n.getLat()
-                    + " LONG: " + n.getLon());
-            parseNode(writer, n, changesetID);
-            Log.i(TAG, "Node parsed ID:" + n.getOsmId() + " LAT: " + n.getLat()
-                    + " LONG: " + n.getLon());
-        }
-        for (PolyElement w : ways) {
-            parseWay(writer, w, changesetID);
+    private static void addIfModified(List<Node> modifiedNodes, Node node,
+            Map<Long, Long> uploaded, Map<Long, Integer> versions,
+            Set<Long> seenNodes) {
+        if (isModified(node, uploaded, versions)
+                && seenNodes.add(node.getOsmId())) {
+            modifiedNodes.add(node);
         }
-        for (PolyElement r : relations) {
-            parseWay(writer, r, changesetID);
-        }
-
-        writer.println("</create>");
-        writer.println("</osmChange>");
+    }
 
-        writer.flush();
-        Log.i(TAG, "Data is flushed");
+    /**
+     * Parses a Node into the OSM Change Format if no node with the same id was
+     * written before.
+     * 
+     * @param writer
+     *            the writer where the Node is parsed
+     * @param node
+     *            the Node which should be parsed
+     * @param attributes
+     *            the timestamp, changeset and version attributes
+     * @param writtenNodes
+     *            the ids of all nodes written so far
+     */
+    private static void parseNodeOnce(Writer writer, Node node,
+            String attributes, Set<Long> writtenNodes) throws IOException {
+        if (writtenNodes.add(node.getOsmId())) {
+            parseNode(writer, getId(node.getOsmId()), node, attributes);
+        }
     }
 
     /**
@@ -187,38 +384,31 @@ public final class OsmChangeParser {
      * 
      * @param writer
      *            the writer where the Node is parsed
+     * @param id
+     *            the id to write, the placeholder or the id on the OSM API
      * @param node
      *            the Node which should be parsed
-     * @param changesetID
-     *            the changesetID required for the upload
+     * @param attributes
+     *            the timestamp, changeset and version attributes
      */
-    private static void parseNode(PrintWriter writer, Node node,
-            long changesetID) {
-        final SimpleDateFormat dateformat = new SimpleDateFormat(TIMEFORMAT);
-        Log.d(TAG, "<node id=\"" + getId(node.getOsmId()) + TIMESTAMP
-                + dateformat.format(new Date()) + "\" lat=\"" + node.getLat()
-                + "\" lon=\"" + node.getLon() + CHANGESET + changesetID
-                + "\" version=\"1\"");
-
-        writer.print("<node id=\"" + getId(node.getOsmId()) + TIMESTAMP
-                + dateformat.format(new Date()) + "\" lat=\"" + node.getLat()
-                + "\" lon=\"" + node.getLon() + CHANGESET + changesetID
-                + "\" version=\"1\"");
-
-        final Map<Tag, String> tags = (LinkedHashMap<Tag, String>) node
-                .getTags();
+    private static void parseNode(Writer writer, long id, Node node,
+            String attributes) throws IOException {
+        writer.write("<node id=\"");
+        writer.write(Long.toString(id));
+        writer.write("\" lat=\"");
+        writer.write(Double.toString(node.getLat()));
+        writer.write("\" lon=\"");
+        writer.write(Double.toString(node.getLon()));
+        writer.write(attributes);
+
+        final Map<Tag, String> tags = node.getTags();
         if (tags.isEmpty()) {
-            writer.print("/>");
-            writer.println();
+            writer.write("/>\n");
             return;
         }
-        writer.print(">");
-        writer.println();
-        for (Tag key : tags.keySet()) {
-            writer.println(TAGKEY + key.getKey() + TAGVALUE + tags.get(key)
-                    + "\"/>");
-        }
-        writer.println("</node>");
+        writer.write(">\n");
+        parseTags(writer, tags);
+        writer.write("</node>\n");
     }
 
     /**
@@ -226,61 +416,102 @@ public final class OsmChangeParser {
      * 
      * @param writer
      *            the writer where the PolyElement is parsed
+     * @param id
+     *            the id to write, the placeholder or the id on the OSM API
      * @param way
      *            the PolyElement WAY which should be parsed
-     * @param changesetID
-     *            the changesetID required for the upload
+     * @param attributes
+     *            the timestamp, changeset and version attributes
+     * @param uploaded
+     *            the ids of the already uploaded nodes
      */
-    private static void parseWay(PrintWriter writer, PolyElement way,
-            long changesetID) {
-        final SimpleDateFormat dateformat = new SimpleDateFormat(TIMEFORMAT);
-        writer.println("<way id=\"" + getId(way.getOsmId()) + TIMESTAMP
-                + dateformat.format(new Date()) + CHANGESET + changesetID
-                + "\" version=\"1\">");
-        final Map<Tag, String> tags = (LinkedHashMap<Tag, String>) way
-                .getTags();
+    private static void parseWay(Writer writer, long id, PolyElement way,
+            String attributes, Map<Long, Long> uploaded) throws IOException {
+        writer.write("<way id=\"");
+        writer.write(Long.toString(id));
+        writer.write(attributes);
+        writer.write(">\n");
         for (Node nd : way.getNodes()) {
-            writer.println("<nd ref=\"" + getId(nd.getOsmId()) + "\"/>");
+            writer.write(NDREF);
+            writer.write(Long.toString(getRef(nd, uploaded)));
+            writer.write(CLOSE);
         }
         if (way.getType() != PolyElementType.WAY) {
-            writer.println("<nd ref=\"" + getId(way.getFirstNode().getOsmId())
-                    + "\"/>");
-        }
-        for (Tag key : tags.keySet()) {
-            writer.println(TAGKEY + key.getKey() + TAGVALUE + tags.get(key)
-                    + "\"/>");
+            writer.write(NDREF);
+            writer.write(Long.toString(getRef(way.getFirstNode(), uploaded)));
+            writer.write(CLOSE);
         }
-        writer.println("</way>");
+        parseTags(writer, way.getTags());
+        writer.write("</way>\n");
     }
 
     /**
-     * Parses a Relation into the OSM Change Format.
+     * Parses the tags of an element into the OSM Change Format.
      * 
      * @param writer
-     *            the writer where the PolyElement is parsed
-     * @param relation
-     *            the PolyElement AREA or BUILDING which should be parsed
-     * @param changesetID
-     *            the changesetID required for the upload
+     *            the writer where the tags are parsed
+     * @param tags
+     *            the tags which should be parsed
      */
-    private static void parseRelation(PrintWriter writer, PolyElement relation,
-            long changesetID) {
-        final SimpleDateFormat dateformat = new SimpleDateFormat(TIMEFORMAT);
-        writer.println("<relation id=\"" + getId(relation.getOsmId())
-                + TIMESTAMP + dateformat.format(new Date()) + CHANGESET
-                + changesetID + "\" version=\"1\">");
-        final Map<Tag, String> tags = (LinkedHashMap<Tag, String>) relation
-                .getTags();
-        for (Node member : relation.getNodes()) {
-            writer.println("<member type=\"node\" ref=\""
-                    + getId(member.getOsmId()) + "\" role=\"\"/>");
+    private static void parseTags(Writer writer, Map<Tag, String> tags)
+            throws IOException {
+        for (Map.Entry<Tag, String> tag : tags.entrySet()) {
+            writer.write(TAGKEY);
+            writeEscaped(writer, tag.getKey().getKey());
+            writer.write(TAGVALUE);
+            writeEscaped(writer, tag.getValue());
+            writer.write(CLOSE);
         }
+    }
 
-        for (Tag key : tags.keySet()) {
-            writer.println(TAGKEY + key.getKey() + TAGVALUE + tags.get(key)
-                    + "\"/>");
+    /**
+     * Writes the given text as the content of a XML attribute, escaping all
+     * characters with a special meaning.
+     * 
+     * @param writer
+     *            the writer to write to
+     * @param text
+     *            the text to escape, null is written as an empty string
+     */
+    private static void writeEscaped(Writer writer, String text)
+            throws IOException {
+        if (text == null) {
+            return;
+        }
+        final int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final String replacement;
+            switch (text.charAt(i)) {
+            case '&':
+                replacement = "&amp;";
+                break;
+            case '<':
+                replacement = "&lt;";
+                break;
+            case '>':
+                replacement = "&gt;";
+                break;
+            case '"':
+                replacement = "&quot;";
+                break;
+            case '\'':
+                replacement = "&apos;";
+                break;
+            case '\n':
+                replacement = "&#10;";
+                break;
+            default:
+                replacement = null;
+                break;
+            }
+            if (replacement != null) {
+                writer.write(text, start, i - start);
+                writer.write(replacement);
+                start = i + 1;
+            }
         }
-        writer.println("</relation>");
+        writer.write(text, start, length - start);
     }
 
     /**
@@ -295,4 +526,21 @@ public final class OsmChangeParser {
         return (long) (-1 * Math.abs(osmId));
     }
 
+    /**
+     * Returns the id to reference the given node with.
+     * 
+     * @param node
+     *            the referenced node
+     * @param uploaded
+     *            the ids of the already uploaded nodes
+     * @return the id assigned by the OSM API or the placeholder id
+     */
+    private static long getRef(Node node, Map<Long, Long> uploaded) {
+        final Long osmId = uploaded.get(node.getOsmId());
+        if (osmId == null) {
+            return getId(node.getOsmId());
+        }
+        return osmId;
+    }
+
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import io.github.data4all.logger.Log;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+/**
+ * Decodes a taken picture for showing it in a view of a given size. Only the
+ * bounds of the picture are read first, then the region with the aspect ratio
+ * of the view is decoded with the largest sample size which still fills the
+ * view. So the full picture is never held in memory.
+ * 
+ * The picture is not rotated, a landscape picture has to be rotated by the
+ * view.
+ */
+public final class PictureDecoder {
+    private static final String TAG = PictureDecoder.class.getSimpleName();
+
+    /**
+     * Differences of the aspect ratios up to this are not cropped.
+     */
+    private static final double RATIO_TOLERANCE = 0.1;
+
+    private PictureDecoder() {
+    }
+
+    /**
+     * Decodes the picture at the given path for a view of the given size. The
+     * longer side of the picture is matched to the longer side of the view,
+     * regardless of the orientation of both.
+     * 
+     * @param path
+     *            The path of the picture file
+     * @param viewSize
+     *            The size of the view in pixels
+     * @return the cropped and scaled picture or {@code null} if it cannot be
+     *         decoded
+     */
+    public static Bitmap decode(String path, Point viewSize) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        final int viewLonger = Math.max(viewSize.x, viewSize.y);
+        final int viewShorter = Math.min(viewSize.x, viewSize.y);
+        final Rect region =
+                cropRegion(options.outWidth, options.outHeight,
+                        (double) viewLonger / viewShorter);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize =
+                ThumbnailLoader.sampleSize(
+                        Math.max(region.width(), region.height()), viewLonger);
+        try {
+            final BitmapRegionDecoder decoder =
+                    BitmapRegionDecoder.newInstance(path, false);
+            try {
+                return decoder.decodeRegion(region, options);
+            } finally {
+                decoder.recycle();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot decode " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Calculates the centered region of a picture which has the given ratio
+     * of the longer to the shorter side. The orientation of the picture is
+     * kept.
+     * 
+     * @param width
+     *            The width of the picture
+     * @param height
+     *            The height of the picture
+     * @param ratio
+     *            The ratio of the longer to the shorter side of the view
+     * @return the region to decode
+     */
+    static Rect cropRegion(int width, int height, double ratio) {
+        int longer = Math.max(width, height);
+        int shorter = Math.min(width, height);
+        final double pictureRatio = (double) longer / shorter;
+        if (ratio - pictureRatio > RATIO_TOLERANCE) {
+            // the view is longer, reduce the shorter side
+            shorter = (int) Math.round(longer / ratio);
+        } else if (pictureRatio - ratio > RATIO_TOLERANCE) {
+            // the picture is longer, reduce the longer side
+            longer = (int) Math.round(shorter * ratio);
+        }
+        final int regionWidth = width >= height ? longer : shorter;
+        final int regionHeight = width >= height ? shorter : longer;
+        final int left = (width - regionWidth) / 2;
+        final int top = (height - regionHeight) / 2;
+        return new Rect(left, top, left + regionWidth, top + regionHeight);
+    }
+}
@@ -37,17 +37,12 @@ import java.util.List;
 public class PointToCoordsTransformUtil {
     /** Logger tag for this class. */
     private static final String TAG = "PointToWorldCoords";
-    /** height of the device from the ground. */
-    private double height;
     /** object of the TransFormationParamBean. */
     private TransformationParamBean tps;
     /** object of the deviceOrientation. */
     private DeviceOrientation deviceOrientation;
-    /**
-     * 2 Vectors for the x- and the y-axe
-     */
-    private static final double[] xaxe = { 1, 0, 0, };
-    private static final double[] yaxe = { 0, 1, 0, };
+    /** the projection for the last used parameters and orientation. */
+    private CameraProjection projection;
 
     public PointToCoordsTransformUtil() {
     }
@@ -91,39 +86,19 @@ public class PointToCoordsTransformUtil {
     public List<Node> transform(TransformationParamBean tps,
             DeviceOrientation deviceOrientation, List<Point> points) {
         this.tps = tps;
+        Log.d(TAG, "transforming " + points.size() + " points");
 
-        Log.i(TAG, tps.toString());
-        Log.i(TAG, deviceOrientation.toString());
-        final List<Node> nodes = new ArrayList<Node>();
-        Log.d(TAG,
-                "Orientation: "
-                        + Math.toDegrees(deviceOrientation.getAzimuth())
-                        + " ; " + Math.toDegrees(deviceOrientation.getPitch())
-                        + " ; " + Math.toDegrees(deviceOrientation.getRoll()));
-        Log.d(TAG, tps.toString());
-
-        // get the set height
-        this.height = tps.getHeight();
-        Log.d(TAG, "TPS-DATA pic height: " + tps.getPhotoHeight() + " width: "
-                + tps.getPhotoWidth() + " deviceHeight: " + tps.getHeight());
-        for (Point point : points) {
-            // point = new Point(xAxis - point.getY(), yAxis - point.getX());
-            Log.i(TAG, "Point X:" + point.getX() + " Y: " + point.getY());
-
-            // calculates local coordinates in meter first
-            final double[] coord = this.calculateCoordFromPoint(tps,
-                    deviceOrientation, point);
-            Log.d(TAG, "Calculated local Coords:" + coord[0] + "  " + coord[1]);
-            // transforms local coordinates in global GPS-coordinates set to.
-            // Node.
-            if (coord != null) {
-                final Node node = MathUtil.calculateGPSPoint(tps.getLocation(),
-                        coord);
-                Log.d(TAG,
-                        "Calculated Lat: " + node.getLat() + " Lon: "
-                                + node.getLon());
-                nodes.add(node);
-            }
+        // calculates local coordinates in meter first
+        final double[] coords = toArray(points);
+        getProjection(tps, deviceOrientation).pixelsToCoords(coords,
+                points.size());
+        // transforms local coordinates in global GPS-coordinates set to.
+        // Node.
+        new LocalProjector(tps.getLocation()).toGPS(coords, coords,
+                points.size());
+        final List<Node> nodes = new ArrayList<Node>(points.size());
+        for (int i = 0; i < coords.length; i += 2) {
+            nodes.add(new Node(-1, coords[i], coords[i + 1]));
         }
         return nodes;
     }
@@ -157,24 +132,15 @@ public class PointToCoordsTransformUtil {
      */
     public Point fourthBuildingPoint(List<Point> points) {
         final List<double[]> coords = new ArrayList<double[]>();
-        // float saveAzimuth = deviceOrientation.getAzimuth();
-        // deviceOrientation.setAzimuth(0);
-        Log.d(TAG, "TPS-DATA pic height: " + tps.getPhotoHeight() + " width: "
-                + tps.getPhotoWidth() + " deviceHeight: " + tps.getHeight());
         if (points.size() != 3) {
             Log.w(TAG,
                     "The given amount of Points was not 3, can not calculate 4th building point");
             return null;
         } else {
             for (Point point : points) {
-                // change point coordinates to match the set coordinate system.
-                Log.i(TAG, "Point X:" + point.getX() + " Y: " + point.getY());
                 // calculates local coordinates in meter first
-                final double[] coord = this.calculateCoordFromPoint(tps,
-                        deviceOrientation, point);
-                Log.d(TAG, "Calculated local Coords:" + coord[0] + "  "
-                        + coord[1]);
-                coords.add(coord);
+                coords.add(this.calculateCoordFromPoint(tps,
+                        deviceOrientation, point));
             }
         }
         final double[] coord = MathUtil.calcFourthCoord(coords);
@@ -189,47 +155,9 @@ public class PointToCoordsTransformUtil {
      * @return a Point a Pixel to draw on the device
      */
     public Point coordToPixel(double[] coord) {
-        double[] vector = new double[3];
-        final double azimuth = deviceOrientation.getAzimuth();
-        vector[0] = ((coord[0] * Math.cos(azimuth)) - (coord[1] * Math
-                .sin(azimuth)));
-        vector[1] = ((coord[0] * Math.sin(azimuth)) + (coord[1] * Math
-                .cos(azimuth)));
-        vector[2] = -tps.getHeight();
-        // Rotate to the device coordinat-system
-        final double pitch = deviceOrientation.getPitch();
-        final double[] vector2 = MathUtil.rotate(vector, xaxe, pitch);
-        final double roll = deviceOrientation.getRoll();
-        final double[] vector3 = MathUtil.rotate(vector2, yaxe, -roll);
-
-        if (vector3[2] >= 0) {
-            final double length = Math.sqrt(vector3[0] * vector3[0]
-                    + vector3[1] * vector3[1] + vector3[2] * vector3[2]);
-            double multi = 1 - vector3[2] / length;
-            multi = multi * multi
-                    * (tps.getPhotoHeight() + tps.getPhotoWidth());
-            multi = multi * multi;
-            return new Point((float) (vector3[0] * multi),
-                    (float) (-vector3[1] * multi));
-        }
-
-        // calculate the pitch- and roll-angles.
-        final double horizonPitch = Math.atan(vector3[1] / vector3[2]);
-        final double horizonRoll = -Math.atan(vector3[0] / vector3[2]);
-
-        // calculate a point on the horizont vertical to the mid of the display.
-        Log.i(TAG, tps.toString());
-        final float x = tps.getPhotoWidth()
-                / 2
-                + MathUtil.calculatePixelFromAngle(horizonRoll,
-                        tps.getPhotoWidth(),
-                        tps.getCameraMaxVerticalViewAngle());
-        final float y = tps.getPhotoHeight()
-                / 2
-                + MathUtil.calculatePixelFromAngle(horizonPitch,
-                        tps.getPhotoHeight(),
-                        tps.getCameraMaxHorizontalViewAngle());
-        return new Point(x, y);
+        final double[] pixel = { coord[0], coord[1], };
+        getProjection(tps, deviceOrientation).coordsToPixels(pixel, 1);
+        return new Point((float) pixel[0], (float) pixel[1]);
     }
 
     /**
@@ -245,9 +173,20 @@ public class PointToCoordsTransformUtil {
      */
     public List<Point> calculateNodesToPoint(List<Node> nodes,
             TransformationParamBean tps, DeviceOrientation deviceOrientation) {
-        final List<Point> points = new ArrayList<Point>();
-        for (Node node : nodes) {
-            points.add(calculateNodeToPoint(node, tps, deviceOrientation));
+        this.tps = tps;
+        this.deviceOrientation = deviceOrientation;
+        final double[] coords = new double[nodes.size() * 2];
+        for (int i = 0; i < nodes.size(); i++) {
+            coords[i * 2] = nodes.get(i).getLat();
+            coords[i * 2 + 1] = nodes.get(i).getLon();
+        }
+        new LocalProjector(tps.getLocation()).toLocal(coords, coords,
+                nodes.size());
+        getProjection(tps, deviceOrientation).coordsToPixels(coords,
+                nodes.size());
+        final List<Point> points = new ArrayList<Point>(nodes.size());
+        for (int i = 0; i < coords.length; i += 2) {
+            points.add(new Point((float) coords[i], (float) coords[i + 1]));
         }
         return points;
     }
@@ -287,71 +226,44 @@ public class PointToCoordsTransformUtil {
      */
     public double[] calculateCoordFromPoint(TransformationParamBean tps,
             DeviceOrientation deviceOrientation, Point point) {
+        final double[] coord = { point.getX(), point.getY(), 0, };
+        getProjection(tps, deviceOrientation).pixelsToCoords(coord, 1);
+        return coord;
+    }
 
-        this.height = tps.getHeight();
-        final double azimuth = -deviceOrientation.getAzimuth();
-        // gets an angle for the point on the pitch axis
-        final double pixelpitch = -MathUtil.calculateAngleFromPixel(
-                point.getY(), tps.getPhotoHeight(),
-                tps.getCameraMaxHorizontalViewAngle());
-        // gets an angle for the point on the roll axis
-        final double pixelroll = MathUtil.calculateAngleFromPixel(point.getX(),
-                tps.getPhotoWidth(), tps.getCameraMaxVerticalViewAngle());
-        final double pitch = -deviceOrientation.getPitch();
-        final double roll = deviceOrientation.getRoll();
-
-        final double[] vector = new double[3];
-        // without any rotation (faced to the ground and the north)
-        vector[2] = -1;
-        vector[1] = Math.tan(pixelpitch);
-        vector[0] = Math.tan(pixelroll);
-        // rotate around x-axis with pitch
-        final double[] vector2 = new double[3];
-        vector2[0] = vector[0];
-        vector2[1] = vector[1] * Math.cos(pitch) - vector[2] * Math.sin(pitch);
-        vector2[2] = vector[1] * Math.sin(pitch) + vector[2] * Math.cos(pitch);
-        // rotate around line through origin with pitch angle
-        final double[] finalVector = new double[3];
-        finalVector[0] = vector2[0] * Math.cos(roll) - vector2[1]
-                * Math.sin(pitch) * Math.sin(roll) + vector2[2]
-                * Math.cos(pitch) * Math.sin(roll);
-        finalVector[1] = vector2[0]
-                * Math.sin(roll)
-                * Math.sin(pitch)
-                + vector2[1]
-                * (Math.cos(pitch) * Math.cos(pitch) * (1 - Math.cos(roll)) + Math
-                        .cos(roll)) + vector2[2] * Math.cos(pitch)
-                * Math.sin(pitch) * (1 - Math.cos(roll));
-        finalVector[2] = -vector2[0]
-                * Math.cos(pitch)
-                * Math.sin(roll)
-                + vector2[1]
-                * Math.sin(pitch)
-                * Math.cos(pitch)
-                * (1 - Math.cos(roll))
-                + vector2[2]
-                * (Math.sin(pitch) * Math.sin(pitch) * (1 - Math.cos(roll)) + Math
-                        .cos(roll));
-        // returns null, if the vector points to the sky
-        if (finalVector[2] >= 0) {
-            Log.wtf(TAG,
-                    "Vector is directed to the sky, cannot calculate coords",
-                    null);
-            return new double[3];
+    /**
+     * Returns the projection for the given parameters and orientation, the
+     * last projection is reused while they do not change.
+     * 
+     * @param tps
+     *            object of TransformParamBean
+     * @param deviceOrientation
+     *            object of DeviceOrientation
+     * @return the projection
+     */
+    private CameraProjection getProjection(TransformationParamBean tps,
+            DeviceOrientation deviceOrientation) {
+        if (projection == null || !projection.matches(tps, deviceOrientation)) {
+            projection = new CameraProjection(tps, deviceOrientation);
         }
-        // collides vector with the xy-plane
-        final double tempXX = finalVector[0] * (height / -finalVector[2]);
-        final double tempYY = finalVector[1] * (height / -finalVector[2]);
-        final double[] coord = new double[3];
-        Log.i(TAG, "Coord: " + tempXX + " , " + tempYY);
-        // Rotate Vector with azimuth (z is fix))
-        Log.d(TAG, "AZIMUTH: " + azimuth);
-        coord[0] = ((tempXX * Math.cos(azimuth)) - (tempYY * Math.sin(azimuth)));
-        coord[1] = ((tempXX * Math.sin(azimuth)) + (tempYY * Math.cos(azimuth)));
-        coord[2] = 0;
-        Log.i(TAG, "Coordinates: " + coord[0] + " ; " + coord[1]);
+        return projection;
+    }
 
-        return coord;
+    /**
+     * Copies the coordinates of the points into an array of interleaved x and
+     * y values.
+     * 
+     * @param points
+     *            the points to copy
+     * @return the array with the coordinates
+     */
+    private static double[] toArray(List<Point> points) {
+        final double[] coords = new double[points.size() * 2];
+        for (int i = 0; i < points.size(); i++) {
+            coords[i * 2] = points.get(i).getX();
+            coords[i * 2 + 1] = points.get(i).getY();
+        }
+        return coords;
     }
 
     public double calculateDistance(TransformationParamBean tps,
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Base class of the fixed-size buffers for sensor samples. Subclasses keep
+ * the values of the samples in parallel primitive arrays, so storing a sample
+ * allocates nothing.
+ * 
+ * There must be a single writer, any number of threads may read concurrently
+ * without locking. Every slot carries a version which is odd while the
+ * writer changes the slot. A reader remembers the version before reading a
+ * slot and drops or retries the read if the version changed meanwhile. The
+ * values are held in atomic arrays, so the reads of the values cannot be
+ * reordered around the reads of the version.
+ */
+public abstract class SampleBuffer {
+    private final int capacity;
+    private final AtomicIntegerArray versions;
+
+    /**
+     * The slot of the newest sample.
+     */
+    private volatile int head;
+
+    /**
+     * The number of stored samples.
+     */
+    private volatile int size;
+
+    /**
+     * Constructs an empty buffer.
+     * 
+     * @param capacity
+     *            the maximum number of samples
+     */
+    protected SampleBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.versions = new AtomicIntegerArray(capacity);
+        this.head = capacity - 1;
+    }
+
+    /**
+     * Marks the slot of the next sample as being written.
+     * 
+     * @return the slot to write the sample to
+     */
+    protected final int beginWrite() {
+        final int slot = (head + 1) % capacity;
+        versions.set(slot, versions.get(slot) + 1);
+        return slot;
+    }
+
+    /**
+     * Marks the slot as written and publishes it as the newest sample.
+     * 
+     * @param slot
+     *            the slot returned by {@link #beginWrite()}
+     */
+    protected final void endWrite(int slot) {
+        versions.set(slot, versions.get(slot) + 1);
+        head = slot;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    /**
+     * @return the slot of the newest sample
+     */
+    protected final int head() {
+        return head;
+    }
+
+    /**
+     * Returns the slot of a sample relative to the given newest slot.
+     * 
+     * @param newest
+     *            the slot of the newest sample
+     * @param age
+     *            the number of samples which are newer than the wanted one
+     * @return the slot of the sample
+     */
+    protected final int slot(int newest, int age) {
+        return (newest - age + capacity) % capacity;
+    }
+
+    /**
+     * Returns the version of the slot to start a read.
+     * 
+     * @param slot
+     *            the slot to read
+     * @return the version or {@code -1} if the slot is being written
+     */
+    protected final int beginRead(int slot) {
+        final int version = versions.get(slot);
+        return (version & 1) == 0 ? version : -1;
+    }
+
+    /**
+     * Checks whether the slot was not changed since the read started.
+     * 
+     * @param slot
+     *            the read slot
+     * @param version
+     *            the version returned by {@link #beginRead(int)}
+     * @return {@code true} if the read values are consistent
+     */
+    protected final boolean endRead(int slot, int version) {
+        return version >= 0 && versions.get(slot) == version;
+    }
+
+    /**
+     * @return the number of stored samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of samples
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A simple spatial index which sorts items into a grid of cells of equal size
+ * in degrees. Every item is stored in the cell of its center together with
+ * its extent, so a query only visits the cells around the queried location
+ * instead of every item. Items larger than a few cells are kept apart and
+ * returned by every query, so they do not widen the search of all queries.
+ * 
+ * @param <T>
+ *            The type of the indexed items
+ */
+public class SpatialGridIndex<T> {
+    /**
+     * The length of one degree of latitude in meters.
+     */
+    private static final double METERS_PER_DEGREE = 111320;
+
+    /**
+     * The smallest factor for the length of a degree of longitude, prevents a
+     * degenerated query near the poles.
+     */
+    private static final double MIN_LONGITUDE_FACTOR = 0.01;
+
+    /**
+     * The largest extent of an item in cells which is sorted into the grid.
+     */
+    private static final int MAX_CELL_EXTENT = 4;
+
+    private final double cellDegrees;
+    private final double cellSize;
+    private final Map<Long, List<T>> cells = new HashMap<Long, List<T>>();
+    private final List<T> largeItems = new ArrayList<T>();
+
+    /**
+     * The largest extent of all items in the grid in meters.
+     */
+    private double maxExtent;
+    private int size;
+
+    /**
+     * Constructs an empty index.
+     * 
+     * @param cellSize
+     *            The size of a cell in meters (in north-south direction)
+     */
+    public SpatialGridIndex(double cellSize) {
+        this.cellSize = cellSize;
+        this.cellDegrees = cellSize / METERS_PER_DEGREE;
+    }
+
+    /**
+     * Adds an item to the index.
+     * 
+     * @param item
+     *            The item to add
+     * @param lat
+     *            The latitude of the center of the item
+     * @param lon
+     *            The longitude of the center of the item
+     * @param extent
+     *            The largest distance of any part of the item to its center
+     *            in meters
+     */
+    public void add(T item, double lat, double lon, double extent) {
+        size++;
+        if (extent > cellSize * MAX_CELL_EXTENT) {
+            largeItems.add(item);
+            return;
+        }
+        final Long key = key(cell(lat), cell(lon));
+        List<T> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<T>();
+            cells.put(key, cell);
+        }
+        cell.add(item);
+        maxExtent = Math.max(maxExtent, extent);
+    }
+
+    /**
+     * Adds all items which may lie within the given radius around the given
+     * location to the result. The result may contain items which are a bit
+     * further away, but never misses an item within the radius.
+     * 
+     * @param lat
+     *            The latitude of the location
+     * @param lon
+     *            The longitude of the location
+     * @param radius
+     *            The radius in meters
+     * @param result
+     *            The list to add the items to
+     */
+    public void query(double lat, double lon, double radius, List<T> result) {
+        result.addAll(largeItems);
+        final double reach = radius + maxExtent;
+        final double latReach = reach / METERS_PER_DEGREE;
+        final double lonReach =
+                latReach
+                        / Math.max(MIN_LONGITUDE_FACTOR,
+                                Math.cos(Math.toRadians(lat)));
+        final int maxLat = cell(lat + latReach);
+        final int minLon = cell(lon - lonReach);
+        final int maxLon = cell(lon + lonReach);
+        for (int latCell = cell(lat - latReach); latCell <= maxLat; latCell++) {
+            for (int lonCell = minLon; lonCell <= maxLon; lonCell++) {
+                final List<T> cell = cells.get(key(latCell, lonCell));
+                if (cell != null) {
+                    result.addAll(cell);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of items in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    private int cell(double degrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+
+    private static Long key(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+    }
+}
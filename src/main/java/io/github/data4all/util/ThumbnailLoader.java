@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import io.github.data4all.logger.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.LruCache;
+
+/**
+ * Loads the thumbnails and locations of the images of a {@link Gallery} in
+ * the background. The thumbnails are kept in a memory cache and are written
+ * to the thumbnail folder of the gallery, so every image is decoded only once.
+ * 
+ * A request is bound to a target, usually the view showing the result. A new
+ * request for the same target cancels the previous one, so recycled list rows
+ * do not wait for thumbnails they do not show anymore. All methods must be
+ * called from the main thread, the results are delivered there too.
+ */
+public final class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+
+    /**
+     * The number of threads decoding images.
+     */
+    private static final int POOL_SIZE = 2;
+
+    /**
+     * The quality of the cached thumbnails.
+     */
+    private static final int JPEG_QUALITY = 85;
+
+    /**
+     * The part of the heap the memory cache of the thumbnails may use.
+     */
+    private static final int MEMORY_FRACTION = 16;
+
+    /**
+     * The number of locations kept in memory.
+     */
+    private static final int LOCATION_CACHE_SIZE = 256;
+
+    /**
+     * Cached for the images without a location, the cache cannot hold
+     * {@code null}.
+     */
+    private static final Location NO_LOCATION = new Location("none");
+
+    /**
+     * Receives the result of a request.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread when the request is done.
+         * 
+         * @param timestamp
+         *            The timestamp of the image
+         * @param thumbnail
+         *            The thumbnail or {@code null} if it cannot be loaded
+         * @param location
+         *            The location of the image or {@code null} if it is not
+         *            known
+         */
+        void onThumbnailLoaded(long timestamp, Bitmap thumbnail,
+                Location location);
+    }
+
+    private final Gallery gallery;
+    private final int size;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor;
+
+    private final LruCache<Long, Bitmap> thumbnails;
+    private final LruCache<Long, Location> locations =
+            new LruCache<Long, Location>(LOCATION_CACHE_SIZE);
+
+    // the running requests mapped by their target
+    private final Map<Object, Request> requests =
+            new HashMap<Object, Request>();
+    // the running prefetches mapped by the timestamp
+    private final Map<Long, Request> prefetches = new HashMap<Long, Request>();
+
+    /**
+     * Constructs a loader for the given gallery.
+     * 
+     * @param gallery
+     *            The gallery to load the images from
+     * @param size
+     *            The length of the longer side of the thumbnails in pixels
+     */
+    public ThumbnailLoader(Gallery gallery, int size) {
+        this.gallery = gallery;
+        this.size = size;
+        final int cacheSize =
+                (int) (Runtime.getRuntime().maxMemory() / MEMORY_FRACTION);
+        this.thumbnails = new LruCache<Long, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        this.executor =
+                new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L,
+                        TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Loads the thumbnail and the location of the image for the given target.
+     * If both are cached, the callback is called before this method returns.
+     * A running prefetch of the image is taken over by the target.
+     * 
+     * @param target
+     *            The target of the request, a previous request for it is
+     *            cancelled
+     * @param timestamp
+     *            The timestamp of the image
+     * @param callback
+     *            The callback for the result
+     */
+    public void load(Object target, long timestamp, Callback callback) {
+        final Bitmap thumbnail = thumbnails.get(timestamp);
+        final Location location = locations.get(timestamp);
+        if (thumbnail != null && location != null) {
+            cancel(target);
+            callback.onThumbnailLoaded(timestamp, thumbnail,
+                    location == NO_LOCATION ? null : location);
+            return;
+        }
+        final Request running = requests.get(target);
+        if (running != null && running.timestamp == timestamp) {
+            return;
+        }
+        cancel(target);
+        final Request prefetch = prefetches.remove(timestamp);
+        if (prefetch != null) {
+            // Deliver the prefetch instead of decoding the image twice
+            prefetch.target = target;
+            prefetch.callback = callback;
+            requests.put(target, prefetch);
+            return;
+        }
+        final Request request = new Request(target, timestamp, callback);
+        requests.put(target, request);
+        request.future = executor.submit(request);
+    }
+
+    /**
+     * Loads the thumbnail and the location of the image into the caches
+     * without a target.
+     * 
+     * @param timestamp
+     *            The timestamp of the image
+     */
+    public void prefetch(long timestamp) {
+        if (thumbnails.get(timestamp) != null
+                || prefetches.containsKey(timestamp)) {
+            return;
+        }
+        final Request request = new Request(null, timestamp, null);
+        prefetches.put(timestamp, request);
+        request.future = executor.submit(request);
+    }
+
+    /**
+     * Cancels the request of the given target.
+     * 
+     * @param target
+     *            The target of the request
+     */
+    public void cancel(Object target) {
+        final Request request = requests.remove(target);
+        if (request != null) {
+            request.future.cancel(false);
+        }
+    }
+
+    /**
+     * Removes the image from the memory caches, the cached thumbnail file is
+     * deleted by {@link Gallery#deleteImage(long)}.
+     * 
+     * @param timestamp
+     *            The timestamp of the image
+     */
+    public void evict(long timestamp) {
+        thumbnails.remove(timestamp);
+        locations.remove(timestamp);
+    }
+
+    /**
+     * Cancels all requests and stops the decoding threads. The loader cannot
+     * be used afterwards.
+     */
+    public void shutdown() {
+        requests.clear();
+        prefetches.clear();
+        executor.shutdownNow();
+        thumbnails.evictAll();
+    }
+
+    /**
+     * Loads the thumbnail from the caches or decodes it from the image.
+     */
+    private Bitmap loadThumbnail(long timestamp) {
+        Bitmap thumbnail = thumbnails.get(timestamp);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        final File cached = gallery.getThumbnailFile(timestamp);
+        if (cached.exists()) {
+            thumbnail = BitmapFactory.decodeFile(cached.getAbsolutePath());
+        }
+        if (thumbnail == null) {
+            try {
+                final File image = gallery.getImageFile(timestamp);
+                thumbnail = decodeThumbnail(image.getAbsolutePath(), size);
+                if (thumbnail != null) {
+                    writeThumbnail(cached, thumbnail);
+                    if (!image.exists()) {
+                        // The image was deleted while it was decoded, the
+                        // gallery deletes the image before the thumbnail
+                        cached.delete();
+                        return null;
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot load image " + timestamp, e);
+            }
+        }
+        if (thumbnail != null) {
+            thumbnails.put(timestamp, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Loads the location from the cache or from the gallery.
+     */
+    private Location loadLocation(long timestamp) {
+        Location location = locations.get(timestamp);
+        if (location == null) {
+            try {
+                location =
+                        gallery.getImageInformations(timestamp)
+                                .getParameters().getLocation();
+                locations.put(timestamp, location == null ? NO_LOCATION
+                        : location);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot load informations " + timestamp, e);
+            }
+        }
+        return location == NO_LOCATION ? null : location;
+    }
+
+    /**
+     * Writes the thumbnail to the cache file. The thumbnail is written to a
+     * temporary file first which then replaces the cache file, so a
+     * concurrent request never decodes a partly written file. If this fails,
+     * the image is decoded again next time.
+     */
+    private static void writeThumbnail(File file, Bitmap thumbnail) {
+        File temp = null;
+        FileOutputStream stream = null;
+        boolean written = false;
+        try {
+            temp = File.createTempFile(file.getName(), null,
+                    file.getParentFile());
+            stream = new FileOutputStream(temp);
+            written =
+                    thumbnail.compress(Bitmap.CompressFormat.JPEG,
+                            JPEG_QUALITY, stream);
+            stream.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot cache thumbnail " + file, e);
+            written = false;
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+        if (temp != null && !(written && temp.renameTo(file))) {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Decodes the image at the given path with its longer side scaled to the
+     * given size. Only the bounds are read first to decode the image with the
+     * largest sample size which still keeps the requested size.
+     * 
+     * @param path
+     *            The path of the image file
+     * @param size
+     *            The length of the longer side of the result in pixels
+     * @return the scaled image or {@code null} if it cannot be decoded
+     */
+    static Bitmap decodeThumbnail(String path, int size) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        final int longer = Math.max(options.outWidth, options.outHeight);
+        options.inSampleSize = sampleSize(longer, size);
+        options.inJustDecodeBounds = false;
+        final Bitmap sampled = BitmapFactory.decodeFile(path, options);
+        if (sampled == null) {
+            return null;
+        }
+        final int sampledLonger =
+                Math.max(sampled.getWidth(), sampled.getHeight());
+        if (sampledLonger <= size) {
+            return sampled;
+        }
+        final float scale = (float) size / sampledLonger;
+        final Bitmap scaled =
+                Bitmap.createScaledBitmap(sampled,
+                        Math.max(1, Math.round(sampled.getWidth() * scale)),
+                        Math.max(1, Math.round(sampled.getHeight() * scale)),
+                        true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Calculates the largest power of two by which the given length can be
+     * divided while staying at least the given size.
+     * 
+     * @param length
+     *            The length of the image
+     * @param size
+     *            The requested length
+     * @return the sample size for {@link BitmapFactory.Options#inSampleSize}
+     */
+    static int sampleSize(int length, int size) {
+        int sampleSize = 1;
+        while (length / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * A request for the thumbnail and the location of an image. It is loaded
+     * on a decoding thread and delivered on the main thread.
+     */
+    private final class Request implements Runnable {
+        private final long timestamp;
+        private Future<?> future;
+
+        // set again on the main thread if a target takes over the prefetch
+        private Object target;
+        private Callback callback;
+
+        private Bitmap thumbnail;
+        private Location location;
+
+        private Request(Object target, long timestamp, Callback callback) {
+            this.target = target;
+            this.timestamp = timestamp;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                deliver();
+            } else {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                thumbnail = loadThumbnail(timestamp);
+                location = loadLocation(timestamp);
+                handler.post(this);
+            }
+        }
+
+        /**
+         * Delivers the result if the request is still the current one of its
+         * target.
+         */
+        private void deliver() {
+            if (target == null) {
+                prefetches.remove(timestamp);
+            } else if (requests.get(target) == this) {
+                requests.remove(target);
+                callback.onThumbnailLoaded(timestamp, thumbnail, location);
+            }
+        }
+    }
+}
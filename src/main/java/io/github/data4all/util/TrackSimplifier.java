@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import io.github.data4all.model.data.TrackPoint;
+import android.location.Location;
+
+/**
+ * Simplifies a track while it is recorded. The last stored point of the track
+ * is kept floating: as long as every point dropped since the last fixed point
+ * stays within the tolerance of the line from the fixed point to the newest
+ * location, the floating point is replaced by the newest location. Otherwise
+ * the floating point is fixed and the newest location is appended as the new
+ * floating point. So no dropped point deviates more than the tolerance from
+ * the stored track.
+ * 
+ * Locations with a bad accuracy or an implausible speed are rejected before.
+ */
+public final class TrackSimplifier {
+
+    /**
+     * The location was rejected and must not be stored.
+     */
+    public static final int REJECT = 0;
+
+    /**
+     * The location has to be appended to the track.
+     */
+    public static final int APPEND = 1;
+
+    /**
+     * The location has to replace the last point of the track.
+     */
+    public static final int REPLACE = 2;
+
+    /**
+     * The number of dropped points after which the floating point is fixed
+     * anyway, this bounds the cost of a single location.
+     */
+    private static final int MAX_WINDOW = 100;
+
+    /**
+     * The number of consecutive locations rejected for their speed after
+     * which a location is accepted again. The user may have actually moved
+     * while there were no fixes or the last accepted location was wrong.
+     */
+    private static final int MAX_SPEED_REJECTS = 3;
+
+    private final double tolerance;
+    private final float maxAccuracy;
+    private final float maxSpeed;
+
+    // the projection centered at the last fixed point
+    private LocalProjector projector;
+
+    // the floating point, relative to the last fixed point
+    private boolean hasEnd;
+    private double endX;
+    private double endY;
+    private long endTime;
+
+    // the points dropped since the last fixed point
+    private final double[] window = new double[MAX_WINDOW * 2];
+    private int windowSize;
+
+    private int speedRejects;
+
+    // reused buffers for the projection of a single point
+    private final double[] latLon = new double[2];
+    private final double[] coords = new double[2];
+
+    /**
+     * Constructs a simplifier with the given tolerances.
+     * 
+     * @param tolerance
+     *            the maximum deviation of a dropped point from the track in
+     *            meters
+     * @param maxAccuracy
+     *            the worst accuracy in meters a location may have
+     * @param maxSpeed
+     *            the highest speed in m/s which may be implied by two
+     *            consecutive locations
+     */
+    public TrackSimplifier(double tolerance, float maxAccuracy,
+            float maxSpeed) {
+        this.tolerance = tolerance;
+        this.maxAccuracy = maxAccuracy;
+        this.maxSpeed = maxSpeed;
+    }
+
+    /**
+     * Starts the simplification of a track.
+     * 
+     * @param last
+     *            the last stored point of the track which is not changed
+     *            anymore or {@code null} if the track is empty
+     */
+    public void start(TrackPoint last) {
+        hasEnd = false;
+        windowSize = 0;
+        speedRejects = 0;
+        if (last == null) {
+            projector = null;
+        } else {
+            projector = new LocalProjector(last.getLat(), last.getLon());
+            endTime = last.getTime();
+        }
+    }
+
+    /**
+     * Decides how the given location is added to the track.
+     * 
+     * @param loc
+     *            the new location
+     * @return {@link #REJECT}, {@link #APPEND} or {@link #REPLACE}
+     */
+    public int add(Location loc) {
+        if (loc.hasAccuracy() && loc.getAccuracy() > maxAccuracy) {
+            return REJECT;
+        }
+        if (projector == null) {
+            // the first point of the track is fixed at once
+            projector = new LocalProjector(loc);
+            endTime = loc.getTime();
+            return APPEND;
+        }
+        latLon[0] = loc.getLatitude();
+        latLon[1] = loc.getLongitude();
+        projector.toLocal(latLon, coords, 1);
+        final double x = coords[0];
+        final double y = coords[1];
+        final long time = loc.getTime();
+
+        if (isTooFast(x, y, time)) {
+            return REJECT;
+        }
+        final int result;
+        if (!hasEnd) {
+            result = APPEND;
+        } else if (windowSize < MAX_WINDOW && isWithinTolerance(x, y)) {
+            window[windowSize * 2] = endX;
+            window[windowSize * 2 + 1] = endY;
+            windowSize++;
+            result = REPLACE;
+        } else {
+            fixEnd();
+            projector.toLocal(latLon, coords, 1);
+            result = APPEND;
+        }
+        hasEnd = true;
+        endX = coords[0];
+        endY = coords[1];
+        endTime = time;
+        return result;
+    }
+
+    /**
+     * Checks whether the location implies a speed above the maximum speed
+     * compared to the last stored point.
+     */
+    private boolean isTooFast(double x, double y, long time) {
+        final double lastX = hasEnd ? endX : 0;
+        final double lastY = hasEnd ? endY : 0;
+        final double distance = Math.hypot(x - lastX, y - lastY);
+        // at least one second to tolerate fixes with the same time
+        final double seconds = Math.max(time - endTime, 1000) / 1000.0;
+        if (distance / seconds > maxSpeed
+                && speedRejects < MAX_SPEED_REJECTS) {
+            speedRejects++;
+            return true;
+        }
+        speedRejects = 0;
+        return false;
+    }
+
+    /**
+     * Checks whether the floating point and all dropped points are within
+     * the tolerance of the line from the fixed point to the given point.
+     */
+    private boolean isWithinTolerance(double x, double y) {
+        if (distanceToLine(endX, endY, x, y) > tolerance) {
+            return false;
+        }
+        for (int i = 0; i < windowSize * 2; i += 2) {
+            if (distanceToLine(window[i], window[i + 1], x, y) > tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fixes the floating point and centers the projection at it.
+     */
+    private void fixEnd() {
+        coords[0] = endX;
+        coords[1] = endY;
+        projector.toGPS(coords, coords, 1);
+        projector = new LocalProjector(coords[0], coords[1]);
+        windowSize = 0;
+    }
+
+    /**
+     * Calculates the distance of a point to the line from the origin to the
+     * given end.
+     * 
+     * @param px
+     *            the x coordinate of the point
+     * @param py
+     *            the y coordinate of the point
+     * @param x
+     *            the x coordinate of the end of the line
+     * @param y
+     *            the y coordinate of the end of the line
+     * @return the distance in the unit of the coordinates
+     */
+    static double distanceToLine(double px, double py, double x, double y) {
+        final double length = x * x + y * y;
+        double t = 0;
+        if (length > 0) {
+            t = Math.max(0, Math.min(1, (px * x + py * y) / length));
+        }
+        return Math.hypot(px - t * x, py - t * y);
+    }
+}
@@ -15,6 +15,8 @@
  */
 package io.github.data4all.util;
 
+import io.github.data4all.Data4AllApplication;
+import io.github.data4all.R;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.logger.Log;
 import io.github.data4all.model.data.Track;
@@ -23,35 +25,108 @@ import io.github.data4all.model.data.TrackPoint;
 import java.util.List;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.database.SQLException;
 import android.location.Location;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
 
+/**
+ * Manages the GPS tracks. All writes are queued on the database writer, see
+ * {@link Data4AllApplication#executeDataBaseWrite(Context, Runnable)}, so
+ * the location callbacks and the UI never wait for the database.
+ */
 public class TrackUtil {
 
-    private DataBaseHandler db;
+    private final Context context;
 
-    private Context context;
+    private final DataBaseHandler db;
 
     private static final String TAG = "TrackUtil";
 
+    /**
+     * The highest speed in m/s two consecutive trackpoints may imply.
+     */
+    private static final float MAX_SPEED = 70;
+
+    /**
+     * The cached active track of the recording session. Reset by the writer
+     * if the track was deleted meanwhile.
+     */
+    private volatile Track activeTrack;
+
+    /**
+     * Simplifies the active track while it is recorded.
+     */
+    private final TrackSimplifier simplifier;
+
+    /**
+     * The track the simplifier was started for.
+     */
+    private Track simplifiedTrack;
+
     public TrackUtil(Context ctx) {
-        this.context = ctx;
+        this.context = ctx.getApplicationContext();
+        this.db = Data4AllApplication.getDataBaseHandler(ctx);
+        final SharedPreferences prefs =
+                PreferenceManager.getDefaultSharedPreferences(ctx);
+        final Resources res = ctx.getResources();
+        this.simplifier =
+                new TrackSimplifier(readPreference(prefs, res,
+                        R.string.pref_track_tolerance_key,
+                        R.integer.pref_track_tolerance_default),
+                        readPreference(prefs, res,
+                                R.string.pref_track_accuracy_key,
+                                R.integer.pref_track_accuracy_default),
+                        MAX_SPEED);
     }
 
     /**
-     * Starts a new Track and saves it in the database
+     * Reads a numeric preference which is stored as a string.
+     * 
+     * @return the value of the preference or the default value if the
+     *         preference is not set or invalid
+     */
+    private static int readPreference(SharedPreferences prefs, Resources res,
+            int keyId, int defaultId) {
+        final String value = prefs.getString(res.getString(keyId), null);
+        if (!TextUtils.isEmpty(value)) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Invalid preference " + value, e);
+            }
+        }
+        return res.getInteger(defaultId);
+    }
+
+    /**
+     * Starts a new Track and saves it in the database. The track gets its id
+     * when the write is executed.
      * 
      * @return the track
      */
     public Track startNewTrack() {
         // TODO check for active tracks and close them
-        db = new DataBaseHandler(context.getApplicationContext());
-        Track track = new Track();
-        db.createGPSTrack(track);
-        Log.d(TAG, "Starting a new track. ID: " + track.getID());
-        db.close();
+        final Track track = new Track();
+        this.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                db.createGPSTrack(track);
+                Log.d(TAG, "Starting a new track. ID: " + track.getID());
+            }
+        });
         return track;
     }
 
+    /**
+     * Queues the given write on the database writer.
+     */
+    private void executeWrite(Runnable write) {
+        Data4AllApplication.executeDataBaseWrite(context, write);
+    }
+
     /**
      * Adds a new point to the track
      * 
@@ -71,12 +146,15 @@ public class TrackUtil {
      * @param track
      *            The track
      */
-    public void updateTrack(Track track) {
+    public void updateTrack(final Track track) {
         if (track != null) {
-            db = new DataBaseHandler(context.getApplicationContext());
-            db.updateGPSTrack(track);
-            Log.d(TAG, "Update track with id: " + track.getID());
-            db.close();
+            this.executeWrite(new Runnable() {
+                @Override
+                public void run() {
+                    db.updateGPSTrack(track);
+                    Log.d(TAG, "Update track with id: " + track.getID());
+                }
+            });
         }
     }
 
@@ -87,15 +165,17 @@ public class TrackUtil {
      * @param track
      *            The track
      */
-    public void saveTrack(Track track) {
+    public void saveTrack(final Track track) {
         if (track != null) {
-            db = new DataBaseHandler(context.getApplicationContext());
             track.finishTrack();
-            db.updateGPSTrack(track);
-            Log.d(TAG,
-                    "Finish and update track in database with id: "
+            this.executeWrite(new Runnable() {
+                @Override
+                public void run() {
+                    db.updateGPSTrack(track);
+                    Log.d(TAG, "Finish and update track in database with id: "
                             + track.getID());
-            db.close();
+                }
+            });
         }
     }
 
@@ -107,10 +187,8 @@ public class TrackUtil {
      * @return the track
      */
     public Track loadTrack(long id) {
-        db = new DataBaseHandler(context.getApplicationContext());
         Track track = db.getGPSTrack(id);
         Log.d(TAG, "Loading track with ID: " + id);
-        db.close();
         return track;
     }
 
@@ -118,14 +196,17 @@ public class TrackUtil {
      * Deletes all Tracks in the database which does not contain any trackpoints
      */
     public void deleteEmptyTracks() {
-        db = new DataBaseHandler(context.getApplicationContext());
-        for (Track track : db.getAllGPSTracks()) {
-            if (track.getTrackPoints().isEmpty()) {
-                Log.d(TAG, "Deleting empty tracks.");
-                db.deleteGPSTrack(track);
+        this.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                for (Track track : db.getAllGPSTracks()) {
+                    if (track.getTrackPoints().isEmpty()) {
+                        Log.d(TAG, "Deleting empty tracks.");
+                        db.deleteGPSTrack(track);
+                    }
+                }
             }
-        }
-        db.close();
+        });
     }
 
     /**
@@ -134,12 +215,16 @@ public class TrackUtil {
      * 
      * @param id
      */
-    public void deleteTrack(long id) {
-        DataBaseHandler db = new DataBaseHandler(
-                context.getApplicationContext());
-        Track track = db.getGPSTrack(id);
-        db.deleteGPSTrack(track);
-        db.close();
+    public void deleteTrack(final long id) {
+        this.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                final Track track = db.getGPSTrack(id);
+                if (track != null) {
+                    db.deleteGPSTrack(track);
+                }
+            }
+        });
     }
 
     /**
@@ -148,10 +233,7 @@ public class TrackUtil {
      * @return trackList
      */
     public List<Track> getTracks() {
-        DataBaseHandler db = new DataBaseHandler(
-                context.getApplicationContext());
         List<Track> trackList = db.getAllGPSTracks();
-        db.close();
         return trackList;
     }
 
@@ -162,21 +244,116 @@ public class TrackUtil {
      * @return last opened track or a new track
      */
     public Track getLastTrack() {
-        db = new DataBaseHandler(context.getApplicationContext());
-        List<Track> allGPSTracks = db.getAllGPSTracks();
-        db.close();
-        if (!allGPSTracks.isEmpty()) {
-            for (Track tr : allGPSTracks) {
-                if (!tr.isFinished()) {
-                    Log.d(TAG, "Continue on last track with id: " + tr.getID());
-                    return tr;
-                }
-            }
+        final long id = db.getActiveGPSTrackId();
+        if (id != DataBaseHandler.NO_ACTIVE_TRACK) {
+            Log.d(TAG, "Continue on last track with id: " + id);
+            return db.getGPSTrack(id);
         }
         Log.d(TAG, "There is no last opened track.");
         return null;
     }
 
+    /**
+     * Returns the active (not finished) track for a recording session. In
+     * contrast to {@link #getLastTrack()} the track is only loaded once;
+     * subsequent calls only check whether the active track is still the same.
+     * 
+     * @return the active track or null if there is no active track
+     */
+    public Track getActiveTrack() {
+        final long id = db.getActiveGPSTrackId();
+        if (id == DataBaseHandler.NO_ACTIVE_TRACK) {
+            activeTrack = null;
+        } else if (activeTrack == null || activeTrack.getID() != id) {
+            Log.d(TAG, "Continue on active track with id: " + id);
+            activeTrack = db.getGPSTrack(id);
+        }
+        return activeTrack;
+    }
+
+    /**
+     * Adds a new point to the track and writes only this point to the
+     * database. The track is simplified on the fly, see
+     * {@link TrackSimplifier}: the point may replace the last point of the
+     * track or may be rejected as an outlier. The track is changed at once,
+     * the write is queued on the database writer.
+     * 
+     * @param track
+     *            The track, usually received from {@link #getActiveTrack()}
+     * @param loc
+     *            The location to be added
+     * @return whether the track was changed
+     */
+    public boolean appendPointToTrack(final Track track, Location loc) {
+        if (track != simplifiedTrack) {
+            simplifier.start(track.getLastTrackPoint());
+            simplifiedTrack = track;
+        }
+        final TrackPoint last = track.getLastTrackPoint();
+        final int action = simplifier.add(loc);
+        if (action == TrackSimplifier.REJECT) {
+            return false;
+        }
+        final TrackPoint point;
+        final TrackPoint replaced;
+        if (action == TrackSimplifier.REPLACE && last != null) {
+            point = new TrackPoint(loc);
+            replaced = last;
+            track.replaceLastTrackPoint(point);
+        } else {
+            track.addTrackPoint(loc);
+            point = track.getLastTrackPoint();
+            replaced = null;
+        }
+        if (point == last || track.getLastTrackPoint() != point) {
+            // The track is finished
+            return false;
+        }
+        this.executeWrite(new Runnable() {
+            @Override
+            public void run() {
+                writePoint(track, point, replaced);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Writes a point of the active track, called by the database writer. The
+     * replaced point was written before, so its id is known by now.
+     * 
+     * @param track
+     *            The track of the point
+     * @param point
+     *            The new point
+     * @param replaced
+     *            The point which is replaced by the new one or {@code null}
+     *            if the point is appended
+     */
+    private void writePoint(Track track, TrackPoint point,
+            TrackPoint replaced) {
+        try {
+            if (replaced == null || replaced.getID() == TrackPoint.NO_ID) {
+                db.appendTrackPoint(track.getID(), point);
+            } else {
+                point.setID(replaced.getID());
+                db.replaceTrackPoint(track.getID(), point);
+            }
+        } catch (SQLException e) {
+            // The track was deleted in the meantime
+            Log.e(TAG, "Cannot append point to track " + track.getID(), e);
+            activeTrack = null;
+        }
+    }
+
+    /**
+     * Ends the recording session and releases the cached active track.
+     */
+    public void closeRecording() {
+        activeTrack = null;
+        simplifiedTrack = null;
+    }
+
     /**
      * Return the number of {@link TrackPoint} of a {@link Track}.
      * 
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util.oauth.exception;
+
+/**
+ * Indicates that the OSM API refused an upload to a changeset because the
+ * changeset is already closed or full.
+ */
+public class OsmChangesetClosedException extends OsmException {
+    private static final long serialVersionUID = -2315897356416329183L;
+
+    /**
+     * Constructs a new exception with null as its detail message.<br/>
+     * The cause is not initialized, and may subsequently be initialized by a
+     * call to Throwable.initCause(java.lang.Throwable).
+     */
+    public OsmChangesetClosedException() {
+        super();
+    }
+
+    /**
+     * Constructs a new exception with the specified detail message.<br/>
+     * The cause is not initialized, and may subsequently be initialized by a
+     * call to Throwable.initCause(java.lang.Throwable).
+     * 
+     * @param message
+     *            The detail message. The detail message is saved for later
+     *            retrieval by the Throwable.getMessage() method.
+     */
+    public OsmChangesetClosedException(String message) {
+        super(message);
+    }
+}
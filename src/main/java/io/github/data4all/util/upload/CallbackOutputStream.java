@@ -22,12 +22,32 @@ import java.io.OutputStream;
  * A custom OutputStream which encapsulates the {@link OutputStream} to provide
  * a callback for the progress of reading.
  * 
+ * Writes are passed on in chunks of at most {@value #CHUNK_SIZE} bytes, so
+ * the progress is reported even if the whole content is written at once. The
+ * callback is called after at least {@link Callback#interval()} new bytes and
+ * at most every {@value #MIN_CALLBACK_DELAY} milliseconds, the final progress
+ * is reported on {@link #flush()}.
+ * 
  * @author tbrose
  */
 public final class CallbackOutputStream extends OutputStream {
+    /**
+     * The maximum number of bytes written to the encapsulated stream at once.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The minimum delay between two callbacks in milliseconds.
+     */
+    private static final long MIN_CALLBACK_DELAY = 250;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
     private final OutputStream outstream;
     private final Callback<Integer> callback;
     private int currentRead;
+    private int lastReported;
+    private long lastCallback;
 
     /**
      * Constructs a OutputStream which pipes the content to write to
@@ -42,17 +62,65 @@ public final class CallbackOutputStream extends OutputStream {
             Callback<Integer> callback) {
         this.outstream = outstream;
         this.callback = callback;
+        this.lastCallback = System.nanoTime();
     }
 
-    /**
-     * Gives a callback every time a byte is read.
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.OutputStream#write(int)
      */
     @Override
     public void write(int oneByte) throws IOException {
+        outstream.write(oneByte);
         currentRead++;
-        if (currentRead % callback.interval() == 0) {
-            callback.callback(currentRead);
+        progress();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] buffer, int offset, int count) throws IOException {
+        int written = 0;
+        while (written < count) {
+            final int chunk = Math.min(CHUNK_SIZE, count - written);
+            outstream.write(buffer, offset + written, chunk);
+            written += chunk;
+            currentRead += chunk;
+            progress();
         }
-        outstream.write(oneByte);
+    }
+
+    /**
+     * Flushes the encapsulated stream and reports the current progress.
+     */
+    @Override
+    public void flush() throws IOException {
+        outstream.flush();
+        if (currentRead != lastReported) {
+            report(System.nanoTime());
+        }
+    }
+
+    /**
+     * Calls the callback if enough bytes were written and enough time has
+     * passed since the last callback.
+     */
+    private void progress() {
+        if (currentRead - lastReported >= callback.interval()) {
+            final long now = System.nanoTime();
+            if (now - lastCallback >= MIN_CALLBACK_DELAY * NANOS_PER_MILLI) {
+                report(now);
+            }
+        }
+    }
+
+    private void report(long now) {
+        lastReported = currentRead;
+        lastCallback = now;
+        callback.callback(currentRead);
     }
 }
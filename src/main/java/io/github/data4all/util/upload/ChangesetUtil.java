@@ -15,15 +15,10 @@
  */
 package io.github.data4all.util.upload;
 
-import io.github.data4all.handler.DataBaseHandler;
-import io.github.data4all.model.data.DataElement;
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.model.data.User;
-import io.github.data4all.util.OsmChangeParser;
 import io.github.data4all.util.oauth.exception.OsmException;
 import io.github.data4all.util.oauth.parameters.OAuthParameters;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -34,7 +29,6 @@ import oauth.signpost.commonshttp.CommonsHttpOAuthConsumer;
 import oauth.signpost.exception.OAuthCommunicationException;
 import oauth.signpost.exception.OAuthExpectationFailedException;
 import oauth.signpost.exception.OAuthMessageSignerException;
-import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
@@ -42,7 +36,6 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.params.BasicHttpParams;
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.os.ResultReceiver;
 
 /**
  * This class provides several methods for creating, parsing and uploading
@@ -130,38 +123,6 @@ public final class ChangesetUtil {
         }
     }
 
-    /**
-     * Parses all objects from the database into an xml structure to create a
-     * new Changeset.
-     * 
-     * @param context
-     *            The application context for the {@link DataBaseHandler}.
-     * @param changesetId
-     *            The Changeset ID from the OSM API.
-     * @return The created Changeset.
-     * @throws OsmException
-     *             Indicates an failure in an osm progess.
-     */
-    public static String getChangesetXml(Context context, int changesetId)
-            throws OsmException {
-        final DataBaseHandler db = new DataBaseHandler(context);
-        final List<DataElement> elems = db.getAllDataElements();
-        db.close();
-
-        final StringBuilder builder = new StringBuilder();
-
-        final PrintWriter writer = new PrintWriter(new OutputStream() {
-            @Override
-            public void write(int oneByte) throws IOException {
-                builder.append((char) oneByte);
-            }
-        });
-
-        OsmChangeParser.parseElements(elems, changesetId, writer);
-        writer.close();
-        return builder.toString();
-    }
-
     /**
      * Checks the number of elements in the database and returns true if is a
      * upload necessary.
@@ -171,9 +132,8 @@ public final class ChangesetUtil {
      * @return true, if upload is necessary
      */
     public static boolean needToUpload(Context context) {
-        final DataBaseHandler db = new DataBaseHandler(context);
-        final List<DataElement> elems = db.getAllDataElements();
-        return !elems.isEmpty();
+        return Data4AllApplication.getDataBaseHandler(context)
+                .getDataElementCount() > 0;
     }
 
     /**
@@ -221,30 +181,17 @@ public final class ChangesetUtil {
      *            The {@link User} who uploads the Changeset.
      * @param changesetId
      *            The Changeset ID.
-     * @param changesetXml
+     * @param entity
      *            The Changeset which should be uploaded.
-     * @param callback
-     *            The callback object for interaction with the
-     *            {@link ResultReceiver}.
      * @return {@link CloseableUpload} object
      * @throws OsmException
      *             Indicates an failure in an osm progess.
      */
     public static CloseableUpload upload(User user, int changesetId,
-            String changesetXml, Callback<Integer> callback)
-            throws OsmException {
-        try {
-            final HttpPost request = getUploadPost(user, changesetId);
-
-            // Setting the Entity
-            final HttpEntity entity = new CallbackStringEntry(changesetXml,
-                    callback);
-            request.setEntity(entity);
-
-            return new CloseableUpload(request);
-        } catch (UnsupportedEncodingException e) {
-            throw new OsmException(e);
-        }
+            OsmChangeEntity entity) throws OsmException {
+        final HttpPost request = getUploadPost(user, changesetId);
+        request.setEntity(entity);
+        return new CloseableUpload(request);
     }
 
     /**
@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util.upload;
+
+import io.github.data4all.handler.DataBaseHandler;
+import io.github.data4all.model.data.DataElement;
+import io.github.data4all.model.data.Node;
+import io.github.data4all.model.data.PolyElement;
+import io.github.data4all.model.data.User;
+import io.github.data4all.util.oauth.exception.OsmChangesetClosedException;
+import io.github.data4all.util.oauth.exception.OsmException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class provides the upload of all data elements in chunks of bounded
+ * size. After every chunk the ids which the OSM API assigned to the elements
+ * are saved in the database, so an interrupted upload continues with the
+ * first chunk which was not committed. Later chunks reference the already
+ * uploaded nodes by their new ids. Uploaded elements which were changed
+ * afterwards are uploaded again as modification, uploaded nodes which were
+ * removed from their element are deleted with the last chunk.
+ * 
+ * A changeset holds a limited number of elements, so a large upload is spread
+ * over several changesets: {@link #upload(int)} stops before the changeset
+ * overflows and the remaining chunks are uploaded into the next one.
+ */
+public class ChunkedChangesetUpload implements HttpCloseable {
+    /**
+     * The maximum number of OSM elements uploaded at once, a changeset may
+     * hold up to 10000 elements in total.
+     */
+    public static final int CHUNK_SIZE = 1000;
+
+    /**
+     * The maximum number of OSM elements uploaded into one changeset.
+     */
+    public static final int CHANGESET_SIZE = 10000;
+
+    private final User user;
+    private final DataBaseHandler db;
+    private final Callback<Integer> callback;
+    private final Map<Long, Long> uploaded;
+    private final Map<Long, Integer> versions;
+    private final List<Node> deleted;
+    private final List<List<DataElement>> chunks;
+    private final int totalSize;
+    private final int maxChangesetSize;
+    private int uploadedSize;
+
+    /**
+     * The changeset uploaded to last and the number of OSM elements this
+     * upload put into it.
+     */
+    private int changesetId;
+    private int changesetSize;
+
+    private volatile boolean isStopped;
+    private volatile CloseableUpload currentUpload;
+
+    /**
+     * Constructs an upload of all data elements which were not uploaded yet.
+     * 
+     * @param user
+     *            The {@link User} who uploads the elements
+     * @param db
+     *            The database to read the elements and checkpoints from
+     * @param callback
+     *            The callback for the progress in OSM elements
+     */
+    public ChunkedChangesetUpload(User user, DataBaseHandler db,
+            Callback<Integer> callback) {
+        this(user, db, callback, CHUNK_SIZE, CHANGESET_SIZE);
+    }
+
+    /**
+     * Constructs an upload of all data elements which were not uploaded yet.
+     * 
+     * @param user
+     *            The {@link User} who uploads the elements
+     * @param db
+     *            The database to read the elements and checkpoints from
+     * @param callback
+     *            The callback for the progress in OSM elements
+     * @param chunkSize
+     *            The maximum number of OSM elements per chunk
+     */
+    public ChunkedChangesetUpload(User user, DataBaseHandler db,
+            Callback<Integer> callback, int chunkSize) {
+        this(user, db, callback, chunkSize, CHANGESET_SIZE);
+    }
+
+    /**
+     * Constructs an upload of all data elements which were not uploaded yet.
+     * 
+     * @param user
+     *            The {@link User} who uploads the elements
+     * @param db
+     *            The database to read the elements and checkpoints from
+     * @param callback
+     *            The callback for the progress in OSM elements
+     * @param chunkSize
+     *            The maximum number of OSM elements per chunk
+     * @param maxChangesetSize
+     *            The maximum number of OSM elements per changeset
+     */
+    public ChunkedChangesetUpload(User user, DataBaseHandler db,
+            Callback<Integer> callback, int chunkSize, int maxChangesetSize) {
+        this.user = user;
+        this.db = db;
+        this.callback = callback;
+        this.maxChangesetSize = maxChangesetSize;
+        this.uploaded = db.getUploadCheckpoint();
+        this.versions = db.getUploadVersions();
+        this.deleted = db.getDeletedUploads();
+        this.chunks = new LinkedList<List<DataElement>>();
+
+        List<DataElement> chunk = new ArrayList<DataElement>();
+        int currentSize = 0;
+        int size = deleted.size();
+        for (DataElement element : db.getAllDataElements()) {
+            final long id = element.getOsmId();
+            if (uploaded.containsKey(id) && !versions.containsKey(id)) {
+                continue;
+            }
+            final int elementSize = sizeOf(element);
+            if (currentSize > 0 && currentSize + elementSize > chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<DataElement>();
+                currentSize = 0;
+            }
+            chunk.add(element);
+            currentSize += elementSize;
+            size += elementSize;
+        }
+        // The deletions are uploaded with the last chunk
+        if (!chunk.isEmpty() || !deleted.isEmpty()) {
+            chunks.add(chunk);
+        }
+        this.totalSize = size;
+    }
+
+    /**
+     * Returns the number of OSM elements in the given element, a PolyElement
+     * is counted together with its nodes.
+     * 
+     * @param element
+     *            The element to count
+     * @return The number of OSM elements
+     */
+    private static int sizeOf(DataElement element) {
+        if (element instanceof PolyElement) {
+            return ((PolyElement) element).getNodes().size() + 1;
+        }
+        return 1;
+    }
+
+    /**
+     * @return the number of OSM elements which are not uploaded yet
+     */
+    public int getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return the number of OSM elements uploaded by this upload so far
+     */
+    public int getUploadedSize() {
+        return uploadedSize;
+    }
+
+    /**
+     * @return whether all chunks are uploaded
+     */
+    public boolean isFinished() {
+        return chunks.isEmpty();
+    }
+
+    /**
+     * Uploads the remaining chunks into the given changeset. Every committed
+     * chunk is checkpointed in the database. The upload stops before the
+     * changeset would hold more than the maximum number of OSM elements,
+     * then {@link #isFinished()} is {@code false} and the remaining chunks
+     * can be uploaded into another changeset.
+     * 
+     * @param changesetId
+     *            The id of the changeset to upload to
+     * @throws OsmChangesetClosedException
+     *             If the changeset is closed or full, the remaining chunks
+     *             can be uploaded into another changeset
+     * @throws OsmException
+     *             In case of problems with the upload
+     */
+    public void upload(int changesetId) throws OsmException {
+        this.isStopped = false;
+        if (changesetId != this.changesetId) {
+            this.changesetId = changesetId;
+            this.changesetSize = 0;
+        }
+        final Iterator<List<DataElement>> iterator = chunks.iterator();
+        while (iterator.hasNext() && !isStopped) {
+            final List<DataElement> chunk = iterator.next();
+            final List<Node> deletions =
+                    iterator.hasNext() ? Collections.<Node> emptyList()
+                            : deleted;
+            int chunkSize = deletions.size();
+            for (DataElement element : chunk) {
+                chunkSize += sizeOf(element);
+            }
+            if (changesetSize > 0
+                    && changesetSize + chunkSize > maxChangesetSize) {
+                // The changeset is full
+                return;
+            }
+
+            final ChunkProgress chunkProgress =
+                    new ChunkProgress(callback, uploadedSize, chunkSize);
+            final OsmChangeEntity entity =
+                    new OsmChangeEntity(chunk, changesetId, uploaded,
+                            versions, deletions, chunkProgress, true);
+            try {
+                chunkProgress.setDocumentLength(entity.getDocumentLength());
+            } catch (IOException e) {
+                throw new OsmException(e);
+            }
+            currentUpload = ChangesetUtil.upload(user, changesetId, entity);
+            final Map<Long, Long> ids =
+                    currentUpload.upload(new DiffResultHandler());
+            if (ids == null || isStopped) {
+                return;
+            }
+
+            // The modified and deleted elements keep their ids
+            final Map<Long, Long> committed = new HashMap<Long, Long>(ids);
+            for (DataElement element : chunk) {
+                addModified(element, committed);
+                if (element instanceof PolyElement) {
+                    for (Node node : ((PolyElement) element).getNodes()) {
+                        addModified(node, committed);
+                    }
+                }
+            }
+            for (Node node : deletions) {
+                committed.put(node.getOsmId(), uploaded.get(node.getOsmId()));
+            }
+            db.addUploadCheckpoint(changesetId, committed);
+            uploaded.putAll(ids);
+            versions.keySet().removeAll(committed.keySet());
+            uploadedSize += chunkSize;
+            changesetSize += chunkSize;
+            callback.callback(uploadedSize);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Adds the id of the given element to the committed ids if it was
+     * uploaded as modification.
+     * 
+     * @param element
+     *            The uploaded element
+     * @param committed
+     *            The ids assigned by the OSM API mapped by the local ids
+     */
+    private void addModified(DataElement element, Map<Long, Long> committed) {
+        final long id = element.getOsmId();
+        if (versions.containsKey(id)) {
+            committed.put(id, uploaded.get(id));
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see io.github.data4all.util.upload.HttpCloseable#stop()
+     */
+    @Override
+    public void stop() {
+        this.isStopped = true;
+        final CloseableUpload upload = currentUpload;
+        if (upload != null) {
+            upload.stop();
+        }
+    }
+
+    /**
+     * Converts the progress in bytes of a chunk into the overall progress in
+     * OSM elements. The interval of the overall callback is honoured, so the
+     * progress is reported as often as for the committed chunks.
+     */
+    static final class ChunkProgress implements Callback<Integer> {
+        private final Callback<Integer> callback;
+        private final int offset;
+        private final int chunkSize;
+
+        /**
+         * The length of the uncompressed document of the chunk.
+         */
+        private long documentLength = 1;
+
+        /**
+         * The number of OSM elements of the chunk reported last.
+         */
+        private int reported;
+
+        /**
+         * Constructs a callback for a chunk.
+         * 
+         * @param callback
+         *            The callback for the overall progress in OSM elements
+         * @param offset
+         *            The number of OSM elements uploaded before the chunk
+         * @param chunkSize
+         *            The number of OSM elements in the chunk
+         */
+        ChunkProgress(Callback<Integer> callback, int offset, int chunkSize) {
+            this.callback = callback;
+            this.offset = offset;
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * Sets the length of the uncompressed document of the chunk.
+         * 
+         * @param documentLength
+         *            The length in bytes
+         */
+        void setDocumentLength(long documentLength) {
+            this.documentLength = Math.max(1, documentLength);
+        }
+
+        @Override
+        public void callback(Integer t) {
+            final int done =
+                    (int) Math.min(chunkSize, t * (long) chunkSize
+                            / documentLength);
+            if (done - reported >= callback.interval()) {
+                reported = done;
+                callback.callback(offset + done);
+            }
+        }
+
+        @Override
+        public int interval() {
+            // The bytes of the document which make up the overall interval
+            return (int) Math.max(1, callback.interval() * documentLength
+                    / chunkSize);
+        }
+    }
+}
@@ -16,13 +16,16 @@
 package io.github.data4all.util.upload;
 
 import io.github.data4all.logger.Log;
+import io.github.data4all.util.oauth.exception.OsmChangesetClosedException;
 import io.github.data4all.util.oauth.exception.OsmException;
 
 import java.io.IOException;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.impl.client.DefaultHttpClient;
 
@@ -56,16 +59,55 @@ public class CloseableUpload implements HttpCloseable {
      *             In case of problems with the upload
      */
     public void upload() throws OsmException {
+        this.upload(null);
+    }
+
+    /**
+     * Starts the upload of the request to OSM and reads the response with the
+     * given handler.
+     * 
+     * @param handler
+     *            The handler for the response or {@code null}
+     * @param <T>
+     *            The type of the handled response
+     * @return The handled response or {@code null} if there is no handler or
+     *         the upload was stopped
+     * @throws OsmChangesetClosedException
+     *             If the changeset is closed or full
+     * @throws OsmException
+     *             In case of problems with the upload
+     */
+    public <T> T upload(ResponseHandler<? extends T> handler)
+            throws OsmException {
         this.isStopped = false;
 
         try {
             // Sending the Request
-            final HttpResponse response = this.httpClient.execute(httpRequest);
-            final int code = response.getStatusLine().getStatusCode();
+            HttpResponse response = this.httpClient.execute(httpRequest);
+            int code = response.getStatusLine().getStatusCode();
             Log.d("Upload", "status code: " + code);
+            if (code == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE
+                    && isGzipEntity() && !this.isStopped) {
+                // The server does not accept compressed uploads, send the
+                // changeset again without compression
+                if (response.getEntity() != null) {
+                    response.getEntity().consumeContent();
+                }
+                ((OsmChangeEntity) httpRequest.getEntity()).setGzip(false);
+                response = this.httpClient.execute(httpRequest);
+                code = response.getStatusLine().getStatusCode();
+                Log.d("Upload", "status code: " + code);
+            }
+            if (code == HttpStatus.SC_CONFLICT && !this.isStopped) {
+                throw new OsmChangesetClosedException(
+                        "Changeset is closed: " + code);
+            }
             if (code != HttpStatus.SC_OK && !this.isStopped) {
                 throw new OsmException("Wrong statusCode returned: " + code);
             }
+            if (handler != null && !this.isStopped) {
+                return handler.handleResponse(response);
+            }
         } catch (ClientProtocolException e) {
             if (!this.isStopped) {
                 throw new OsmException(e);
@@ -81,6 +123,16 @@ public class CloseableUpload implements HttpCloseable {
         } finally {
             this.httpClient.getConnectionManager().shutdown();
         }
+        return null;
+    }
+
+    /**
+     * @return whether the entity of the request is a gzip encoded changeset
+     */
+    private boolean isGzipEntity() {
+        final HttpEntity entity = httpRequest.getEntity();
+        return entity instanceof OsmChangeEntity
+                && ((OsmChangeEntity) entity).isGzip();
     }
 
     /*
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.Xml;
+
+/**
+ * Reads the diffResult the OSM API answers to a changeset upload. The result
+ * maps the local ids of the created elements to the ids assigned by the OSM
+ * API, modified and deleted elements are left out.
+ */
+public class DiffResultHandler implements ResponseHandler<Map<Long, Long>> {
+    private static final String OLD_ID = "old_id";
+    private static final String NEW_ID = "new_id";
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.apache.http.client.ResponseHandler#handleResponse(org.apache.http
+     * .HttpResponse)
+     */
+    @Override
+    public Map<Long, Long> handleResponse(HttpResponse response)
+            throws IOException {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            throw new IOException("The diffResult is missing");
+        }
+        final InputStream in = entity.getContent();
+        try {
+            return parse(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses the given diffResult document.
+     * 
+     * @param in
+     *            The UTF-8 encoded diffResult
+     * @return The ids assigned by the OSM API to the created elements mapped
+     *         by the local ids
+     * @throws IOException
+     *             If the document cannot be read
+     */
+    public static Map<Long, Long> parse(InputStream in) throws IOException {
+        final Map<Long, Long> ids = new HashMap<Long, Long>();
+        try {
+            final XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(in, "UTF-8");
+            int event = parser.next();
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG) {
+                    final String oldId = parser.getAttributeValue(null, OLD_ID);
+                    final String newId = parser.getAttributeValue(null, NEW_ID);
+                    // The created elements were uploaded with negated ids
+                    final long id = oldId == null ? 0 : Long.parseLong(oldId);
+                    if (id < 0 && newId != null) {
+                        ids.put(-id, Long.parseLong(newId));
+                    }
+                }
+                event = parser.next();
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Invalid diffResult: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid id in diffResult: "
+                    + e.getMessage());
+        }
+        return ids;
+    }
+}
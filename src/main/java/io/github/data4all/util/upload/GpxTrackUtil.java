@@ -15,9 +15,8 @@
  */
 package io.github.data4all.util.upload;
 
-import io.github.data4all.handler.DataBaseHandler;
+import io.github.data4all.Data4AllApplication;
 import io.github.data4all.logger.Log;
-import io.github.data4all.model.data.Track;
 import io.github.data4all.model.data.User;
 import io.github.data4all.util.oauth.exception.OsmException;
 import io.github.data4all.util.oauth.parameters.OAuthParameters;
@@ -27,7 +26,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.util.List;
 
 import oauth.signpost.OAuthConsumer;
 import oauth.signpost.commonshttp.CommonsHttpOAuthConsumer;
@@ -289,9 +287,8 @@ public final class GpxTrackUtil {
      * @return true, if upload is necessary
      */
     public static boolean needToUpload(Context context) {
-        final DataBaseHandler db = new DataBaseHandler(context);
-        final List<Track> elems = db.getAllGPSTracks();
-        return !elems.isEmpty();
+        return Data4AllApplication.getDataBaseHandler(context)
+                .getGPSTrackCount() > 0;
     }
 
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util.upload;
+
+import io.github.data4all.model.data.DataElement;
+import io.github.data4all.model.data.Node;
+import io.github.data4all.util.OsmChangeParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A {@link org.apache.http.HttpEntity} which generates the osmChange document
+ * of the given elements while it is written to the connection. The document
+ * is never held in memory as a whole.
+ * 
+ * If compression is enabled the document is sent gzip encoded with chunked
+ * transfer encoding, otherwise the exact length is determined by generating
+ * the document once without keeping it.
+ */
+public class OsmChangeEntity extends AbstractHttpEntity {
+    private static final String CONTENT_TYPE = "text/xml; charset=UTF-8";
+    private static final String GZIP = "gzip";
+
+    private final List<DataElement> elems;
+    private final long changesetId;
+    private final Map<Long, Long> uploaded;
+    private final Map<Long, Integer> versions;
+    private final List<Node> deleted;
+    private final Date timestamp;
+    private final Callback<Integer> callback;
+    private boolean gzip;
+
+    /**
+     * The length of the uncompressed document or {@code -1} if it is not
+     * known yet.
+     */
+    private long documentLength = -1;
+
+    /**
+     * Constructs an entity for the osmChange document of the given elements.
+     * 
+     * @param elems
+     *            The elements to upload
+     * @param changesetId
+     *            The id of the changeset to upload to
+     * @param callback
+     *            The callback for the progress of the upload in bytes of the
+     *            uncompressed document or {@code null}
+     * @param gzip
+     *            Whether the document should be sent gzip encoded
+     */
+    public OsmChangeEntity(List<DataElement> elems, long changesetId,
+            Callback<Integer> callback, boolean gzip) {
+        this(elems, changesetId, Collections.<Long, Long> emptyMap(),
+                callback, gzip);
+    }
+
+    /**
+     * Constructs an entity for the osmChange document of the given elements
+     * which continues an interrupted upload.
+     * 
+     * @param elems
+     *            The elements to upload
+     * @param changesetId
+     *            The id of the changeset to upload to
+     * @param uploaded
+     *            The ids assigned by the OSM API to the already uploaded
+     *            elements mapped by the local ids, the map is copied
+     * @param callback
+     *            The callback for the progress of the upload in bytes of the
+     *            uncompressed document or {@code null}
+     * @param gzip
+     *            Whether the document should be sent gzip encoded
+     */
+    public OsmChangeEntity(List<DataElement> elems, long changesetId,
+            Map<Long, Long> uploaded, Callback<Integer> callback,
+            boolean gzip) {
+        this(elems, changesetId, uploaded,
+                Collections.<Long, Integer> emptyMap(),
+                Collections.<Node> emptyList(), callback, gzip);
+    }
+
+    /**
+     * Constructs an entity for the osmChange document of the given elements
+     * which continues an interrupted upload. Uploaded elements which were
+     * changed afterwards are sent as modification, the given nodes are sent
+     * as deletion.
+     * 
+     * @param elems
+     *            The elements to upload
+     * @param changesetId
+     *            The id of the changeset to upload to
+     * @param uploaded
+     *            The ids assigned by the OSM API to the already uploaded
+     *            elements mapped by the local ids, the map is copied
+     * @param versions
+     *            The versions on the OSM API of the uploaded elements which
+     *            were changed or removed afterwards mapped by the local ids,
+     *            the map is copied
+     * @param deleted
+     *            The uploaded nodes which were removed afterwards
+     * @param callback
+     *            The callback for the progress of the upload in bytes of the
+     *            uncompressed document or {@code null}
+     * @param gzip
+     *            Whether the document should be sent gzip encoded
+     */
+    public OsmChangeEntity(List<DataElement> elems, long changesetId,
+            Map<Long, Long> uploaded, Map<Long, Integer> versions,
+            List<Node> deleted, Callback<Integer> callback, boolean gzip) {
+        this.elems = elems;
+        this.changesetId = changesetId;
+        this.uploaded = new HashMap<Long, Long>(uploaded);
+        this.versions = new HashMap<Long, Integer>(versions);
+        this.deleted = deleted;
+        this.timestamp = new Date();
+        this.callback = callback;
+        setContentType(CONTENT_TYPE);
+        setGzip(gzip);
+    }
+
+    /**
+     * Enables or disables the gzip encoding of the document.
+     * 
+     * @param gzip
+     *            Whether the document should be sent gzip encoded
+     */
+    public final void setGzip(boolean gzip) {
+        this.gzip = gzip;
+        setContentEncoding(gzip ? GZIP : null);
+        setChunked(gzip);
+    }
+
+    /**
+     * @return whether the document is sent gzip encoded
+     */
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Returns the length of the uncompressed document. The document is
+     * generated once to count its bytes, the result is cached.
+     * 
+     * @return the length of the uncompressed document in bytes
+     * @throws IOException
+     *             if the document cannot be generated
+     */
+    public long getDocumentLength() throws IOException {
+        if (documentLength < 0) {
+            final CountingOutputStream counter = new CountingOutputStream();
+            OsmChangeParser.parseElements(elems, changesetId, timestamp,
+                    uploaded, versions, deleted, counter);
+            documentLength = counter.count;
+        }
+        return documentLength;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.http.HttpEntity#getContentLength()
+     */
+    @Override
+    public long getContentLength() {
+        if (gzip) {
+            return -1;
+        }
+        try {
+            return getDocumentLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.http.HttpEntity#isRepeatable()
+     */
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.http.HttpEntity#isStreaming()
+     */
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Materializes the encoded document, only for callers which cannot use
+     * {@link #writeTo(OutputStream)}.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeDocument(out, null);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.http.HttpEntity#writeTo(java.io.OutputStream)
+     */
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        if (outstream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        writeDocument(outstream, callback);
+    }
+
+    private void writeDocument(OutputStream outstream,
+            Callback<Integer> progress) throws IOException {
+        GZIPOutputStream compressor = null;
+        OutputStream out = outstream;
+        if (gzip) {
+            compressor = new GZIPOutputStream(out);
+            out = compressor;
+        }
+        if (progress != null) {
+            out = new CallbackOutputStream(out, progress);
+        }
+        OsmChangeParser.parseElements(elems, changesetId, timestamp,
+                uploaded, versions, deleted, out);
+        if (compressor != null) {
+            compressor.finish();
+        }
+        outstream.flush();
+    }
+
+    /**
+     * Discards the written bytes and counts them.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int oneByte) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import io.github.data4all.util.HorizonCalculationUtil;
 import io.github.data4all.util.HorizonCalculationUtil.ReturnValues;
 import io.github.data4all.util.Optimizer;
 import io.github.data4all.util.PointToCoordsTransformUtil;
+import io.github.data4all.util.SpatialGridIndex;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -45,6 +46,8 @@ import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Path;
 import android.graphics.drawable.BitmapDrawable;
+import android.location.Location;
+import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.AttributeSet;
@@ -84,7 +87,18 @@ public class CaptureAssistView extends View {
     private boolean informationSet;
     private List<Point> points = new ArrayList<Point>();
     private Bitmap bitmap;
-    private List<DataElement> dataElements;
+    /**
+     * The stored elements, null until they are loaded in the background.
+     */
+    private volatile SpatialGridIndex<DataElement> elementIndex;
+    /**
+     * The elements near the camera, reused for every frame.
+     */
+    private final List<DataElement> nearElements = new ArrayList<DataElement>();
+    /**
+     * The scaled POI bitmaps by distance bucket.
+     */
+    private Bitmap[] scaledPoiBitmaps;
     private TransformationParamBean tps;
     private PointToCoordsTransformUtil util;
     private double rotateDegree;
@@ -93,6 +107,22 @@ public class CaptureAssistView extends View {
 
     private static final String TAG = CaptureAssistView.class.getSimpleName();
 
+    /**
+     * The size of a cell of the element index in meters.
+     */
+    private static final double INDEX_CELL_SIZE = 50;
+
+    /**
+     * The factor for the maxDistance to search elements around the camera,
+     * the projected distance may differ from the distance on the map.
+     */
+    private static final double SEARCH_FACTOR = 1.5;
+
+    /**
+     * The size of a distance bucket of the scaled POI bitmaps in meters.
+     */
+    private static final float DISTANCE_BUCKET = 2;
+
     /**
      * Default Constructor
      * 
@@ -149,10 +179,8 @@ public class CaptureAssistView extends View {
         this.mMeasuredHeight = getMeasuredHeight();
         this.skylook = false;
         this.visible = true;
-        // add osmElements from the database to the map
-        DataBaseHandler db = new DataBaseHandler(getContext());
-        this.dataElements = db.getAllDataElements();
-        db.close();
+        // load the osmElements from the database in the background
+        new ElementLoader().execute();
         Resources r = this.getResources();
 
         cameraStopPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -183,6 +211,8 @@ public class CaptureAssistView extends View {
         BitmapDrawable bitmapDraw = (BitmapDrawable) r
                 .getDrawable(R.drawable.ic_setpoint_blue);
         poiBitmap = bitmapDraw.getBitmap();
+        scaledPoiBitmaps =
+                new Bitmap[(int) (maxDistance / DISTANCE_BUCKET) + 1];
 
         this.tps = new TransformationParamBean(getDeviceHeight(),
                 horizontalViewAngle, verticalViewAngle, mMeasuredWidth,
@@ -213,10 +243,6 @@ public class CaptureAssistView extends View {
         this.tps.setCameraMaxVerticalViewAngle(horizontalViewAngle);
         this.tps.setLocation(Optimizer.currentBestLoc());
         this.informationSet = true;
-        Log.d(TAG, "MP" + horizontalViewAngle + " MR " + verticalViewAngle
-                + " OR " + deviceOrientation.getPitch() + "  "
-                + deviceOrientation.getRoll() + " MW+H " + mMeasuredWidth + " "
-                + mMeasuredHeight);
     }
 
     @Override
@@ -259,13 +285,20 @@ public class CaptureAssistView extends View {
             }
         }
         // Draws the augmented Reality including the Infotext
-        if (informationSet && getAugmented()) {
+        final SpatialGridIndex<DataElement> index = elementIndex;
+        final Location location = tps.getLocation();
+        if (informationSet && index != null && location != null
+                && getAugmented()) {
             tps.setPhotoHeight(mMeasuredHeight);
             tps.setPhotoWidth(mMeasuredWidth);
             Point center = null;
             float distance = maxDistance + 1;
             Boolean isWay = false;
-            for (DataElement iter : dataElements) {
+            // Only the elements around the camera are projected
+            nearElements.clear();
+            index.query(location.getLatitude(), location.getLongitude(),
+                    maxDistance * SEARCH_FACTOR, nearElements);
+            for (DataElement iter : nearElements) {
                 // Check if it's an instance of a PolyElement
                 if (iter instanceof PolyElement) {
                     PolyElement poly = (PolyElement) iter;
@@ -295,10 +328,7 @@ public class CaptureAssistView extends View {
                         canvas.rotate((float) Math.toDegrees(rotateDegree),
                                 center.getX(), center.getY());
                         // Resize BitMap for different distances
-                        float scale = (float) (1.2 / (distance / 6 + 1) + 0.1);
-                        Bitmap scaledBitmap = Bitmap.createScaledBitmap(poiBitmap,
-                                (int) (scale * poiBitmap.getWidth()),
-                                (int) (scale * poiBitmap.getHeight()), true);
+                        Bitmap scaledBitmap = getScaledPoiBitmap(distance);
                         canvas.drawBitmap(scaledBitmap, center.getX(), center.getY(),
                                 poiPaint);
                         canvas.rotate((float) Math.toDegrees(-rotateDegree),
@@ -332,6 +362,94 @@ public class CaptureAssistView extends View {
         canvas.restore();
     }
 
+    /**
+     * Returns the POI bitmap scaled for the given distance. The bitmaps are
+     * scaled once per distance bucket.
+     * 
+     * @param distance
+     *            the distance of the POI
+     * @return the scaled bitmap
+     */
+    private Bitmap getScaledPoiBitmap(float distance) {
+        final int bucket =
+                Math.max(0, Math.min(scaledPoiBitmaps.length - 1,
+                        (int) (distance / DISTANCE_BUCKET)));
+        Bitmap scaled = scaledPoiBitmaps[bucket];
+        if (scaled == null) {
+            final float bucketDistance = bucket * DISTANCE_BUCKET;
+            final float scale =
+                    (float) (1.2 / (bucketDistance / 6 + 1) + 0.1);
+            scaled = Bitmap.createScaledBitmap(poiBitmap,
+                    Math.max(1, (int) (scale * poiBitmap.getWidth())),
+                    Math.max(1, (int) (scale * poiBitmap.getHeight())), true);
+            scaledPoiBitmaps[bucket] = scaled;
+        }
+        return scaled;
+    }
+
+    /**
+     * Builds the spatial index of the given elements. Nodes are indexed by
+     * their position, PolyElements by the center of their bounding box.
+     * 
+     * @param elements
+     *            the elements to index
+     * @return the index of the elements
+     */
+    static SpatialGridIndex<DataElement> buildIndex(
+            List<DataElement> elements) {
+        final SpatialGridIndex<DataElement> index =
+                new SpatialGridIndex<DataElement>(INDEX_CELL_SIZE);
+        for (DataElement element : elements) {
+            if (element instanceof Node) {
+                final Node node = (Node) element;
+                index.add(node, node.getLat(), node.getLon(), 0);
+            } else if (element instanceof PolyElement) {
+                final List<Node> nodes = ((PolyElement) element).getNodes();
+                if (nodes.isEmpty()) {
+                    continue;
+                }
+                double minLat = Double.MAX_VALUE;
+                double maxLat = -Double.MAX_VALUE;
+                double minLon = Double.MAX_VALUE;
+                double maxLon = -Double.MAX_VALUE;
+                for (Node node : nodes) {
+                    minLat = Math.min(minLat, node.getLat());
+                    maxLat = Math.max(maxLat, node.getLat());
+                    minLon = Math.min(minLon, node.getLon());
+                    maxLon = Math.max(maxLon, node.getLon());
+                }
+                final float[] extent = new float[1];
+                Location.distanceBetween(minLat, minLon, maxLat, maxLon,
+                        extent);
+                index.add(element, (minLat + maxLat) / 2,
+                        (minLon + maxLon) / 2, extent[0] / 2);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Loads the stored elements and builds their spatial index without
+     * blocking the UI thread.
+     */
+    private class ElementLoader extends
+            AsyncTask<Void, Void, SpatialGridIndex<DataElement>> {
+
+        @Override
+        protected SpatialGridIndex<DataElement> doInBackground(Void... params) {
+            final DataBaseHandler db =
+                    Data4AllApplication.getDataBaseHandler(getContext());
+            return buildIndex(db.getAllDataElements());
+        }
+
+        @Override
+        protected void onPostExecute(SpatialGridIndex<DataElement> result) {
+            Log.d(TAG, result.size() + " elements are indexed");
+            elementIndex = result;
+            invalidate();
+        }
+    }
+
     /**
      * calculates the Center of a list of Points
      * 
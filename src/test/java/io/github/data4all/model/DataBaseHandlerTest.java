@@ -15,7 +15,9 @@
  */
 package io.github.data4all.model;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import io.github.data4all.handler.DataBaseHandler;
 import io.github.data4all.model.data.DataElement;
@@ -26,11 +28,16 @@ import io.github.data4all.model.data.Tag;
 import io.github.data4all.model.data.Tags;
 import io.github.data4all.model.data.Track;
 import io.github.data4all.model.data.TrackPoint;
+import io.github.data4all.model.data.TransformationParamBean;
 import io.github.data4all.model.data.User;
+import io.github.data4all.util.Gallery.Informations;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.junit.After;
@@ -41,6 +48,10 @@ import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import android.database.Cursor;
+import android.graphics.Point;
+import android.location.Location;
+
 /**
  * This class tests all methods of the DataBaseHandler.
  * 
@@ -178,6 +189,74 @@ public class DataBaseHandlerTest {
         }
     }
 
+    @Test
+    public void createDataElements_multipleElements_allSavedWithUniqueIds() {
+        final PolyElement poly = new PolyElement(0, PolyElementType.WAY);
+        poly.addNode(new Node(0, 1, 1));
+        poly.addNode(new Node(0, 2, 2));
+        final List<DataElement> toInsert =
+                Arrays.asList(new Node(0, 0, 0), poly, new Node(0, 3, 3));
+        dbHandler.createDataElements(toInsert);
+
+        assertEquals(3, dbHandler.getDataElementCount());
+        final List<DataElement> elements = dbHandler.getAllDataElements();
+        for (int i = 0; i < toInsert.size(); i++) {
+            assertEquals(toInsert.get(i).getOsmId(), elements.get(i)
+                    .getOsmId());
+        }
+        assertEquals(2, ((PolyElement) elements.get(1)).getNodes().size());
+    }
+
+    @Test
+    public void createGPSTracks_multipleTracks_allSaved() {
+        final Track first = new Track();
+        first.setTrackPoints(Arrays.asList(new TrackPoint(0, 0, 0, 0)));
+        final Track second = new Track();
+        second.setTrackPoints(Arrays.asList(new TrackPoint(1, 1, 1, 1),
+                new TrackPoint(2, 2, 2, 2)));
+        dbHandler.createGPSTracks(Arrays.asList(first, second));
+
+        assertEquals(2, dbHandler.getGPSTrackCount());
+        assertEquals(1, dbHandler.getGPSTrack(first.getID()).getTrackPoints()
+                .size());
+        assertEquals(2, dbHandler.getGPSTrack(second.getID())
+                .getTrackPoints().size());
+    }
+
+    @Test
+    public void getAllDataElements_mixedElements_nodesAndTagsAssigned() {
+        final Node first = new Node(0, 1, 1);
+        first.addOrUpdateTag(Tags.getTagWithId(19), "FIRST");
+        dbHandler.createDataElement(first);
+
+        final PolyElement poly = new PolyElement(0, PolyElementType.AREA);
+        poly.addNode(new Node(0, 2, 2));
+        poly.addNode(new Node(0, 3, 3));
+        poly.addOrUpdateTag(Tags.getTagWithId(20), "POLY");
+        dbHandler.createDataElement(poly);
+
+        final Node last = new Node(0, 4, 4);
+        dbHandler.createDataElement(last);
+
+        final List<DataElement> elements = dbHandler.getAllDataElements();
+        assertEquals(3, elements.size());
+
+        assertEquals(first.getOsmId(), elements.get(0).getOsmId());
+        assertEquals(1, ((Node) elements.get(0)).getLat(), 1e-10);
+        assertEquals("FIRST", elements.get(0).getTagValueWithKey(
+                Tags.getTagWithId(19)));
+
+        final PolyElement readPoly = (PolyElement) elements.get(1);
+        assertEquals(PolyElementType.AREA, readPoly.getType());
+        assertEquals(2, readPoly.getNodes().size());
+        assertEquals(2, readPoly.getNodes().get(0).getLat(), 1e-10);
+        assertEquals(3, readPoly.getNodes().get(1).getLat(), 1e-10);
+        assertEquals(1, readPoly.getTags().size());
+
+        assertEquals(4, ((Node) elements.get(2)).getLat(), 1e-10);
+        assertTrue(elements.get(2).getTags().isEmpty());
+    }
+
     @Test
     public void updateDataElement_updateNode_rightElementSaved() {
         final double lat = 1.2;
@@ -387,6 +466,113 @@ public class DataBaseHandlerTest {
         }
     }
 
+    @Test
+    public void appendTrackPoint_existingTrack_onlyNewPointSaved() {
+        final Track toAppend = new Track();
+        List<TrackPoint> points = new ArrayList<TrackPoint>();
+        points.add(new TrackPoint(0, 0, 0, 0));
+        toAppend.setTrackPoints(points);
+        dbHandler.createGPSTrack(toAppend);
+
+        final TrackPoint appended = new TrackPoint(1, 2, 3, 4);
+        dbHandler.appendTrackPoint(toAppend.getID(), appended);
+
+        final Track track = dbHandler.getGPSTrack(toAppend.getID());
+        final List<TrackPoint> readPoints = track.getTrackPoints();
+        assertEquals(2, readPoints.size());
+
+        final TrackPoint readPoint = readPoints.get(1);
+        assertEquals(appended.getID(), readPoint.getID());
+        assertEquals(1, readPoint.getLat(), 1e-10);
+        assertEquals(2, readPoint.getLon(), 1e-10);
+        assertEquals(3, readPoint.getAlt(), 1e-10);
+        assertEquals(4, readPoint.getTime());
+    }
+
+    @Test
+    public void getActiveGPSTrackId_noTrack_noActiveTrack() {
+        assertEquals(DataBaseHandler.NO_ACTIVE_TRACK,
+                dbHandler.getActiveGPSTrackId());
+    }
+
+    @Test
+    public void getActiveGPSTrackId_oneFinishedOneActive_activeId() {
+        final Track finished = new Track();
+        finished.finishTrack();
+        dbHandler.createGPSTrack(finished);
+        final Track active = new Track();
+        dbHandler.createGPSTrack(active);
+
+        assertEquals(active.getID(), dbHandler.getActiveGPSTrackId());
+    }
+
+    @Test
+    public void deleteGPSTrack_trackWithPoints_pointsDeleted() {
+        final Track toDelete = new Track();
+        List<TrackPoint> points = new ArrayList<TrackPoint>();
+        points.add(new TrackPoint(0, 0, 0, 0));
+        points.add(new TrackPoint(0, 0, 0, 1));
+        toDelete.setTrackPoints(points);
+        dbHandler.createGPSTrack(toDelete);
+        dbHandler.deleteGPSTrack(toDelete);
+
+        final Cursor cursor =
+                dbHandler.getReadableDatabase().rawQuery(
+                        "SELECT COUNT(1) FROM trackpoints", null);
+        cursor.moveToNext();
+        assertEquals(0, cursor.getInt(0));
+        cursor.close();
+    }
+
+    @Test
+    public void createGPSTrack_afterDelete_idNotReused() {
+        final Track deleted = new Track();
+        dbHandler.createGPSTrack(deleted);
+        dbHandler.deleteGPSTrack(deleted);
+
+        final Track track = new Track();
+        dbHandler.createGPSTrack(track);
+        assertTrue(track.getID() > deleted.getID());
+    }
+
+    @Test
+    public void createDataElement_afterDeleteAndRestart_idNotReused() {
+        final Node deleted = new Node(0, 0, 0);
+        dbHandler.createDataElement(deleted);
+        dbHandler.deleteDataElement(deleted);
+        dbHandler.close();
+
+        dbHandler = new DataBaseHandler(Robolectric.application);
+        final Node node = new Node(0, 0, 0);
+        dbHandler.createDataElement(node);
+        assertTrue(node.getOsmId() > deleted.getOsmId());
+    }
+
+    @Test
+    public void updateDataElement_nodeAdded_idsKept() {
+        final PolyElement polyElement =
+                new PolyElement(0, PolyElementType.WAY);
+        polyElement.addNode(new Node(0, 0, 0));
+        polyElement.addNode(new Node(0, 1, 1));
+        dbHandler.createDataElement(polyElement);
+        final long id = polyElement.getOsmId();
+        final long firstNodeId = polyElement.getNodes().get(0).getOsmId();
+        final long secondNodeId = polyElement.getNodes().get(1).getOsmId();
+
+        polyElement.addNode(new Node(-1, 2, 2));
+        dbHandler.updateDataElement(polyElement);
+
+        assertEquals(id, polyElement.getOsmId());
+        assertEquals(firstNodeId, polyElement.getNodes().get(0).getOsmId());
+        assertEquals(secondNodeId, polyElement.getNodes().get(1).getOsmId());
+        assertTrue(polyElement.getNodes().get(2).getOsmId() > id);
+
+        final PolyElement stored =
+                (PolyElement) dbHandler.getAllDataElements().get(0);
+        assertEquals(id, stored.getOsmId());
+        assertEquals(3, stored.getNodes().size());
+    }
+
     @Test
     public void deleteAllGPSTracks_empty_emptyAfterwards() {
         dbHandler.deleteAllGPSTracks();
@@ -404,9 +590,116 @@ public class DataBaseHandlerTest {
         assertEquals(0, dbHandler.getGPSTrackCount());
     }
 
+    @Test
+    public void getUploadChangesetId_noCheckpoint_noUpload() {
+        assertEquals(DataBaseHandler.NO_UPLOAD,
+                dbHandler.getUploadChangesetId());
+        assertTrue(dbHandler.getUploadCheckpoint().isEmpty());
+    }
+
+    @Test
+    public void addUploadCheckpoint_twoChunks_allIdsAndLastChangeset() {
+        final Map<Long, Long> first = new HashMap<Long, Long>();
+        first.put(1L, 101L);
+        first.put(2L, 102L);
+        dbHandler.addUploadCheckpoint(7, first);
+        final Map<Long, Long> second = new HashMap<Long, Long>();
+        second.put(3L, 103L);
+        dbHandler.addUploadCheckpoint(8, second);
+
+        final Map<Long, Long> ids = dbHandler.getUploadCheckpoint();
+        assertEquals(3, ids.size());
+        assertEquals(Long.valueOf(102), ids.get(2L));
+        assertEquals(8, dbHandler.getUploadChangesetId());
+    }
+
+    @Test
+    public void deleteAllDataElements_withCheckpoint_checkpointDeleted() {
+        dbHandler.addUploadCheckpoint(7, Collections.singletonMap(1L, 101L));
+        dbHandler.deleteAllDataElements();
+
+        assertEquals(DataBaseHandler.NO_UPLOAD,
+                dbHandler.getUploadChangesetId());
+    }
+
+    // ///////////////////////////////////////////////
+    // ///////////////////////////////////////////////
+
+    private void createGalleryImage(long timestamp, double lat, double lon) {
+        final Location location = new Location("gps");
+        location.setLatitude(lat);
+        location.setLongitude(lon);
+        dbHandler.createGalleryImage(timestamp, new TransformationParamBean(
+                1.7, 0.8, 1.1, 640, 480, location), new DeviceOrientation(
+                0.1f, 0.2f, 0.3f, timestamp), new Point(800, 600));
+    }
+
+    @Test
+    public void getGalleryImage_imageWasSaved_rightInformations() {
+        createGalleryImage(42, 53.1, 8.8);
+
+        final Informations infos = dbHandler.getGalleryImage(42);
+        final TransformationParamBean parameters = infos.getParameters();
+        assertEquals(1.7, parameters.getHeight(), 0);
+        assertEquals(0.8, parameters.getCameraMaxVerticalViewAngle(), 0);
+        assertEquals(1.1, parameters.getCameraMaxHorizontalViewAngle(), 0);
+        assertEquals(640, parameters.getPhotoWidth());
+        assertEquals(480, parameters.getPhotoHeight());
+        assertEquals(53.1, parameters.getLocation().getLatitude(), 0);
+        assertEquals(8.8, parameters.getLocation().getLongitude(), 0);
+        assertEquals(0.2f, infos.getOrientation().getPitch(), 0);
+        assertEquals(42, infos.getOrientation().getTimestamp());
+        assertEquals(800, infos.getDimension().x);
+        assertEquals(600, infos.getDimension().y);
+    }
+
+    @Test
+    public void getGalleryImage_noLocation_locationIsNull() {
+        dbHandler.createGalleryImage(42, new TransformationParamBean(1.7,
+                0.8, 1.1, 640, 480, null), new DeviceOrientation(0, 0, 0, 0),
+                new Point(800, 600));
+
+        assertNull(dbHandler.getGalleryImage(42).getParameters()
+                .getLocation());
+    }
+
+    @Test
+    public void getGalleryImages_threeImages_newestFirstAndPaged() {
+        createGalleryImage(1, 0, 0);
+        createGalleryImage(3, 0, 0);
+        createGalleryImage(2, 0, 0);
+
+        assertEquals(3, dbHandler.getGalleryImageCount());
+        assertArrayEquals(new long[] {3, 2, 1 },
+                dbHandler.getGalleryImages(0, -1));
+        assertArrayEquals(new long[] {2 }, dbHandler.getGalleryImages(1, 1));
+    }
+
+    @Test
+    public void getGalleryImagesInBox_twoImages_onlyInsideListed() {
+        createGalleryImage(1, 53.1, 8.8);
+        createGalleryImage(2, 52.5, 13.4);
+
+        assertArrayEquals(new long[] {1 },
+                dbHandler.getGalleryImagesInBox(53, 8.5, 53.5, 9));
+    }
+
+    @Test
+    public void deleteGalleryImage_imageWasSaved_imageIsDeleted() {
+        createGalleryImage(42, 0, 0);
+        dbHandler.deleteGalleryImage(42);
+
+        assertNull(dbHandler.getGalleryImage(42));
+        assertEquals(0, dbHandler.getGalleryImageCount());
+    }
+
     @After
     public void tearDown() {
+        for (long id : dbHandler.getGalleryImages(0, -1)) {
+            dbHandler.deleteGalleryImage(id);
+        }
         dbHandler.deleteAllDataElements();
+        dbHandler.deleteUploadCheckpoint();
         dbHandler.deleteAllGPSTracks();
         for (User user : dbHandler.getAllUser()) {
             dbHandler.deleteUser(user);
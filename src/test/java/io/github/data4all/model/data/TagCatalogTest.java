@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.model.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.text.InputType;
+
+/**
+ * Test cases for the TagCatalog class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class TagCatalogTest {
+
+    private static final String KEYS = "501,landuse\n502,amenity";
+    private static final String VALUES =
+            "01,forest,501,true,false,true,false,true,false,true,true,true,"
+                    + "false,false,false,false\n"
+                    + "02,bench,502,false,true,false,false,false,false,false,"
+                    + "false,false,false,false,false,false\n"
+                    + "03,broken,502\n"
+                    + "04,unknown,599,true,true,true,true,true,true,true,true,"
+                    + "true,true,true,true,true";
+
+    private Tag fixed;
+    private TagCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        fixed = new Tag(401, "addr:street", InputType.TYPE_CLASS_TEXT);
+        catalog =
+                TagCatalog.read(Collections.singletonList(fixed),
+                        new BufferedReader(new StringReader(KEYS)),
+                        new BufferedReader(new StringReader(VALUES)));
+    }
+
+    @Test
+    public void read_keysAndValues_tagsInOrder() {
+        assertEquals(3, catalog.getTags().size());
+        assertSame(fixed, catalog.getTags().get(0));
+        assertEquals("landuse", catalog.getTags().get(1).getKey());
+        assertEquals("amenity", catalog.getTags().get(2).getKey());
+    }
+
+    @Test
+    public void read_malformedAndUnknownValues_skipped() {
+        final ClassifiedTag amenity = (ClassifiedTag) catalog.getTag(502);
+        assertEquals(1, amenity.getClassifiedValues().size());
+        assertNull(catalog.getValue(3));
+        assertNull(catalog.getValue(4));
+    }
+
+    @Test
+    public void getTag_valueId_tagOfValue() {
+        assertSame(catalog.getTag(501), catalog.getTag(1));
+        assertSame(fixed, catalog.getTag(401));
+        assertNull(catalog.getTag(999));
+    }
+
+    @Test
+    public void getValue_valueId_attributesRead() {
+        final ClassifiedValue forest = catalog.getValue(1);
+        assertEquals("landuse", forest.getKey());
+        assertEquals("forest", forest.getValue());
+        assertTrue(forest.canBeNode());
+        assertFalse(forest.canBeWay());
+        assertTrue(forest.canBeArea());
+    }
+
+    @Test
+    public void getNodeTags_filteredByGeometry_onlyNodeValues() {
+        assertEquals(1, catalog.getNodeTags().size());
+        final ClassifiedTag landuse =
+                (ClassifiedTag) catalog.getNodeTags().get(0);
+        assertEquals(501, landuse.getId());
+        assertSame(catalog.getValue(1), landuse.getClassifiedValues().get(0));
+
+        assertEquals(1, catalog.getWayTags().size());
+        assertEquals(502, catalog.getWayTags().get(0).getId());
+        assertEquals(0, catalog.getBuildingTags().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getNodeTags_modified_unsupported() {
+        catalog.getNodeTags().clear();
+    }
+}
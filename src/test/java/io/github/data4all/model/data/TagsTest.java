@@ -16,6 +16,8 @@
 package io.github.data4all.model.data;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -95,4 +97,22 @@ public class TagsTest {
         assertEquals("landuse", Tags.getTagWithId(501).getKey());
         assertEquals("amenity", Tags.getTagWithId(22).getKey());
     }
+
+    /**
+     * Tests if the views of the tags are computed once.
+     */
+    @Test
+    public void test_getAllNodeTags_sameView() {
+        assertSame(Tags.getAllNodeTags(), Tags.getAllNodeTags());
+    }
+
+    /**
+     * Tests if the getClassifiedValueWithId() method returns the value with
+     * the given id.
+     */
+    @Test
+    public void test_getClassifiedValueWithId() {
+        assertEquals("forest", Tags.getClassifiedValueWithId(1).getValue());
+        assertNull(Tags.getClassifiedValueWithId(999));
+    }
 }
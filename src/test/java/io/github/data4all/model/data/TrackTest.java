@@ -60,6 +60,28 @@ public class TrackTest {
                 .isEmpty());
     }
 
+    /**
+     * Test method for
+     * {@link io.github.data4all.model.data.Track#replaceLastTrackPoint(TrackPoint)}
+     * .
+     */
+    @Test
+    public void testReplaceLastTrackPoint() {
+        Track track = new Track();
+        track.addTrackPoint(new Location("provider"));
+        track.addTrackPoint(new Location("provider"));
+        TrackPoint point = new TrackPoint(1, 2, 3, 4);
+
+        track.replaceLastTrackPoint(point);
+
+        assertEquals(2, track.getTrackPoints().size());
+        assertTrue(point == track.getLastTrackPoint());
+
+        track.finishTrack();
+        track.replaceLastTrackPoint(new TrackPoint(5, 6, 7, 8));
+        assertTrue(point == track.getLastTrackPoint());
+    }
+
     /**
      * Test method for
      * {@link io.github.data4all.model.data.Track#addTrackPoint(android.location.Location)}
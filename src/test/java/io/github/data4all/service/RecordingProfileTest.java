@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the RecordingProfile class.
+ */
+public class RecordingProfileTest {
+
+    @Test
+    public void select_fasterSpeed_profileRaisedAtOnce() {
+        assertEquals(RecordingProfile.DRIVE,
+                RecordingProfile.select(20, RecordingProfile.STATIONARY));
+        assertEquals(RecordingProfile.WALK,
+                RecordingProfile.select(1.5f, RecordingProfile.STATIONARY));
+    }
+
+    @Test
+    public void select_slowerSpeed_profileLowered() {
+        assertEquals(RecordingProfile.STATIONARY,
+                RecordingProfile.select(0, RecordingProfile.DRIVE));
+        assertEquals(RecordingProfile.CYCLE,
+                RecordingProfile.select(4, RecordingProfile.DRIVE));
+    }
+
+    @Test
+    public void select_speedNearLimit_profileKept() {
+        // slightly below the upper speed of walking
+        assertEquals(RecordingProfile.CYCLE,
+                RecordingProfile.select(2.2f, RecordingProfile.CYCLE));
+        assertEquals(RecordingProfile.WALK,
+                RecordingProfile.select(2.2f, RecordingProfile.WALK));
+    }
+
+    @Test
+    public void select_stationaryProfile_backedOff() {
+        assertTrue(RecordingProfile.STATIONARY.getMinTime() > 10
+                * RecordingProfile.WALK.getMinTime());
+    }
+
+    @Test
+    public void getMinDistance_stationaryProfile_zero() {
+        assertEquals(0, RecordingProfile.STATIONARY.getMinDistance(), 0);
+    }
+}
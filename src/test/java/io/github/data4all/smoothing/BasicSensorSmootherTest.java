@@ -16,6 +16,7 @@
 package io.github.data4all.smoothing;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -90,4 +91,27 @@ public class BasicSensorSmootherTest {
         assertEquals(filteredValues[2], 0.0f, 0.1);
     }
 
+    /**
+     * the output array is updated in place
+     */
+    @Test
+    public void filterTest_updatesOutputInPlace() {
+        input[0] = 7.5f;
+        output[0] = 3.0f;
+
+        float[] filteredValues = basicSmoothing.filter(input, output);
+        assertSame(output, filteredValues);
+        assertEquals(output[0], 4.125f, 0.0001);
+    }
+
+    /**
+     * longer input arrays do not exceed the output
+     */
+    @Test
+    public void filterTest_longerInput() {
+        input = new float[] { 1, 1, 1, 1, 1, };
+
+        float[] filteredValues = basicSmoothing.filter(input, output);
+        assertEquals(3, filteredValues.length);
+    }
 }
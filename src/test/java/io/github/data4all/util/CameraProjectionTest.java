@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import io.github.data4all.model.DeviceOrientation;
+import io.github.data4all.model.data.TransformationParamBean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+/**
+ * Test cases for the CameraProjection class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class CameraProjectionTest {
+
+    private TransformationParamBean tps;
+    private DeviceOrientation orientation;
+
+    @Before
+    public void setUp() {
+        tps = new TransformationParamBean(1.7, Math.toRadians(60),
+                Math.toRadians(45), 1000, 800, new Location("Provider"));
+        orientation = new DeviceOrientation((float) Math.toRadians(30),
+                (float) Math.toRadians(50), (float) Math.toRadians(10), 10L);
+    }
+
+    @Test
+    public void pixelsToCoords_coordsToPixels_roundTrip() {
+        final CameraProjection projection =
+                new CameraProjection(tps, orientation);
+        final double[] points = { 500, 600, 100, 700, 900, 790, };
+        final double[] expected = points.clone();
+
+        projection.pixelsToCoords(points, 3);
+        projection.coordsToPixels(points, 3);
+
+        for (int i = 0; i < points.length; i++) {
+            assertThat(points[i], closeTo(expected[i], 0.5));
+        }
+    }
+
+    @Test
+    public void pixelsToCoords_batch_equalsSinglePoints() {
+        final CameraProjection projection =
+                new CameraProjection(tps, orientation);
+        final double[] batch = { 500, 600, 100, 700, };
+        final double[] first = { 500, 600, };
+        final double[] second = { 100, 700, };
+
+        projection.pixelsToCoords(batch, 2);
+        projection.pixelsToCoords(first, 1);
+        projection.pixelsToCoords(second, 1);
+
+        assertThat(batch[0], is(first[0]));
+        assertThat(batch[1], is(first[1]));
+        assertThat(batch[2], is(second[0]));
+        assertThat(batch[3], is(second[1]));
+    }
+
+    @Test
+    public void pixelsToCoords_aboveHorizon_origin() {
+        final DeviceOrientation upright =
+                new DeviceOrientation(0, (float) Math.toRadians(90), 0, 10L);
+        final double[] points = { 500, 800, };
+
+        new CameraProjection(tps, upright).pixelsToCoords(points, 1);
+
+        assertThat(points[0], is(0.0));
+        assertThat(points[1], is(0.0));
+    }
+
+    @Test
+    public void matches_changedOrientation_false() {
+        final CameraProjection projection =
+                new CameraProjection(tps, orientation);
+
+        assertTrue(projection.matches(tps, orientation));
+        orientation.setRoll(0);
+        assertFalse(projection.matches(tps, orientation));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static io.github.data4all.util.LocationFixtures.location;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for the LocalProjector class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class LocalProjectorTest {
+
+    @Test
+    public void toLocal_batch_metresEastAndNorth() {
+        final LocalProjector projector =
+                new LocalProjector(location(52.5, 13.4));
+        final double[] points = { 52.501, 13.402, 52.499, 13.39, 52.5, 13.4, };
+
+        projector.toLocal(points, points, 3);
+
+        // Expected values of the former equirectangular formula of MathUtil
+        assertThat(points[0], closeTo(135.3824498844, 1e-6));
+        assertThat(points[1], closeTo(111.1949964574, 1e-6));
+        assertThat(points[2], closeTo(-676.9122494222, 1e-6));
+        assertThat(points[3], closeTo(-111.1949964581, 1e-6));
+        assertThat(points[4], is(0.0));
+        assertThat(points[5], is(0.0));
+    }
+
+    @Test
+    public void toGPS_toLocal_roundTrip() {
+        final LocalProjector projector = new LocalProjector(-33.9, 18.4);
+        final double[] coords = { 100, -250, -1000, 40, };
+        final double[] latLon = new double[4];
+
+        projector.toGPS(coords, latLon, 2);
+        projector.toLocal(latLon, latLon, 2);
+
+        for (int i = 0; i < coords.length; i++) {
+            assertThat(latLon[i], closeTo(coords[i], 1e-6));
+        }
+    }
+
+    @Test
+    public void toGPS_northEast_increasesLatAndLon() {
+        final LocalProjector projector = new LocalProjector(10, 20);
+        final double[] points = { 10, 10, };
+
+        projector.toGPS(points, points, 1);
+
+        assertThat(points[0] > 10, is(true));
+        assertThat(points[1] > 20, is(true));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static io.github.data4all.util.LocationFixtures.location;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+/**
+ * Test cases for the LocationEstimator class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class LocationEstimatorTest {
+
+    // the length of one degree of latitude in the local projection
+    private static final double METERS_PER_DEGREE = 111195.08;
+
+    // the device time at which the fixes of the provider are received
+    private static final long DEVICE_OFFSET = 1420070400000L;
+
+    @Test
+    public void getEstimate_noFix_null() {
+        assertNull(new LocationEstimator().getEstimate());
+    }
+
+    @Test
+    public void put_simultaneousFixes_weightedByAccuracy() {
+        final LocationEstimator estimator = new LocationEstimator();
+        estimator.put(location(53, 8, 10, 1000));
+        estimator.put(location(53.001, 8, 5, 1000));
+
+        // the second fix has a quarter of the variance of the first one
+        final Location estimate = estimator.getEstimate();
+        assertEquals(53.0008, estimate.getLatitude(), 1e-9);
+        assertEquals(8, estimate.getLongitude(), 1e-9);
+        assertEquals(20, estimator.getCovariance(new double[4])[0], 1e-9);
+        assertEquals(Math.sqrt(20), estimate.getAccuracy(), 1e-6);
+    }
+
+    @Test
+    public void put_outdatedFix_ignored() {
+        final LocationEstimator estimator = new LocationEstimator();
+        estimator.put(location(53, 8, 10, 1000));
+        estimator.put(location(60, 8, 5, 500));
+
+        assertEquals(53, estimator.getEstimate().getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void put_movingNorth_tracksPositionAndVelocity() {
+        final LocationEstimator estimator = new LocationEstimator();
+        for (int i = 0; i < 60; i++) {
+            estimator.put(location(53 + i * 10 / METERS_PER_DEGREE, 8, 5,
+                    i * 1000));
+        }
+
+        final Location estimate = estimator.getEstimate();
+        assertEquals(590, (estimate.getLatitude() - 53) * METERS_PER_DEGREE,
+                1);
+        assertTrue(estimate.getAccuracy() < 5);
+        final double[] velocity = estimator.getVelocity(new double[2]);
+        assertEquals(0, velocity[0], 0.1);
+        assertEquals(10, velocity[1], 0.1);
+    }
+
+    @Test
+    public void getEstimateAt_movingNorth_movedAlongVelocity() {
+        final LocationEstimator estimator = new LocationEstimator();
+        for (int i = 0; i < 60; i++) {
+            // the device clock is ahead of the clock of the provider
+            estimator.put(location(53 + i * 10 / METERS_PER_DEGREE, 8, 5,
+                    i * 1000), DEVICE_OFFSET + i * 1000);
+        }
+
+        final Location estimate = estimator.getEstimate();
+        final Location later = estimator.getEstimateAt(DEVICE_OFFSET + 59500);
+        assertEquals(5, (later.getLatitude() - estimate.getLatitude())
+                * METERS_PER_DEGREE, 0.5);
+        assertEquals(59500, later.getTime());
+        assertTrue(later.getAccuracy() > estimate.getAccuracy());
+        // the estimate itself is not changed
+        assertEquals(59000, estimator.getEstimate().getTime());
+    }
+
+    @Test
+    public void getEstimateAt_farFuture_limited() {
+        final LocationEstimator estimator = new LocationEstimator();
+        estimator.put(location(53, 8, 10, 1000), DEVICE_OFFSET);
+
+        assertEquals(1000 + LocationEstimator.MAX_PREDICTION, estimator
+                .getEstimateAt(DEVICE_OFFSET + 60000).getTime());
+    }
+
+    @Test
+    public void getEstimateAt_beforeReceived_notMovedBackwards() {
+        final LocationEstimator estimator = new LocationEstimator();
+        for (int i = 0; i < 10; i++) {
+            estimator.put(location(53 + i * 10 / METERS_PER_DEGREE, 8, 5,
+                    i * 1000), DEVICE_OFFSET + i * 1000);
+        }
+
+        final Location estimate = estimator.getEstimate();
+        final Location earlier = estimator.getEstimateAt(DEVICE_OFFSET);
+        assertEquals(estimate.getLatitude(), earlier.getLatitude(), 1e-9);
+        assertEquals(estimate.getAccuracy(), earlier.getAccuracy(), 1e-6);
+        assertEquals(9000, earlier.getTime());
+    }
+
+    @Test
+    public void clear_nextFixStartsOver() {
+        final LocationEstimator estimator = new LocationEstimator();
+        estimator.put(location(53, 8, 10, 1000));
+        estimator.clear();
+        assertNull(estimator.getEstimate());
+
+        estimator.put(location(10, 20, 10, 500));
+        assertEquals(10, estimator.getEstimate().getLatitude(), 1e-9);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import android.location.Location;
+
+/**
+ * Builds the locations used as fixtures by the test cases.
+ */
+final class LocationFixtures {
+
+    /**
+     * Private Constructor, prevents instantiation.
+     */
+    private LocationFixtures() {
+    }
+
+    /**
+     * Creates a location without accuracy and time.
+     * 
+     * @param lat
+     *            the latitude in degrees
+     * @param lon
+     *            the longitude in degrees
+     * @return the new location
+     */
+    static Location location(double lat, double lon) {
+        final Location location = new Location("gps");
+        location.setLatitude(lat);
+        location.setLongitude(lon);
+        return location;
+    }
+
+    /**
+     * Creates a location fix.
+     * 
+     * @param lat
+     *            the latitude in degrees
+     * @param lon
+     *            the longitude in degrees
+     * @param accuracy
+     *            the accuracy in meters
+     * @param time
+     *            the time of the fix in milliseconds
+     * @return the new location
+     */
+    static Location location(double lat, double lon, float accuracy,
+            long time) {
+        final Location location = location(lat, lon);
+        location.setAccuracy(accuracy);
+        location.setTime(time);
+        return location;
+    }
+}
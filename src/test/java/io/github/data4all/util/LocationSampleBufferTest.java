@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static io.github.data4all.util.LocationFixtures.location;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+/**
+ * Test cases for the LocationSampleBuffer class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class LocationSampleBufferTest {
+
+    @Test
+    public void getLatest_empty_null() {
+        assertNull(new LocationSampleBuffer(3).getLatest());
+    }
+
+    @Test
+    public void getAll_overwritten_oldestToNewest() {
+        final LocationSampleBuffer buffer = new LocationSampleBuffer(3);
+        final Location[] puts = new Location[5];
+        for (int i = 0; i < puts.length; i++) {
+            puts[i] = location(i, i, 10, i);
+            buffer.put(puts[i]);
+        }
+
+        final Location[] all = new Location[3];
+        assertEquals(3, buffer.getAll(all));
+        assertSame(puts[2], all[0]);
+        assertSame(puts[3], all[1]);
+        assertSame(puts[4], all[2]);
+        assertSame(puts[4], buffer.getLatest());
+    }
+
+    @Test
+    public void getStatistics_window_meanVarianceAndBestAccuracy() {
+        final LocationSampleBuffer buffer = new LocationSampleBuffer(5);
+        buffer.put(location(10, 10, 1, 100));
+        buffer.put(location(0, 0, 20, 200));
+        buffer.put(location(0.001, 0, 8, 300));
+
+        final LocationSampleBuffer.Statistics stats =
+                buffer.getStatistics(200,
+                        new LocationSampleBuffer.Statistics());
+
+        assertEquals(2, stats.getCount());
+        assertEquals(0.0005, stats.getMeanLatitude(), 1e-9);
+        assertEquals(0, stats.getMeanLongitude(), 1e-9);
+        // two positions 111.32 m apart deviate 55.66 m from their mean
+        assertEquals(55.66 * 55.66, stats.getVariance(), 0.01);
+        assertEquals(8, stats.getBestAccuracy(), 0);
+        assertEquals(300, stats.getNewestTime());
+    }
+
+    @Test
+    public void clear_emptiesStatistics() {
+        final LocationSampleBuffer buffer = new LocationSampleBuffer(5);
+        buffer.put(location(10, 10, 1, 100));
+        buffer.clear();
+
+        assertEquals(0, buffer.getStatistics(0,
+                new LocationSampleBuffer.Statistics()).getCount());
+        assertNull(buffer.getLatest());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import io.github.data4all.model.DeviceOrientation;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for the OrientationSampleBuffer class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class OrientationSampleBufferTest {
+
+    @Test
+    public void getLatest_empty_null() {
+        assertNull(new OrientationSampleBuffer(3).getLatest());
+    }
+
+    @Test
+    public void getLatest_overwritten_newestSample() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.put(i, i * 2, i * 3, i * 100);
+        }
+
+        final DeviceOrientation latest = buffer.getLatest();
+        assertEquals(5, latest.getAzimuth(), 0);
+        assertEquals(10, latest.getPitch(), 0);
+        assertEquals(15, latest.getRoll(), 0);
+        assertEquals(500, latest.getTimestamp());
+        assertEquals(3, buffer.size());
+    }
+
+    @Test
+    public void getAt_empty_null() {
+        assertNull(new OrientationSampleBuffer(3).getAt(100));
+    }
+
+    @Test
+    public void getAt_betweenSamples_interpolated() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(4);
+        buffer.put(0, 0, 0, 100);
+        buffer.put(0.2f, 0.4f, -0.2f, 200);
+        buffer.put(1, 1, 1, 300);
+
+        final DeviceOrientation orientation = buffer.getAt(150);
+        assertEquals(0.1f, orientation.getAzimuth(), 1e-6);
+        assertEquals(0.2f, orientation.getPitch(), 1e-6);
+        assertEquals(-0.1f, orientation.getRoll(), 1e-6);
+        assertEquals(150, orientation.getTimestamp());
+    }
+
+    @Test
+    public void getAt_acrossSouth_shorterArc() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(4);
+        buffer.put(3.1f, 0, 0, 100);
+        buffer.put(-3.1f, 0, 0, 200);
+
+        final float azimuth = buffer.getAt(150).getAzimuth();
+        assertEquals(Math.PI, Math.abs(azimuth), 1e-5);
+    }
+
+    @Test
+    public void getAt_afterNewest_extrapolatedLimited() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(4);
+        buffer.put(0, 0, 0, 100);
+        buffer.put(0.1f, 0, 0, 200);
+
+        assertEquals(0.15f, buffer.getAt(250).getAzimuth(), 1e-6);
+        assertEquals(0.2f, buffer.getAt(1000).getAzimuth(), 1e-6);
+    }
+
+    @Test
+    public void getAt_manySamples_extrapolatedFromTwoNewest() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(5);
+        buffer.put(0, 0, 0, 100);
+        buffer.put(0.1f, 0.5f, 0, 200);
+        buffer.put(0.3f, 0.5f, 0, 300);
+        buffer.put(0.6f, 0.4f, 0.2f, 400);
+
+        final DeviceOrientation orientation = buffer.getAt(450);
+        assertEquals(0.75f, orientation.getAzimuth(), 1e-6);
+        assertEquals(0.35f, orientation.getPitch(), 1e-6);
+        assertEquals(0.3f, orientation.getRoll(), 1e-6);
+        assertEquals(0.9f, buffer.getAt(1000).getAzimuth(), 1e-6);
+    }
+
+    @Test
+    public void getAt_slotOverwrittenDuringRead_slotSkipped() {
+        final OverwritingBuffer buffer = new OverwritingBuffer(3);
+        buffer.put(0.1f, 0.1f, 0.1f, 100);
+        buffer.put(0.2f, 0.2f, 0.2f, 200);
+        buffer.put(0.3f, 0.3f, 0.3f, 300);
+        // the writer is about to overwrite the sample at 100
+        buffer.startOverwrite();
+
+        final DeviceOrientation orientation = buffer.getAt(150);
+        assertEquals(0.2f, orientation.getAzimuth(), 1e-6);
+        assertEquals(0.2f, orientation.getPitch(), 1e-6);
+        assertEquals(0.2f, orientation.getRoll(), 1e-6);
+        assertEquals(150, orientation.getTimestamp());
+    }
+
+    @Test
+    public void getAt_beforeOldest_oldestSample() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(2);
+        for (int i = 1; i <= 3; i++) {
+            buffer.put(i * 0.1f, 0, 0, i * 100);
+        }
+
+        assertEquals(0.2f, buffer.getAt(0).getAzimuth(), 1e-6);
+    }
+
+    @Test
+    public void clear_thenPut_onlyNewSample() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(3);
+        buffer.put(1, 1, 1, 1);
+        buffer.clear();
+
+        assertNull(buffer.getLatest());
+        buffer.put(2, 2, 2, 2);
+        assertEquals(1, buffer.size());
+        assertEquals(2, buffer.getLatest().getTimestamp());
+    }
+
+    @Test
+    public void getLatest_concurrentWriter_consistentSnapshots()
+            throws Exception {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(2);
+        final Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100000; i++) {
+                    buffer.put(i, i, i, i);
+                }
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            final DeviceOrientation latest = buffer.getLatest();
+            if (latest != null) {
+                assertEquals(latest.getAzimuth(), latest.getPitch(), 0);
+                assertEquals(latest.getAzimuth(), latest.getRoll(), 0);
+                assertEquals((long) latest.getAzimuth(),
+                        latest.getTimestamp());
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    public void getStatistics_window_onlyNewerSamples() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(5);
+        buffer.put(3, 9, 9, 100);
+        buffer.put(0.1f, 0.2f, 0.0f, 200);
+        buffer.put(0.3f, 0.4f, 0.2f, 300);
+
+        final OrientationSampleBuffer.Statistics stats =
+                buffer.getStatistics(200,
+                        new OrientationSampleBuffer.Statistics());
+
+        assertEquals(2, stats.getCount());
+        assertEquals(0.2, stats.getMeanAzimuth(), 1e-6);
+        assertEquals(0.3, stats.getMeanPitch(), 1e-6);
+        assertEquals(0.01, stats.getPitchVariance(), 1e-6);
+        assertEquals(0.1, stats.getMeanRoll(), 1e-6);
+        assertEquals(0.01, stats.getRollVariance(), 1e-6);
+    }
+
+    @Test
+    public void getStatistics_azimuthAroundSouth_circularMean() {
+        final OrientationSampleBuffer buffer = new OrientationSampleBuffer(5);
+        buffer.put((float) (Math.PI - 0.1), 0, 0, 100);
+        buffer.put((float) (-Math.PI + 0.1), 0, 0, 200);
+
+        final OrientationSampleBuffer.Statistics stats =
+                buffer.getStatistics(0,
+                        new OrientationSampleBuffer.Statistics());
+
+        assertEquals(Math.PI, Math.abs(stats.getMeanAzimuth()), 1e-6);
+        assertEquals(0.005, stats.getAzimuthVariance(), 1e-3);
+    }
+
+    /**
+     * A buffer whose writer can be stopped in the middle of a sample.
+     */
+    private static final class OverwritingBuffer extends
+            OrientationSampleBuffer {
+
+        public OverwritingBuffer(int capacity) {
+            super(capacity);
+        }
+
+        /**
+         * Starts to write the next sample without finishing it, the slot of
+         * the oldest sample stays marked as being written.
+         */
+        public void startOverwrite() {
+            beginWrite();
+        }
+    }
+}
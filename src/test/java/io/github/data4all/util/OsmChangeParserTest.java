@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.github.data4all.model.data.DataElement;
+import io.github.data4all.model.data.Node;
+import io.github.data4all.model.data.PolyElement;
+import io.github.data4all.model.data.PolyElement.PolyElementType;
+import io.github.data4all.model.data.Tags;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for the OsmChangeParser class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class OsmChangeParserTest {
+
+    private static String parse(List<DataElement> elems) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OsmChangeParser.parseElements(elems, 42, out);
+        return out.toString("UTF-8");
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        int index = text.indexOf(part);
+        while (index >= 0) {
+            count++;
+            index = text.indexOf(part, index + part.length());
+        }
+        return count;
+    }
+
+    @Test
+    public void parseElements_sharedNode_nodeWrittenOnce() throws Exception {
+        final Node shared = new Node(1, 1, 1);
+        final PolyElement first = new PolyElement(3, PolyElementType.WAY);
+        first.addNode(shared);
+        first.addNode(new Node(2, 2, 2));
+        final PolyElement second = new PolyElement(5, PolyElementType.WAY);
+        second.addNode(new Node(4, 4, 4));
+        second.addNode(shared);
+
+        final List<DataElement> elems = new ArrayList<DataElement>();
+        elems.add(first);
+        elems.add(second);
+        final String xml = parse(elems);
+
+        assertEquals(3, count(xml, "<node "));
+        assertEquals(1, count(xml, "<node id=\"-1\""));
+        assertEquals(2, count(xml, "<nd ref=\"-1\"/>"));
+        assertEquals(2, count(xml, "changeset=\"42\""));
+        assertTrue(xml.indexOf("<way ") > xml.lastIndexOf("<node "));
+    }
+
+    @Test
+    public void parseElements_specialCharsInTag_valueEscaped()
+            throws Exception {
+        final Node node = new Node(1, 1, 1);
+        node.addOrUpdateTag(Tags.getTagWithId(19), "A & \"B\" <C>");
+
+        final List<DataElement> elems = new ArrayList<DataElement>();
+        elems.add(node);
+        final String xml = parse(elems);
+
+        assertTrue(xml.contains("v=\"A &amp; &quot;B&quot; &lt;C&gt;\""));
+    }
+
+    @Test
+    public void parseElements_nonAsciiValue_writtenAsUtf8() throws Exception {
+        final Node node = new Node(1, 1, 1);
+        node.addOrUpdateTag(Tags.getTagWithId(19), "Straße");
+
+        final List<DataElement> elems = new ArrayList<DataElement>();
+        elems.add(node);
+
+        assertTrue(parse(elems).contains("v=\"Straße\""));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.graphics.Rect;
+
+/**
+ * Test cases for the PictureDecoder class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class PictureDecoderTest {
+
+    private static void assertRect(int left, int top, int right, int bottom,
+            Rect actual) {
+        assertEquals(left, actual.left);
+        assertEquals(top, actual.top);
+        assertEquals(right, actual.right);
+        assertEquals(bottom, actual.bottom);
+    }
+
+    @Test
+    public void cropRegion_longerView_shorterSideReduced() {
+        assertRect(0, 375, 4000, 2625,
+                PictureDecoder.cropRegion(4000, 3000, 16.0 / 9));
+    }
+
+    @Test
+    public void cropRegion_portraitPicture_orientationKept() {
+        assertRect(375, 0, 2625, 4000,
+                PictureDecoder.cropRegion(3000, 4000, 16.0 / 9));
+    }
+
+    @Test
+    public void cropRegion_shorterView_longerSideReduced() {
+        assertRect(500, 0, 3500, 3000,
+                PictureDecoder.cropRegion(4000, 3000, 1.0));
+    }
+
+    @Test
+    public void cropRegion_similarRatio_notCropped() {
+        assertRect(0, 0, 4000, 3000,
+                PictureDecoder.cropRegion(4000, 3000, 1.4));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the SpatialGridIndex class.
+ */
+public class SpatialGridIndexTest {
+
+    /**
+     * About 100 meters in degrees of latitude.
+     */
+    private static final double HUNDRED_METERS = 100 / 111320.0;
+
+    @Test
+    public void query_itemWithinRadius_isFound() {
+        final SpatialGridIndex<String> index =
+                new SpatialGridIndex<String>(50);
+        index.add("near", 52 + HUNDRED_METERS, 8, 0);
+        index.add("far", 52 + 10 * HUNDRED_METERS, 8, 0);
+
+        final List<String> result = new ArrayList<String>();
+        index.query(52, 8, 150, result);
+
+        assertTrue(result.contains("near"));
+        assertFalse(result.contains("far"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void query_extentReachesRadius_isFound() {
+        final SpatialGridIndex<String> index =
+                new SpatialGridIndex<String>(50);
+        index.add("way", 52 + 3 * HUNDRED_METERS, 8, 180);
+
+        final List<String> result = new ArrayList<String>();
+        index.query(52, 8, 150, result);
+
+        assertTrue(result.contains("way"));
+    }
+
+    @Test
+    public void query_largeItem_alwaysFound() {
+        final SpatialGridIndex<String> index =
+                new SpatialGridIndex<String>(50);
+        index.add("area", 53, 9, 10000);
+        index.add("node", 53, 9, 0);
+
+        final List<String> result = new ArrayList<String>();
+        index.query(52, 8, 100, result);
+
+        assertEquals(1, result.size());
+        assertTrue(result.contains("area"));
+    }
+
+    @Test
+    public void query_acrossNegativeCells_isFound() {
+        final SpatialGridIndex<String> index =
+                new SpatialGridIndex<String>(50);
+        index.add("west", -0.0001, -0.0001, 0);
+        index.add("east", 0.0001, 0.0001, 0);
+
+        final List<String> result = new ArrayList<String>();
+        index.query(0, 0, 50, result);
+
+        assertEquals(2, result.size());
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for the ThumbnailLoader class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class ThumbnailLoaderTest {
+
+    @Test
+    public void sampleSize_smallImage_notSampled() {
+        assertEquals(1, ThumbnailLoader.sampleSize(200, 300));
+        assertEquals(1, ThumbnailLoader.sampleSize(599, 300));
+    }
+
+    @Test
+    public void sampleSize_largeImage_largestPowerOfTwoKeepingSize() {
+        assertEquals(2, ThumbnailLoader.sampleSize(600, 300));
+        assertEquals(8, ThumbnailLoader.sampleSize(3264, 300));
+        assertEquals(16, ThumbnailLoader.sampleSize(4800, 300));
+    }
+}
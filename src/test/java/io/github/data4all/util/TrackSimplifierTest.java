@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.github.data4all.model.data.TrackPoint;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.location.Location;
+
+/**
+ * Test cases for the TrackSimplifier class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class TrackSimplifierTest {
+
+    // the length of one degree of latitude in the local projection
+    private static final double METERS_PER_DEGREE = 111195.08;
+
+    private TrackSimplifier simplifier;
+
+    /**
+     * Creates a location the given meters north and east of 53N 8E.
+     */
+    private static Location location(double north, double east,
+            float accuracy, long time) {
+        final Location location = new Location("gps");
+        location.setLatitude(53 + north / METERS_PER_DEGREE);
+        location.setLongitude(8 + east
+                / (METERS_PER_DEGREE * Math.cos(Math.toRadians(53))));
+        location.setAccuracy(accuracy);
+        location.setTime(time);
+        return location;
+    }
+
+    @Before
+    public void setUp() {
+        simplifier = new TrackSimplifier(3, 30, 70);
+        simplifier.start(null);
+    }
+
+    @Test
+    public void add_straightLine_lastPointReplaced() {
+        assertEquals(TrackSimplifier.APPEND,
+                simplifier.add(location(0, 0, 5, 0)));
+        assertEquals(TrackSimplifier.APPEND,
+                simplifier.add(location(10, 0, 5, 1000)));
+        for (int i = 2; i < 50; i++) {
+            assertEquals(TrackSimplifier.REPLACE,
+                    simplifier.add(location(i * 10, i % 2, 5, i * 1000)));
+        }
+    }
+
+    @Test
+    public void add_corner_pointAppended() {
+        simplifier.add(location(0, 0, 5, 0));
+        simplifier.add(location(10, 0, 5, 1000));
+        simplifier.add(location(20, 0, 5, 2000));
+
+        assertEquals(TrackSimplifier.APPEND,
+                simplifier.add(location(20, 10, 5, 3000)));
+        assertEquals(TrackSimplifier.REPLACE,
+                simplifier.add(location(20, 20, 5, 4000)));
+    }
+
+    @Test
+    public void add_curves_maximumDeviationKept() {
+        final int count = 1000;
+        final double[] north = new double[count];
+        final double[] east = new double[count];
+        final boolean[] stored = new boolean[count];
+        double heading = 0;
+        int last = -1;
+        for (int i = 0; i < count; i++) {
+            // a left curve followed by a right curve
+            heading += i < count / 2 ? 0.01 : -0.01;
+            north[i] = (i == 0 ? 0 : north[i - 1]) + Math.cos(heading) * 5;
+            east[i] = (i == 0 ? 0 : east[i - 1]) + Math.sin(heading) * 5;
+            final int action =
+                    simplifier.add(location(north[i], east[i], 5, i * 1000));
+            if (action == TrackSimplifier.REPLACE) {
+                stored[last] = false;
+            }
+            stored[i] = true;
+            last = i;
+        }
+
+        int storedCount = 0;
+        int from = 0;
+        for (int i = 1; i < count; i++) {
+            if (stored[i]) {
+                storedCount++;
+                for (int j = from + 1; j < i; j++) {
+                    final double deviation =
+                            TrackSimplifier.distanceToLine(north[j]
+                                    - north[from], east[j] - east[from],
+                                    north[i] - north[from], east[i]
+                                            - east[from]);
+                    assertTrue(deviation < 3.01);
+                }
+                from = i;
+            }
+        }
+        assertTrue(storedCount < count / 10);
+    }
+
+    @Test
+    public void add_inaccurateLocation_rejected() {
+        simplifier.add(location(0, 0, 5, 0));
+
+        assertEquals(TrackSimplifier.REJECT,
+                simplifier.add(location(10, 0, 31, 1000)));
+    }
+
+    @Test
+    public void add_jump_rejectedUntilConfirmed() {
+        simplifier.add(location(0, 0, 5, 0));
+        simplifier.add(location(10, 0, 5, 1000));
+
+        for (int i = 2; i < 5; i++) {
+            assertEquals(TrackSimplifier.REJECT,
+                    simplifier.add(location(10, 1000, 5, i * 1000)));
+        }
+        assertEquals(TrackSimplifier.APPEND,
+                simplifier.add(location(10, 1000, 5, 5000)));
+    }
+
+    @Test
+    public void start_lastPoint_continuedFromPoint() {
+        simplifier.start(new TrackPoint(53, 8, 0, 0));
+
+        assertEquals(TrackSimplifier.APPEND,
+                simplifier.add(location(10, 0, 5, 1000)));
+        assertEquals(TrackSimplifier.REPLACE,
+                simplifier.add(location(20, 0, 5, 2000)));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util.upload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the CallbackOutputStream class.
+ */
+public class CallbackOutputStreamTest {
+
+    /**
+     * Records every progress it is called with.
+     */
+    private static class RecordingCallback implements Callback<Integer> {
+        private final List<Integer> calls = new ArrayList<Integer>();
+
+        @Override
+        public void callback(Integer t) {
+            calls.add(t);
+        }
+
+        @Override
+        public int interval() {
+            return 1;
+        }
+    }
+
+    @Test
+    public void write_bulkWrite_contentPassedThrough() throws Exception {
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        final CallbackOutputStream out =
+                new CallbackOutputStream(target, new RecordingCallback());
+        final byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        out.write(content, 0, content.length);
+        out.flush();
+
+        assertArrayEquals(content, target.toByteArray());
+    }
+
+    @Test
+    public void write_manySmallWrites_callbacksThrottled() throws Exception {
+        final RecordingCallback callback = new RecordingCallback();
+        final CallbackOutputStream out =
+                new CallbackOutputStream(new ByteArrayOutputStream(), callback);
+        for (int i = 0; i < 10000; i++) {
+            out.write(i);
+        }
+
+        // All writes happen within the minimum delay
+        assertEquals(0, callback.calls.size());
+        out.flush();
+        assertEquals(1, callback.calls.size());
+        assertEquals(Integer.valueOf(10000), callback.calls.get(0));
+    }
+
+    @Test
+    public void flush_nothingNewWritten_noCallback() throws Exception {
+        final RecordingCallback callback = new RecordingCallback();
+        final CallbackOutputStream out =
+                new CallbackOutputStream(new ByteArrayOutputStream(), callback);
+        out.write(new byte[10], 0, 10);
+        out.flush();
+        out.flush();
+
+        assertEquals(1, callback.calls.size());
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.github.data4all.handler.DataBaseHandler;
+import io.github.data4all.model.data.DataElement;
+import io.github.data4all.model.data.Node;
+import io.github.data4all.model.data.PolyElement;
+import io.github.data4all.model.data.PolyElement.PolyElementType;
+import io.github.data4all.model.data.User;
+import io.github.data4all.util.oauth.exception.OsmChangesetClosedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for the ChunkedChangesetUpload class. The OSM API is replaced by
+ * the fake http layer of Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class ChunkedChangesetUploadTest {
+
+    private static final int CHANGESET = 42;
+
+    private DataBaseHandler db;
+    private User user;
+    private int progress;
+
+    private final Callback<Integer> callback = new Callback<Integer>() {
+        @Override
+        public void callback(Integer t) {
+            progress = t;
+        }
+
+        @Override
+        public int interval() {
+            return 1;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        db = new DataBaseHandler(Robolectric.application);
+        user = new User("user", "token", "secret");
+    }
+
+    @After
+    public void tearDown() {
+        db.deleteAllDataElements();
+        db.close();
+    }
+
+    /**
+     * Builds the diffResult the OSM API answers for the given nodes.
+     */
+    private static String diffResult(long... localIds) {
+        final StringBuilder builder =
+                new StringBuilder("<diffResult version=\"0.6\">");
+        for (long id : localIds) {
+            builder.append("<node old_id=\"-").append(id)
+                    .append("\" new_id=\"").append(1000 + id)
+                    .append("\" new_version=\"1\"/>");
+        }
+        return builder.append("</diffResult>").toString();
+    }
+
+    /**
+     * Returns the uncompressed body of the sent request with the given index.
+     */
+    private static String sentBody(int index) throws Exception {
+        final HttpEntityEnclosingRequest request =
+                (HttpEntityEnclosingRequest) Robolectric
+                        .getSentHttpRequest(index);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.getEntity().writeTo(out);
+        final InputStream in =
+                new GZIPInputStream(new ByteArrayInputStream(
+                        out.toByteArray()));
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            plain.write(buffer, 0, read);
+        }
+        return plain.toString("UTF-8");
+    }
+
+    private List<DataElement> createNodes(int count) {
+        for (int i = 0; i < count; i++) {
+            db.createDataElement(new Node(0, i, i));
+        }
+        return db.getAllDataElements();
+    }
+
+    @Test
+    public void upload_threeNodesChunkSizeTwo_twoChunksCheckpointed()
+            throws Exception {
+        final List<DataElement> nodes = createNodes(3);
+        final long first = nodes.get(0).getOsmId();
+        Robolectric.addPendingHttpResponse(200,
+                diffResult(first, first + 1));
+        Robolectric.addPendingHttpResponse(200, diffResult(first + 2));
+
+        final ChunkedChangesetUpload upload =
+                new ChunkedChangesetUpload(user, db, callback, 2);
+        assertEquals(3, upload.getTotalSize());
+        upload.upload(CHANGESET);
+
+        assertTrue(upload.isFinished());
+        assertEquals(3, progress);
+        assertEquals(3, db.getUploadCheckpoint().size());
+        assertEquals(Long.valueOf(1000 + first + 2), db
+                .getUploadCheckpoint().get(first + 2));
+        assertEquals(CHANGESET, db.getUploadChangesetId());
+        assertTrue(sentBody(1).contains("<node id=\"-" + (first + 2)));
+    }
+
+    @Test
+    public void chunkProgress_fiftyElements_intermediateProgressReported()
+            throws Exception {
+        final List<DataElement> nodes = createNodes(50);
+        final long length =
+                new OsmChangeEntity(nodes, CHANGESET, null, false)
+                        .getDocumentLength();
+        final List<Integer> reported = new ArrayList<Integer>();
+        final ChunkedChangesetUpload.ChunkProgress chunk =
+                new ChunkedChangesetUpload.ChunkProgress(
+                        new Callback<Integer>() {
+                            @Override
+                            public void callback(Integer t) {
+                                reported.add(t);
+                            }
+
+                            @Override
+                            public int interval() {
+                                // The interval of the upload service
+                                return Math.max(1, 50 / 100);
+                            }
+                        }, 0, 50);
+        chunk.setDocumentLength(length);
+
+        // The bytes are written like a CallbackOutputStream reports them
+        for (long written = chunk.interval(); written < length; written +=
+                chunk.interval()) {
+            chunk.callback((int) written);
+        }
+
+        assertFalse(reported.isEmpty());
+        for (int progress : reported) {
+            assertTrue(progress > 0 && progress < 50);
+        }
+    }
+
+    @Test
+    public void upload_changesetClosed_committedChunksKept() throws Exception {
+        final List<DataElement> nodes = createNodes(2);
+        final long first = nodes.get(0).getOsmId();
+        Robolectric.addPendingHttpResponse(200, diffResult(first));
+        Robolectric.addPendingHttpResponse(409, "");
+
+        final ChunkedChangesetUpload upload =
+                new ChunkedChangesetUpload(user, db, callback, 1);
+        try {
+            upload.upload(CHANGESET);
+            fail("the closed changeset was not reported");
+        } catch (OsmChangesetClosedException e) {
+            assertFalse(upload.isFinished());
+            assertEquals(1, db.getUploadCheckpoint().size());
+        }
+
+        // The remaining chunk goes into a new changeset
+        Robolectric.addPendingHttpResponse(200, diffResult(first + 1));
+        upload.upload(CHANGESET + 1);
+        assertTrue(upload.isFinished());
+        assertEquals(2, db.getUploadCheckpoint().size());
+    }
+
+    @Test
+    public void upload_changesetFull_remainingChunksIntoNextChangeset()
+            throws Exception {
+        final List<DataElement> nodes = createNodes(3);
+        final long first = nodes.get(0).getOsmId();
+        Robolectric.addPendingHttpResponse(200, diffResult(first));
+        Robolectric.addPendingHttpResponse(200, diffResult(first + 1));
+
+        final ChunkedChangesetUpload upload =
+                new ChunkedChangesetUpload(user, db, callback, 1, 2);
+        upload.upload(CHANGESET);
+
+        // The third node would overflow the changeset
+        assertFalse(upload.isFinished());
+        assertEquals(2, upload.getUploadedSize());
+
+        Robolectric.addPendingHttpResponse(200, diffResult(first + 2));
+        upload.upload(CHANGESET + 1);
+        assertTrue(upload.isFinished());
+        assertEquals(3, progress);
+        assertEquals(CHANGESET + 1, db.getUploadChangesetId());
+        assertTrue(Robolectric.getSentHttpRequest(1).getRequestLine()
+                .getUri().contains("/changeset/" + CHANGESET + "/upload"));
+        final String next = "/changeset/" + (CHANGESET + 1) + "/upload";
+        assertTrue(Robolectric.getSentHttpRequest(2).getRequestLine()
+                .getUri().contains(next));
+    }
+
+    @Test
+    public void upload_uploadedNodeUpdated_uploadedAsModification()
+            throws Exception {
+        final DataElement node = createNodes(1).get(0);
+        db.addUploadCheckpoint(CHANGESET,
+                Collections.singletonMap(node.getOsmId(), 500L));
+        db.updateDataElement(node);
+        Robolectric.addPendingHttpResponse(200, "<diffResult version=\"0.6\">"
+                + "<node old_id=\"500\" new_id=\"500\" new_version=\"2\"/>"
+                + "</diffResult>");
+
+        ChunkedChangesetUpload upload =
+                new ChunkedChangesetUpload(user, db, callback);
+        assertEquals(1, upload.getTotalSize());
+        upload.upload(CHANGESET);
+        assertTrue(upload.isFinished());
+
+        String body = sentBody(0);
+        assertTrue(body.contains("<modify>"));
+        assertTrue(body.contains("<node id=\"500\""));
+        assertTrue(body.contains("changeset=\"42\" version=\"1\""));
+        assertFalse(body.contains("<create>\n<node"));
+        assertEquals(Long.valueOf(500),
+                db.getUploadCheckpoint().get(node.getOsmId()));
+
+        // A second edit is uploaded as the next version
+        db.updateDataElement(node);
+        Robolectric.addPendingHttpResponse(200, "<diffResult/>");
+        upload = new ChunkedChangesetUpload(user, db, callback);
+        upload.upload(CHANGESET);
+        body = sentBody(1);
+        assertTrue(body.contains("<node id=\"500\""));
+        assertTrue(body.contains("changeset=\"42\" version=\"2\""));
+    }
+
+    @Test
+    public void upload_uploadedNodeRemoved_uploadedAsDeletion()
+            throws Exception {
+        final PolyElement way = new PolyElement(0, PolyElementType.WAY);
+        way.addNode(new Node(0, 1, 1));
+        way.addNode(new Node(0, 2, 2));
+        way.addNode(new Node(0, 3, 3));
+        db.createDataElement(way);
+        final PolyElement saved = (PolyElement) db.getAllDataElements().get(0);
+        final Map<Long, Long> ids = new HashMap<Long, Long>();
+        ids.put(saved.getOsmId(), 600L);
+        for (Node node : saved.getNodes()) {
+            ids.put(node.getOsmId(), 500 + node.getOsmId());
+        }
+        db.addUploadCheckpoint(CHANGESET, ids);
+        final Node removed = saved.getLastNode();
+        saved.removeNode(removed);
+        db.updateDataElement(saved);
+        Robolectric.addPendingHttpResponse(200, "<diffResult/>");
+
+        final ChunkedChangesetUpload upload =
+                new ChunkedChangesetUpload(user, db, callback);
+        assertEquals(4, upload.getTotalSize());
+        upload.upload(CHANGESET);
+
+        final String body = sentBody(0);
+        assertTrue(body.contains("<modify>\n<way id=\"600\""));
+        assertTrue(body.contains("<delete>\n<node id=\""
+                + (500 + removed.getOsmId()) + "\""));
+        assertTrue(body.indexOf("<modify>") < body.indexOf("<delete>"));
+        assertFalse(db.getUploadCheckpoint().containsKey(removed.getOsmId()));
+        assertTrue(db.getUploadVersions().isEmpty());
+    }
+
+    @Test
+    public void upload_resumed_uploadedNodesReferencedByNewId()
+            throws Exception {
+        final PolyElement way = new PolyElement(0, PolyElementType.WAY);
+        way.addNode(new Node(0, 1, 1));
+        way.addNode(new Node(0, 2, 2));
+        db.createDataElement(way);
+        final PolyElement saved = (PolyElement) db.getAllDataElements().get(0);
+        final long uploadedNode = saved.getNodes().get(0).getOsmId();
+        db.addUploadCheckpoint(CHANGESET,
+                Collections.singletonMap(uploadedNode, 500L));
+        Robolectric.addPendingHttpResponse(200,
+                diffResult(saved.getNodes().get(1).getOsmId()));
+
+        new ChunkedChangesetUpload(user, db, callback).upload(CHANGESET);
+
+        final String body = sentBody(0);
+        assertTrue(body.contains("<nd ref=\"500\"/>"));
+        assertFalse(body.contains("<node id=\"-" + uploadedNode + "\""));
+    }
+}
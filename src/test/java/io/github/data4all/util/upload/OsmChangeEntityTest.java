@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014, 2015 Data4All
+ * 
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ * 
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * <p>Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.github.data4all.util.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import io.github.data4all.model.data.DataElement;
+import io.github.data4all.model.data.Node;
+import io.github.data4all.model.data.Tags;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Test cases for the OsmChangeEntity class.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18)
+public class OsmChangeEntityTest {
+
+    private List<DataElement> elems;
+
+    @Before
+    public void setUp() {
+        elems = new ArrayList<DataElement>();
+        for (int i = 1; i <= 100; i++) {
+            final Node node = new Node(i, i, i);
+            node.addOrUpdateTag(Tags.getTagWithId(19), "Straße " + i);
+            elems.add(node);
+        }
+    }
+
+    @Test
+    public void writeTo_uncompressed_contentLengthMatches() throws Exception {
+        final OsmChangeEntity entity =
+                new OsmChangeEntity(elems, 42, null, false);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        assertNull(entity.getContentEncoding());
+        assertEquals(out.size(), entity.getContentLength());
+        assertEquals(out.size(), entity.getDocumentLength());
+        assertTrue(out.toString("UTF-8").contains("v=\"Straße 100\""));
+    }
+
+    @Test
+    public void writeTo_gzip_decompressesToDocument() throws Exception {
+        final OsmChangeEntity entity =
+                new OsmChangeEntity(elems, 42, null, true);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        assertEquals(-1, entity.getContentLength());
+        assertTrue(entity.isChunked());
+
+        final InputStream in =
+                new GZIPInputStream(new ByteArrayInputStream(
+                        out.toByteArray()));
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            plain.write(buffer, 0, read);
+        }
+        assertEquals(entity.getDocumentLength(), plain.size());
+    }
+
+    @Test
+    public void setGzip_disabled_sentUncompressed() throws Exception {
+        final OsmChangeEntity entity =
+                new OsmChangeEntity(elems, 42, null, true);
+        entity.setGzip(false);
+
+        assertNull(entity.getContentEncoding());
+        assertEquals(entity.getDocumentLength(), entity.getContentLength());
+    }
+}